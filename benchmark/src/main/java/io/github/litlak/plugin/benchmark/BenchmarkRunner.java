@@ -0,0 +1,42 @@
+package io.github.litlak.plugin.benchmark;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * benchmarks.jar入口, 参数与JMH命令行相同 <br>
+ * 没有指定 -rf/-rff 时结果写到 jmh-result/&lt;时间&gt;.json, 用于对比不同版本的运行结果
+ *
+ * @author Scomy
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList()
+				|| commandLineOptions.shouldListWithParams() || commandLineOptions.shouldListProfilers()
+				|| commandLineOptions.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+		if (!commandLineOptions.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (!commandLineOptions.getResult().hasValue()) {
+			File dir = new File("jmh-result");
+			dir.mkdirs();
+			String name = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+			ResultFormatType format = commandLineOptions.getResultFormat().orElse(ResultFormatType.JSON);
+			options.result(new File(dir, name + "." + format.toString().toLowerCase()).getPath());
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,191 @@
+package io.github.litlak.plugin.benchmark;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.litlak.plugin.benchmark.model.UserInfo;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+/**
+ * 各dialect的批量写与逐行写的耗时对比: <br>
+ * mysql: H2(MySQL兼容模式), insert ... values + on duplicate key update <br>
+ * h2: H2, insert ... values + merge into ... using <br>
+ * postgresql: 内嵌PostgreSQL, insert ... select from unnest + on conflict do update <br>
+ * 逐行写为同一个事务内循环调用insertSelective/insertOrUpdate, 写操作每次回滚, 表数据量保持不变
+ *
+ * @author Scomy
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DialectBenchmark {
+
+	static final int SEED_ROWS = 10000;
+
+	@Param({ "mysql", "h2", "postgresql" })
+	public String dialect;
+
+	@Param({ "100", "1000" })
+	public int batchSize;
+
+	private EmbeddedPostgres postgres;
+
+	private PooledDataSource pooledDataSource;
+
+	private SqlSessionFactory sqlSessionFactory;
+
+	/**
+	 * 当前dialect生成的mapper的namespace
+	 */
+	private String namespace;
+
+	private List<UserInfo> newRows;
+
+	private List<UserInfo> existingRows;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		DataSource dataSource;
+		Class<?> mapperClass;
+		if ("postgresql".equals(dialect)) {
+			postgres = EmbeddedPostgres.start();
+			dataSource = postgres.getPostgresDatabase();
+			try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+				for (String sql : script("schema-postgresql.sql").split(";")) {
+					if (!sql.trim().isEmpty()) {
+						statement.execute(sql);
+					}
+				}
+			}
+			mapperClass = io.github.litlak.plugin.benchmark.mapper.postgresql.UserInfoMapper.class;
+		} else {
+			String url = "h2".equals(dialect) ? "jdbc:h2:mem:dialect_h2;DB_CLOSE_DELAY=-1"
+					: "jdbc:h2:mem:dialect_mysql;MODE=MySQL;DB_CLOSE_DELAY=-1";
+			pooledDataSource = new PooledDataSource("org.h2.Driver", url, "sa", "");
+			dataSource = pooledDataSource;
+			try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+				statement.execute("RUNSCRIPT FROM 'classpath:schema.sql' CHARSET 'UTF-8'");
+			}
+			mapperClass = "h2".equals(dialect) ? io.github.litlak.plugin.benchmark.mapper.h2.UserInfoMapper.class
+					: io.github.litlak.plugin.benchmark.mapper.UserInfoMapper.class;
+		}
+		Configuration configuration = new Configuration(
+				new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+		configuration.addMapper(mapperClass);
+		sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+		namespace = mapperClass.getName();
+
+		// 预置数据, id从1到SEED_ROWS
+		try (SqlSession session = sqlSessionFactory.openSession()) {
+			for (int from = 0; from < SEED_ROWS; from += 1000) {
+				session.insert(namespace + ".batchInsert",
+						GeneratedSqlBenchmark.rows("seed-", from, Math.min(1000, SEED_ROWS - from)));
+			}
+			session.commit();
+		}
+
+		newRows = GeneratedSqlBenchmark.rows("new-", 0, batchSize);
+		existingRows = new ArrayList<>(batchSize);
+		int step = SEED_ROWS / batchSize;
+		for (int i = 0; i < batchSize; i++) {
+			UserInfo row = GeneratedSqlBenchmark.row("seed-", i * step);
+			row.setId((long) (i * step + 1));
+			row.setRemark("updated");
+			existingRows.add(row);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		if (postgres != null) {
+			postgres.close();
+		} else {
+			try (Connection connection = pooledDataSource.getConnection();
+					Statement statement = connection.createStatement()) {
+				statement.execute("SHUTDOWN");
+			}
+			pooledDataSource.forceCloseAll();
+		}
+	}
+
+	@Benchmark
+	public int batchInsert() {
+		try (SqlSession session = sqlSessionFactory.openSession()) {
+			int rows = session.insert(namespace + ".batchInsert", newRows);
+			session.rollback(true);
+			return rows;
+		}
+	}
+
+	@Benchmark
+	public int rowByRowInsert() {
+		try (SqlSession session = sqlSessionFactory.openSession()) {
+			int rows = 0;
+			for (UserInfo row : newRows) {
+				rows += session.insert(namespace + ".insertSelective", row);
+			}
+			session.rollback(true);
+			return rows;
+		}
+	}
+
+	@Benchmark
+	public int batchInsertOrUpdate() {
+		try (SqlSession session = sqlSessionFactory.openSession()) {
+			int rows = session.insert(namespace + ".batchInsertOrUpdate", existingRows);
+			session.rollback(true);
+			return rows;
+		}
+	}
+
+	@Benchmark
+	public int rowByRowInsertOrUpdate() {
+		try (SqlSession session = sqlSessionFactory.openSession()) {
+			int rows = 0;
+			for (UserInfo row : existingRows) {
+				rows += session.insert(namespace + ".insertOrUpdate", row);
+			}
+			session.rollback(true);
+			return rows;
+		}
+	}
+
+	private static String script(String resource) throws Exception {
+		try (InputStream in = DialectBenchmark.class.getClassLoader().getResourceAsStream(resource);
+				Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+			return scanner.useDelimiter("\\A").next();
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package io.github.litlak.plugin.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.litlak.plugin.benchmark.mapper.UserInfoMapper;
+import io.github.litlak.plugin.benchmark.model.UserInfo;
+
+/**
+ * 生成的SQL在H2(MySQL兼容模式)上的耗时: <br>
+ * batchInsert(按batchSize), insertOrUpdate, listByPrimaryKey(按inSize), listUserInfo(索引列过滤) <br>
+ * mapper和model由CustomMethodGenerator在编译前生成, 写操作每次回滚, 表数据量保持不变
+ *
+ * @author Scomy
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratedSqlBenchmark {
+
+	static final int SEED_ROWS = 20000;
+
+	static final int TENANTS = 100;
+
+	static final int STATUSES = 4;
+
+	@State(Scope.Benchmark)
+	public static class Database {
+
+		private PooledDataSource dataSource;
+
+		SqlSessionFactory sqlSessionFactory;
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception {
+			dataSource = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1",
+					"sa", "");
+			try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+				statement.execute("RUNSCRIPT FROM 'classpath:schema.sql' CHARSET 'UTF-8'");
+			}
+			Configuration configuration = new Configuration(
+					new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+			configuration.addMapper(UserInfoMapper.class);
+			sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+
+			// 预置数据, id从1到SEED_ROWS
+			try (SqlSession session = sqlSessionFactory.openSession()) {
+				UserInfoMapper mapper = session.getMapper(UserInfoMapper.class);
+				for (int from = 0; from < SEED_ROWS; from += 1000) {
+					mapper.batchInsert(rows("seed-", from, Math.min(1000, SEED_ROWS - from)));
+				}
+				session.commit();
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws Exception {
+			try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+				statement.execute("SHUTDOWN");
+			}
+			dataSource.forceCloseAll();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class BatchInsertState {
+
+		@Param({ "1", "10", "100", "1000" })
+		public int batchSize;
+
+		List<UserInfo> rows;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			rows = rows("new-", 0, batchSize);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class InListState {
+
+		@Param({ "1", "16", "256", "1024" })
+		public int inSize;
+
+		List<Long> ids;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Random random = new Random(42);
+			ids = new ArrayList<>(inSize);
+			for (int i = 0; i < inSize; i++) {
+				ids.add((long) (random.nextInt(SEED_ROWS) + 1));
+			}
+		}
+	}
+
+	/**
+	 * 预先生成的随机行和过滤条件, 每次调用按顺序轮换, 避免Level.Invocation的开销
+	 */
+	@State(Scope.Thread)
+	public static class RandomRowState {
+
+		private static final int SIZE = 1024;
+
+		private final UserInfo[] existing = new UserInfo[SIZE];
+
+		private final UserInfo[] filters = new UserInfo[SIZE];
+
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Random random = new Random(42);
+			for (int i = 0; i < SIZE; i++) {
+				int seq = random.nextInt(SEED_ROWS);
+				existing[i] = row("seed-", seq);
+				existing[i].setId((long) (seq + 1));
+				existing[i].setRemark("updated");
+
+				filters[i] = new UserInfo();
+				filters[i].setTenantId((long) random.nextInt(TENANTS));
+				filters[i].setStatus(random.nextInt(STATUSES));
+			}
+		}
+
+		UserInfo nextExisting() {
+			return existing[next++ & (SIZE - 1)];
+		}
+
+		UserInfo nextFilter() {
+			return filters[next++ & (SIZE - 1)];
+		}
+	}
+
+	@Benchmark
+	public int batchInsert(Database database, BatchInsertState state) {
+		try (SqlSession session = database.sqlSessionFactory.openSession()) {
+			int rows = session.getMapper(UserInfoMapper.class).batchInsert(state.rows);
+			session.rollback(true);
+			return rows;
+		}
+	}
+
+	@Benchmark
+	public int insertOrUpdate(Database database, RandomRowState state) {
+		try (SqlSession session = database.sqlSessionFactory.openSession()) {
+			int rows = session.getMapper(UserInfoMapper.class).insertOrUpdate(state.nextExisting());
+			session.rollback(true);
+			return rows;
+		}
+	}
+
+	@Benchmark
+	public List<UserInfo> listByPrimaryKey(Database database, InListState state) {
+		try (SqlSession session = database.sqlSessionFactory.openSession()) {
+			return session.getMapper(UserInfoMapper.class).listByPrimaryKey(state.ids);
+		}
+	}
+
+	@Benchmark
+	public List<UserInfo> listUserInfo(Database database, RandomRowState state) {
+		try (SqlSession session = database.sqlSessionFactory.openSession()) {
+			return session.getMapper(UserInfoMapper.class).listUserInfo(state.nextFilter());
+		}
+	}
+
+	static List<UserInfo> rows(String namePrefix, int from, int count) {
+		List<UserInfo> rows = new ArrayList<>(count);
+		for (int i = from; i < from + count; i++) {
+			rows.add(row(namePrefix, i));
+		}
+		return rows;
+	}
+
+	static UserInfo row(String namePrefix, int seq) {
+		Date now = new Date();
+		UserInfo row = new UserInfo();
+		row.setName(namePrefix + seq);
+		row.setStatus(seq % STATUSES);
+		row.setTenantId((long) (seq % TENANTS));
+		row.setAmount(BigDecimal.valueOf(seq, 2));
+		row.setRemark("remark-" + seq);
+		row.setGmtCreate(now);
+		row.setGmtModified(now);
+		return row;
+	}
+}
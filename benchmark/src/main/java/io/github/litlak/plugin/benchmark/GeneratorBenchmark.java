@@ -0,0 +1,208 @@
+package io.github.litlak.plugin.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mybatis.generator.api.GeneratedFile;
+import org.mybatis.generator.api.GeneratedJavaFile;
+import org.mybatis.generator.api.GeneratedXmlFile;
+import org.mybatis.generator.config.CommentGeneratorConfiguration;
+import org.mybatis.generator.config.Context;
+import org.mybatis.generator.config.JDBCConnectionConfiguration;
+import org.mybatis.generator.config.JavaClientGeneratorConfiguration;
+import org.mybatis.generator.config.JavaModelGeneratorConfiguration;
+import org.mybatis.generator.config.ModelType;
+import org.mybatis.generator.config.PluginConfiguration;
+import org.mybatis.generator.config.SqlMapGeneratorConfiguration;
+import org.mybatis.generator.config.TableConfiguration;
+import org.mybatis.generator.internal.NullProgressCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.github.litlak.plugin.generator.CustomMethodGenerator;
+import io.github.litlak.plugin.generator.Swagger2Generator;
+
+/**
+ * 生成器吞吐: 合成schema(tables张表, 每张表columns列, 每张表一个普通索引)上一次完整的Context.generateFiles <br>
+ * 每次调用前重新introspect(不计时), 计时部分包括MBG自身的生成, 插件的hook和所有文件的格式化 <br>
+ * plugin=none为MBG基线, 与Swagger2Generator/CustomMethodGenerator的差值即插件开销 <br>
+ * 最大的组合(5000张表 * 500列)需要较大的堆, 可用 -p tables=10,100 -p columns=5,50 缩小范围
+ *
+ * @author Scomy
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class GeneratorBenchmark {
+
+	private static final String[] COLUMN_TYPES = { "varchar(64)", "int", "bigint", "decimal(12,2)", "timestamp" };
+
+	@Param({ "10", "100", "1000", "5000" })
+	public int tables;
+
+	@Param({ "5", "50", "500" })
+	public int columns;
+
+	@Param({ "none", "Swagger2Generator", "CustomMethodGenerator" })
+	public String plugin;
+
+	private String url;
+
+	private Context context;
+
+	@Setup(Level.Trial)
+	public void createSchema() throws SQLException {
+		url = "jdbc:h2:mem:generator_" + tables + "_" + columns + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+		try (Connection connection = DriverManager.getConnection(url, "sa", "");
+				Statement statement = connection.createStatement()) {
+			for (int t = 0; t < tables; t++) {
+				String tableName = tableName(t);
+				StringBuilder ddl = new StringBuilder("create table ").append(tableName)
+						.append(" (id bigint auto_increment primary key comment 'id'");
+				for (int c = 1; c < columns; c++) {
+					ddl.append(", c").append(c).append(' ').append(COLUMN_TYPES[c % COLUMN_TYPES.length])
+							.append(" comment 'column ").append(c).append('\'');
+				}
+				statement.execute(ddl.append(')').toString());
+				if (columns > 1) {
+					statement.execute("create index idx_" + tableName + "_c1 on " + tableName + "(c1)");
+				}
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void dropSchema() throws SQLException {
+		try (Connection connection = DriverManager.getConnection(url, "sa", "");
+				Statement statement = connection.createStatement()) {
+			statement.execute("SHUTDOWN");
+		}
+	}
+
+	/**
+	 * 插件会在IntrospectedTable上缓存编译结果, 每次调用重新introspect保证计时不受上一次的影响
+	 */
+	@Setup(Level.Invocation)
+	public void introspect() throws Exception {
+		context = newContext();
+		context.introspectTables(new NullProgressCallback(), new ArrayList<>(), null);
+	}
+
+	@Benchmark
+	public void generateFiles(Blackhole blackhole) throws InterruptedException {
+		context.generateFiles(new NullProgressCallback(), new FormattingSink<GeneratedJavaFile>(blackhole),
+				new FormattingSink<GeneratedXmlFile>(blackhole), new ArrayList<>());
+	}
+
+	private Context newContext() {
+		Context context = new Context(ModelType.CONDITIONAL);
+		context.setId("generator");
+		context.setTargetRuntime("MyBatis3");
+
+		JDBCConnectionConfiguration jdbcConnection = new JDBCConnectionConfiguration();
+		jdbcConnection.setDriverClass("org.h2.Driver");
+		jdbcConnection.setConnectionURL(url);
+		jdbcConnection.setUserId("sa");
+		jdbcConnection.setPassword("");
+		context.setJdbcConnectionConfiguration(jdbcConnection);
+
+		CommentGeneratorConfiguration commentGenerator = new CommentGeneratorConfiguration();
+		commentGenerator.addProperty("suppressAllComments", "true");
+		context.setCommentGeneratorConfiguration(commentGenerator);
+
+		JavaModelGeneratorConfiguration model = new JavaModelGeneratorConfiguration();
+		model.setTargetPackage("bench.model");
+		model.setTargetProject("target");
+		context.setJavaModelGeneratorConfiguration(model);
+		SqlMapGeneratorConfiguration sqlMap = new SqlMapGeneratorConfiguration();
+		sqlMap.setTargetPackage("bench.mapper");
+		sqlMap.setTargetProject("target");
+		context.setSqlMapGeneratorConfiguration(sqlMap);
+		JavaClientGeneratorConfiguration client = new JavaClientGeneratorConfiguration();
+		client.setConfigurationType("XMLMAPPER");
+		client.setTargetPackage("bench.mapper");
+		client.setTargetProject("target");
+		context.setJavaClientGeneratorConfiguration(client);
+
+		if (Swagger2Generator.class.getSimpleName().equals(plugin)) {
+			PluginConfiguration pluginConfiguration = new PluginConfiguration();
+			pluginConfiguration.setConfigurationType(Swagger2Generator.class.getName());
+			context.addPluginConfiguration(pluginConfiguration);
+		} else if (CustomMethodGenerator.class.getSimpleName().equals(plugin)) {
+			PluginConfiguration pluginConfiguration = new PluginConfiguration();
+			pluginConfiguration.setConfigurationType(CustomMethodGenerator.class.getName());
+			pluginConfiguration.addProperty("servicePackage", "bench.service");
+			pluginConfiguration.addProperty("controllerPackage", "bench.controller");
+			pluginConfiguration.addProperty("javaTargetProject", "target");
+			pluginConfiguration.addProperty("responseGenericityType", "bench.Result");
+			context.addPluginConfiguration(pluginConfiguration);
+		}
+
+		for (int t = 0; t < tables; t++) {
+			TableConfiguration table = new TableConfiguration(context);
+			table.setTableName(tableName(t));
+			table.setCountByExampleStatementEnabled(false);
+			table.setSelectByExampleStatementEnabled(false);
+			table.setDeleteByExampleStatementEnabled(false);
+			table.setUpdateByExampleStatementEnabled(false);
+			context.addTableConfiguration(table);
+		}
+		return context;
+	}
+
+	private static String tableName(int t) {
+		return String.format("T%05d", t);
+	}
+
+	/**
+	 * 接收生成的文件, 格式化后丢弃, 大schema下不在内存中保留所有文件
+	 */
+	private static class FormattingSink<T extends GeneratedFile> extends AbstractList<T> {
+
+		private final Blackhole blackhole;
+
+		private int size;
+
+		FormattingSink(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public boolean add(T file) {
+			blackhole.consume(file.getFormattedContent());
+			size++;
+			return true;
+		}
+
+		@Override
+		public T get(int index) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package io.github.litlak.plugin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mybatis.generator.api.MyBatisGenerator;
+import org.mybatis.generator.config.CommentGeneratorConfiguration;
+import org.mybatis.generator.config.Configuration;
+import org.mybatis.generator.config.Context;
+import org.mybatis.generator.config.JDBCConnectionConfiguration;
+import org.mybatis.generator.config.JavaClientGeneratorConfiguration;
+import org.mybatis.generator.config.JavaModelGeneratorConfiguration;
+import org.mybatis.generator.config.ModelType;
+import org.mybatis.generator.config.PluginConfiguration;
+import org.mybatis.generator.config.SqlMapGeneratorConfiguration;
+import org.mybatis.generator.config.TableConfiguration;
+import org.mybatis.generator.internal.DefaultShellCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.litlak.plugin.generator.CustomMethodGenerator;
+import io.github.litlak.plugin.generator.ParallelGenerator;
+import io.github.litlak.plugin.generator.Swagger2Generator;
+
+/**
+ * 一次完整生成的耗时: introspect, 插件生成, 格式化, 写入文件 <br>
+ * parallelism=0为MyBatisGenerator基线, 其余为ParallelGenerator的并行度, 加速比受CPU核数限制 <br>
+ * 每次调用前清空输出目录(不计时), 避免已存在的xml被合并
+ *
+ * @author Scomy
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g", "-Dfile.encoding=UTF-8" })
+@State(Scope.Benchmark)
+public class ParallelGeneratorBenchmark {
+
+	private static final String[] COLUMN_TYPES = { "varchar(64)", "int", "bigint", "decimal(12,2)", "timestamp" };
+
+	private static final int COLUMNS = 20;
+
+	@Param({ "100", "1000", "3000" })
+	public int tables;
+
+	@Param({ "0", "1", "4", "16" })
+	public int parallelism;
+
+	private String url;
+
+	private File outputDirectory;
+
+	@Setup(Level.Trial)
+	public void createSchema() throws SQLException {
+		url = "jdbc:h2:mem:parallel_" + tables + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+		outputDirectory = new File("target/parallel-generator-benchmark/" + tables + "-" + parallelism);
+		try (Connection connection = DriverManager.getConnection(url, "sa", "");
+				Statement statement = connection.createStatement()) {
+			for (int t = 0; t < tables; t++) {
+				String tableName = tableName(t);
+				StringBuilder ddl = new StringBuilder("create table ").append(tableName)
+						.append(" (id bigint auto_increment primary key comment 'id'");
+				for (int c = 1; c < COLUMNS; c++) {
+					ddl.append(", c").append(c).append(' ').append(COLUMN_TYPES[c % COLUMN_TYPES.length])
+							.append(" comment 'column ").append(c).append('\'');
+				}
+				statement.execute(ddl.append(')').toString());
+				statement.execute("create index idx_" + tableName + "_c1 on " + tableName + "(c1)");
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void dropSchema() throws SQLException, IOException {
+		try (Connection connection = DriverManager.getConnection(url, "sa", "");
+				Statement statement = connection.createStatement()) {
+			statement.execute("SHUTDOWN");
+		}
+		deleteOutput();
+	}
+
+	@Setup(Level.Invocation)
+	public void deleteOutput() throws IOException {
+		if (!outputDirectory.exists()) {
+			return;
+		}
+		Files.walkFileTree(outputDirectory.toPath(), new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	@Benchmark
+	public int generate() throws Exception {
+		outputDirectory.mkdirs();
+		Configuration configuration = new Configuration();
+		configuration.addContext(newContext());
+		List<String> warnings = new ArrayList<>();
+		if (parallelism == 0) {
+			MyBatisGenerator generator = new MyBatisGenerator(configuration, new DefaultShellCallback(true), warnings);
+			generator.generate(null);
+			return generator.getGeneratedJavaFiles().size();
+		}
+		ParallelGenerator generator = new ParallelGenerator(configuration, new DefaultShellCallback(true), warnings,
+				parallelism);
+		generator.generate(null);
+		return generator.getGeneratedJavaFiles().size();
+	}
+
+	private Context newContext() {
+		String targetProject = outputDirectory.getPath();
+		Context context = new Context(ModelType.CONDITIONAL);
+		context.setId("parallel");
+		context.setTargetRuntime("MyBatis3");
+
+		JDBCConnectionConfiguration jdbcConnection = new JDBCConnectionConfiguration();
+		jdbcConnection.setDriverClass("org.h2.Driver");
+		jdbcConnection.setConnectionURL(url);
+		jdbcConnection.setUserId("sa");
+		jdbcConnection.setPassword("");
+		context.setJdbcConnectionConfiguration(jdbcConnection);
+
+		CommentGeneratorConfiguration commentGenerator = new CommentGeneratorConfiguration();
+		commentGenerator.addProperty("suppressAllComments", "true");
+		context.setCommentGeneratorConfiguration(commentGenerator);
+
+		JavaModelGeneratorConfiguration model = new JavaModelGeneratorConfiguration();
+		model.setTargetPackage("bench.model");
+		model.setTargetProject(targetProject);
+		context.setJavaModelGeneratorConfiguration(model);
+		SqlMapGeneratorConfiguration sqlMap = new SqlMapGeneratorConfiguration();
+		sqlMap.setTargetPackage("bench.mapper");
+		sqlMap.setTargetProject(targetProject);
+		context.setSqlMapGeneratorConfiguration(sqlMap);
+		JavaClientGeneratorConfiguration client = new JavaClientGeneratorConfiguration();
+		client.setConfigurationType("XMLMAPPER");
+		client.setTargetPackage("bench.mapper");
+		client.setTargetProject(targetProject);
+		context.setJavaClientGeneratorConfiguration(client);
+
+		PluginConfiguration swagger = new PluginConfiguration();
+		swagger.setConfigurationType(Swagger2Generator.class.getName());
+		context.addPluginConfiguration(swagger);
+		PluginConfiguration customMethod = new PluginConfiguration();
+		customMethod.setConfigurationType(CustomMethodGenerator.class.getName());
+		customMethod.addProperty("servicePackage", "bench.service");
+		customMethod.addProperty("controllerPackage", "bench.controller");
+		customMethod.addProperty("javaTargetProject", targetProject);
+		customMethod.addProperty("responseGenericityType", "bench.Result");
+		context.addPluginConfiguration(customMethod);
+
+		for (int t = 0; t < tables; t++) {
+			TableConfiguration table = new TableConfiguration(context);
+			table.setTableName(tableName(t));
+			table.setCountByExampleStatementEnabled(false);
+			table.setSelectByExampleStatementEnabled(false);
+			table.setDeleteByExampleStatementEnabled(false);
+			table.setUpdateByExampleStatementEnabled(false);
+			context.addTableConfiguration(table);
+		}
+		return context;
+	}
+
+	private static String tableName(int t) {
+		return String.format("T%05d", t);
+	}
+}
@@ -0,0 +1,12 @@
+create table if not exists user_info (
+  id bigserial primary key,
+  name varchar(64) not null,
+  status int,
+  tenant_id bigint,
+  amount decimal(12,2),
+  remark varchar(255),
+  gmt_create timestamp,
+  gmt_modified timestamp
+);
+create unique index if not exists uk_user_info_name on user_info(name);
+create index if not exists idx_user_info_tenant_status on user_info(tenant_id, status);
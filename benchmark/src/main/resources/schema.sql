@@ -0,0 +1,27 @@
+create table if not exists user_info (
+  id bigint auto_increment primary key comment '主键',
+  name varchar(64) not null comment '名称',
+  status int comment '状态',
+  tenant_id bigint comment '租户',
+  amount decimal(12,2) comment '金额',
+  remark varchar(255) comment '备注',
+  gmt_create timestamp comment '创建时间',
+  gmt_modified timestamp comment '修改时间'
+);
+create unique index if not exists uk_user_info_name on user_info(name);
+create index if not exists idx_user_info_tenant_status on user_info(tenant_id, status);
+-- 只用于检查生成的代码: 复合主键, 没有主键, 只有主键列
+create table if not exists tag (
+  tag_id bigint not null comment '标签分组',
+  name varchar(64) not null comment '名称',
+  color varchar(16) comment '颜色',
+  primary key (tag_id, name)
+);
+create table if not exists log_entry (
+  message varchar(255) comment '内容',
+  level int comment '级别',
+  gmt_create timestamp comment '创建时间'
+);
+create table if not exists only_key (
+  id bigint primary key comment '主键'
+);
@@ -0,0 +1,214 @@
+package io.github.litlak.plugin.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.dom.java.Field;
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.api.dom.java.JavaVisibility;
+import org.mybatis.generator.api.dom.java.Method;
+import org.mybatis.generator.api.dom.java.Parameter;
+import org.mybatis.generator.api.dom.java.TopLevelClass;
+
+/**
+ * CustomMethodGenerator的asyncController: Controller方法改为在有界执行器上异步执行 <br>
+ * BoundedExecutor和ExecutorRejectedAdvice每个context生成一次 <br>
+ * 配置(plugin或table property, table优先): asyncController, asyncExecutor
+ *
+ * @author Scomy
+ */
+class AsyncControllerGenerator {
+
+	private final CustomMethodGenerator plugin;
+
+	AsyncControllerGenerator(CustomMethodGenerator plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Controller方法改为返回CompletableFuture, 方法体在asyncExecutor上执行,
+	 * 线程池满时supplyAsync抛出RejectedExecutionException, 由ExecutorRejectedAdvice转为503.
+	 * 开启readWriteSplit时方法体经ReadRouting.propagate执行, 带上请求线程上最近的写入时间.
+	 * 直接读写servlet请求/响应流的导入导出接口保持同步
+	 */
+	void makeControllerAsync(TopLevelClass controllerClass, IntrospectedTable introspectedTable) {
+		final FullyQualifiedJavaType futureJavaType = new FullyQualifiedJavaType("java.util.concurrent.CompletableFuture");
+		controllerClass.addImportedType(futureJavaType);
+		controllerClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.Executor"));
+		controllerClass.addImportedType(new FullyQualifiedJavaType("org.springframework.beans.factory.annotation.Qualifier"));
+		Field executorField = new Field("asyncExecutor", new FullyQualifiedJavaType("java.util.concurrent.Executor"));
+		executorField.addAnnotation("@Autowired");
+		executorField.addAnnotation("@Qualifier(\"" + plugin.getProperty(introspectedTable, "asyncExecutor", "jdbcExecutor") + "\")");
+		executorField.setVisibility(JavaVisibility.PRIVATE);
+		controllerClass.addField(executorField);
+		final boolean readRouting = plugin.isReadWriteSplit(introspectedTable);
+		if (readRouting) {
+			controllerClass.addImportedType(new FullyQualifiedJavaType(plugin.getProperties().getProperty("servicePackage") + ".ReadRouting"));
+		}
+
+		for (Method method : controllerClass.getMethods()) {
+			boolean servletStream = false;
+			for (Parameter parameter : method.getParameters()) {
+				String typeName = parameter.getType().getFullyQualifiedName();
+				servletStream |= "javax.servlet.http.HttpServletResponse".equals(typeName)
+						|| "javax.servlet.http.HttpServletRequest".equals(typeName);
+			}
+			if (method.getReturnType() == null || servletStream) {
+				continue;
+			}
+			FullyQualifiedJavaType returnType = new FullyQualifiedJavaType(futureJavaType.getFullyQualifiedName());
+			returnType.addTypeArgument(method.getReturnType());
+			method.setReturnType(returnType);
+			List<String> bodyLines = new ArrayList<>(method.getBodyLines());
+			method.getBodyLines().clear();
+			method.addBodyLine("return CompletableFuture.supplyAsync(" + (readRouting ? "ReadRouting.propagate(" : "") + "() -> {");
+			method.addBodyLines(bodyLines);
+			method.addBodyLine("}" + (readRouting ? ")" : "") + ", asyncExecutor);");
+		}
+	}
+
+	/**
+	 * 有界的JDBC执行器, 每个数据源声明一个bean: 最多maxThreads个任务同时执行, 最多queueCapacity个排队, 超出直接拒绝 <br>
+	 * virtualThreads为true且运行在支持虚拟线程的JDK上时每个任务一个虚拟线程, 并发数和排队数仍按上述上限控制
+	 */
+	TopLevelClass boundedExecutorClass() {
+		TopLevelClass executorClass = new TopLevelClass(plugin.getProperties().getProperty("servicePackage") + ".BoundedExecutor");
+		executorClass.setVisibility(JavaVisibility.PUBLIC);
+		executorClass.addSuperInterface(new FullyQualifiedJavaType("java.util.concurrent.Executor"));
+		executorClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.ArrayBlockingQueue"));
+		executorClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.Executor"));
+		executorClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.ExecutorService"));
+		executorClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.Executors"));
+		executorClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.RejectedExecutionException"));
+		executorClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.Semaphore"));
+		executorClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.ThreadPoolExecutor"));
+		executorClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.TimeUnit"));
+		executorClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.atomic.AtomicInteger"));
+		executorClass.addJavaDocLine("/**");
+		executorClass.addJavaDocLine(" * 有界执行器, 任务数超过maxThreads + queueCapacity时抛出RejectedExecutionException");
+		executorClass.addJavaDocLine(" */");
+
+		Field nameField = new Field("name", FullyQualifiedJavaType.getStringInstance());
+		nameField.setVisibility(JavaVisibility.PRIVATE);
+		nameField.setFinal(true);
+		executorClass.addField(nameField);
+		Field delegateField = new Field("delegate", new FullyQualifiedJavaType("java.util.concurrent.ExecutorService"));
+		delegateField.setVisibility(JavaVisibility.PRIVATE);
+		delegateField.setFinal(true);
+		executorClass.addField(delegateField);
+		// 虚拟线程模式下的许可: admission控制执行+排队总数, running控制同时执行数
+		for (String permits : new String[] { "admission", "running" }) {
+			Field field = new Field(permits, new FullyQualifiedJavaType("java.util.concurrent.Semaphore"));
+			field.setVisibility(JavaVisibility.PRIVATE);
+			field.setFinal(true);
+			executorClass.addField(field);
+		}
+
+		Method constructor = new Method("BoundedExecutor");
+		constructor.setConstructor(true);
+		constructor.setVisibility(JavaVisibility.PUBLIC);
+		constructor.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "name"));
+		constructor.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "maxThreads"));
+		constructor.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "queueCapacity"));
+		constructor.addParameter(new Parameter(FullyQualifiedJavaType.getBooleanPrimitiveInstance(), "virtualThreads"));
+		constructor.addBodyLine("this.name = name;");
+		constructor.addBodyLine("ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;");
+		constructor.addBodyLine("if (virtualExecutor != null) {");
+		constructor.addBodyLine("this.delegate = virtualExecutor;");
+		constructor.addBodyLine("this.admission = new Semaphore(maxThreads + queueCapacity);");
+		constructor.addBodyLine("this.running = new Semaphore(maxThreads);");
+		constructor.addBodyLine("} else {");
+		constructor.addBodyLine("AtomicInteger threadNumber = new AtomicInteger();");
+		constructor.addBodyLine("ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,");
+		constructor.addBodyLine("new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), task -> {");
+		constructor.addBodyLine("Thread thread = new Thread(task, name + \"-\" + threadNumber.incrementAndGet());");
+		constructor.addBodyLine("thread.setDaemon(true);");
+		constructor.addBodyLine("return thread;");
+		constructor.addBodyLine("}, new ThreadPoolExecutor.AbortPolicy());");
+		constructor.addBodyLine("pool.allowCoreThreadTimeOut(true);");
+		constructor.addBodyLine("this.delegate = pool;");
+		constructor.addBodyLine("this.admission = null;");
+		constructor.addBodyLine("this.running = null;");
+		constructor.addBodyLine("}");
+		executorClass.addMethod(constructor);
+
+		// 编译目标为Java 8, 通过反射调用Executors.newVirtualThreadPerTaskExecutor(Java 21+)
+		Method newVirtual = new Method("newVirtualThreadPerTaskExecutor");
+		newVirtual.setVisibility(JavaVisibility.PRIVATE);
+		newVirtual.setStatic(true);
+		newVirtual.setReturnType(new FullyQualifiedJavaType("java.util.concurrent.ExecutorService"));
+		newVirtual.addBodyLine("try {");
+		newVirtual.addBodyLine("return (ExecutorService) Executors.class.getMethod(\"newVirtualThreadPerTaskExecutor\").invoke(null);");
+		newVirtual.addBodyLine("} catch (ReflectiveOperationException e) {");
+		newVirtual.addBodyLine("return null;");
+		newVirtual.addBodyLine("}");
+		executorClass.addMethod(newVirtual);
+
+		Method execute = new Method("execute");
+		execute.addAnnotation("@Override");
+		execute.setVisibility(JavaVisibility.PUBLIC);
+		execute.addParameter(new Parameter(new FullyQualifiedJavaType("java.lang.Runnable"), "task"));
+		execute.addBodyLine("if (admission == null) {");
+		execute.addBodyLine("delegate.execute(task);");
+		execute.addBodyLine("return;");
+		execute.addBodyLine("}");
+		execute.addBodyLine("if (!admission.tryAcquire()) {");
+		execute.addBodyLine("throw new RejectedExecutionException(name + \" is full\");");
+		execute.addBodyLine("}");
+		execute.addBodyLine("try {");
+		execute.addBodyLine("delegate.execute(() -> {");
+		execute.addBodyLine("try {");
+		execute.addBodyLine("running.acquireUninterruptibly();");
+		execute.addBodyLine("try {");
+		execute.addBodyLine("task.run();");
+		execute.addBodyLine("} finally {");
+		execute.addBodyLine("running.release();");
+		execute.addBodyLine("}");
+		execute.addBodyLine("} finally {");
+		execute.addBodyLine("admission.release();");
+		execute.addBodyLine("}");
+		execute.addBodyLine("});");
+		execute.addBodyLine("} catch (RejectedExecutionException e) {");
+		execute.addBodyLine("admission.release();");
+		execute.addBodyLine("throw e;");
+		execute.addBodyLine("}");
+		executorClass.addMethod(execute);
+
+		Method isVirtualThreads = new Method("isVirtualThreads");
+		isVirtualThreads.setVisibility(JavaVisibility.PUBLIC);
+		isVirtualThreads.setReturnType(FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+		isVirtualThreads.addBodyLine("return admission != null;");
+		executorClass.addMethod(isVirtualThreads);
+
+		// 作为@Bean声明时Spring自动调用shutdown
+		Method shutdown = new Method("shutdown");
+		shutdown.setVisibility(JavaVisibility.PUBLIC);
+		shutdown.addBodyLine("delegate.shutdown();");
+		executorClass.addMethod(shutdown);
+		return executorClass;
+	}
+
+	/**
+	 * BoundedExecutor拒绝任务时返回503, 客户端按Retry-After重试
+	 */
+	TopLevelClass executorRejectedAdviceClass() {
+		TopLevelClass adviceClass = new TopLevelClass(plugin.getProperties().getProperty("controllerPackage") + ".ExecutorRejectedAdvice");
+		adviceClass.setVisibility(JavaVisibility.PUBLIC);
+		adviceClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.RejectedExecutionException"));
+		adviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.http.HttpStatus"));
+		adviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.http.ResponseEntity"));
+		adviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.web.bind.annotation.ExceptionHandler"));
+		adviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.web.bind.annotation.RestControllerAdvice"));
+		adviceClass.addAnnotation("@RestControllerAdvice(basePackages = \"" + plugin.getProperties().getProperty("controllerPackage") + "\")");
+
+		Method handler = new Method("rejected");
+		handler.setVisibility(JavaVisibility.PUBLIC);
+		handler.addAnnotation("@ExceptionHandler(RejectedExecutionException.class)");
+		handler.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.concurrent.RejectedExecutionException"), "e"));
+		handler.setReturnType(new FullyQualifiedJavaType("org.springframework.http.ResponseEntity<Void>"));
+		handler.addBodyLine("return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(\"Retry-After\", \"1\").build();");
+		adviceClass.addMethod(handler);
+		return adviceClass;
+	}
+}
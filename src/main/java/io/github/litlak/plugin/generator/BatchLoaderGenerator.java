@@ -0,0 +1,198 @@
+package io.github.litlak.plugin.generator;
+
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.dom.java.Field;
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.api.dom.java.JavaVisibility;
+import org.mybatis.generator.api.dom.java.Method;
+import org.mybatis.generator.api.dom.java.Parameter;
+import org.mybatis.generator.api.dom.java.TopLevelClass;
+import org.mybatis.generator.api.dom.java.TypeParameter;
+
+/**
+ * CustomMethodGenerator的batchLoader: Service合并并发get使用的BatchLoader类, 每个context生成一次 <br>
+ * Service的batchLoader字段; get中事务外走batchLoader的调用由CustomMethodGenerator生成 <br>
+ * 配置(plugin或table property, table优先): batchLoader, batchLoaderMaxSize, batchLoaderWindowMillis
+ *
+ * @author Scomy
+ */
+class BatchLoaderGenerator {
+
+	private static final int DEFAULT_BATCH_LOADER_MAX_SIZE = 128;
+
+	private static final int DEFAULT_BATCH_LOADER_WINDOW_MILLIS = 2;
+
+	private final CustomMethodGenerator plugin;
+
+	BatchLoaderGenerator(CustomMethodGenerator plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Service的batchLoader字段和批次大小/窗口期常量, 批量查询走mapper的listByPrimaryKey
+	 */
+	void addLoaderField(TopLevelClass serviceClass, IntrospectedTable introspectedTable, FullyQualifiedJavaType primaryKeyType,
+			String domainObjectName, String mapperFieldName, String pkGetter) {
+		FullyQualifiedJavaType loaderJavaType = new FullyQualifiedJavaType(plugin.getProperties().getProperty("servicePackage")
+				+ ".BatchLoader<" + primaryKeyType.getShortName() + ", " + domainObjectName + ">");
+		serviceClass.addImportedType(loaderJavaType);
+		serviceClass.addImportedType(new FullyQualifiedJavaType(
+				"org.springframework.transaction.support.TransactionSynchronizationManager"));
+		CustomMethodGenerator.addConstant(serviceClass, "BATCH_LOADER_MAX_SIZE",
+				plugin.getIntProperty(introspectedTable, "batchLoaderMaxSize", DEFAULT_BATCH_LOADER_MAX_SIZE));
+		CustomMethodGenerator.addConstant(serviceClass, "BATCH_LOADER_WINDOW_MILLIS",
+				plugin.getIntProperty(introspectedTable, "batchLoaderWindowMillis", DEFAULT_BATCH_LOADER_WINDOW_MILLIS));
+		Field loaderField = new Field("batchLoader", loaderJavaType);
+		loaderField.setVisibility(JavaVisibility.PRIVATE);
+		loaderField.setFinal(true);
+		loaderField.setInitializationString("new BatchLoader<>(ids -> " + mapperFieldName + ".listByPrimaryKey(ids), "
+				+ domainObjectName + "::" + pkGetter + ", BATCH_LOADER_MAX_SIZE, BATCH_LOADER_WINDOW_MILLIS)");
+		serviceClass.addField(loaderField);
+	}
+
+	/**
+	 * 合并并发的按主键查询: 没有进行中的查询时调用方立即查询; 否则第一个调用方最多等待一个窗口期,
+	 * 进行中的查询都结束后把期间积攒的key一次查出, 积攒到maxBatchSize时由当前调用方立即查询
+	 */
+	TopLevelClass batchLoaderClass() {
+		TopLevelClass loaderClass = new TopLevelClass(plugin.getProperties().getProperty("servicePackage") + ".BatchLoader");
+		loaderClass.setVisibility(JavaVisibility.PUBLIC);
+		loaderClass.addTypeParameter(new TypeParameter("K"));
+		loaderClass.addTypeParameter(new TypeParameter("V"));
+		loaderClass.addImportedType(new FullyQualifiedJavaType("java.util.ArrayList"));
+		loaderClass.addImportedType(new FullyQualifiedJavaType("java.util.HashMap"));
+		loaderClass.addImportedType(new FullyQualifiedJavaType("java.util.LinkedHashMap"));
+		loaderClass.addImportedType(new FullyQualifiedJavaType("java.util.List"));
+		loaderClass.addImportedType(new FullyQualifiedJavaType("java.util.Map"));
+		loaderClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.CompletableFuture"));
+		loaderClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.CompletionException"));
+		loaderClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.TimeUnit"));
+		loaderClass.addImportedType(new FullyQualifiedJavaType("java.util.function.Function"));
+		loaderClass.addJavaDocLine("/**");
+		loaderClass.addJavaDocLine(" * 把并发的单key查询合并成一次批量查询: 没有进行中的查询时立即查询,");
+		loaderClass.addJavaDocLine(" * 否则新的key最多等待windowMillis, 期间凑满maxBatchSize或进行中的查询都结束时提前查询");
+		loaderClass.addJavaDocLine(" */");
+		
+		Field loaderField = new Field("loader", new FullyQualifiedJavaType("java.util.function.Function<List<K>, List<V>>"));
+		loaderField.setVisibility(JavaVisibility.PRIVATE);
+		loaderField.setFinal(true);
+		loaderClass.addField(loaderField);
+		Field keyField = new Field("keyFunction", new FullyQualifiedJavaType("java.util.function.Function<V, K>"));
+		keyField.setVisibility(JavaVisibility.PRIVATE);
+		keyField.setFinal(true);
+		loaderClass.addField(keyField);
+		Field maxBatchSizeField = new Field("maxBatchSize", new FullyQualifiedJavaType("int"));
+		maxBatchSizeField.setVisibility(JavaVisibility.PRIVATE);
+		maxBatchSizeField.setFinal(true);
+		loaderClass.addField(maxBatchSizeField);
+		Field windowField = new Field("windowMillis", new FullyQualifiedJavaType("long"));
+		windowField.setVisibility(JavaVisibility.PRIVATE);
+		windowField.setFinal(true);
+		loaderClass.addField(windowField);
+		Field pendingField = new Field("pending",
+				new FullyQualifiedJavaType("java.util.Map<K, CompletableFuture<V>>"));
+		pendingField.setVisibility(JavaVisibility.PRIVATE);
+		pendingField.setInitializationString("new LinkedHashMap<>()");
+		loaderClass.addField(pendingField);
+		Field inFlightField = new Field("inFlight", new FullyQualifiedJavaType("int"));
+		inFlightField.setVisibility(JavaVisibility.PRIVATE);
+		loaderClass.addField(inFlightField);
+		
+		Method constructor = new Method("BatchLoader");
+		constructor.setConstructor(true);
+		constructor.setVisibility(JavaVisibility.PUBLIC);
+		constructor.addParameter(new Parameter(loaderField.getType(), "loader"));
+		constructor.addParameter(new Parameter(keyField.getType(), "keyFunction"));
+		constructor.addParameter(new Parameter(new FullyQualifiedJavaType("int"), "maxBatchSize"));
+		constructor.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "windowMillis"));
+		constructor.addBodyLine("this.loader = loader;");
+		constructor.addBodyLine("this.keyFunction = keyFunction;");
+		constructor.addBodyLine("this.maxBatchSize = maxBatchSize;");
+		constructor.addBodyLine("this.windowMillis = windowMillis;");
+		loaderClass.addMethod(constructor);
+		
+		Method load = new Method("load");
+		load.setVisibility(JavaVisibility.PUBLIC);
+		load.addParameter(new Parameter(new FullyQualifiedJavaType("K"), "key"));
+		load.setReturnType(new FullyQualifiedJavaType("V"));
+		load.addBodyLine("CompletableFuture<V> future;");
+		load.addBodyLine("Map<K, CompletableFuture<V>> batch = null;");
+		load.addBodyLine("boolean leader = false;");
+		load.addBodyLine("synchronized (this) {");
+		load.addBodyLine("future = pending.get(key);");
+		load.addBodyLine("if (future == null) {");
+		load.addBodyLine("future = new CompletableFuture<>();");
+		load.addBodyLine("pending.put(key, future);");
+		// 没有其他调用方在等待时不需要合并, 直接查询
+		load.addBodyLine("if (pending.size() >= maxBatchSize || inFlight == 0) {");
+		load.addBodyLine("batch = takePending();");
+		load.addBodyLine("} else {");
+		load.addBodyLine("leader = pending.size() == 1;");
+		load.addBodyLine("}");
+		load.addBodyLine("}");
+		load.addBodyLine("}");
+		load.addBodyLine("if (leader) {");
+		load.addBodyLine("synchronized (this) {");
+		load.addBodyLine("long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);");
+		load.addBodyLine("long remaining;");
+		// 已被凑满的批次取走时, pending里是下一批, 由下一批自己的leader负责
+		load.addBodyLine("while (pending.get(key) == future && inFlight > 0 && (remaining = deadline - System.nanoTime()) > 0) {");
+		load.addBodyLine("try {");
+		load.addBodyLine("TimeUnit.NANOSECONDS.timedWait(this, remaining);");
+		load.addBodyLine("} catch (InterruptedException e) {");
+		load.addBodyLine("Thread.currentThread().interrupt();");
+		load.addBodyLine("break;");
+		load.addBodyLine("}");
+		load.addBodyLine("}");
+		load.addBodyLine("if (pending.get(key) == future) {");
+		load.addBodyLine("batch = takePending();");
+		load.addBodyLine("}");
+		load.addBodyLine("}");
+		load.addBodyLine("}");
+		load.addBodyLine("if (batch != null) {");
+		load.addBodyLine("dispatch(batch);");
+		load.addBodyLine("}");
+		load.addBodyLine("try {");
+		load.addBodyLine("return future.join();");
+		load.addBodyLine("} catch (CompletionException e) {");
+		load.addBodyLine("throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;");
+		load.addBodyLine("}");
+		loaderClass.addMethod(load);
+		
+		// 调用时持有锁
+		Method takePending = new Method("takePending");
+		takePending.setVisibility(JavaVisibility.PRIVATE);
+		takePending.setReturnType(pendingField.getType());
+		takePending.addBodyLine("Map<K, CompletableFuture<V>> batch = pending;");
+		takePending.addBodyLine("pending = new LinkedHashMap<>();");
+		takePending.addBodyLine("inFlight++;");
+		takePending.addBodyLine("return batch;");
+		loaderClass.addMethod(takePending);
+		
+		Method dispatch = new Method("dispatch");
+		dispatch.setVisibility(JavaVisibility.PRIVATE);
+		dispatch.addParameter(new Parameter(pendingField.getType(), "batch"));
+		dispatch.addBodyLine("try {");
+		dispatch.addBodyLine("List<V> rows = loader.apply(new ArrayList<>(batch.keySet()));");
+		dispatch.addBodyLine("Map<K, V> rowMap = new HashMap<>(rows.size() * 2);");
+		dispatch.addBodyLine("for (V row : rows) {");
+		dispatch.addBodyLine("rowMap.put(keyFunction.apply(row), row);");
+		dispatch.addBodyLine("}");
+		dispatch.addBodyLine("for (Map.Entry<K, CompletableFuture<V>> entry : batch.entrySet()) {");
+		dispatch.addBodyLine("entry.getValue().complete(rowMap.get(entry.getKey()));");
+		dispatch.addBodyLine("}");
+		dispatch.addBodyLine("} catch (RuntimeException e) {");
+		dispatch.addBodyLine("for (CompletableFuture<V> future : batch.values()) {");
+		dispatch.addBodyLine("future.completeExceptionally(e);");
+		dispatch.addBodyLine("}");
+		dispatch.addBodyLine("} finally {");
+		// 唤醒等待中的leader
+		dispatch.addBodyLine("synchronized (this) {");
+		dispatch.addBodyLine("inFlight--;");
+		dispatch.addBodyLine("notifyAll();");
+		dispatch.addBodyLine("}");
+		dispatch.addBodyLine("}");
+		loaderClass.addMethod(dispatch);
+		return loaderClass;
+	}
+}
@@ -0,0 +1,121 @@
+package io.github.litlak.plugin.generator;
+
+import java.util.List;
+
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.api.dom.java.JavaVisibility;
+import org.mybatis.generator.api.dom.java.Method;
+import org.mybatis.generator.api.dom.java.Parameter;
+import org.mybatis.generator.api.dom.java.TopLevelClass;
+
+/**
+ * Service中分块调用mapper批量方法的方法: batchInsert, batchInsertOrUpdate, CASE_WHEN模式的batchUpdateByPrimaryKey <br>
+ * 每块行数为常量chunkSizeName, BATCH模式时由executeBatch在ExecutorType.BATCH的SqlSession中执行并定期flush,
+ * 分表时按分片列分组, 各分表分别分块写入
+ *
+ * @author Scomy
+ */
+class ChunkedBatchBuilder {
+
+	private final TopLevelClass serviceClass;
+
+	private final String domainObjectName;
+
+	private final String mapperTypeName;
+
+	private final String mapperFieldName;
+
+	private final boolean batchExecutor;
+
+	private final boolean sharded;
+
+	ChunkedBatchBuilder(TopLevelClass serviceClass, String domainObjectName, String mapperTypeName,
+			String mapperFieldName, boolean batchExecutor, boolean sharded) {
+		this.serviceClass = serviceClass;
+		this.domainObjectName = domainObjectName;
+		this.mapperTypeName = mapperTypeName;
+		this.mapperFieldName = mapperFieldName;
+		this.batchExecutor = batchExecutor;
+		this.sharded = sharded;
+	}
+
+	/**
+	 * 生成public的name(list)方法和每块行数常量, 加到serviceClass, 返回影响行数, finishLines在返回前执行(如失效缓存)
+	 */
+	Method build(String name, String chunkSizeName, int chunkSize, List<String> finishLines) {
+		CustomMethodGenerator.addConstant(serviceClass, chunkSizeName, chunkSize);
+		Method method = chunkedMethod(name, chunkSizeName);
+		if (sharded) {
+			method.addBodyLine("return rows;");
+			serviceClass.addMethod(method);
+			method = shardedMethod(name);
+		}
+		method.addBodyLines(finishLines);
+		method.addBodyLine("return rows;");
+		serviceClass.addMethod(method);
+		return method;
+	}
+
+	/**
+	 * 按chunkSizeName分块调用mapper的批量方法, 影响行数累加到rows <br>
+	 * 分表时为写入一张分表的private方法, 第一个参数为分表名
+	 */
+	private Method chunkedMethod(String name, String chunkSizeName) {
+		final String chunk = (sharded ? "table, " : "") + "list.subList(i, Math.min(i + " + chunkSizeName + ", list.size()))";
+		Method method = new Method();
+		method.setVisibility(sharded ? JavaVisibility.PRIVATE : JavaVisibility.PUBLIC);
+		method.setName(name);
+		if (sharded) {
+			method.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "table"));
+		}
+		method.addParameter(new Parameter(
+				new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"), "list"));
+		method.setReturnType(new FullyQualifiedJavaType("int"));
+		method.addBodyLine("if (list == null || list.isEmpty()) {");
+		method.addBodyLine("return 0;");
+		method.addBodyLine("}");
+		if (batchExecutor) {
+			// 只flush不提交, 由executeBatch加入事务或在全部成功后提交一次
+			method.addBodyLine("int rows = executeBatch(session -> {");
+			method.addBodyLine(mapperTypeName + " mapper = session.getMapper(" + mapperTypeName + ".class);");
+			method.addBodyLine("int written = 0;");
+			method.addBodyLine("int statements = 0;");
+			method.addBodyLine("for (int i = 0; i < list.size(); i += " + chunkSizeName + ") {");
+			method.addBodyLine("mapper." + name + "(" + chunk + ");");
+			method.addBodyLine("if (++statements % BATCH_FLUSH_STATEMENTS == 0) {");
+			method.addBodyLine("written += flushStatements(session);");
+			method.addBodyLine("}");
+			method.addBodyLine("}");
+			method.addBodyLine("return written + flushStatements(session);");
+			method.addBodyLine("});");
+		} else {
+			method.addBodyLine("int rows = 0;");
+			method.addBodyLine("for (int i = 0; i < list.size(); i += " + chunkSizeName + ") {");
+			method.addBodyLine("rows += " + mapperFieldName + "." + name + "(" + chunk + ");");
+			method.addBodyLine("}");
+		}
+		return method;
+	}
+
+	/**
+	 * 分表的批量写: 按分片列分组, 各分表在scatter中调用name(table, rows)并累加影响行数
+	 */
+	private Method shardedMethod(String name) {
+		Method method = new Method();
+		method.setVisibility(JavaVisibility.PUBLIC);
+		method.setName(name);
+		method.addParameter(new Parameter(
+				new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"), "list"));
+		method.setReturnType(new FullyQualifiedJavaType("int"));
+		method.addBodyLine("if (list == null || list.isEmpty()) {");
+		method.addBodyLine("return 0;");
+		method.addBodyLine("}");
+		method.addBodyLine("Map<String, List<" + domainObjectName + ">> groups = groupRows(list);");
+		method.addBodyLine("int rows = 0;");
+		method.addBodyLine("for (int shardRows : scatter(groups.keySet(), table -> Collections.singletonList("
+				+ name + "(table, groups.get(table))))) {");
+		method.addBodyLine("rows += shardRows;");
+		method.addBodyLine("}");
+		return method;
+	}
+}
@@ -0,0 +1,220 @@
+package io.github.litlak.plugin.generator;
+
+import java.sql.JDBCType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.codegen.mybatis3.MyBatis3FormattingUtilities;
+
+/**
+ * 每张表编译一次的SQL片段: 列名, #{}参数, 主键/非主键划分, 更新赋值 <br>
+ * 保存在IntrospectedTable的attribute上, CustomMethodGenerator, Swagger2Generator, DirtyTrackingGenerator共用,
+ * 避免每条语句重复遍历和拼接
+ *
+ * @author Scomy
+ */
+class CompiledTable {
+
+	private static final String ATTR_COMPILED_TABLE = CompiledTable.class.getName();
+
+	private final Map<IntrospectedColumn, CompiledColumn> columns = new IdentityHashMap<>();
+
+	private final List<IntrospectedColumn> primaryKeyColumns;
+
+	private final List<IntrospectedColumn> nonPrimaryKeyColumns;
+
+	private final List<IntrospectedColumn> baseColumns;
+
+	private final List<IntrospectedColumn> nonBLOBColumns;
+
+	private final List<String> baseColumnNames;
+
+	private final List<String> baseItemParameters;
+
+	private final List<String> nonBLOBColumnNames;
+
+	private final List<String> nonBLOBParameters;
+
+	private final List<String> nonBLOBItemParameters;
+
+	private CompiledTable(IntrospectedTable introspectedTable) {
+		List<IntrospectedColumn> allColumns = introspectedTable.getAllColumns();
+		for (int i = 0; i < allColumns.size(); i++) {
+			IntrospectedColumn column = allColumns.get(i);
+			columns.put(column, new CompiledColumn(column, i));
+		}
+		for (IntrospectedColumn column : introspectedTable.getPrimaryKeyColumns()) {
+			columns.get(column).primaryKey = true;
+		}
+		primaryKeyColumns = Collections.unmodifiableList(new ArrayList<>(introspectedTable.getPrimaryKeyColumns()));
+		nonPrimaryKeyColumns = Collections.unmodifiableList(introspectedTable.getNonPrimaryKeyColumns());
+		baseColumns = Collections.unmodifiableList(introspectedTable.getBaseColumns());
+		nonBLOBColumns = Collections.unmodifiableList(introspectedTable.getNonBLOBColumns());
+
+		baseColumnNames = new ArrayList<>(baseColumns.size());
+		baseItemParameters = new ArrayList<>(baseColumns.size());
+		for (IntrospectedColumn column : baseColumns) {
+			CompiledColumn compiled = columns.get(column);
+			baseColumnNames.add(compiled.name);
+			baseItemParameters.add(compiled.itemParameter);
+		}
+		nonBLOBColumnNames = new ArrayList<>(nonBLOBColumns.size());
+		nonBLOBParameters = new ArrayList<>(nonBLOBColumns.size());
+		nonBLOBItemParameters = new ArrayList<>(nonBLOBColumns.size());
+		for (IntrospectedColumn column : nonBLOBColumns) {
+			CompiledColumn compiled = columns.get(column);
+			nonBLOBColumnNames.add(compiled.name);
+			nonBLOBParameters.add(compiled.parameter);
+			nonBLOBItemParameters.add(compiled.itemParameter);
+		}
+	}
+
+	/**
+	 * 取表的编译结果, 第一次调用时编译, 需在initialized之后(列已确定)调用
+	 */
+	static CompiledTable of(IntrospectedTable introspectedTable) {
+		CompiledTable compiled = (CompiledTable) introspectedTable.getAttribute(ATTR_COMPILED_TABLE);
+		if (compiled == null) {
+			compiled = new CompiledTable(introspectedTable);
+			introspectedTable.setAttribute(ATTR_COMPILED_TABLE, compiled);
+		}
+		return compiled;
+	}
+
+	public CompiledColumn column(IntrospectedColumn column) {
+		return columns.get(column);
+	}
+
+	public List<IntrospectedColumn> getPrimaryKeyColumns() {
+		return primaryKeyColumns;
+	}
+
+	public List<IntrospectedColumn> getNonPrimaryKeyColumns() {
+		return nonPrimaryKeyColumns;
+	}
+
+	/**
+	 * 非主键, 非BLOB列
+	 */
+	public List<IntrospectedColumn> getBaseColumns() {
+		return baseColumns;
+	}
+
+	/**
+	 * 包括主键的非BLOB列
+	 */
+	public List<IntrospectedColumn> getNonBLOBColumns() {
+		return nonBLOBColumns;
+	}
+
+	public List<String> getBaseColumnNames() {
+		return baseColumnNames;
+	}
+
+	public List<String> getBaseItemParameters() {
+		return baseItemParameters;
+	}
+
+	public List<String> getNonBLOBColumnNames() {
+		return nonBLOBColumnNames;
+	}
+
+	public List<String> getNonBLOBParameters() {
+		return nonBLOBParameters;
+	}
+
+	public List<String> getNonBLOBItemParameters() {
+		return nonBLOBItemParameters;
+	}
+
+	/**
+	 * 单列的SQL片段
+	 */
+	static class CompiledColumn {
+
+		private final String name;
+
+		private final String property;
+
+		private final int index;
+
+		private final boolean timestamp;
+
+		private final String parameter;
+
+		private final String itemParameter;
+
+		private final String recordParameter;
+
+		private final String assignment;
+
+		private boolean primaryKey;
+
+		CompiledColumn(IntrospectedColumn column, int index) {
+			this.name = column.getActualColumnName();
+			this.property = column.getJavaProperty();
+			this.index = index;
+			this.timestamp = JDBCType.TIMESTAMP.getName().equals(column.getJdbcTypeName());
+			this.parameter = MyBatis3FormattingUtilities.getParameterClause(column);
+			this.itemParameter = MyBatis3FormattingUtilities.getParameterClause(column, "item.");
+			this.recordParameter = MyBatis3FormattingUtilities.getParameterClause(column, "record.");
+			this.assignment = MyBatis3FormattingUtilities.getEscapedColumnName(column) + " = " + parameter;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getProperty() {
+			return property;
+		}
+
+		/**
+		 * 在getAllColumns中的序号
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		public boolean isTimestamp() {
+			return timestamp;
+		}
+
+		public boolean isPrimaryKey() {
+			return primaryKey;
+		}
+
+		/**
+		 * #{property,jdbcType=X}, 配置了typeHandler时带typeHandler
+		 */
+		public String getParameter() {
+			return parameter;
+		}
+
+		/**
+		 * #{item.property,jdbcType=X}, foreach中使用
+		 */
+		public String getItemParameter() {
+			return itemParameter;
+		}
+
+		/**
+		 * #{record.property,jdbcType=X}, 分表语句中记录参数名为record
+		 */
+		public String getRecordParameter() {
+			return recordParameter;
+		}
+
+		/**
+		 * COLUMN = #{property,jdbcType=X}
+		 */
+		public String getAssignment() {
+			return assignment;
+		}
+	}
+}
@@ -1,7 +1,15 @@
 package io.github.litlak.plugin.generator;
 
+import static io.github.litlak.plugin.generator.SqlMapElements.addPairedLines;
+
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.mybatis.generator.api.FullyQualifiedTable;
@@ -20,12 +28,76 @@ import org.mybatis.generator.api.dom.xml.Attribute;
 import org.mybatis.generator.api.dom.xml.Document;
 import org.mybatis.generator.api.dom.xml.TextElement;
 import org.mybatis.generator.api.dom.xml.XmlElement;
+import org.mybatis.generator.config.TableConfiguration;
+import org.mybatis.generator.internal.rules.Rules;
+import org.mybatis.generator.internal.util.JavaBeansUtil;
 
 /**
  * 新增的自定义的方法插件 新增方法: <br>
- * listXXX(从SelectByExample变) <br>
+ * listXXX(从SelectByExample变, 非空字段作为过滤条件) <br>
+ * listXXXFields, listByPrimaryKeyFields(只查询fields中的列) <br>
+ * pageXXX(单主键表, 按主键游标分页) <br>
+ * streamXXX(可选, 流式导出) <br>
  * batchInsert <br>
  * insertOrUpdate <br>
+ * batchInsertOrUpdate(多行upsert, Service按batchInsert相同规则分块) <br>
+ * batchDeleteByPrimaryKey, batchUpdateByPrimaryKey(单主键表) <br>
+ * getByXXX(唯一索引), listByXXX(普通索引), listByXXXIn(索引第一列), 根据数据库索引信息生成 <br>
+ * Service.batchInsert(按列数和包大小分块) <br>
+ * Service.listByIds(去重, 分桶, 可并行, 保持id顺序) <br>
+ * Service.bulkInsert(可选, 流式导入, 分块写入) <br>
+ * <br>
+ * 可选配置(plugin或table property, table优先): <br>
+ * batchInsertChunkSize 每条batch语句的最大行数, 默认1000 <br>
+ * batchMaxParameters 每条语句的绑定参数上限, 默认65535 <br>
+ * batchMaxPacketBytes 每条语句的估算字节上限(max_allowed_packet), 默认4194304 <br>
+ * batchExecutorType SIMPLE/BATCH, BATCH时Service使用ExecutorType.BATCH的SqlSessionTemplate, 在Spring事务中时加入事务,
+ * 否则整批在一个新事务中执行. mybatis-spring不允许同一事务中切换ExecutorType,
+ * 事务中已经用SIMPLE的SqlSession执行过语句时BATCH方法抛出TransientDataAccessResourceException <br>
+ * batchTransactionManager BATCH方法使用的PlatformTransactionManager bean名称, 不配置则按类型注入 <br>
+ * batchFlushStatements BATCH模式下每多少条语句flush一次, 默认16 <br>
+ * listByIdsBucketSize listByIds每条in语句的id数, 最后一个分桶用重复的id补齐, 默认256 <br>
+ * listByIdsExecutor listByIds并行查询分桶使用的Executor bean名称, 不配置或在事务中时串行 <br>
+ * maxPageSize pageXXX每页最大行数, 默认1000 <br>
+ * defaultPageSize /XXX/page接口默认每页行数, 默认100 <br>
+ * streamExport 是否生成streamXXX(Cursor)和/XXX/export(NDJSON)流式导出, 默认false <br>
+ * streamFetchSize streamXXX的fetchSize, MYSQL默认Integer.MIN_VALUE(逐行流式读取), 其他方言默认1000 <br>
+ * serviceCache 单主键表Service按主键缓存get/listByIds结果, 写操作时失效, 在事务中时提交后再失效一次, 默认false <br>
+ * cacheMaxSize 缓存最大条数, 超出按LRU淘汰, 默认10000 <br>
+ * cacheTtlSeconds 缓存有效期(秒), 默认60 <br>
+ * batchLoader 单主键且无BLOB列的表, 事务外并发的get合并为一次listByPrimaryKey, 默认false <br>
+ * batchLoaderMaxSize 每批最多合并的id数, 默认128 <br>
+ * batchLoaderWindowMillis 有进行中的批量查询时新的get合并等待的最长时间(毫秒), 没有进行中的查询时立即查询, 默认2 <br>
+ * upsertExcludeColumns insertOrUpdate/batchInsertOrUpdate冲突时不更新的列, 逗号分隔, 如gmt_create <br>
+ * upsertTimestampColumns 冲突时更新为now()的列, 逗号分隔, 表中不存在则忽略, 默认gmt_modified <br>
+ * batchUpdateMode JDBC_BATCH/CASE_WHEN, batchUpdateByPrimaryKey逐行走JDBC batch或每块一条case when语句, 默认JDBC_BATCH <br>
+ * indexFinders 是否读取索引信息生成索引查询, 默认true <br>
+ * allowUnindexedFilters listXXX/pageXXX/streamXXX是否允许按没有索引的列过滤, 默认false(只生成主键和索引列的过滤条件,
+ * 其他列不为空时Service抛出IllegalArgumentException) <br>
+ * dirtyUpdate 配置了DirtyTrackingGenerator时Service.updateXXX是否只更新脏字段(updateDirtyByPrimaryKey), 默认true <br>
+ * serviceMetrics Service的public方法按表和方法名记录耗时分布, 读写行数, 参数个数(批量大小), Controller接口调用的即是这些方法, 不另外记录, 默认false <br>
+ * slowCallMillis 开启serviceMetrics时超过该耗时(毫秒)的调用打印慢调用日志, 默认500 <br>
+ * asyncController Controller方法返回CompletableFuture, 在asyncExecutor上调用Service, 不占用servlet线程, 默认false <br>
+ * asyncExecutor 开启asyncController时使用的Executor bean名称, 可用生成的BoundedExecutor按数据源分别声明, 默认jdbcExecutor <br>
+ * bulkAdd 是否生成Service.bulkInsert和/XXX/bulkAdd(JSON数组或NDJSON流式导入), 默认false <br>
+ * bulkAddChunkSize bulkAdd每块的行数, 默认同batchInsert的分块大小 <br>
+ * bulkAddMaxInFlight bulkAdd同时在写的块数, 默认2 <br>
+ * bulkAddExecutor bulkAdd写块使用的Executor bean名称, 不配置则在请求线程上读一块写一块 <br>
+ * columnProjection 是否生成listXXX/listByIds的fields投影版本(只查询指定的列, 按白名单校验), 默认true <br>
+ * listExcludeColumns listXXX/pageXXX默认不查询的宽列(如大varchar, json), 逗号分隔, 可通过fields查询 <br>
+ * shardKey 分表的分片列(单主键表), 配置后所有语句的表名由参数传入, Service按分片列取模路由到分表 <br>
+ * shardCount 分表数量, 大于1时分表生效 <br>
+ * shardTableFormat 分表名格式, %s为逻辑表名, 参数为分表序号, 默认%s_%02d <br>
+ * shardExecutor 多张分表并行查询/写入使用的Executor bean名称, 不配置则依次执行. 分表不生成pageXXX/streamXXX, 不使用batchLoader/dirtyUpdate <br>
+ * readWriteSplit 读写分离, get/listByIds/listXXX/pageXXX/索引查询走从库, 写操作走主库, 默认false, 分表时不生效 <br>
+ * replicaSqlSessionFactory 开启readWriteSplit时从库的SqlSessionFactory bean名称(需加载相同的mapper xml, 主库的需标记@Primary), 默认replicaSqlSessionFactory <br>
+ * readYourWritesMillis 开启readWriteSplit时同一线程/请求写后多少毫秒内的读走主库, 默认1000; 事务内的读, streamXXX, batchLoader始终走主库, asyncController的任务带上请求线程上最近的写 <br>
+ * dialect MYSQL/POSTGRESQL/H2, 默认MYSQL. batch写入的语法: MYSQL多行values和on duplicate key update,
+ * POSTGRESQL按列数组unnest(列类型不支持时退回多行values)和on conflict do update, H2(2.x)多行values和merge using.
+ * POSTGRESQL/H2同一批upsert中主键重复时报错 <br>
+ * <br>
+ * 由各功能的生成器完成的部分: ServiceCacheGenerator(serviceCache), ServiceMetricsGenerator(serviceMetrics), ShardingGenerator(分表), DialectGenerator(dialect),
+ * BatchLoaderGenerator(batchLoader), AsyncControllerGenerator(asyncController), ReadRoutingGenerator(readWriteSplit), ResultTypesGenerator(CursorPage, BulkResult) <br>
  * 
  * @author Scomy
  *
@@ -33,16 +105,66 @@ import org.mybatis.generator.api.dom.xml.XmlElement;
  */
 public class CustomMethodGenerator extends PluginAdapter {
 	
+	private static final String ATTR_INDEXES = CustomMethodGenerator.class.getName() + ".indexes";
+	
+	private static final int DEFAULT_BATCH_INSERT_CHUNK_SIZE = 1000;
+	
+	private static final int DEFAULT_BATCH_MAX_PARAMETERS = 65535;
+	
+	private static final int DEFAULT_BATCH_MAX_PACKET_BYTES = 4 * 1024 * 1024;
+	
+	private static final int DEFAULT_BATCH_FLUSH_STATEMENTS = 16;
+	
+	private static final int DEFAULT_LIST_BY_IDS_BUCKET_SIZE = 256;
+	
+	private static final int DEFAULT_MAX_PAGE_SIZE = 1000;
+	
+	private static final int DEFAULT_PAGE_SIZE = 100;
+	
+	private static final int DEFAULT_BULK_ADD_MAX_IN_FLIGHT = 2;
+	
+	private List<String> warnings = new ArrayList<>();
+	
+	/**
+	 * 读取索引共用的连接, 同一context的表共用一个, 所有表生成完后关闭
+	 */
+	private Connection indexConnection;
+	
+	private static final int DEFAULT_STREAM_FETCH_SIZE = 1000;
+	
+	private final ServiceCacheGenerator serviceCacheGenerator = new ServiceCacheGenerator(this);
+	
+	private final ServiceMetricsGenerator serviceMetricsGenerator = new ServiceMetricsGenerator(this);
+	
+	private final ShardingGenerator shardingGenerator = new ShardingGenerator(this);
+	
+	private final DialectGenerator dialectGenerator = new DialectGenerator(this);
+	
+	private final BatchLoaderGenerator batchLoaderGenerator = new BatchLoaderGenerator(this);
+	
+	private final AsyncControllerGenerator asyncControllerGenerator = new AsyncControllerGenerator(this);
+	
+	private final ReadRoutingGenerator readRoutingGenerator = new ReadRoutingGenerator(this);
+	
+	private final ResultTypesGenerator resultTypesGenerator = new ResultTypesGenerator(this);
+	
 	@Override
 	public boolean validate(List<String> warnings) {
+		// 与MyBatisGenerator共用同一个列表, initialized中的警告随生成结果一起输出
+		this.warnings = warnings;
 		return true;
 	}
 
 	@Override
 	public boolean clientGenerated(Interface interfaze, TopLevelClass topLevelClass,
 			IntrospectedTable introspectedTable) {
+		if (IncrementalGenerator.isSkipped(introspectedTable)) {
+			return false;
+		}
 		final FullyQualifiedJavaType domainJavaType = new FullyQualifiedJavaType(introspectedTable.getBaseRecordType());
 		String domainObjectName = domainJavaType.getShortName();
+		// MBG生成的方法, 分表时之后新增的方法都加表名参数
+		final int generatedMethodCount = interfaze.getMethods().size();
 		
 		// batch insert
 		{
@@ -64,6 +186,15 @@ public class CustomMethodGenerator extends PluginAdapter {
 			method.setReturnType(new FullyQualifiedJavaType("int"));
 			interfaze.addMethod(method);
 		}
+		// batchInsertOrUpdate
+		if (introspectedTable.hasPrimaryKeyColumns()) {
+			Method method = new Method();
+			method.setName("batchInsertOrUpdate");
+			method.setReturnType(new FullyQualifiedJavaType("int"));
+			method.addParameter(new Parameter(
+					new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"), "list"));
+			interfaze.addMethod(method);
+		}
 		// listXXX
 		{
 			Method method = new Method();
@@ -75,8 +206,42 @@ public class CustomMethodGenerator extends PluginAdapter {
 			interfaze.addImportedType(new FullyQualifiedJavaType("java.util.List"));
 		}
 
+		// listXXXFields, 只查询fields中的列
+		if (isColumnProjection(introspectedTable)) {
+			Method method = new Method();
+			method.setName("list" + domainObjectName + "Fields");
+			method.addParameter(new Parameter(new FullyQualifiedJavaType(domainObjectName), "req", "@Param(\"req\")"));
+			method.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.Set<String>"), "fields", "@Param(\"fields\")"));
+			method.setReturnType(new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"));
+			interfaze.addMethod(method);
+			interfaze.addImportedType(new FullyQualifiedJavaType("java.util.Set"));
+			interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+		}
+
+		// streamXXX
+		if (isStreamExport(introspectedTable)) {
+			Method method = new Method();
+			method.setName("stream" + domainObjectName);
+			method.addParameter(new Parameter(new FullyQualifiedJavaType(domainObjectName), "req"));
+			method.setReturnType(new FullyQualifiedJavaType("org.apache.ibatis.cursor.Cursor<" + domainObjectName + ">"));
+			interfaze.addMethod(method);
+			interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.cursor.Cursor"));
+		}
+
 		// list by primary key
 		List<IntrospectedColumn> primaryKeyColumns = introspectedTable.getPrimaryKeyColumns();
+		// pageXXX, 按主键游标分页
+		if (isCursorPage(introspectedTable)) {
+			FullyQualifiedJavaType primaryKeyType = primaryKeyColumns.get(0).getFullyQualifiedJavaType();
+			Method method = new Method();
+			method.setName("page" + domainObjectName);
+			method.addParameter(new Parameter(new FullyQualifiedJavaType(domainObjectName), "req", "@Param(\"req\")"));
+			method.addParameter(new Parameter(primaryKeyType, "cursor", "@Param(\"cursor\")"));
+			method.addParameter(new Parameter(new FullyQualifiedJavaType("int"), "size", "@Param(\"size\")"));
+			method.setReturnType(new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"));
+			interfaze.addMethod(method);
+			interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+		}
 		if (primaryKeyColumns != null && primaryKeyColumns.size() == 1) {
 			Method listMethod = new Method();
 			listMethod.setName("listByPrimaryKey");
@@ -88,123 +253,700 @@ public class CustomMethodGenerator extends PluginAdapter {
 			listMethod.addParameter(parameter);
 			interfaze.addMethod(listMethod);
 			interfaze.addImportedType(new FullyQualifiedJavaType("java.util.List"));
+			
+			if (isColumnProjection(introspectedTable)) {
+				Method listFieldsMethod = new Method();
+				listFieldsMethod.setName("listByPrimaryKeyFields");
+				listFieldsMethod.setReturnType(new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"));
+				listFieldsMethod.addParameter(new Parameter(
+						new FullyQualifiedJavaType("java.util.List<" + primaryKeyType.getShortName() + ">"), "list",
+						"@Param(\"list\")"));
+				listFieldsMethod.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.Set<String>"), "fields",
+						"@Param(\"fields\")"));
+				interfaze.addMethod(listFieldsMethod);
+			}
+			
+			Method deleteMethod = new Method();
+			deleteMethod.setName("batchDeleteByPrimaryKey");
+			deleteMethod.setReturnType(new FullyQualifiedJavaType("int"));
+			deleteMethod.addParameter(new Parameter(
+					new FullyQualifiedJavaType("java.util.List<" + primaryKeyType.getShortName() + ">"), "list"));
+			interfaze.addMethod(deleteMethod);
+			
+			if (isCaseWhenBatchUpdate(introspectedTable) && !CompiledTable.of(introspectedTable).getBaseColumns().isEmpty()) {
+				Method updateMethod = new Method();
+				updateMethod.setName("batchUpdateByPrimaryKey");
+				updateMethod.setReturnType(new FullyQualifiedJavaType("int"));
+				updateMethod.addParameter(new Parameter(
+						new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"), "list"));
+				interfaze.addMethod(updateMethod);
+			}
+		}
+
+		// 索引查询: getByXXX(唯一索引), listByXXX(普通索引), listByXXXIn(索引第一列)
+		for (TableIndex index : getIndexes(introspectedTable)) {
+			Method method = new Method();
+			method.setName(finderName(index.isUnique() ? "getBy" : "listBy", index.getColumns(), ""));
+			method.setReturnType(index.isUnique() ? domainJavaType
+					: new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"));
+			for (IntrospectedColumn column : index.getColumns()) {
+				method.addParameter(new Parameter(column.getFullyQualifiedJavaType(), column.getJavaProperty(),
+						"@Param(\"" + column.getJavaProperty() + "\")"));
+				interfaze.addImportedType(column.getFullyQualifiedJavaType());
+			}
+			interfaze.addMethod(method);
+			interfaze.addImportedType(new FullyQualifiedJavaType("java.util.List"));
+			interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+		}
+		for (IntrospectedColumn column : inFinderColumns(introspectedTable)) {
+			Method method = new Method();
+			method.setName(finderName("listBy", Collections.singletonList(column), "In"));
+			method.setReturnType(new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"));
+			method.addParameter(new Parameter(new FullyQualifiedJavaType(
+					"java.util.List<" + column.getFullyQualifiedJavaType().getShortName() + ">"), "list"));
+			interfaze.addMethod(method);
+			interfaze.addImportedType(column.getFullyQualifiedJavaType());
+		}
+
+		// 分表: 所有语句的第一个参数为分表名
+		if (shardingGenerator.shardKeyColumn(introspectedTable) != null) {
+			shardingGenerator.addShardedMethods(interfaze, introspectedTable, generatedMethodCount);
 		}
 
 		return super.clientGenerated(interfaze, topLevelClass, introspectedTable);
 	}
 
-	private static String batchValues(IntrospectedColumn column) {
-		return new StringBuilder().append("#{item.").append(column.getJavaProperty()).append(",jdbcType=")
-				.append(column.getJdbcTypeName()).append('}').toString();
+	/**
+	 * 清除查询结果的脏标记, MyBatis映射结果时调用setter, 查出的对象所有列都被标记为脏的 <br>
+	 * 缓存和batchLoader中的对象被多个调用方共享, copyShared时生成copy, 每个调用方得到各自没有脏标记的副本,
+	 * 修改副本后updateXXX只更新自己修改过的列
+	 */
+	private void addCleanLoaded(TopLevelClass serviceClass, IntrospectedTable introspectedTable, String domainObjectName,
+			boolean copyShared) {
+		Method cleanRow = new Method("clean");
+		cleanRow.setVisibility(JavaVisibility.PRIVATE);
+		cleanRow.setStatic(true);
+		cleanRow.addParameter(new Parameter(new FullyQualifiedJavaType(domainObjectName), "row"));
+		cleanRow.setReturnType(new FullyQualifiedJavaType(domainObjectName));
+		cleanRow.addBodyLine("if (row != null) {");
+		cleanRow.addBodyLine("row.clearDirty();");
+		cleanRow.addBodyLine("}");
+		cleanRow.addBodyLine("return row;");
+		serviceClass.addMethod(cleanRow);
+		
+		Method cleanRows = new Method("clean");
+		cleanRows.setVisibility(JavaVisibility.PRIVATE);
+		cleanRows.setStatic(true);
+		cleanRows.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"), "rows"));
+		cleanRows.setReturnType(new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"));
+		cleanRows.addBodyLine("for (" + domainObjectName + " row : rows) {");
+		cleanRows.addBodyLine("row.clearDirty();");
+		cleanRows.addBodyLine("}");
+		cleanRows.addBodyLine("return rows;");
+		serviceClass.addMethod(cleanRows);
+		
+		if (copyShared) {
+			// cleanCopy生成在最顶层的model类上, 有主键类时需要转换
+			Method copyRow = new Method("copy");
+			copyRow.setVisibility(JavaVisibility.PRIVATE);
+			copyRow.setStatic(true);
+			copyRow.addParameter(new Parameter(new FullyQualifiedJavaType(domainObjectName), "row"));
+			copyRow.setReturnType(new FullyQualifiedJavaType(domainObjectName));
+			copyRow.addBodyLine("return row == null ? null : "
+					+ (introspectedTable.getRules().generatePrimaryKeyClass() ? "(" + domainObjectName + ") " : "")
+					+ "row.cleanCopy();");
+			serviceClass.addMethod(copyRow);
+		}
+	}
+	
+	/**
+	 * BATCH模式下Service需要的SqlSessionFactory, executeBatch和flush方法, 多个batch方法共用
+	 */
+	private void addBatchSessionSupport(TopLevelClass serviceClass, IntrospectedTable introspectedTable) {
+		for (Field field : serviceClass.getFields()) {
+			if ("sqlSessionFactory".equals(field.getName())) {
+				return;
+			}
+		}
+		serviceClass.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.session.SqlSessionFactory"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.session.SqlSession"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.session.ExecutorType"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.executor.BatchResult"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("org.mybatis.spring.SqlSessionTemplate"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.function.ToIntFunction"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.transaction.PlatformTransactionManager"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.transaction.support.TransactionTemplate"));
+		
+		addConstant(serviceClass, "BATCH_FLUSH_STATEMENTS",
+				getIntProperty(introspectedTable, "batchFlushStatements", DEFAULT_BATCH_FLUSH_STATEMENTS));
+		
+		Field sessionFactoryField = new Field("sqlSessionFactory",
+				new FullyQualifiedJavaType("org.apache.ibatis.session.SqlSessionFactory"));
+		sessionFactoryField.addAnnotation("@Autowired");
+		sessionFactoryField.setVisibility(JavaVisibility.PRIVATE);
+		serviceClass.addField(sessionFactoryField);
+		Field transactionManagerField = new Field("transactionManager",
+				new FullyQualifiedJavaType("org.springframework.transaction.PlatformTransactionManager"));
+		transactionManagerField.addAnnotation("@Autowired");
+		String transactionManager = getProperty(introspectedTable, "batchTransactionManager", null);
+		if (transactionManager != null) {
+			serviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.beans.factory.annotation.Qualifier"));
+			transactionManagerField.addAnnotation("@Qualifier(\"" + transactionManager + "\")");
+		}
+		transactionManagerField.setVisibility(JavaVisibility.PRIVATE);
+		serviceClass.addField(transactionManagerField);
+		Field batchSessionField = new Field("batchSqlSession", new FullyQualifiedJavaType("org.mybatis.spring.SqlSessionTemplate"));
+		batchSessionField.setVisibility(JavaVisibility.PRIVATE);
+		batchSessionField.setVolatile(true);
+		serviceClass.addField(batchSessionField);
+		
+		// 加入事务的SqlSessionTemplate延迟创建, 并发时重复创建也没有副作用
+		Method batchSessionMethod = new Method("batchSqlSession");
+		batchSessionMethod.setVisibility(JavaVisibility.PRIVATE);
+		batchSessionMethod.setReturnType(new FullyQualifiedJavaType("org.mybatis.spring.SqlSessionTemplate"));
+		batchSessionMethod.addBodyLine("SqlSessionTemplate session = batchSqlSession;");
+		batchSessionMethod.addBodyLine("if (session == null) {");
+		batchSessionMethod.addBodyLine("session = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);");
+		batchSessionMethod.addBodyLine("batchSqlSession = session;");
+		batchSessionMethod.addBodyLine("}");
+		batchSessionMethod.addBodyLine("return session;");
+		serviceClass.addMethod(batchSessionMethod);
+		
+		// 加入调用方的Spring事务, 由事务提交或回滚; 没有事务时整批在一个新事务中执行, 失败时全部回滚
+		Method executeMethod = new Method("executeBatch");
+		executeMethod.setVisibility(JavaVisibility.PRIVATE);
+		executeMethod.addParameter(new Parameter(
+				new FullyQualifiedJavaType("java.util.function.ToIntFunction<SqlSession>"), "statements"));
+		executeMethod.setReturnType(new FullyQualifiedJavaType("int"));
+		executeMethod.addBodyLine("return new TransactionTemplate(transactionManager).execute(status -> statements.applyAsInt(batchSqlSession()));");
+		serviceClass.addMethod(executeMethod);
+		
+		// 执行已加入batch的语句, 不提交, 返回影响行数
+		Method flushMethod = new Method();
+		flushMethod.setVisibility(JavaVisibility.PRIVATE);
+		flushMethod.setName("flushStatements");
+		flushMethod.addParameter(new Parameter(new FullyQualifiedJavaType("org.apache.ibatis.session.SqlSession"), "session"));
+		flushMethod.setReturnType(new FullyQualifiedJavaType("int"));
+		flushMethod.addBodyLine("int rows = 0;");
+		flushMethod.addBodyLine("for (BatchResult result : session.flushStatements()) {");
+		flushMethod.addBodyLine("for (int count : result.getUpdateCounts()) {");
+		flushMethod.addBodyLine("rows += Math.max(count, 0);");
+		flushMethod.addBodyLine("}");
+		flushMethod.addBodyLine("}");
+		flushMethod.addBodyLine("return rows;");
+		serviceClass.addMethod(flushMethod);
+	}
+
+	static Set<String> columnNameSet(String value) {
+		Set<String> names = new HashSet<>();
+		for (String name : value.split(",")) {
+			if (!name.trim().isEmpty()) {
+				names.add(name.trim().toLowerCase());
+			}
+		}
+		return names;
+	}
+	
+	/**
+	 * 配置了DirtyTrackingGenerator且dirtyUpdate未关闭时, Service.updateXXX只更新脏字段, 分表时不使用
+	 */
+	private boolean isDirtyUpdate(IntrospectedTable introspectedTable) {
+		return introspectedTable.getAttribute(DirtyTrackingGenerator.ATTR_DIRTY_TRACKING) != null
+				&& Boolean.parseBoolean(getProperty(introspectedTable, "dirtyUpdate", "true"))
+				&& shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+	
+	private boolean isCaseWhenBatchUpdate(IntrospectedTable introspectedTable) {
+		return "CASE_WHEN".equalsIgnoreCase(getProperty(introspectedTable, "batchUpdateMode", "JDBC_BATCH"));
+	}
+	
+	/**
+	 * 分表时不生成流式导出(cursor只能读一张表)
+	 */
+	private boolean isStreamExport(IntrospectedTable introspectedTable) {
+		return Boolean.parseBoolean(getProperty(introspectedTable, "streamExport", "false"))
+				&& shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+	
+	/**
+	 * 按主键游标分页, 单主键且不分表时生成
+	 */
+	private boolean isCursorPage(IntrospectedTable introspectedTable) {
+		return introspectedTable.getPrimaryKeyColumns().size() == 1 && shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+	
+	private boolean isColumnProjection(IntrospectedTable introspectedTable) {
+		return Boolean.parseBoolean(getProperty(introspectedTable, "columnProjection", "true"));
+	}
+	
+	/**
+	 * base record中包含BLOB字段(没有单独的WithBLOBs类), 投影可以选择BLOB列
+	 */
+	private static boolean isBLOBProjection(IntrospectedTable introspectedTable) {
+		return introspectedTable.hasBLOBColumns() && !introspectedTable.getRules().generateRecordWithBLOBsClass();
+	}
+	
+	/**
+	 * fields可以选择的列, 即投影的白名单
+	 */
+	static List<IntrospectedColumn> projectionColumns(IntrospectedTable introspectedTable) {
+		return isBLOBProjection(introspectedTable) ? introspectedTable.getAllColumns()
+				: CompiledTable.of(introspectedTable).getNonBLOBColumns();
+	}
+	
+	/**
+	 * 分表时不做读写分离
+	 */
+	boolean isReadWriteSplit(IntrospectedTable introspectedTable) {
+		return Boolean.parseBoolean(getProperty(introspectedTable, "readWriteSplit", "false"))
+				&& shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+	
+	/**
+	 * 单个自增主键, 为空时由数据库生成; 分表的主键由调用方赋值
+	 */
+	IntrospectedColumn identityColumn(IntrospectedTable introspectedTable) {
+		List<IntrospectedColumn> primaryKeyColumns = introspectedTable.getPrimaryKeyColumns();
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null && primaryKeyColumns.size() == 1
+				&& (primaryKeyColumns.get(0).isAutoIncrement() || introspectedTable.getGeneratedKey() != null)
+						? primaryKeyColumns.get(0) : null;
+	}
+	
+	/**
+	 * batchInsert的列: 自增主键由数据库生成不在列中, 复合主键, 非自增主键和分表的主键由调用方赋值
+	 */
+	List<IntrospectedColumn> batchInsertColumns(IntrospectedTable introspectedTable) {
+		CompiledTable compiled = CompiledTable.of(introspectedTable);
+		return identityColumn(introspectedTable) == null ? compiled.getNonBLOBColumns() : compiled.getBaseColumns();
+	}
+	
+	/**
+	 * listXXX/pageXXX默认查询的列: 非BLOB列去掉listExcludeColumns, 没有配置时为null(直接用Base_Column_List)
+	 */
+	private List<String> listColumnNames(IntrospectedTable introspectedTable) {
+		Set<String> excludeColumns = columnNameSet(getProperty(introspectedTable, "listExcludeColumns", ""));
+		if (excludeColumns.isEmpty()) {
+			return null;
+		}
+		List<String> columnNames = new ArrayList<>();
+		for (IntrospectedColumn column : CompiledTable.of(introspectedTable).getNonBLOBColumns()) {
+			CompiledTable.CompiledColumn compiledColumn = CompiledTable.of(introspectedTable).column(column);
+			if (compiledColumn.isPrimaryKey() || !excludeColumns.contains(compiledColumn.getName().toLowerCase())) {
+				columnNames.add(compiledColumn.getName());
+			}
+		}
+		return columnNames;
+	}
+	
+	@Override
+	public void initialized(IntrospectedTable introspectedTable) {
+		if (Boolean.parseBoolean(getProperty(introspectedTable, "indexFinders", "true"))) {
+			try {
+				introspectedTable.setAttribute(ATTR_INDEXES, readIndexes(introspectedTable));
+			} catch (SQLException e) {
+				// 读取不到索引信息时不生成索引查询, 也不限制过滤条件
+				synchronized (warnings) {
+					warnings.add("读取" + introspectedTable.getFullyQualifiedTable() + "的索引失败, 不生成索引查询, 不限制过滤条件: "
+							+ e.getMessage());
+				}
+			}
+		}
+		IncrementalGenerator.addFingerprintSource(introspectedTable, getClass(), properties);
+		IncrementalGenerator.addFingerprintSource(introspectedTable, "indexes", introspectedTable.getAttribute(ATTR_INDEXES));
+		super.initialized(introspectedTable);
+	}
+	
+	/**
+	 * 在共用的连接上读取索引, ParallelGenerator并发调用时串行执行, 读取失败时关闭连接, 下一张表重新打开
+	 */
+	private synchronized List<TableIndex> readIndexes(IntrospectedTable introspectedTable) throws SQLException {
+		if (indexConnection == null) {
+			indexConnection = TableIndex.getConnection(context);
+		}
+		try {
+			return TableIndex.read(indexConnection, introspectedTable);
+		} catch (SQLException e) {
+			closeIndexConnection();
+			throw e;
+		}
+	}
+	
+	private synchronized void closeIndexConnection() {
+		if (indexConnection != null) {
+			try {
+				indexConnection.close();
+			} catch (SQLException e) {
+				// 只读取元数据, 关闭失败不影响生成结果
+			}
+			indexConnection = null;
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static List<TableIndex> getIndexes(IntrospectedTable introspectedTable) {
+		Object indexes = introspectedTable.getAttribute(ATTR_INDEXES);
+		return indexes == null ? Collections.<TableIndex>emptyList() : (List<TableIndex>) indexes;
+	}
+	
+	/**
+	 * listXXX/pageXXX/streamXXX可用的过滤列: 主键和索引中的列, allowUnindexedFilters=true或读取不到索引信息时为全部非BLOB列
+	 */
+	List<IntrospectedColumn> filterColumns(IntrospectedTable introspectedTable) {
+		if (introspectedTable.getAttribute(ATTR_INDEXES) == null
+				|| Boolean.parseBoolean(getProperty(introspectedTable, "allowUnindexedFilters", "false"))) {
+			return CompiledTable.of(introspectedTable).getNonBLOBColumns();
+		}
+		Set<IntrospectedColumn> indexedColumns = new HashSet<>(introspectedTable.getPrimaryKeyColumns());
+		for (TableIndex index : getIndexes(introspectedTable)) {
+			indexedColumns.addAll(index.getColumns());
+		}
+		return CompiledTable.of(introspectedTable).getNonBLOBColumns().stream().filter(indexedColumns::contains)
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * listXXX/pageXXX/streamXXX的过滤条件不为空但不在filterColumns中时抛出IllegalArgumentException, 避免条件被忽略后返回全表
+	 * 
+	 * @return 是否生成了checkFilters
+	 */
+	private boolean addFilterCheck(TopLevelClass serviceClass, IntrospectedTable introspectedTable, String domainObjectName) {
+		List<IntrospectedColumn> filterColumns = filterColumns(introspectedTable);
+		Method method = new Method("checkFilters");
+		method.setVisibility(JavaVisibility.PRIVATE);
+		method.setStatic(true);
+		method.addParameter(new Parameter(new FullyQualifiedJavaType(domainObjectName), "req"));
+		for (IntrospectedColumn column : CompiledTable.of(introspectedTable).getNonBLOBColumns()) {
+			if (filterColumns.contains(column)) {
+				continue;
+			}
+			method.addBodyLine("if (req != null && req." + JavaBeansUtil.getGetterMethodName(column.getJavaProperty(),
+					column.getFullyQualifiedJavaType()) + "() != null) {");
+			method.addBodyLine("throw new IllegalArgumentException(\"" + column.getJavaProperty()
+					+ "没有索引, 不能作为过滤条件\");");
+			method.addBodyLine("}");
+		}
+		if (method.getBodyLines().isEmpty()) {
+			return false;
+		}
+		serviceClass.addMethod(method);
+		return true;
+	}
+	
+	/**
+	 * 索引查询的方法名, 如getByNameAndTenantId, listByTenantIdIn
+	 */
+	private static String finderName(String prefix, List<IntrospectedColumn> columns, String suffix) {
+		StringBuilder sb = new StringBuilder(prefix);
+		for (int i = 0; i < columns.size(); i++) {
+			String property = columns.get(i).getJavaProperty();
+			sb.append(i == 0 ? "" : "And").append(Character.toUpperCase(property.charAt(0))).append(property.substring(1));
+		}
+		return sb.append(suffix).toString();
+	}
+	
+	/**
+	 * 可生成listByXXXIn的列: 每个索引的第一列, 去掉单列主键(已有listByPrimaryKey)
+	 */
+	private static List<IntrospectedColumn> inFinderColumns(IntrospectedTable introspectedTable) {
+		List<IntrospectedColumn> primaryKeyColumns = introspectedTable.getPrimaryKeyColumns();
+		List<IntrospectedColumn> columns = new ArrayList<>();
+		for (TableIndex index : getIndexes(introspectedTable)) {
+			IntrospectedColumn column = index.getColumns().get(0);
+			if (!columns.contains(column) && !(primaryKeyColumns.size() == 1 && primaryKeyColumns.contains(column))) {
+				columns.add(column);
+			}
+		}
+		return columns;
+	}
+	
+	/**
+	 * 非空字段作为等值过滤条件
+	 */
+	private static void addFilterConditions(XmlElement parent, List<IntrospectedColumn> columns, String prefix) {
+		for (IntrospectedColumn column : columns) {
+			XmlElement ifElement = new XmlElement("if");
+			ifElement.addAttribute(new Attribute("test", prefix + column.getJavaProperty() + " != null"));
+			ifElement.addElement(new TextElement("and " + column.getActualColumnName() + " = #{" + prefix
+					+ column.getJavaProperty() + ",jdbcType=" + column.getJdbcTypeName() + "}"));
+			parent.addElement(ifElement);
+		}
+	}
+	
+	static void addConstant(TopLevelClass topLevelClass, String name, int value) {
+		Field field = new Field(name, new FullyQualifiedJavaType("int"));
+		field.setVisibility(JavaVisibility.PRIVATE);
+		field.setStatic(true);
+		field.setFinal(true);
+		field.setInitializationString(String.valueOf(value));
+		topLevelClass.addField(field);
+	}
+	
+	/**
+	 * 读取配置, table property优先于plugin property
+	 */
+	String getProperty(IntrospectedTable introspectedTable, String name, String defaultValue) {
+		String value = introspectedTable.getTableConfigurationProperty(name);
+		if (value == null) {
+			value = properties.getProperty(name);
+		}
+		return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+	}
+	
+	int getIntProperty(IntrospectedTable introspectedTable, String name, int defaultValue) {
+		return Integer.parseInt(getProperty(introspectedTable, name, String.valueOf(defaultValue)));
+	}
+	
+	/**
+	 * 计算batch语句每块的行数: 同时受配置上限、绑定参数上限和包大小约束
+	 */
+	private int batchChunkSize(IntrospectedTable introspectedTable, List<IntrospectedColumn> columns) {
+		int chunkSize = getIntProperty(introspectedTable, "batchInsertChunkSize", DEFAULT_BATCH_INSERT_CHUNK_SIZE);
+		int maxParameters = getIntProperty(introspectedTable, "batchMaxParameters", DEFAULT_BATCH_MAX_PARAMETERS);
+		int maxPacketBytes = getIntProperty(introspectedTable, "batchMaxPacketBytes", DEFAULT_BATCH_MAX_PACKET_BYTES);
+		chunkSize = Math.min(chunkSize, maxParameters / Math.max(1, columns.size()));
+		chunkSize = Math.min(chunkSize, maxPacketBytes / estimateRowBytes(columns));
+		return Math.max(1, chunkSize);
 	}
 	
-	private static String values(IntrospectedColumn column) {
-		return new StringBuilder().append("#{").append(column.getJavaProperty()).append(",jdbcType=")
-				.append(column.getJdbcTypeName()).append('}').toString();
+	/**
+	 * 估算一行values的最大字节数, 字符串按utf8mb4计, 无长度的大字段按64KB计
+	 */
+	private static int estimateRowBytes(List<IntrospectedColumn> columns) {
+		int bytes = 3;
+		for (IntrospectedColumn column : columns) {
+			if (column.isStringColumn() || column.isBLOBColumn()) {
+				int length = column.getLength();
+				bytes += (length <= 0 || length > 16383 ? 65535 : length * 4) + 3;
+			} else {
+				bytes += 32;
+			}
+		}
+		return bytes;
 	}
 	
+	// 分表时MBG的单行语句使用固定表名, 不生成, 由clientGenerated/sqlMapDocumentGenerated生成带表名参数的版本
+	@Override
+	public boolean clientInsertMethodGenerated(Method method, Interface interfaze,
+			IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean clientInsertSelectiveMethodGenerated(Method method, Interface interfaze,
+			IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean clientSelectByPrimaryKeyMethodGenerated(Method method, Interface interfaze,
+			IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean clientUpdateByPrimaryKeySelectiveMethodGenerated(Method method, Interface interfaze,
+			IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean clientUpdateByPrimaryKeyWithBLOBsMethodGenerated(Method method, Interface interfaze,
+			IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean clientUpdateByPrimaryKeyWithoutBLOBsMethodGenerated(Method method, Interface interfaze,
+			IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean clientDeleteByPrimaryKeyMethodGenerated(Method method, Interface interfaze,
+			IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean sqlMapInsertElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean sqlMapInsertSelectiveElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean sqlMapSelectByPrimaryKeyElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean sqlMapUpdateByPrimaryKeySelectiveElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean sqlMapUpdateByPrimaryKeyWithBLOBsElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean sqlMapUpdateByPrimaryKeyWithoutBLOBsElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
+	@Override
+	public boolean sqlMapDeleteByPrimaryKeyElementGenerated(XmlElement element, IntrospectedTable introspectedTable) {
+		return shardingGenerator.shardKeyColumn(introspectedTable) == null;
+	}
+
 	@Override
 	public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+		if (IncrementalGenerator.isSkipped(introspectedTable)) {
+			return false;
+		}
 		final FullyQualifiedTable table = introspectedTable.getFullyQualifiedTable();
-		final String tableName = table.getIntrospectedTableName();
+		// 分表时表名由参数传入, 语句有多个参数, 不指定parameterType
+		final boolean sharded = shardingGenerator.shardKeyColumn(introspectedTable) != null;
+		final String tableName = sharded ? "${table}" : table.getIntrospectedTableName();
 		final String domainObjectFullyName = introspectedTable.getBaseRecordType();
-		final List<IntrospectedColumn> baseColumns = introspectedTable.getBaseColumns();
-		final List<IntrospectedColumn> primaryKeyColumns = introspectedTable.getPrimaryKeyColumns();
+		final CompiledTable compiled = CompiledTable.of(introspectedTable);
+		final List<IntrospectedColumn> baseColumns = compiled.getBaseColumns();
+		final List<IntrospectedColumn> primaryKeyColumns = compiled.getPrimaryKeyColumns();
 		
 		XmlElement root = document.getRootElement();
-		// batch insert
-		{
-			// batch insert
-			XmlElement batchInsert = new XmlElement("insert");
-			batchInsert.addAttribute(new Attribute("id", "batchInsert"));
-			batchInsert.addAttribute(new Attribute("parameterType", domainObjectFullyName));
-			batchInsert.addElement(new TextElement("insert into " + tableName + " ("));
-			for (int i = 0; i < baseColumns.size(); i++) {
-				if (i % 2 != 0) {
-					continue;
-				}
-				int maxSize = Math.min(2, baseColumns.size() - i);
-				int restNum = baseColumns.size() - i;
-				batchInsert.addElement(new TextElement(
-						"  " + baseColumns.stream().skip(i).limit(maxSize).map(e -> e.getActualColumnName())
-								.collect(Collectors.joining(",")) + (restNum > 2 ? "," : "")));
-			}
-			batchInsert.addElement(new TextElement(") values "));
-			XmlElement foreach = new XmlElement("foreach");
-			foreach.addAttribute(new Attribute("collection", "list"));
-			foreach.addAttribute(new Attribute("item", "item"));
-			foreach.addAttribute(new Attribute("separator", ","));
-			foreach.addElement(new TextElement("("));
-			for (int i = 0; i < baseColumns.size(); i++) {
-				if (i % 2 != 0) {
-					continue;
-				}
-				int maxSize = Math.min(2, baseColumns.size() - i);
-				int restNum = baseColumns.size() - i;
-				foreach.addElement(new TextElement("  " + baseColumns.stream().skip(i).limit(maxSize)
-						.map(e -> batchValues(e)).collect(Collectors.joining(",")) + (restNum > 2 ? "," : "")));
-			}
-			foreach.addElement(new TextElement(")"));
-			batchInsert.addElement(foreach);
-			root.addElement(batchInsert);
+		// batchInsert, insertOrUpdate, batchInsertOrUpdate按dialect生成
+		dialectGenerator.addBatchInsert(root, introspectedTable, tableName, sharded);
+		if (primaryKeyColumns != null && primaryKeyColumns.size() > 0) {
+			dialectGenerator.addInsertOrUpdate(root, introspectedTable, tableName, sharded);
+		}
+
+		// 没有selectByPrimaryKey和selectByExample时(没有主键或只有主键列)MBG不生成Base_Column_List, listXXX等查询仍需要
+		if (!introspectedTable.getRules().generateBaseColumnList()) {
+			XmlElement baseColumnList = new XmlElement("sql");
+			baseColumnList.addAttribute(new Attribute("id", "Base_Column_List"));
+			addPairedLines(baseColumnList, compiled.getNonBLOBColumnNames());
+			root.addElement(baseColumnList);
+		}
+
+		// listXXX/pageXXX默认的列, 配置了listExcludeColumns时去掉这些宽列
+		final List<String> listColumnNames = listColumnNames(introspectedTable);
+		final String listColumnListId = listColumnNames == null ? "Base_Column_List" : "List_Column_List";
+		if (listColumnNames != null) {
+			XmlElement listColumnList = new XmlElement("sql");
+			listColumnList.addAttribute(new Attribute("id", listColumnListId));
+			addPairedLines(listColumnList, listColumnNames);
+			root.addElement(listColumnList);
 		}
 		
-		// insertOrUpdate
-		if(primaryKeyColumns != null && primaryKeyColumns.size()>0){
-			baseColumns.stream().map(e->e.getActualColumnName()).collect(Collectors.joining(","));
-			XmlElement insertOrUpdate = new XmlElement("insert");
-			insertOrUpdate.addAttribute(new Attribute("id", "insertOrUpdate"));
-			insertOrUpdate.addAttribute(new Attribute("parameterType", domainObjectFullyName));
-			insertOrUpdate.addElement(new TextElement("insert into " + tableName + " ("));
-			for (int i = 0; i < baseColumns.size(); i++) {
-				if (i % 2 != 0) {
-					continue;
-				}
-				int maxSize = Math.min(2, baseColumns.size() - i);
-				int restNum = baseColumns.size() - i;
-				insertOrUpdate.addElement(new TextElement(
-						"  " + baseColumns.stream().skip(i).limit(maxSize).map(e -> e.getActualColumnName())
-								.collect(Collectors.joining(",")) + (restNum > 2 ? "," : "")));
-			}
-			insertOrUpdate.addElement(new TextElement(") values ("));
-			for (int i = 0; i < baseColumns.size(); i++) {
-				if (i % 2 != 0) {
-					continue;
-				}
-				int maxSize = Math.min(2, baseColumns.size() - i);
-				int restNum = baseColumns.size() - i;
-				insertOrUpdate.addElement(new TextElement("  " + baseColumns.stream().skip(i).limit(maxSize)
-						.map(e -> values(e)).collect(Collectors.joining(",")) + (restNum > 2 ? "," : "")));
-			}
-			insertOrUpdate.addElement(new TextElement(") on duplicate key update "));
-			for (IntrospectedColumn column : baseColumns) {
-				if (primaryKeyColumns.contains(column)) {
-					continue;
-				}
-				insertOrUpdate.addElement(new TextElement("  "+column.getActualColumnName() + " = " + values(column) + ","));
+		// fields投影, 每列一个if, 只有白名单中的列能出现在select中
+		if (isColumnProjection(introspectedTable)) {
+			XmlElement projectionList = new XmlElement("sql");
+			projectionList.addAttribute(new Attribute("id", "Projection_Column_List"));
+			XmlElement trim = new XmlElement("trim");
+			trim.addAttribute(new Attribute("suffixOverrides", ","));
+			for (IntrospectedColumn column : projectionColumns(introspectedTable)) {
+				XmlElement ifElement = new XmlElement("if");
+				ifElement.addAttribute(new Attribute("test", "fields.contains(&quot;" + column.getJavaProperty() + "&quot;)"));
+				ifElement.addElement(new TextElement(column.getActualColumnName() + ","));
+				trim.addElement(ifElement);
 			}
-			insertOrUpdate.addElement(new TextElement("  gmt_modified = now() "));
-			
-			root.addElement(insertOrUpdate);
+			projectionList.addElement(trim);
+			root.addElement(projectionList);
 		}
+		final String projectionResultMap = isBLOBProjection(introspectedTable) ? "ResultMapWithBLOBs" : "BaseResultMap";
 
 		// listXXX
 		{
 			XmlElement selectAll = new XmlElement("select");
 			selectAll.addAttribute(new Attribute("id", "list" + table.getDomainObjectName()));
 			selectAll.addAttribute(new Attribute("resultMap", "BaseResultMap"));
-			selectAll.addAttribute(new Attribute("parameterType", domainObjectFullyName));
+			if (!sharded) {
+				selectAll.addAttribute(new Attribute("parameterType", domainObjectFullyName));
+			}
 
 			TextElement selectSql = new TextElement("select");
 			selectAll.addElement(selectSql);
 			XmlElement include = new XmlElement("include");
-			include.addAttribute(new Attribute("refid", "Base_Column_List"));
+			include.addAttribute(new Attribute("refid", listColumnListId));
 			selectAll.addElement(include);
 			selectAll.addElement(new TextElement("from " + tableName));
+			XmlElement where = new XmlElement("where");
+			addFilterConditions(where, filterColumns(introspectedTable), sharded ? "req." : "");
+			selectAll.addElement(where);
 
 			root.addElement(selectAll);
 		}
 
+		// listXXXFields
+		if (isColumnProjection(introspectedTable)) {
+			XmlElement selectFields = new XmlElement("select");
+			selectFields.addAttribute(new Attribute("id", "list" + table.getDomainObjectName() + "Fields"));
+			selectFields.addAttribute(new Attribute("resultMap", projectionResultMap));
+			selectFields.addElement(new TextElement("select"));
+			XmlElement include = new XmlElement("include");
+			include.addAttribute(new Attribute("refid", "Projection_Column_List"));
+			selectFields.addElement(include);
+			selectFields.addElement(new TextElement("from " + tableName));
+			XmlElement where = new XmlElement("where");
+			XmlElement reqIf = new XmlElement("if");
+			reqIf.addAttribute(new Attribute("test", "req != null"));
+			addFilterConditions(reqIf, filterColumns(introspectedTable), "req.");
+			where.addElement(reqIf);
+			selectFields.addElement(where);
+			root.addElement(selectFields);
+		}
+
+		// streamXXX
+		if (isStreamExport(introspectedTable)) {
+			XmlElement stream = new XmlElement("select");
+			stream.addAttribute(new Attribute("id", "stream" + table.getDomainObjectName()));
+			stream.addAttribute(new Attribute("resultMap", "BaseResultMap"));
+			stream.addAttribute(new Attribute("parameterType", domainObjectFullyName));
+			stream.addAttribute(new Attribute("resultSetType", "FORWARD_ONLY"));
+			stream.addAttribute(new Attribute("fetchSize",
+					String.valueOf(getIntProperty(introspectedTable, "streamFetchSize",
+							dialectGenerator.isPostgreSql(introspectedTable) || dialectGenerator.isH2(introspectedTable) ? DEFAULT_STREAM_FETCH_SIZE : Integer.MIN_VALUE))));
+			stream.addElement(new TextElement("select"));
+			XmlElement include = new XmlElement("include");
+			include.addAttribute(new Attribute("refid", "Base_Column_List"));
+			stream.addElement(include);
+			stream.addElement(new TextElement("from " + tableName));
+			XmlElement where = new XmlElement("where");
+			addFilterConditions(where, filterColumns(introspectedTable), "");
+			stream.addElement(where);
+			root.addElement(stream);
+		}
+
+		// pageXXX
+		if (isCursorPage(introspectedTable)) {
+			final IntrospectedColumn primaryKeyColumn = primaryKeyColumns.get(0);
+			XmlElement page = new XmlElement("select");
+			page.addAttribute(new Attribute("id", "page" + table.getDomainObjectName()));
+			page.addAttribute(new Attribute("resultMap", "BaseResultMap"));
+			page.addElement(new TextElement("select"));
+			XmlElement include = new XmlElement("include");
+			include.addAttribute(new Attribute("refid", listColumnListId));
+			page.addElement(include);
+			page.addElement(new TextElement("from " + tableName));
+			XmlElement where = new XmlElement("where");
+			XmlElement cursorIf = new XmlElement("if");
+			cursorIf.addAttribute(new Attribute("test", "cursor != null"));
+			cursorIf.addElement(new TextElement("and " + primaryKeyColumn.getActualColumnName() + " &gt; #{cursor,jdbcType="
+					+ primaryKeyColumn.getJdbcTypeName() + "}"));
+			where.addElement(cursorIf);
+			XmlElement reqIf = new XmlElement("if");
+			reqIf.addAttribute(new Attribute("test", "req != null"));
+			addFilterConditions(reqIf, filterColumns(introspectedTable), "req.");
+			where.addElement(reqIf);
+			page.addElement(where);
+			page.addElement(new TextElement("order by " + primaryKeyColumn.getActualColumnName()));
+			page.addElement(new TextElement("limit #{size}"));
+			root.addElement(page);
+		}
+
 		// list by primary key
 		if (primaryKeyColumns != null && primaryKeyColumns.size() == 1) {
 			XmlElement listByPrimaryKey = new XmlElement("select");
@@ -217,29 +959,166 @@ public class CustomMethodGenerator extends PluginAdapter {
 			includeEle.addAttribute(new Attribute("refid", "Base_Column_List"));
 			listByPrimaryKey.addElement(includeEle);
 			listByPrimaryKey.addElement(new TextElement("from " + tableName));
-			listByPrimaryKey
-					.addElement(new TextElement("where " + primaryKeyColumns.get(0).getActualColumnName() + " in ("));
-			XmlElement foreach = new XmlElement("foreach");
-			foreach.addAttribute(new Attribute("collection", "list"));
-			foreach.addAttribute(new Attribute("item", "item"));
-			foreach.addAttribute(new Attribute("separator", ","));
-			foreach.addElement(new TextElement("#{item}"));
-			listByPrimaryKey.addElement(foreach);
-			listByPrimaryKey.addElement(new TextElement(")"));
+			SqlMapElements.addInList(listByPrimaryKey, primaryKeyColumns.get(0).getActualColumnName(), "#{item}");
 			root.addElement(listByPrimaryKey);
+			
+			if (isColumnProjection(introspectedTable)) {
+				XmlElement listFields = new XmlElement("select");
+				listFields.addAttribute(new Attribute("id", "listByPrimaryKeyFields"));
+				listFields.addAttribute(new Attribute("resultMap", projectionResultMap));
+				listFields.addElement(new TextElement("select"));
+				XmlElement include = new XmlElement("include");
+				include.addAttribute(new Attribute("refid", "Projection_Column_List"));
+				listFields.addElement(include);
+				listFields.addElement(new TextElement("from " + tableName));
+				SqlMapElements.addInList(listFields, primaryKeyColumns.get(0).getActualColumnName(), "#{item}");
+				root.addElement(listFields);
+			}
+		}
+
+		// batch delete by primary key
+		if (primaryKeyColumns != null && primaryKeyColumns.size() == 1) {
+			XmlElement batchDelete = new XmlElement("delete");
+			batchDelete.addAttribute(new Attribute("id", "batchDeleteByPrimaryKey"));
+			batchDelete.addElement(new TextElement("delete from " + tableName));
+			SqlMapElements.addInList(batchDelete, primaryKeyColumns.get(0).getActualColumnName(), "#{item}");
+			root.addElement(batchDelete);
+		}
+
+		// batch update by primary key, CASE_WHEN模式: 每列一个case when, 一条语句更新一批
+		if (primaryKeyColumns != null && primaryKeyColumns.size() == 1 && isCaseWhenBatchUpdate(introspectedTable)
+				&& !baseColumns.isEmpty()) {
+			final IntrospectedColumn primaryKeyColumn = primaryKeyColumns.get(0);
+			final String primaryKeyValue = compiled.column(primaryKeyColumn).getItemParameter();
+			XmlElement batchUpdate = new XmlElement("update");
+			batchUpdate.addAttribute(new Attribute("id", "batchUpdateByPrimaryKey"));
+			batchUpdate.addElement(new TextElement("update " + tableName + " set"));
+			for (int i = 0; i < baseColumns.size(); i++) {
+				IntrospectedColumn column = baseColumns.get(i);
+				batchUpdate.addElement(new TextElement(
+						"  " + column.getActualColumnName() + " = case " + primaryKeyColumn.getActualColumnName()));
+				batchUpdate.addElement(SqlMapElements.foreach(null,
+						"when " + primaryKeyValue + " then " + compiled.column(column).getItemParameter()));
+				batchUpdate.addElement(new TextElement("  end" + (i + 1 < baseColumns.size() ? "," : "")));
+			}
+			SqlMapElements.addInList(batchUpdate, primaryKeyColumn.getActualColumnName(), primaryKeyValue);
+			root.addElement(batchUpdate);
+		}
+
+		// 索引查询
+		for (TableIndex index : getIndexes(introspectedTable)) {
+			XmlElement finder = new XmlElement("select");
+			finder.addAttribute(new Attribute("id", finderName(index.isUnique() ? "getBy" : "listBy", index.getColumns(), "")));
+			finder.addAttribute(new Attribute("resultMap", "BaseResultMap"));
+			finder.addElement(new TextElement("select"));
+			XmlElement include = new XmlElement("include");
+			include.addAttribute(new Attribute("refid", "Base_Column_List"));
+			finder.addElement(include);
+			finder.addElement(new TextElement("from " + tableName));
+			for (int i = 0; i < index.getColumns().size(); i++) {
+				IntrospectedColumn column = index.getColumns().get(i);
+				finder.addElement(new TextElement((i == 0 ? "where " : "  and ") + column.getActualColumnName() + " = "
+						+ compiled.column(column).getParameter()));
+			}
+			root.addElement(finder);
+		}
+		for (IntrospectedColumn column : inFinderColumns(introspectedTable)) {
+			XmlElement finder = new XmlElement("select");
+			finder.addAttribute(new Attribute("id", finderName("listBy", Collections.singletonList(column), "In")));
+			finder.addAttribute(new Attribute("resultMap", "BaseResultMap"));
+			finder.addElement(new TextElement("select"));
+			XmlElement include = new XmlElement("include");
+			include.addAttribute(new Attribute("refid", "Base_Column_List"));
+			finder.addElement(include);
+			finder.addElement(new TextElement("from " + tableName));
+			SqlMapElements.addInList(finder, column.getActualColumnName(), "#{item,jdbcType=" + column.getJdbcTypeName() + "}");
+			root.addElement(finder);
+		}
+
+		// 分表的单行语句, 代替MBG的insert/selectByPrimaryKey/updateByPrimaryKey/deleteByPrimaryKey
+		if (sharded) {
+			shardingGenerator.addShardedStatements(root, introspectedTable, projectionResultMap);
 		}
 
 		return super.sqlMapDocumentGenerated(document, introspectedTable); 
 	}
 
-    @Override
-    public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles(
-            IntrospectedTable introspectedTable) {
-    	List<GeneratedJavaFile> javaFiles = new ArrayList<>();
-    	final String remarks = introspectedTable.getRemarks();
-    	final List<IntrospectedColumn> primaryKeyColumns = introspectedTable.getPrimaryKeyColumns();
-    	FullyQualifiedJavaType primaryKeyType = null;
-		if (primaryKeyColumns != null && primaryKeyColumns.size() > 0) {
+	/**
+	 * 生成各Service共用的类, 每个context只生成一次: <br>
+	 * CursorPage 游标分页的返回类型 <br>
+	 * ServiceCache 有表开启serviceCache时生成 <br>
+	 * BatchLoader 有表开启batchLoader时生成 <br>
+	 * ServiceMetrics 有表开启serviceMetrics时生成 <br>
+	 * BoundedExecutor, ExecutorRejectedAdvice 有表开启asyncController时生成 <br>
+	 * BulkResult 有表开启bulkAdd时生成 <br>
+	 * ReadRouting 有表开启readWriteSplit时生成
+	 */
+	@Override
+	public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles() {
+		closeIndexConnection();
+		List<GeneratedJavaFile> javaFiles = new ArrayList<>();
+		javaFiles.add(new GeneratedJavaFile(resultTypesGenerator.cursorPageClass(), properties.getProperty("javaTargetProject"),
+				context.getJavaFormatter()));
+		if (anyTableEnabled("serviceCache")) {
+			javaFiles.add(new GeneratedJavaFile(serviceCacheGenerator.serviceCacheClass(), properties.getProperty("javaTargetProject"),
+					context.getJavaFormatter()));
+		}
+		if (anyTableEnabled("batchLoader")) {
+			javaFiles.add(new GeneratedJavaFile(batchLoaderGenerator.batchLoaderClass(), properties.getProperty("javaTargetProject"),
+					context.getJavaFormatter()));
+		}
+		if (anyTableEnabled("serviceMetrics")) {
+			javaFiles.add(new GeneratedJavaFile(serviceMetricsGenerator.serviceMetricsClass(), properties.getProperty("javaTargetProject"),
+					context.getJavaFormatter()));
+		}
+		if (anyTableEnabled("asyncController")) {
+			javaFiles.add(new GeneratedJavaFile(asyncControllerGenerator.boundedExecutorClass(), properties.getProperty("javaTargetProject"),
+					context.getJavaFormatter()));
+			javaFiles.add(new GeneratedJavaFile(asyncControllerGenerator.executorRejectedAdviceClass(), properties.getProperty("javaTargetProject"),
+					context.getJavaFormatter()));
+		}
+		if (anyTableEnabled("bulkAdd")) {
+			javaFiles.add(new GeneratedJavaFile(resultTypesGenerator.bulkResultClass(), properties.getProperty("javaTargetProject"),
+					context.getJavaFormatter()));
+		}
+		if (anyTableEnabled("readWriteSplit")) {
+			javaFiles.add(new GeneratedJavaFile(readRoutingGenerator.readRoutingClass(), properties.getProperty("javaTargetProject"),
+					context.getJavaFormatter()));
+		}
+		return javaFiles;
+	}
+	
+	/**
+	 * plugin property或任一table property开启了该配置
+	 */
+	private boolean anyTableEnabled(String name) {
+		if (Boolean.parseBoolean(properties.getProperty(name))) {
+			return true;
+		}
+		for (TableConfiguration tableConfiguration : context.getTableConfigurations()) {
+			if (Boolean.parseBoolean(tableConfiguration.getProperty(name))) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles(
+			IntrospectedTable introspectedTable) {
+		List<GeneratedJavaFile> javaFiles = new ArrayList<>();
+		if (IncrementalGenerator.isSkipped(introspectedTable)) {
+			return javaFiles;
+		}
+		final CompiledTable compiled = CompiledTable.of(introspectedTable);
+		final String remarks = introspectedTable.getRemarks();
+		final List<IntrospectedColumn> primaryKeyColumns = introspectedTable.getPrimaryKeyColumns();
+		final Rules rules = introspectedTable.getRules();
+		// 按主键方法的参数类型: 复合主键为主键类(XXXKey), 单主键为列类型, 复合主键没有主键类(FLAT)时不生成按主键的方法
+		FullyQualifiedJavaType primaryKeyType = null;
+		if (rules.generatePrimaryKeyClass()) {
+			primaryKeyType = new FullyQualifiedJavaType(introspectedTable.getPrimaryKeyType());
+		} else if (primaryKeyColumns != null && primaryKeyColumns.size() == 1) {
 			primaryKeyType = primaryKeyColumns.get(0).getFullyQualifiedJavaType();
 		}
 		final FullyQualifiedJavaType domainJavaType = new FullyQualifiedJavaType(introspectedTable.getBaseRecordType());
@@ -247,7 +1126,27 @@ public class CustomMethodGenerator extends PluginAdapter {
 		final FullyQualifiedJavaType mapperJavaType = new FullyQualifiedJavaType(introspectedTable.getMyBatis3JavaMapperType());
 		final String mapperTypeName = mapperJavaType.getShortNameWithoutTypeArguments();
 		final String mapperFieldName = String.valueOf(mapperTypeName.charAt(0)).toLowerCase() + mapperTypeName.substring(1);
-    	
+		final boolean batchExecutor = "BATCH".equalsIgnoreCase(getProperty(introspectedTable, "batchExecutorType", "SIMPLE"));
+		
+		final boolean serviceCache = serviceCacheGenerator.isServiceCache(introspectedTable);
+		// 分表时记录按分片列路由, 分片列为主键时按id路由, 否则按id的操作需要查询所有分表
+		final IntrospectedColumn shardColumn = shardingGenerator.shardKeyColumn(introspectedTable);
+		final boolean sharded = shardColumn != null;
+		final boolean routeById = sharded && shardColumn == primaryKeyColumns.get(0);
+		final String shardGetter = !sharded ? null
+				: JavaBeansUtil.getGetterMethodName(shardColumn.getJavaProperty(), shardColumn.getFullyQualifiedJavaType());
+		// 走listByPrimaryKey(BaseResultMap), 有BLOB列的表和分表不合并, 保证get返回完整字段; 只有主键列的表没有get
+		final boolean batchLoader = primaryKeyColumns != null && primaryKeyColumns.size() == 1
+				&& rules.generateSelectByPrimaryKey() && !introspectedTable.hasBLOBColumns() && !sharded
+				&& Boolean.parseBoolean(getProperty(introspectedTable, "batchLoader", "false"));
+		final String pkGetter = primaryKeyColumns == null || primaryKeyColumns.size() != 1 ? null
+				: JavaBeansUtil.getGetterMethodName(primaryKeyColumns.get(0).getJavaProperty(), primaryKeyType);
+		// 配置了DirtyTrackingGenerator时, 查出的对象先清除脏标记, updateDirtyByPrimaryKey只更新之后修改的列
+		final boolean cleanLoaded = introspectedTable.getAttribute(DirtyTrackingGenerator.ATTR_DIRTY_TRACKING) != null;
+		final Function<String, String> loaded = expression -> cleanLoaded ? "clean(" + expression + ")" : expression;
+		// 缓存中的对象被多个调用方共享, 返回副本, 调用方的修改和脏标记不影响缓存和其他调用方
+		final boolean copyCached = cleanLoaded && serviceCache;
+		
 		//----------------------- Service ------------------------
 		String serviceFullQualifiedName = properties.getProperty("servicePackage") + "." + domainObjectName + "Service";
 		TopLevelClass serviceClass = new TopLevelClass(serviceFullQualifiedName);
@@ -257,76 +1156,770 @@ public class CustomMethodGenerator extends PluginAdapter {
 		serviceClass.addAnnotation("@Service");
 		serviceClass.addImportedType(domainJavaType);
 		serviceClass.addImportedType(mapperJavaType);
+		if (rules.generatePrimaryKeyClass()) {
+			serviceClass.addImportedType(primaryKeyType);
+		}
 		serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.List"));
 		Field mapperField = new Field(mapperFieldName, mapperJavaType);
 		mapperField.addAnnotation("@Autowired");
 		mapperField.setVisibility(JavaVisibility.PRIVATE);
 		serviceClass.addField(mapperField);
+		final FullyQualifiedJavaType cacheJavaType = !serviceCache ? null
+				: serviceCacheGenerator.addCacheField(serviceClass, introspectedTable, primaryKeyType, domainObjectName);
+		if (batchLoader) {
+			batchLoaderGenerator.addLoaderField(serviceClass, introspectedTable, primaryKeyType, domainObjectName,
+					mapperFieldName, pkGetter);
+		}
+		if (sharded) {
+			shardingGenerator.addShardRouting(serviceClass, introspectedTable, shardColumn, domainObjectName);
+		}
+		// 分表时写操作的表名参数
+		final String rowTable = sharded ? "shardTable(req." + shardGetter + "()), " : "";
+		// 读写分离时走从库的读方法和需要记录写入的写方法
+		final List<Method> readMethods = new ArrayList<>();
+		final List<Method> writeMethods = new ArrayList<>();
 		
 		// service.add 
 		Method addMethod = new Method();
 		addMethod.setVisibility(JavaVisibility.PUBLIC);
 		addMethod.addParameter(new Parameter(domainJavaType, "req"));
 		addMethod.setName("add" + domainObjectName);
-		addMethod.addBodyLine(mapperFieldName + ".insert(req);");
+		addMethod.addBodyLine(mapperFieldName + ".insert(" + rowTable + "req);");
+		if (serviceCache) {
+			addMethod.addBodyLine("cache.invalidate(req." + pkGetter + "());");
+		}
 		serviceClass.addMethod(addMethod);
+		writeMethods.add(addMethod);
 		
 		// service.delete
 		Method deleteMethod = null;
-		if (primaryKeyType != null) {
+		if (primaryKeyType != null && rules.generateDeleteByPrimaryKey()) {
 			deleteMethod = new Method();
 			deleteMethod.setVisibility(JavaVisibility.PUBLIC);
 			deleteMethod.addParameter(new Parameter(primaryKeyType, "id"));
 			deleteMethod.setName("delete" + domainObjectName);
-			deleteMethod.addBodyLine(mapperFieldName + ".deleteByPrimaryKey(id);");
+			if (sharded && !routeById) {
+				// 分片列不是主键, 逐个分表删除直到命中
+				deleteMethod.addBodyLine("for (String table : SHARD_TABLES) {");
+				deleteMethod.addBodyLine("if (" + mapperFieldName + ".deleteByPrimaryKey(table, id) > 0) {");
+				deleteMethod.addBodyLine("break;");
+				deleteMethod.addBodyLine("}");
+				deleteMethod.addBodyLine("}");
+			} else {
+				deleteMethod.addBodyLine(mapperFieldName + ".deleteByPrimaryKey(" + (sharded ? "shardTable(id), " : "") + "id);");
+			}
+			if (serviceCache) {
+				deleteMethod.addBodyLine("cache.invalidate(id);");
+			}
 			serviceClass.addMethod(deleteMethod);
+			writeMethods.add(deleteMethod);
+		}
+		
+		// service.update, 没有主键或只有主键列的表MBG不生成updateByPrimaryKey
+		Method updateMethod = null;
+		if (rules.generateUpdateByPrimaryKeyWithoutBLOBs()) {
+			updateMethod = new Method();
+			updateMethod.setVisibility(JavaVisibility.PUBLIC);
+			updateMethod.addParameter(new Parameter(domainJavaType, "req"));
+			updateMethod.setName("update" + domainObjectName);
+			if (isDirtyUpdate(introspectedTable)) {
+				// 只更新setter标记过的列, 没有修改时不访问数据库
+				updateMethod.addBodyLine("if (!req.hasDirtyFields()) {");
+				updateMethod.addBodyLine("return;");
+				updateMethod.addBodyLine("}");
+				updateMethod.addBodyLine(mapperFieldName + ".updateDirtyByPrimaryKey(req);");
+				updateMethod.addBodyLine("req.clearDirty();");
+			} else {
+				updateMethod.addBodyLine(mapperFieldName + ".updateByPrimaryKey(" + rowTable + "req);");
+			}
+			if (serviceCache) {
+				updateMethod.addBodyLine("cache.invalidate(req." + pkGetter + "());");
+			}
+			serviceClass.addMethod(updateMethod);
+			writeMethods.add(updateMethod);
 		}
 		
-		// service.update 
-		Method updateMethod = new Method();
-		updateMethod.setVisibility(JavaVisibility.PUBLIC);
-		updateMethod.addParameter(new Parameter(domainJavaType, "req"));
-		updateMethod.setName("update" + domainObjectName);
-		updateMethod.addBodyLine(mapperFieldName + ".updateByPrimaryKey(req);");
-		serviceClass.addMethod(updateMethod);
+		// service.insertOrUpdate
+		if (introspectedTable.hasPrimaryKeyColumns()) {
+			Method insertOrUpdateMethod = new Method();
+			insertOrUpdateMethod.setVisibility(JavaVisibility.PUBLIC);
+			insertOrUpdateMethod.addParameter(new Parameter(domainJavaType, "req"));
+			insertOrUpdateMethod.setName("insertOrUpdate");
+			insertOrUpdateMethod.setReturnType(new FullyQualifiedJavaType("int"));
+			if (serviceCache) {
+				insertOrUpdateMethod.addBodyLine("int rows = " + mapperFieldName + ".insertOrUpdate(" + rowTable + "req);");
+				insertOrUpdateMethod.addBodyLine("cache.invalidate(req." + pkGetter + "());");
+				insertOrUpdateMethod.addBodyLine("return rows;");
+			} else {
+				insertOrUpdateMethod.addBodyLine("return " + mapperFieldName + ".insertOrUpdate(" + rowTable + "req);");
+			}
+			serviceClass.addMethod(insertOrUpdateMethod);
+			writeMethods.add(insertOrUpdateMethod);
+		}
 		
-		// service.get
+		// service.get, 开启batchLoader时事务外的查询合并成批量查询, 事务内直接查询以读到本事务的修改
+		// 分表时按id路由, 分片列不是主键时依次查询各分表
+		final String selectOne;
+		if (batchLoader) {
+			// 同一批中相同id的调用方拿到同一个对象, 配置了DirtyTrackingGenerator时各自复制
+			String select = "TransactionSynchronizationManager.isActualTransactionActive() ? " + mapperFieldName
+					+ ".selectByPrimaryKey(req) : batchLoader.load(req)";
+			selectOne = cleanLoaded ? "copy(" + select + ")" : select;
+		} else if (sharded && !routeById) {
+			selectOne = loaded.apply("selectFromShards(req)");
+		} else {
+			selectOne = loaded.apply(mapperFieldName + ".selectByPrimaryKey(" + (sharded ? "shardTable(req), " : "") + "req)");
+		}
 		Method getMethod = null;
-		if (primaryKeyType != null) {
+		if (primaryKeyType != null && rules.generateSelectByPrimaryKey()) {
 			getMethod = new Method();
 			getMethod.setVisibility(JavaVisibility.PUBLIC);
 			getMethod.addParameter(new Parameter(primaryKeyType, "req"));
 			getMethod.setName("get" + domainObjectName);
 			getMethod.setReturnType(domainJavaType);
-			getMethod.addBodyLine("return "+mapperFieldName + ".selectByPrimaryKey(req);");
+			if (serviceCache) {
+				getMethod.addBodyLines(ServiceCacheGenerator.cachedGetLines(domainObjectName, selectOne, copyCached));
+			} else {
+				getMethod.addBodyLine("return " + selectOne + ";");
+			}
 			serviceClass.addMethod(getMethod);
+			readMethods.add(getMethod);
+			
+			if (sharded && !routeById) {
+				Method selectFromShards = new Method("selectFromShards");
+				selectFromShards.setVisibility(JavaVisibility.PRIVATE);
+				selectFromShards.addParameter(new Parameter(primaryKeyType, "id"));
+				selectFromShards.setReturnType(domainJavaType);
+				selectFromShards.addBodyLine("for (String table : SHARD_TABLES) {");
+				selectFromShards.addBodyLine(domainObjectName + " row = " + mapperFieldName + ".selectByPrimaryKey(table, id);");
+				selectFromShards.addBodyLine("if (row != null) {");
+				selectFromShards.addBodyLine("return row;");
+				selectFromShards.addBodyLine("}");
+				selectFromShards.addBodyLine("}");
+				selectFromShards.addBodyLine("return null;");
+				serviceClass.addMethod(selectFromShards);
+			}
+		}
+		
+		// fields白名单和校验, listXXX/listByIds的投影版本共用
+		final boolean columnProjection = isColumnProjection(introspectedTable);
+		if (columnProjection) {
+			List<String> projectionFields = new ArrayList<>();
+			for (IntrospectedColumn column : projectionColumns(introspectedTable)) {
+				projectionFields.add("\"" + column.getJavaProperty() + "\"");
+			}
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.Arrays"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.Collections"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.HashSet"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.Set"));
+			Field fieldsField = new Field("PROJECTION_FIELDS", new FullyQualifiedJavaType("java.util.Set<String>"));
+			fieldsField.setVisibility(JavaVisibility.PRIVATE);
+			fieldsField.setStatic(true);
+			fieldsField.setFinal(true);
+			fieldsField.setInitializationString("Collections.unmodifiableSet(new HashSet<>(Arrays.asList("
+					+ String.join(", ", projectionFields) + ")))");
+			serviceClass.addField(fieldsField);
+			
+			Method projectionMethod = new Method("projection");
+			projectionMethod.setVisibility(JavaVisibility.PRIVATE);
+			projectionMethod.setStatic(true);
+			projectionMethod.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.List<String>"), "fields"));
+			projectionMethod.setReturnType(new FullyQualifiedJavaType("java.util.Set<String>"));
+			projectionMethod.addBodyLine("Set<String> projection = new HashSet<>();");
+			projectionMethod.addBodyLine("for (String field : fields) {");
+			projectionMethod.addBodyLine("String name = field == null ? \"\" : field.trim();");
+			projectionMethod.addBodyLine("if (!PROJECTION_FIELDS.contains(name)) {");
+			projectionMethod.addBodyLine("throw new IllegalArgumentException(\"unknown field: \" + field);");
+			projectionMethod.addBodyLine("}");
+			projectionMethod.addBodyLine("projection.add(name);");
+			projectionMethod.addBodyLine("}");
+			projectionMethod.addBodyLine("return projection;");
+			serviceClass.addMethod(projectionMethod);
 		}
 		
 		// service.listByIds
-		FullyQualifiedJavaType idsJavaType = new FullyQualifiedJavaType("java.util.List<" + primaryKeyType.getShortName() + ">");
+		FullyQualifiedJavaType idsJavaType = primaryKeyType == null ? null
+				: new FullyQualifiedJavaType("java.util.List<" + primaryKeyType.getShortName() + ">");
 		Method listByIdsMethod = null;
-		if (primaryKeyType != null) {
+		if (primaryKeyColumns != null && primaryKeyColumns.size() == 1) {
+			final String pkTypeName = primaryKeyType.getShortName();
+			final String listByIdsExecutor = getProperty(introspectedTable, "listByIdsExecutor", null);
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.ArrayList"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.HashMap"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.LinkedHashSet"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.Map"));
+			addConstant(serviceClass, "LIST_BY_IDS_BUCKET_SIZE",
+					getIntProperty(introspectedTable, "listByIdsBucketSize", DEFAULT_LIST_BY_IDS_BUCKET_SIZE));
+			if (listByIdsExecutor != null && !sharded) {
+				serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.CompletableFuture"));
+				serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.Executor"));
+				serviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.beans.factory.annotation.Qualifier"));
+				serviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.transaction.support.TransactionSynchronizationManager"));
+				Field executorField = new Field("listByIdsExecutor", new FullyQualifiedJavaType("java.util.concurrent.Executor"));
+				executorField.addAnnotation("@Autowired");
+				executorField.addAnnotation("@Qualifier(\"" + listByIdsExecutor + "\")");
+				executorField.setVisibility(JavaVisibility.PRIVATE);
+				serviceClass.addField(executorField);
+			}
+			
 			FullyQualifiedJavaType domainListJavaType = new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">");
 			listByIdsMethod = new Method();
 			listByIdsMethod.setVisibility(JavaVisibility.PUBLIC);
 			listByIdsMethod.setName("listByIds");
 			listByIdsMethod.addParameter(new Parameter(idsJavaType, "ids"));
 			listByIdsMethod.setReturnType(domainListJavaType);
-			listByIdsMethod.addBodyLine("return " + mapperFieldName + ".listByPrimaryKey(ids);");
+			listByIdsMethod.addBodyLine("if (ids == null || ids.isEmpty()) {");
+			listByIdsMethod.addBodyLine("return new ArrayList<>();");
+			listByIdsMethod.addBodyLine("}");
+			listByIdsMethod.addBodyLine("List<" + pkTypeName + "> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));");
+			listByIdsMethod.addBodyLine("distinctIds.remove(null);");
+			listByIdsMethod.addBodyLine("Map<" + pkTypeName + ", " + domainObjectName + "> rowMap = new HashMap<>(distinctIds.size() * 2);");
+			if (serviceCache) {
+				listByIdsMethod.addBodyLines(ServiceCacheGenerator.cacheLookupLines(domainObjectName, pkTypeName));
+			}
+			final String queryIds = serviceCache ? "missingIds" : "distinctIds";
+			if (sharded) {
+				// 各分表内按LIST_BY_IDS_BUCKET_SIZE分桶, 分表之间在scatter中并行
+				listByIdsMethod.addBodyLines(ShardingGenerator.scatterByIdsLines("List<" + domainObjectName + "> rows", queryIds, pkTypeName,
+						"listShardByIds", "", routeById));
+			} else {
+				listByIdsMethod.addBodyLine("List<List<" + pkTypeName + ">> buckets = partitionIds(" + queryIds + ");");
+				listByIdsMethod.addBodyLine("List<" + domainObjectName + "> rows = new ArrayList<>(distinctIds.size());");
+			}
+			if (listByIdsExecutor != null && !sharded) {
+				// 多个分桶时并行查询, 单个分桶或在事务中(线程池的连接看不到未提交的写)时在当前线程执行
+				final boolean readRouting = isReadWriteSplit(introspectedTable);
+				listByIdsMethod.addBodyLine("if (buckets.size() > 1 && !TransactionSynchronizationManager.isActualTransactionActive()) {");
+				listByIdsMethod.addBodyLine("List<CompletableFuture<List<" + domainObjectName + ">>> futures = new ArrayList<>(buckets.size());");
+				listByIdsMethod.addBodyLine("for (List<" + pkTypeName + "> bucket : buckets) {");
+				listByIdsMethod.addBodyLine("futures.add(CompletableFuture.supplyAsync(" + (readRouting ? "ReadRouting.propagate(" : "")
+						+ "() -> " + mapperFieldName + ".listByPrimaryKey(bucket)" + (readRouting ? ")" : "") + ", listByIdsExecutor));");
+				listByIdsMethod.addBodyLine("}");
+				listByIdsMethod.addBodyLine("for (CompletableFuture<List<" + domainObjectName + ">> future : futures) {");
+				listByIdsMethod.addBodyLine("rows.addAll(future.join());");
+				listByIdsMethod.addBodyLine("}");
+				listByIdsMethod.addBodyLine("} else {");
+			}
+			if (!sharded) {
+				listByIdsMethod.addBodyLine("for (List<" + pkTypeName + "> bucket : buckets) {");
+				listByIdsMethod.addBodyLine("rows.addAll(" + mapperFieldName + ".listByPrimaryKey(bucket));");
+				listByIdsMethod.addBodyLine("}");
+			}
+			if (listByIdsExecutor != null && !sharded) {
+				listByIdsMethod.addBodyLine("}");
+			}
+			// 按调用方传入的id顺序返回
+			listByIdsMethod.addBodyLine("for (" + domainObjectName + " row : " + loaded.apply("rows") + ") {");
+			listByIdsMethod.addBodyLine("rowMap.put(row." + pkGetter + "(), row);");
+			if (serviceCache) {
+				listByIdsMethod.addBodyLine("cache.put(row." + pkGetter + "(), row, cacheVersion);");
+			}
+			listByIdsMethod.addBodyLine("}");
+			listByIdsMethod.addBodyLine("List<" + domainObjectName + "> result = new ArrayList<>(rowMap.size());");
+			listByIdsMethod.addBodyLine("for (" + pkTypeName + " id : distinctIds) {");
+			listByIdsMethod.addBodyLine(domainObjectName + " row = rowMap.get(id);");
+			listByIdsMethod.addBodyLine("if (row != null) {");
+			listByIdsMethod.addBodyLine("result.add(" + (copyCached ? "copy(row)" : "row") + ");");
+			listByIdsMethod.addBodyLine("}");
+			listByIdsMethod.addBodyLine("}");
+			listByIdsMethod.addBodyLine("return result;");
 			serviceClass.addMethod(listByIdsMethod);
+			readMethods.add(listByIdsMethod);
+			
+			// service.listByIds(ids, fields), 部分字段的行不进缓存, 分桶串行查询
+			if (columnProjection) {
+				Method listByIdsFields = new Method("listByIds");
+				listByIdsFields.setVisibility(JavaVisibility.PUBLIC);
+				listByIdsFields.addParameter(new Parameter(idsJavaType, "ids"));
+				listByIdsFields.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.List<String>"), "fields"));
+				listByIdsFields.setReturnType(domainListJavaType);
+				listByIdsFields.addBodyLine("if (fields == null || fields.isEmpty()) {");
+				listByIdsFields.addBodyLine("return listByIds(ids);");
+				listByIdsFields.addBodyLine("}");
+				listByIdsFields.addBodyLine("if (ids == null || ids.isEmpty()) {");
+				listByIdsFields.addBodyLine("return new ArrayList<>();");
+				listByIdsFields.addBodyLine("}");
+				listByIdsFields.addBodyLine("Set<String> projection = projection(fields);");
+				// 按id排序需要主键
+				listByIdsFields.addBodyLine("projection.add(\"" + primaryKeyColumns.get(0).getJavaProperty() + "\");");
+				listByIdsFields.addBodyLine("List<" + pkTypeName + "> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));");
+				listByIdsFields.addBodyLine("distinctIds.remove(null);");
+				listByIdsFields.addBodyLine("Map<" + pkTypeName + ", " + domainObjectName + "> rowMap = new HashMap<>(distinctIds.size() * 2);");
+				if (sharded) {
+					listByIdsFields.addBodyLines(ShardingGenerator.scatterByIdsLines("List<" + domainObjectName + "> rows", "distinctIds",
+							pkTypeName, "listShardByIds", ", projection", routeById));
+					listByIdsFields.addBodyLine("for (" + domainObjectName + " row : " + loaded.apply("rows") + ") {");
+				} else {
+					listByIdsFields.addBodyLine("for (List<" + pkTypeName + "> bucket : partitionIds(distinctIds)) {");
+					listByIdsFields.addBodyLine("for (" + domainObjectName + " row : "
+							+ loaded.apply(mapperFieldName + ".listByPrimaryKeyFields(bucket, projection)") + ") {");
+				}
+				listByIdsFields.addBodyLine("rowMap.put(row." + pkGetter + "(), row);");
+				listByIdsFields.addBodyLine("}");
+				if (!sharded) {
+					listByIdsFields.addBodyLine("}");
+				}
+				listByIdsFields.addBodyLine("List<" + domainObjectName + "> result = new ArrayList<>(rowMap.size());");
+				listByIdsFields.addBodyLine("for (" + pkTypeName + " id : distinctIds) {");
+				listByIdsFields.addBodyLine(domainObjectName + " row = rowMap.get(id);");
+				listByIdsFields.addBodyLine("if (row != null) {");
+				listByIdsFields.addBodyLine("result.add(row);");
+				listByIdsFields.addBodyLine("}");
+				listByIdsFields.addBodyLine("}");
+				listByIdsFields.addBodyLine("return result;");
+				serviceClass.addMethod(listByIdsFields);
+				readMethods.add(listByIdsFields);
+			}
+			
+			// 按LIST_BY_IDS_BUCKET_SIZE切分id, 最后一个分桶用最后一个id补齐到LIST_BY_IDS_BUCKET_SIZE, 使in列表只有一种形态
+			Method partitionMethod = new Method();
+			partitionMethod.setVisibility(JavaVisibility.PRIVATE);
+			partitionMethod.setName("partitionIds");
+			partitionMethod.addParameter(new Parameter(idsJavaType, "ids"));
+			partitionMethod.setReturnType(new FullyQualifiedJavaType("java.util.List<java.util.List<" + pkTypeName + ">>"));
+			partitionMethod.addBodyLine("List<List<" + pkTypeName + ">> buckets = new ArrayList<>();");
+			partitionMethod.addBodyLine("for (int i = 0; i < ids.size(); i += LIST_BY_IDS_BUCKET_SIZE) {");
+			partitionMethod.addBodyLine("List<" + pkTypeName + "> bucket = new ArrayList<>(ids.subList(i, Math.min(i + LIST_BY_IDS_BUCKET_SIZE, ids.size())));");
+			partitionMethod.addBodyLine("while (bucket.size() < LIST_BY_IDS_BUCKET_SIZE) {");
+			partitionMethod.addBodyLine("bucket.add(bucket.get(bucket.size() - 1));");
+			partitionMethod.addBodyLine("}");
+			partitionMethod.addBodyLine("buckets.add(bucket);");
+			partitionMethod.addBodyLine("}");
+			partitionMethod.addBodyLine("return buckets;");
+			serviceClass.addMethod(partitionMethod);
+			
+			// 分表: 一张分表内按分桶查询, 带fields时只查询投影的列
+			if (sharded) {
+				for (boolean fields : columnProjection ? new boolean[] { false, true } : new boolean[] { false }) {
+					Method listShardMethod = new Method("listShardByIds");
+					listShardMethod.setVisibility(JavaVisibility.PRIVATE);
+					listShardMethod.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "table"));
+					listShardMethod.addParameter(new Parameter(idsJavaType, "ids"));
+					if (fields) {
+						listShardMethod.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.Set<String>"), "fields"));
+					}
+					listShardMethod.setReturnType(domainListJavaType);
+					listShardMethod.addBodyLine("List<" + domainObjectName + "> rows = new ArrayList<>(ids.size());");
+					listShardMethod.addBodyLine("for (List<" + pkTypeName + "> bucket : partitionIds(ids)) {");
+					listShardMethod.addBodyLine("rows.addAll(" + mapperFieldName + (fields
+							? ".listByPrimaryKeyFields(table, bucket, fields));" : ".listByPrimaryKey(table, bucket));"));
+					listShardMethod.addBodyLine("}");
+					listShardMethod.addBodyLine("return rows;");
+					serviceClass.addMethod(listShardMethod);
+				}
+			}
 		}
 		
 		// service.listXXX
+		final boolean filterCheck = addFilterCheck(serviceClass, introspectedTable, domainObjectName);
 		Method listDomain = new Method();
 		listDomain.setVisibility(JavaVisibility.PUBLIC);
 		listDomain.setName("list" + domainObjectName);
 		listDomain.addParameter(new Parameter(domainJavaType, "req"));
 		listDomain.setReturnType(new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"));
-		listDomain.addBodyLine("return " + mapperFieldName + ".list" + domainObjectName + "(req);");
+		if (filterCheck) {
+			listDomain.addBodyLine("checkFilters(req);");
+		}
+		// 分表时在各分表上查询后合并, 条件中有分片列时只查一张分表
+		final String listShards = !sharded ? null
+				: filterColumns(introspectedTable).contains(shardColumn) ? "shardsOf(req)" : "SHARD_TABLES";
+		if (sharded) {
+			listDomain.addBodyLine("return " + loaded.apply("scatter(" + listShards + ", table -> " + mapperFieldName
+					+ ".list" + domainObjectName + "(table, req))") + ";");
+		} else {
+			listDomain.addBodyLine("return " + loaded.apply(mapperFieldName + ".list" + domainObjectName + "(req)") + ";");
+		}
 		serviceClass.addMethod(listDomain);
+		readMethods.add(listDomain);
+		
+		// service.listXXX(req, fields), fields为空时同listXXX
+		Method listDomainFields = null;
+		if (columnProjection) {
+			listDomainFields = new Method("list" + domainObjectName);
+			listDomainFields.setVisibility(JavaVisibility.PUBLIC);
+			listDomainFields.addParameter(new Parameter(domainJavaType, "req"));
+			listDomainFields.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.List<String>"), "fields"));
+			listDomainFields.setReturnType(new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"));
+			listDomainFields.addBodyLine("if (fields == null || fields.isEmpty()) {");
+			listDomainFields.addBodyLine("return list" + domainObjectName + "(req);");
+			listDomainFields.addBodyLine("}");
+			if (filterCheck) {
+				listDomainFields.addBodyLine("checkFilters(req);");
+			}
+			if (sharded) {
+				listDomainFields.addBodyLine("Set<String> projection = projection(fields);");
+				listDomainFields.addBodyLine("return " + loaded.apply("scatter(" + listShards + ", table -> " + mapperFieldName
+						+ ".list" + domainObjectName + "Fields(table, req, projection))") + ";");
+			} else {
+				listDomainFields.addBodyLine("return " + loaded.apply(mapperFieldName + ".list" + domainObjectName
+						+ "Fields(req, projection(fields))") + ";");
+			}
+			serviceClass.addMethod(listDomainFields);
+			readMethods.add(listDomainFields);
+		}
+		
+		// service.getCache
+		if (serviceCache) {
+			ServiceCacheGenerator.addGetCache(serviceClass, cacheJavaType);
+		}
+		
+		// service.streamXXX, cursor需要在事务内消费完
+		Method streamDomain = null;
+		if (isStreamExport(introspectedTable)) {
+			serviceClass.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.cursor.Cursor"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.transaction.annotation.Transactional"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.function.Consumer"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.io.IOException"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.io.UncheckedIOException"));
+			streamDomain = new Method();
+			streamDomain.setVisibility(JavaVisibility.PUBLIC);
+			streamDomain.addAnnotation("@Transactional(readOnly = true)");
+			streamDomain.setName("stream" + domainObjectName);
+			streamDomain.addParameter(new Parameter(domainJavaType, "req"));
+			streamDomain.addParameter(new Parameter(
+					new FullyQualifiedJavaType("java.util.function.Consumer<" + domainObjectName + ">"), "consumer"));
+			if (filterCheck) {
+				streamDomain.addBodyLine("checkFilters(req);");
+			}
+			streamDomain.addBodyLine("try (Cursor<" + domainObjectName + "> cursor = " + mapperFieldName + ".stream"
+					+ domainObjectName + "(req)) {");
+			streamDomain.addBodyLine("for (" + domainObjectName + " row : cursor) {");
+			streamDomain.addBodyLine("consumer.accept(" + loaded.apply("row") + ");");
+			streamDomain.addBodyLine("}");
+			streamDomain.addBodyLine("} catch (IOException e) {");
+			streamDomain.addBodyLine("throw new UncheckedIOException(e);");
+			streamDomain.addBodyLine("}");
+			serviceClass.addMethod(streamDomain);
+		}
+		
+		// service.pageXXX
+		Method pageDomain = null;
+		final FullyQualifiedJavaType pageJavaType = primaryKeyType == null ? null
+				: new FullyQualifiedJavaType(properties.getProperty("servicePackage") + ".CursorPage<" + domainObjectName
+						+ ", " + primaryKeyType.getShortName() + ">");
+		if (isCursorPage(introspectedTable)) {
+			addConstant(serviceClass, "MAX_PAGE_SIZE", getIntProperty(introspectedTable, "maxPageSize", DEFAULT_MAX_PAGE_SIZE));
+			serviceClass.addImportedType(pageJavaType);
+			pageDomain = new Method();
+			pageDomain.setVisibility(JavaVisibility.PUBLIC);
+			pageDomain.setName("page" + domainObjectName);
+			pageDomain.addParameter(new Parameter(domainJavaType, "req"));
+			pageDomain.addParameter(new Parameter(primaryKeyType, "cursor"));
+			pageDomain.addParameter(new Parameter(new FullyQualifiedJavaType("int"), "size"));
+			pageDomain.setReturnType(pageJavaType);
+			if (filterCheck) {
+				pageDomain.addBodyLine("checkFilters(req);");
+			}
+			pageDomain.addBodyLine("int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));");
+			// 多查一行判断是否还有下一页
+			pageDomain.addBodyLine("List<" + domainObjectName + "> rows = " + loaded.apply(mapperFieldName + ".page"
+					+ domainObjectName + "(req, cursor, pageSize + 1)") + ";");
+			pageDomain.addBodyLine("if (rows.size() <= pageSize) {");
+			pageDomain.addBodyLine("return new CursorPage<>(rows, null);");
+			pageDomain.addBodyLine("}");
+			pageDomain.addBodyLine("rows = new ArrayList<>(rows.subList(0, pageSize));");
+			pageDomain.addBodyLine("return new CursorPage<>(rows, rows.get(pageSize - 1)." + pkGetter + "());");
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.ArrayList"));
+			serviceClass.addMethod(pageDomain);
+			readMethods.add(pageDomain);
+		}
+		
+		// service.batchInsert
+		final ChunkedBatchBuilder chunkedBatch = new ChunkedBatchBuilder(serviceClass, domainObjectName, mapperTypeName,
+				mapperFieldName, batchExecutor, sharded);
+		final List<String> invalidateRows = serviceCache ? ServiceCacheGenerator.invalidateRowsLines(domainObjectName, primaryKeyType, pkGetter)
+				: Collections.<String>emptyList();
+		final List<IntrospectedColumn> batchInsertColumns = batchInsertColumns(introspectedTable);
+		writeMethods.add(chunkedBatch.build("batchInsert", "BATCH_INSERT_CHUNK_SIZE",
+				batchChunkSize(introspectedTable, batchInsertColumns), Collections.<String>emptyList()));
+
+		// service.bulkInsert, 边读边按块调用batchInsert, 最多BULK_ADD_MAX_IN_FLIGHT个块在写, 内存占用与总行数无关
+		Method bulkInsertMethod = null;
+		if (Boolean.parseBoolean(getProperty(introspectedTable, "bulkAdd", "false"))) {
+			final String bulkAddExecutor = getProperty(introspectedTable, "bulkAddExecutor", null);
+			final FullyQualifiedJavaType bulkResultJavaType = new FullyQualifiedJavaType(
+					properties.getProperty("servicePackage") + ".BulkResult");
+			final FullyQualifiedJavaType chunkJavaType = new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">");
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.ArrayList"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.Iterator"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.Semaphore"));
+			serviceClass.addImportedType(bulkResultJavaType);
+			addConstant(serviceClass, "BULK_ADD_CHUNK_SIZE", getIntProperty(introspectedTable, "bulkAddChunkSize",
+					batchChunkSize(introspectedTable, batchInsertColumns)));
+			addConstant(serviceClass, "BULK_ADD_MAX_IN_FLIGHT",
+					Math.max(1, getIntProperty(introspectedTable, "bulkAddMaxInFlight", DEFAULT_BULK_ADD_MAX_IN_FLIGHT)));
+			if (bulkAddExecutor != null) {
+				serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.Executor"));
+				serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.RejectedExecutionException"));
+				serviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.beans.factory.annotation.Qualifier"));
+				Field executorField = new Field("bulkAddExecutor", new FullyQualifiedJavaType("java.util.concurrent.Executor"));
+				executorField.addAnnotation("@Autowired");
+				executorField.addAnnotation("@Qualifier(\"" + bulkAddExecutor + "\")");
+				executorField.setVisibility(JavaVisibility.PRIVATE);
+				serviceClass.addField(executorField);
+			}
+
+			bulkInsertMethod = new Method();
+			bulkInsertMethod.setVisibility(JavaVisibility.PUBLIC);
+			bulkInsertMethod.setName("bulkInsert");
+			bulkInsertMethod.addParameter(new Parameter(
+					new FullyQualifiedJavaType("java.util.Iterator<" + domainObjectName + ">"), "rows"));
+			bulkInsertMethod.setReturnType(bulkResultJavaType);
+			bulkInsertMethod.addBodyLine("BulkResult result = new BulkResult();");
+			bulkInsertMethod.addBodyLine("Semaphore inFlight = new Semaphore(BULK_ADD_MAX_IN_FLIGHT);");
+			bulkInsertMethod.addBodyLine("List<" + domainObjectName + "> chunk = new ArrayList<>();");
+			bulkInsertMethod.addBodyLine("try {");
+			bulkInsertMethod.addBodyLine("while (rows.hasNext()) {");
+			bulkInsertMethod.addBodyLine("chunk.add(rows.next());");
+			bulkInsertMethod.addBodyLine("if (chunk.size() >= BULK_ADD_CHUNK_SIZE) {");
+			bulkInsertMethod.addBodyLine("writeBulkChunk(chunk, inFlight, result);");
+			bulkInsertMethod.addBodyLine("chunk = new ArrayList<>();");
+			bulkInsertMethod.addBodyLine("}");
+			bulkInsertMethod.addBodyLine("}");
+			bulkInsertMethod.addBodyLine("} catch (RuntimeException e) {");
+			// 解析失败时已读出的行照常写入, 后面的内容不再读取
+			bulkInsertMethod.addBodyLine("result.setError(e.getMessage());");
+			bulkInsertMethod.addBodyLine("}");
+			bulkInsertMethod.addBodyLine("if (!chunk.isEmpty()) {");
+			bulkInsertMethod.addBodyLine("writeBulkChunk(chunk, inFlight, result);");
+			bulkInsertMethod.addBodyLine("}");
+			bulkInsertMethod.addBodyLine("inFlight.acquireUninterruptibly(BULK_ADD_MAX_IN_FLIGHT);");
+			bulkInsertMethod.addBodyLine("return result;");
+			serviceClass.addMethod(bulkInsertMethod);
+			writeMethods.add(bulkInsertMethod);
+
+			// 没有空闲许可时阻塞读取, 形成背压; 线程池拒绝时在当前线程写入
+			Method writeChunkMethod = new Method();
+			writeChunkMethod.setVisibility(JavaVisibility.PRIVATE);
+			writeChunkMethod.setName("writeBulkChunk");
+			writeChunkMethod.addParameter(new Parameter(chunkJavaType, "chunk"));
+			writeChunkMethod.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.concurrent.Semaphore"), "inFlight"));
+			writeChunkMethod.addParameter(new Parameter(bulkResultJavaType, "result"));
+			writeChunkMethod.addBodyLine("inFlight.acquireUninterruptibly();");
+			writeChunkMethod.addBodyLine("Runnable write = () -> {");
+			writeChunkMethod.addBodyLine("try {");
+			writeChunkMethod.addBodyLine("batchInsert(chunk);");
+			writeChunkMethod.addBodyLine("result.addAccepted(chunk.size());");
+			writeChunkMethod.addBodyLine("} catch (RuntimeException e) {");
+			// 只返回最内层的异常信息, 不带MyBatis拼接的SQL
+			writeChunkMethod.addBodyLine("Throwable cause = e;");
+			writeChunkMethod.addBodyLine("while (cause.getCause() != null) {");
+			writeChunkMethod.addBodyLine("cause = cause.getCause();");
+			writeChunkMethod.addBodyLine("}");
+			writeChunkMethod.addBodyLine("result.addFailed(chunk.size(), cause.getMessage());");
+			writeChunkMethod.addBodyLine("} finally {");
+			writeChunkMethod.addBodyLine("inFlight.release();");
+			writeChunkMethod.addBodyLine("}");
+			writeChunkMethod.addBodyLine("};");
+			if (bulkAddExecutor != null) {
+				writeChunkMethod.addBodyLine("try {");
+				writeChunkMethod.addBodyLine("bulkAddExecutor.execute(write);");
+				writeChunkMethod.addBodyLine("} catch (RejectedExecutionException e) {");
+				writeChunkMethod.addBodyLine("write.run();");
+				writeChunkMethod.addBodyLine("}");
+			} else {
+				writeChunkMethod.addBodyLine("write.run();");
+			}
+			serviceClass.addMethod(writeChunkMethod);
+		}
+		
+		// service.batchInsertOrUpdate
+		if (introspectedTable.hasPrimaryKeyColumns()) {
+			writeMethods.add(chunkedBatch.build("batchInsertOrUpdate", "BATCH_UPSERT_CHUNK_SIZE",
+					batchChunkSize(introspectedTable, compiled.getNonBLOBColumns()), invalidateRows));
+		}
+		
+		// service.batchDeleteByPrimaryKey, 复用listByIds的分桶
+		Method batchDeleteMethod = null;
+		if (listByIdsMethod != null) {
+			final String pkTypeName = primaryKeyType.getShortName();
+			batchDeleteMethod = new Method();
+			batchDeleteMethod.setVisibility(JavaVisibility.PUBLIC);
+			batchDeleteMethod.setName("batchDeleteByPrimaryKey");
+			batchDeleteMethod.addParameter(new Parameter(idsJavaType, "ids"));
+			batchDeleteMethod.setReturnType(new FullyQualifiedJavaType("int"));
+			batchDeleteMethod.addBodyLine("if (ids == null || ids.isEmpty()) {");
+			batchDeleteMethod.addBodyLine("return 0;");
+			batchDeleteMethod.addBodyLine("}");
+			batchDeleteMethod.addBodyLine("List<" + pkTypeName + "> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));");
+			batchDeleteMethod.addBodyLine("distinctIds.remove(null);");
+			batchDeleteMethod.addBodyLine("int rows = 0;");
+			if (routeById) {
+				batchDeleteMethod.addBodyLine("for (Map.Entry<String, List<" + pkTypeName + ">> group : groupIds(distinctIds).entrySet()) {");
+				batchDeleteMethod.addBodyLine("for (List<" + pkTypeName + "> bucket : partitionIds(group.getValue())) {");
+				batchDeleteMethod.addBodyLine("rows += " + mapperFieldName + ".batchDeleteByPrimaryKey(group.getKey(), bucket);");
+				batchDeleteMethod.addBodyLine("}");
+			} else if (sharded) {
+				batchDeleteMethod.addBodyLine("for (String table : SHARD_TABLES) {");
+				batchDeleteMethod.addBodyLine("for (List<" + pkTypeName + "> bucket : partitionIds(distinctIds)) {");
+				batchDeleteMethod.addBodyLine("rows += " + mapperFieldName + ".batchDeleteByPrimaryKey(table, bucket);");
+				batchDeleteMethod.addBodyLine("}");
+			} else {
+				batchDeleteMethod.addBodyLine("for (List<" + pkTypeName + "> bucket : partitionIds(distinctIds)) {");
+				batchDeleteMethod.addBodyLine("rows += " + mapperFieldName + ".batchDeleteByPrimaryKey(bucket);");
+			}
+			batchDeleteMethod.addBodyLine("}");
+			if (serviceCache) {
+				batchDeleteMethod.addBodyLine("cache.invalidateAll(distinctIds);");
+			}
+			batchDeleteMethod.addBodyLine("return rows;");
+			serviceClass.addMethod(batchDeleteMethod);
+			writeMethods.add(batchDeleteMethod);
+		}
+		
+		// service.batchUpdateByPrimaryKey, JDBC_BATCH模式逐行updateByPrimaryKey走JDBC batch, CASE_WHEN模式分块调用mapper
+		// 两种模式都需要非主键列, 只有主键列的表没有updateByPrimaryKey和可更新的列
+		Method batchUpdateMethod = null;
+		final boolean batchUpdate = listByIdsMethod != null && !compiled.getBaseColumns().isEmpty();
+		final boolean jdbcBatchUpdate = batchUpdate && !isCaseWhenBatchUpdate(introspectedTable);
+		if (batchUpdate) {
+			if (jdbcBatchUpdate) {
+				addConstant(serviceClass, "BATCH_UPDATE_CHUNK_SIZE",
+						batchChunkSize(introspectedTable, compiled.getNonBLOBColumns()));
+				batchUpdateMethod = new Method();
+				batchUpdateMethod.setVisibility(JavaVisibility.PUBLIC);
+				batchUpdateMethod.setName("batchUpdateByPrimaryKey");
+				batchUpdateMethod.addParameter(new Parameter(
+						new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"), "list"));
+				batchUpdateMethod.setReturnType(new FullyQualifiedJavaType("int"));
+				batchUpdateMethod.addBodyLine("if (list == null || list.isEmpty()) {");
+				batchUpdateMethod.addBodyLine("return 0;");
+				batchUpdateMethod.addBodyLine("}");
+				batchUpdateMethod.addBodyLine("int rows = executeBatch(session -> {");
+				batchUpdateMethod.addBodyLine(mapperTypeName + " mapper = session.getMapper(" + mapperTypeName + ".class);");
+				batchUpdateMethod.addBodyLine("int updated = 0;");
+				if (sharded) {
+					// 同一分表的行连续执行, 相同的语句才能合并到一个JDBC batch
+					batchUpdateMethod.addBodyLine("int statements = 0;");
+					batchUpdateMethod.addBodyLine("for (Map.Entry<String, List<" + domainObjectName + ">> group : groupRows(list).entrySet()) {");
+					batchUpdateMethod.addBodyLine("for (" + domainObjectName + " row : group.getValue()) {");
+					batchUpdateMethod.addBodyLine("mapper.updateByPrimaryKey(group.getKey(), row);");
+					batchUpdateMethod.addBodyLine("if (++statements % BATCH_UPDATE_CHUNK_SIZE == 0) {");
+					batchUpdateMethod.addBodyLine("updated += flushStatements(session);");
+					batchUpdateMethod.addBodyLine("}");
+					batchUpdateMethod.addBodyLine("}");
+					batchUpdateMethod.addBodyLine("}");
+				} else {
+					batchUpdateMethod.addBodyLine("for (int i = 0; i < list.size(); i++) {");
+					batchUpdateMethod.addBodyLine("mapper.updateByPrimaryKey(list.get(i));");
+					batchUpdateMethod.addBodyLine("if ((i + 1) % BATCH_UPDATE_CHUNK_SIZE == 0) {");
+					batchUpdateMethod.addBodyLine("updated += flushStatements(session);");
+					batchUpdateMethod.addBodyLine("}");
+					batchUpdateMethod.addBodyLine("}");
+				}
+				batchUpdateMethod.addBodyLine("return updated + flushStatements(session);");
+				batchUpdateMethod.addBodyLine("});");
+				batchUpdateMethod.addBodyLines(invalidateRows);
+				batchUpdateMethod.addBodyLine("return rows;");
+				serviceClass.addMethod(batchUpdateMethod);
+			} else {
+				// 每行占用的参数: 每列when/then各一个, 加上where in的主键
+				List<IntrospectedColumn> caseColumns = new ArrayList<>();
+				for (IntrospectedColumn column : compiled.getBaseColumns()) {
+					caseColumns.add(primaryKeyColumns.get(0));
+					caseColumns.add(column);
+				}
+				caseColumns.add(primaryKeyColumns.get(0));
+				batchUpdateMethod = chunkedBatch.build("batchUpdateByPrimaryKey", "BATCH_UPDATE_CHUNK_SIZE",
+						batchChunkSize(introspectedTable, caseColumns), invalidateRows);
+			}
+			writeMethods.add(batchUpdateMethod);
+		}
+		
+		// service.getByXXX/listByXXX, 索引查询
+		List<Method> finderMethods = new ArrayList<>();
+		for (TableIndex index : getIndexes(introspectedTable)) {
+			Method finderMethod = new Method();
+			finderMethod.setVisibility(JavaVisibility.PUBLIC);
+			finderMethod.setName(finderName(index.isUnique() ? "getBy" : "listBy", index.getColumns(), ""));
+			finderMethod.setReturnType(index.isUnique() ? domainJavaType
+					: new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"));
+			List<String> arguments = new ArrayList<>();
+			for (IntrospectedColumn column : index.getColumns()) {
+				finderMethod.addParameter(new Parameter(column.getFullyQualifiedJavaType(), column.getJavaProperty()));
+				serviceClass.addImportedType(column.getFullyQualifiedJavaType());
+				arguments.add(column.getJavaProperty());
+			}
+			if (sharded && index.getColumns().contains(shardColumn)) {
+				arguments.add(0, "shardTable(" + shardColumn.getJavaProperty() + ")");
+			} else if (sharded && index.isUnique()) {
+				// 不含分片列的唯一索引, 依次查询各分表
+				arguments.add(0, "SHARD_TABLES.get(i)");
+				finderMethod.addBodyLine(domainObjectName + " row = null;");
+				finderMethod.addBodyLine("for (int i = 0; i < SHARD_TABLES.size() && row == null; i++) {");
+				finderMethod.addBodyLine("row = " + mapperFieldName + "." + finderMethod.getName() + "("
+						+ String.join(", ", arguments) + ");");
+				finderMethod.addBodyLine("}");
+				finderMethod.addBodyLine("return " + loaded.apply("row") + ";");
+			} else if (sharded) {
+				arguments.add(0, "table");
+				finderMethod.addBodyLine("return " + loaded.apply("scatter(SHARD_TABLES, table -> " + mapperFieldName + "."
+						+ finderMethod.getName() + "(" + String.join(", ", arguments) + "))") + ";");
+			}
+			if (finderMethod.getBodyLines().isEmpty()) {
+				finderMethod.addBodyLine("return " + loaded.apply(mapperFieldName + "." + finderMethod.getName() + "("
+						+ String.join(", ", arguments) + ")") + ";");
+			}
+			serviceClass.addMethod(finderMethod);
+			finderMethods.add(finderMethod);
+			readMethods.add(finderMethod);
+		}
+		
+		// service.listByXXXIn, 去重后按LIST_BY_IDS_BUCKET_SIZE分块
+		List<Method> inFinderMethods = new ArrayList<>();
+		List<IntrospectedColumn> inFinderColumns = inFinderColumns(introspectedTable);
+		if (!inFinderColumns.isEmpty() && listByIdsMethod == null) {
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.ArrayList"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.LinkedHashSet"));
+			addConstant(serviceClass, "LIST_BY_IDS_BUCKET_SIZE",
+					getIntProperty(introspectedTable, "listByIdsBucketSize", DEFAULT_LIST_BY_IDS_BUCKET_SIZE));
+		}
+		for (IntrospectedColumn column : inFinderColumns) {
+			final String valueTypeName = column.getFullyQualifiedJavaType().getShortName();
+			Method inFinderMethod = new Method();
+			inFinderMethod.setVisibility(JavaVisibility.PUBLIC);
+			inFinderMethod.setName(finderName("listBy", Collections.singletonList(column), "In"));
+			inFinderMethod.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.List<" + valueTypeName + ">"), "values"));
+			inFinderMethod.setReturnType(new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"));
+			serviceClass.addImportedType(column.getFullyQualifiedJavaType());
+			inFinderMethod.addBodyLine("if (values == null || values.isEmpty()) {");
+			inFinderMethod.addBodyLine("return new ArrayList<>();");
+			inFinderMethod.addBodyLine("}");
+			inFinderMethod.addBodyLine("List<" + valueTypeName + "> distinctValues = new ArrayList<>(new LinkedHashSet<>(values));");
+			inFinderMethod.addBodyLine("distinctValues.remove(null);");
+			inFinderMethod.addBodyLine("List<" + domainObjectName + "> rows = new ArrayList<>();");
+			inFinderMethod.addBodyLine("for (int i = 0; i < distinctValues.size(); i += LIST_BY_IDS_BUCKET_SIZE) {");
+			if (sharded) {
+				inFinderMethod.addBodyLine("List<" + valueTypeName + "> bucket = distinctValues.subList(i, Math.min(i + LIST_BY_IDS_BUCKET_SIZE, distinctValues.size()));");
+				inFinderMethod.addBodyLine("rows.addAll(scatter(SHARD_TABLES, table -> " + mapperFieldName + "."
+						+ inFinderMethod.getName() + "(table, bucket)));");
+			} else {
+				inFinderMethod.addBodyLine("rows.addAll(" + mapperFieldName + "." + inFinderMethod.getName()
+						+ "(distinctValues.subList(i, Math.min(i + LIST_BY_IDS_BUCKET_SIZE, distinctValues.size()))));");
+			}
+			inFinderMethod.addBodyLine("}");
+			inFinderMethod.addBodyLine("return " + loaded.apply("rows") + ";");
+			serviceClass.addMethod(inFinderMethod);
+			inFinderMethods.add(inFinderMethod);
+			readMethods.add(inFinderMethod);
+		}
+		
+		if (cleanLoaded) {
+			addCleanLoaded(serviceClass, introspectedTable, domainObjectName, copyCached || batchLoader);
+		}
+		if (batchExecutor || jdbcBatchUpdate) {
+			addBatchSessionSupport(serviceClass, introspectedTable);
+		}
+		if (isReadWriteSplit(introspectedTable)) {
+			readRoutingGenerator.addReadRouting(serviceClass, introspectedTable, mapperTypeName, mapperFieldName, readMethods, writeMethods);
+		}
+		if (Boolean.parseBoolean(getProperty(introspectedTable, "serviceMetrics", "false"))) {
+			serviceMetricsGenerator.addServiceMetrics(serviceClass, introspectedTable, streamDomain);
+		}
 		GeneratedJavaFile service = new GeneratedJavaFile(serviceClass, properties.getProperty("javaTargetProject"),
 				context.getJavaFormatter());
 		javaFiles.add(service);
+		IncrementalGenerator.addGeneratedFile(introspectedTable, service);
 		
 		//----------------------- Controller ------------------------
 		String responseTypeName = properties.getProperty("responseGenericityType");
@@ -373,10 +1966,16 @@ public class CustomMethodGenerator extends PluginAdapter {
 		addApi.addBodyLine("return new " + responseObjectName + "<>();");
 		controllerClass.addMethod(addApi);
 
+		// 按主键接口的id参数, 复合主键按属性名绑定请求参数到主键类
+		final Parameter idParamter = primaryKeyType == null ? null : new Parameter(primaryKeyType, "id");
+		if (idParamter != null && !rules.generatePrimaryKeyClass()) {
+			idParamter.addAnnotation("@RequestParam(\"id\")");
+		} else if (idParamter != null) {
+			controllerClass.addImportedType(primaryKeyType);
+		}
+
 		// controller.delete
 		if (deleteMethod != null) {
-			final Parameter idParamter = new Parameter(deleteMethod.getParameters().get(0).getType(), "id");
-			idParamter.addAnnotation("@RequestParam(\"id\")");
 			Method deleteApi = new Method();
 			deleteApi.setVisibility(JavaVisibility.PUBLIC);
 			deleteApi.addAnnotation("@PostMapping(value = \"/" + domainObjectName + "/delete\")");
@@ -390,21 +1989,21 @@ public class CustomMethodGenerator extends PluginAdapter {
 		}
 
 		// controller.update
-		Method updateApi = new Method();
-		updateApi.setVisibility(JavaVisibility.PUBLIC);
-		updateApi.addAnnotation("@PostMapping(value = \"/" + domainObjectName + "/update\")");
-		updateApi.addAnnotation("@ApiOperation(value = \"更新" + remarks + "\")");
-		updateApi.setName(updateMethod.getName());
-		updateApi.addParameter(domainParamter);
-		updateApi.setReturnType(longResponseType);
-		updateApi.addBodyLine(seriveFieldName + "." + updateMethod.getName() + "(req);");
-		updateApi.addBodyLine("return new " + responseObjectName + "<>();");
-		controllerClass.addMethod(updateApi);
+		if (updateMethod != null) {
+			Method updateApi = new Method();
+			updateApi.setVisibility(JavaVisibility.PUBLIC);
+			updateApi.addAnnotation("@PostMapping(value = \"/" + domainObjectName + "/update\")");
+			updateApi.addAnnotation("@ApiOperation(value = \"更新" + remarks + "\")");
+			updateApi.setName(updateMethod.getName());
+			updateApi.addParameter(domainParamter);
+			updateApi.setReturnType(longResponseType);
+			updateApi.addBodyLine(seriveFieldName + "." + updateMethod.getName() + "(req);");
+			updateApi.addBodyLine("return new " + responseObjectName + "<>();");
+			controllerClass.addMethod(updateApi);
+		}
 
 		// service.get
 		if (getMethod != null) {
-			final Parameter idParamter = new Parameter(deleteMethod.getParameters().get(0).getType(), "id");
-			idParamter.addAnnotation("@RequestParam(\"id\")");
 			Method getApi = new Method();
 			getApi.setVisibility(JavaVisibility.PUBLIC);
 			getApi.addAnnotation("@GetMapping(value = \"/" + domainObjectName + "/get\")");
@@ -416,6 +2015,10 @@ public class CustomMethodGenerator extends PluginAdapter {
 			controllerClass.addMethod(getApi);
 		}
 
+		// 列表接口的fields参数, 逗号分隔的属性名, 不传时返回全部列
+		final Parameter fieldsParameter = new Parameter(new FullyQualifiedJavaType("java.util.List<String>"), "fields");
+		fieldsParameter.addAnnotation("@RequestParam(value = \"fields\", required = false)");
+
 		// controller.listByIds
 		if (listByIdsMethod != null) {
 			Method listByIdsApi = new Method();
@@ -427,10 +2030,47 @@ public class CustomMethodGenerator extends PluginAdapter {
 			listByIdsApi.addParameter(idsParameter);
 			listByIdsApi.setName(listByIdsMethod.getName());
 			listByIdsApi.setReturnType(listResponseType);
-			listByIdsApi.addBodyLine("return new " + responseObjectName + "<>("+seriveFieldName + "." + listByIdsApi.getName() + "(ids)"+");");
+			if (columnProjection) {
+				listByIdsApi.addParameter(fieldsParameter);
+				listByIdsApi.addBodyLine("return new " + responseObjectName + "<>("+seriveFieldName + "." + listByIdsApi.getName() + "(ids, fields)"+");");
+			} else {
+				listByIdsApi.addBodyLine("return new " + responseObjectName + "<>("+seriveFieldName + "." + listByIdsApi.getName() + "(ids)"+");");
+			}
 			controllerClass.addMethod(listByIdsApi);
 		}
 
+		// controller.batchUpdate
+		if (batchUpdateMethod != null) {
+			Parameter listParameter = new Parameter(batchUpdateMethod.getParameters().get(0).getType(), "list");
+			listParameter.addAnnotation("@RequestBody");
+			Method batchUpdateApi = new Method();
+			batchUpdateApi.setVisibility(JavaVisibility.PUBLIC);
+			batchUpdateApi.addAnnotation("@PostMapping(value = \"/" + domainObjectName + "/batchUpdate\")");
+			batchUpdateApi.addAnnotation("@ApiOperation(value = \"批量更新" + remarks + "\")");
+			batchUpdateApi.addParameter(listParameter);
+			batchUpdateApi.setName(batchUpdateMethod.getName());
+			batchUpdateApi.setReturnType(longResponseType);
+			batchUpdateApi.addBodyLine("return new " + responseObjectName + "<>((long) " + seriveFieldName + "."
+					+ batchUpdateMethod.getName() + "(list));");
+			controllerClass.addMethod(batchUpdateApi);
+		}
+
+		// controller.batchDelete
+		if (batchDeleteMethod != null) {
+			Parameter idsParameter = new Parameter(idsJavaType, "ids");
+			idsParameter.addAnnotation("@RequestBody");
+			Method batchDeleteApi = new Method();
+			batchDeleteApi.setVisibility(JavaVisibility.PUBLIC);
+			batchDeleteApi.addAnnotation("@PostMapping(value = \"/" + domainObjectName + "/batchDelete\")");
+			batchDeleteApi.addAnnotation("@ApiOperation(value = \"批量删除" + remarks + "\")");
+			batchDeleteApi.addParameter(idsParameter);
+			batchDeleteApi.setName(batchDeleteMethod.getName());
+			batchDeleteApi.setReturnType(longResponseType);
+			batchDeleteApi.addBodyLine("return new " + responseObjectName + "<>((long) " + seriveFieldName + "."
+					+ batchDeleteMethod.getName() + "(ids));");
+			controllerClass.addMethod(batchDeleteApi);
+		}
+
 		// controller.listXXX
 		Method listApi = new Method();
 		listApi.setVisibility(JavaVisibility.PUBLIC);
@@ -439,13 +2079,143 @@ public class CustomMethodGenerator extends PluginAdapter {
 		listApi.addParameter(domainParamter);
 		listApi.setName(listDomain.getName());
 		listApi.setReturnType(listResponseType);
-		listApi.addBodyLine("return new " + responseObjectName + "<>("+seriveFieldName + "." + listDomain.getName() + "(req)"+");");
+		if (listDomainFields != null) {
+			listApi.addParameter(fieldsParameter);
+			listApi.addBodyLine("return new " + responseObjectName + "<>("+seriveFieldName + "." + listDomain.getName() + "(req, fields)"+");");
+		} else {
+			listApi.addBodyLine("return new " + responseObjectName + "<>("+seriveFieldName + "." + listDomain.getName() + "(req)"+");");
+		}
 		controllerClass.addMethod(listApi);
 		
+		// export和bulkAdd共用ObjectMapper
+		if (streamDomain != null || bulkInsertMethod != null) {
+			controllerClass.addImportedType(new FullyQualifiedJavaType("com.fasterxml.jackson.databind.ObjectMapper"));
+			controllerClass.addImportedType(new FullyQualifiedJavaType("java.io.IOException"));
+			Field objectMapperField = new Field("objectMapper",
+					new FullyQualifiedJavaType("com.fasterxml.jackson.databind.ObjectMapper"));
+			objectMapperField.setVisibility(JavaVisibility.PRIVATE);
+			objectMapperField.addAnnotation("@Autowired");
+			controllerClass.addField(objectMapperField);
+		}
+		
+		// controller.exportXXX, 逐行写出NDJSON
+		if (streamDomain != null) {
+			controllerClass.addImportedType(new FullyQualifiedJavaType("javax.servlet.http.HttpServletResponse"));
+			controllerClass.addImportedType(new FullyQualifiedJavaType("java.io.OutputStream"));
+			controllerClass.addImportedType(new FullyQualifiedJavaType("java.io.UncheckedIOException"));
+			
+			Method exportApi = new Method();
+			exportApi.setVisibility(JavaVisibility.PUBLIC);
+			exportApi.addAnnotation("@PostMapping(value = \"/" + domainObjectName + "/export\", produces = \"application/x-ndjson\")");
+			exportApi.addAnnotation("@ApiOperation(value = \"导出" + remarks + "-NDJSON\")");
+			exportApi.addParameter(domainParamter);
+			exportApi.addParameter(new Parameter(new FullyQualifiedJavaType("javax.servlet.http.HttpServletResponse"), "response"));
+			exportApi.addException(new FullyQualifiedJavaType("java.io.IOException"));
+			exportApi.setName("export" + domainObjectName);
+			exportApi.addBodyLine("response.setContentType(\"application/x-ndjson;charset=UTF-8\");");
+			exportApi.addBodyLine("OutputStream out = response.getOutputStream();");
+			exportApi.addBodyLine(seriveFieldName + "." + streamDomain.getName() + "(req, row -> {");
+			exportApi.addBodyLine("try {");
+			exportApi.addBodyLine("out.write(objectMapper.writeValueAsBytes(row));");
+			exportApi.addBodyLine("out.write('\\n');");
+			exportApi.addBodyLine("} catch (IOException e) {");
+			exportApi.addBodyLine("throw new UncheckedIOException(e);");
+			exportApi.addBodyLine("}");
+			exportApi.addBodyLine("});");
+			exportApi.addBodyLine("out.flush();");
+			controllerClass.addMethod(exportApi);
+		}
+		
+		// controller.bulkAddXXX, 请求体为JSON数组或NDJSON, MappingIterator逐条解析, 不整体读入内存
+		if (bulkInsertMethod != null) {
+			controllerClass.addImportedType(new FullyQualifiedJavaType("com.fasterxml.jackson.databind.MappingIterator"));
+			controllerClass.addImportedType(new FullyQualifiedJavaType("javax.servlet.http.HttpServletRequest"));
+			controllerClass.addImportedType(bulkInsertMethod.getReturnType());
+			Method bulkAddApi = new Method();
+			bulkAddApi.setVisibility(JavaVisibility.PUBLIC);
+			bulkAddApi.addAnnotation("@PostMapping(value = \"/" + domainObjectName + "/bulkAdd\")");
+			bulkAddApi.addAnnotation("@ApiOperation(value = \"批量导入" + remarks + "-JSON数组或NDJSON\")");
+			bulkAddApi.addParameter(new Parameter(new FullyQualifiedJavaType("javax.servlet.http.HttpServletRequest"), "request"));
+			bulkAddApi.addException(new FullyQualifiedJavaType("java.io.IOException"));
+			bulkAddApi.setName("bulkAdd" + domainObjectName);
+			bulkAddApi.setReturnType(new FullyQualifiedJavaType(
+					responseTypeName + "<" + bulkInsertMethod.getReturnType().getShortName() + ">"));
+			bulkAddApi.addBodyLine("try (MappingIterator<" + domainObjectName + "> rows = objectMapper.readerFor("
+					+ domainObjectName + ".class).readValues(request.getInputStream())) {");
+			bulkAddApi.addBodyLine("return new " + responseObjectName + "<>(" + seriveFieldName + "."
+					+ bulkInsertMethod.getName() + "(rows));");
+			bulkAddApi.addBodyLine("}");
+			controllerClass.addMethod(bulkAddApi);
+		}
+		
+		// controller.pageXXX
+		if (pageDomain != null) {
+			final Parameter cursorParameter = new Parameter(primaryKeyType, "cursor");
+			cursorParameter.addAnnotation("@RequestParam(value = \"cursor\", required = false)");
+			final Parameter sizeParameter = new Parameter(new FullyQualifiedJavaType("int"), "size");
+			sizeParameter.addAnnotation("@RequestParam(value = \"size\", defaultValue = \""
+					+ getIntProperty(introspectedTable, "defaultPageSize", DEFAULT_PAGE_SIZE) + "\")");
+			Method pageApi = new Method();
+			pageApi.setVisibility(JavaVisibility.PUBLIC);
+			pageApi.addAnnotation("@PostMapping(value = \"/" + domainObjectName + "/page\")");
+			pageApi.addAnnotation("@ApiOperation(value = \"分页查询" + remarks + "-游标\")");
+			pageApi.addParameter(domainParamter);
+			pageApi.addParameter(cursorParameter);
+			pageApi.addParameter(sizeParameter);
+			pageApi.setName(pageDomain.getName());
+			pageApi.setReturnType(new FullyQualifiedJavaType(responseTypeName + "<" + pageJavaType.getShortName() + ">"));
+			pageApi.addBodyLine("return new " + responseObjectName + "<>(" + seriveFieldName + "." + pageDomain.getName()
+					+ "(req, cursor, size));");
+			controllerClass.addImportedType(pageJavaType);
+			controllerClass.addMethod(pageApi);
+		}
+		
+		// controller.getByXXX/listByXXX, 参数取请求体中的索引列
+		for (Method finderMethod : finderMethods) {
+			boolean unique = finderMethod.getName().startsWith("getBy");
+			List<String> arguments = new ArrayList<>();
+			for (Parameter parameter : finderMethod.getParameters()) {
+				arguments.add("req." + JavaBeansUtil.getGetterMethodName(parameter.getName(), parameter.getType()) + "()");
+			}
+			Method finderApi = new Method();
+			finderApi.setVisibility(JavaVisibility.PUBLIC);
+			finderApi.addAnnotation("@PostMapping(value = \"/" + domainObjectName + "/" + finderMethod.getName() + "\")");
+			finderApi.addAnnotation("@ApiOperation(value = \"" + (unique ? "详情查询" : "列表查询") + remarks + "-"
+					+ finderMethod.getName().substring(unique ? 5 : 6) + "\")");
+			finderApi.addParameter(domainParamter);
+			finderApi.setName(finderMethod.getName());
+			finderApi.setReturnType(unique ? domainResponseType : listResponseType);
+			finderApi.addBodyLine("return new " + responseObjectName + "<>(" + seriveFieldName + "." + finderMethod.getName()
+					+ "(" + String.join(", ", arguments) + "));");
+			controllerClass.addMethod(finderApi);
+		}
+		
+		// controller.listByXXXIn
+		for (Method inFinderMethod : inFinderMethods) {
+			Parameter valuesParameter = new Parameter(inFinderMethod.getParameters().get(0).getType(), "values");
+			valuesParameter.addAnnotation("@RequestBody");
+			Method inFinderApi = new Method();
+			inFinderApi.setVisibility(JavaVisibility.PUBLIC);
+			inFinderApi.addAnnotation("@PostMapping(value = \"/" + domainObjectName + "/" + inFinderMethod.getName() + "\")");
+			inFinderApi.addAnnotation("@ApiOperation(value = \"列表查询" + remarks + "-" + inFinderMethod.getName().substring(6) + "\")");
+			inFinderApi.addParameter(valuesParameter);
+			inFinderApi.setName(inFinderMethod.getName());
+			inFinderApi.setReturnType(listResponseType);
+			inFinderApi.addBodyLine("return new " + responseObjectName + "<>(" + seriveFieldName + "." + inFinderMethod.getName()
+					+ "(values));");
+			controllerClass.addImportedType(inFinderMethod.getParameters().get(0).getType());
+			controllerClass.addMethod(inFinderApi);
+		}
+		
+		if (Boolean.parseBoolean(getProperty(introspectedTable, "asyncController", "false"))) {
+			asyncControllerGenerator.makeControllerAsync(controllerClass, introspectedTable);
+		}
+		
 		GeneratedJavaFile controller = new GeneratedJavaFile(controllerClass,
 				properties.getProperty("javaTargetProject"), context.getJavaFormatter());
 		javaFiles.add(controller);
+		IncrementalGenerator.addGeneratedFile(introspectedTable, controller);
 		
 		return javaFiles;
-    }
+	}
 }
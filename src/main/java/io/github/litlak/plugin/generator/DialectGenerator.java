@@ -0,0 +1,315 @@
+package io.github.litlak.plugin.generator;
+
+import static io.github.litlak.plugin.generator.SqlMapElements.addPairedLines;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.TextElement;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+
+/**
+ * CustomMethodGenerator的dialect: batchInsert, insertOrUpdate, batchInsertOrUpdate按数据库生成 <br>
+ * MYSQL(默认) 多行values, on duplicate key update <br>
+ * POSTGRESQL 列都能转成数组时从unnest取行, on conflict <br>
+ * H2 merge into ... using (values ...) <br>
+ * 配置(plugin或table property, table优先): dialect, upsertExcludeColumns, upsertTimestampColumns
+ *
+ * @author Scomy
+ */
+class DialectGenerator {
+
+	/**
+	 * PostgreSQL unnest数组参数支持的元素类型, 由ArrayTypeHandler按元素类型创建数组
+	 */
+	private static final Set<String> UNNEST_JAVA_TYPES = new HashSet<>(Arrays.asList("java.lang.String",
+			"java.lang.Long", "java.lang.Integer", "java.lang.Short", "java.lang.Boolean", "java.math.BigDecimal"));
+	
+	private final CustomMethodGenerator plugin;
+
+	DialectGenerator(CustomMethodGenerator plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * batchInsert: MySQL/H2为多行values, PostgreSQL为unnest或多行values
+	 */
+	void addBatchInsert(XmlElement root, IntrospectedTable introspectedTable, String tableName, boolean sharded) {
+		final CompiledTable compiled = CompiledTable.of(introspectedTable);
+		final String domainObjectFullyName = introspectedTable.getBaseRecordType();
+		final boolean postgreSql = isPostgreSql(introspectedTable);
+		final IntrospectedColumn identityColumn = plugin.identityColumn(introspectedTable);
+		XmlElement batchInsert = new XmlElement("insert");
+		batchInsert.addAttribute(new Attribute("id", "batchInsert"));
+		if (!sharded) {
+			batchInsert.addAttribute(new Attribute("parameterType", domainObjectFullyName));
+		}
+		batchInsert.addElement(new TextElement("insert into " + tableName + " ("));
+		// 分表的主键需要全局唯一, 不能依赖各分表的自增, 由调用方赋值
+		addPairedLines(batchInsert, identityColumn == null ? compiled.getNonBLOBColumnNames() : compiled.getBaseColumnNames());
+		if (postgreSql) {
+			batchInsert.addElement(new TextElement(")"));
+			addPostgreSqlRows(batchInsert, compiled, plugin.batchInsertColumns(introspectedTable), null, tableName);
+		} else {
+			batchInsert.addElement(new TextElement(") values "));
+			batchInsert.addElement(SqlMapElements.valuesRows(
+					identityColumn == null ? compiled.getNonBLOBItemParameters() : compiled.getBaseItemParameters()));
+		}
+		root.addElement(batchInsert);
+	}
+
+	/**
+	 * insertOrUpdate和batchInsertOrUpdate, 有主键时生成: MySQL为on duplicate key update, PostgreSQL为on conflict, H2为merge
+	 */
+	void addInsertOrUpdate(XmlElement root, IntrospectedTable introspectedTable, String tableName, boolean sharded) {
+		final CompiledTable compiled = CompiledTable.of(introspectedTable);
+		final String domainObjectFullyName = introspectedTable.getBaseRecordType();
+		final List<IntrospectedColumn> primaryKeyColumns = compiled.getPrimaryKeyColumns();
+		final boolean postgreSql = isPostgreSql(introspectedTable);
+		final boolean h2 = isH2(introspectedTable);
+		final IntrospectedColumn identityColumn = plugin.identityColumn(introspectedTable);
+		// 包含主键列, 主键为空时由自增生成, 不为空时按主键/唯一键upsert
+		final List<IntrospectedColumn> upsertColumns = compiled.getNonBLOBColumns();
+		final List<String> columnNames = compiled.getNonBLOBColumnNames();
+		final Function<CompiledTable.CompiledColumn, String> parameterFunction = sharded
+				? CompiledTable.CompiledColumn::getRecordParameter : CompiledTable.CompiledColumn::getParameter;
+		final String conflictColumns = primaryKeyColumns.stream().map(e -> compiled.column(e).getName())
+				.collect(Collectors.joining(", "));
+		XmlElement insertOrUpdate = new XmlElement("insert");
+		insertOrUpdate.addAttribute(new Attribute("id", "insertOrUpdate"));
+		if (!sharded) {
+			insertOrUpdate.addAttribute(new Attribute("parameterType", domainObjectFullyName));
+		}
+		if (h2) {
+			insertOrUpdate.addElement(new TextElement("merge into " + tableName + " t using (values ("));
+			addPairedLines(insertOrUpdate, upsertColumns.stream().map(compiled::column).map(parameterFunction)
+					.collect(Collectors.toList()));
+			insertOrUpdate.addElement(new TextElement(")"));
+			addH2Merge(insertOrUpdate, compiled, upsertColumns, primaryKeyColumns, identityColumn,
+					upsertAssignments(introspectedTable, upsertColumns, e -> "s." + e.getName()));
+		} else if (postgreSql) {
+			insertOrUpdate.addElement(new TextElement("insert into " + tableName + " ("));
+			addPairedLines(insertOrUpdate, columnNames);
+			insertOrUpdate.addElement(new TextElement(") values ("));
+			List<String> values = new ArrayList<>();
+			for (IntrospectedColumn column : upsertColumns) {
+				String value = parameterFunction.apply(compiled.column(column));
+				values.add(column == identityColumn ? postgreSqlIdentityValue(value, tableName, column) : value);
+			}
+			addPairedLines(insertOrUpdate, values);
+			insertOrUpdate.addElement(new TextElement(")"));
+			addPostgreSqlConflict(insertOrUpdate, conflictColumns,
+					upsertAssignments(introspectedTable, upsertColumns, e -> "excluded." + e.getName()));
+		} else {
+			insertOrUpdate.addElement(new TextElement("insert into " + tableName + " ("));
+			addPairedLines(insertOrUpdate, columnNames);
+			insertOrUpdate.addElement(new TextElement(") values ("));
+			addPairedLines(insertOrUpdate, upsertColumns.stream().map(compiled::column).map(parameterFunction)
+					.collect(Collectors.toList()));
+			insertOrUpdate.addElement(new TextElement(") on duplicate key update "));
+			addPairedLines(insertOrUpdate, orKeepPrimaryKey(introspectedTable,
+					upsertAssignments(introspectedTable, upsertColumns, parameterFunction)));
+		}
+		root.addElement(insertOrUpdate);
+		
+		// batchInsertOrUpdate
+		XmlElement batchInsertOrUpdate = new XmlElement("insert");
+		batchInsertOrUpdate.addAttribute(new Attribute("id", "batchInsertOrUpdate"));
+		if (h2) {
+			batchInsertOrUpdate.addElement(new TextElement("merge into " + tableName + " t using (values "));
+		} else {
+			batchInsertOrUpdate.addElement(new TextElement("insert into " + tableName + " ("));
+			addPairedLines(batchInsertOrUpdate, columnNames);
+		}
+		if (postgreSql) {
+			batchInsertOrUpdate.addElement(new TextElement(")"));
+			addPostgreSqlRows(batchInsertOrUpdate, compiled, upsertColumns, identityColumn, tableName);
+			addPostgreSqlConflict(batchInsertOrUpdate, conflictColumns,
+					upsertAssignments(introspectedTable, upsertColumns, e -> "excluded." + e.getName()));
+		} else {
+			if (!h2) {
+				batchInsertOrUpdate.addElement(new TextElement(") values "));
+			}
+			batchInsertOrUpdate.addElement(SqlMapElements.valuesRows(compiled.getNonBLOBItemParameters()));
+		}
+		if (h2) {
+			addH2Merge(batchInsertOrUpdate, compiled, upsertColumns, primaryKeyColumns, identityColumn,
+					upsertAssignments(introspectedTable, upsertColumns, e -> "s." + e.getName()));
+		} else if (!postgreSql) {
+			batchInsertOrUpdate.addElement(new TextElement("on duplicate key update "));
+			addPairedLines(batchInsertOrUpdate, orKeepPrimaryKey(introspectedTable, upsertAssignments(introspectedTable,
+					upsertColumns, e -> "values(" + e.getName() + ")")));
+		}
+		root.addElement(batchInsertOrUpdate);
+	}
+
+	/**
+	 * on duplicate key update的赋值: 跳过主键和upsertExcludeColumns, upsertTimestampColumns中存在的列更新为now()
+	 */
+	private List<String> upsertAssignments(IntrospectedTable introspectedTable, List<IntrospectedColumn> columns,
+			Function<CompiledTable.CompiledColumn, String> valueFunction) {
+		final CompiledTable compiled = CompiledTable.of(introspectedTable);
+		Set<String> excludeColumns = CustomMethodGenerator.columnNameSet(plugin.getProperty(introspectedTable, "upsertExcludeColumns", ""));
+		Set<String> timestampColumns = CustomMethodGenerator.columnNameSet(plugin.getProperty(introspectedTable, "upsertTimestampColumns", "gmt_modified"));
+		List<String> assignments = new ArrayList<>();
+		for (IntrospectedColumn column : columns) {
+			CompiledTable.CompiledColumn compiledColumn = compiled.column(column);
+			String columnName = compiledColumn.getName();
+			if (compiledColumn.isPrimaryKey() || excludeColumns.contains(columnName.toLowerCase())) {
+				continue;
+			}
+			if (timestampColumns.contains(columnName.toLowerCase())) {
+				assignments.add(columnName + " = now()");
+			} else {
+				assignments.add(columnName + " = " + valueFunction.apply(compiledColumn));
+			}
+		}
+		return assignments;
+	}
+	
+	/**
+	 * MySQL的on duplicate key update不能为空, 只有主键时更新为自身
+	 */
+	private static List<String> orKeepPrimaryKey(IntrospectedTable introspectedTable, List<String> assignments) {
+		if (assignments.isEmpty()) {
+			String columnName = introspectedTable.getPrimaryKeyColumns().get(0).getActualColumnName();
+			assignments.add(columnName + " = " + columnName);
+		}
+		return assignments;
+	}
+	
+	boolean isPostgreSql(IntrospectedTable introspectedTable) {
+		return "POSTGRESQL".equalsIgnoreCase(plugin.getProperty(introspectedTable, "dialect", "MYSQL"));
+	}
+	
+	boolean isH2(IntrospectedTable introspectedTable) {
+		return "H2".equalsIgnoreCase(plugin.getProperty(introspectedTable, "dialect", "MYSQL"));
+	}
+	
+	/**
+	 * PostgreSQL unnest的数组参数: 从list中取出一列转成数组. java.util.Date转成Timestamp(驱动按toString传Date),
+	 * DATE/TIME列, 自定义typeHandler和其他类型返回null, 语句退回多行values
+	 */
+	private static String unnestArrayExpression(IntrospectedColumn column, CompiledTable.CompiledColumn compiledColumn) {
+		final String javaType = column.getFullyQualifiedJavaType().getFullyQualifiedName();
+		final String property = column.getJavaProperty();
+		if (column.getTypeHandler() != null) {
+			return null;
+		}
+		if ("java.util.Date".equals(javaType) && compiledColumn.isTimestamp()) {
+			// 构造参数中#this不再是元素, 先存到变量
+			return "list.{#value = #this." + property
+					+ ", #value == null ? null : new java.sql.Timestamp(#value.time)}.toArray(new java.sql.Timestamp[0])";
+		}
+		return UNNEST_JAVA_TYPES.contains(javaType) ? "list.{#this." + property + "}.toArray(new " + javaType + "[0])" : null;
+	}
+	
+	/**
+	 * PostgreSQL多行写入的行来源: 所有列都能转成数组时为select ... from unnest(数组参数), 否则为多行values
+	 */
+	private static void addPostgreSqlRows(XmlElement parent, CompiledTable compiled, List<IntrospectedColumn> columns,
+			IntrospectedColumn identityColumn, String tableName) {
+		List<String> arrays = new ArrayList<>();
+		for (IntrospectedColumn column : columns) {
+			String expression = unnestArrayExpression(column, compiled.column(column));
+			if (expression == null) {
+				arrays = null;
+				break;
+			}
+			arrays.add(expression);
+		}
+		if (arrays == null) {
+			parent.addElement(new TextElement("values "));
+			List<String> values = new ArrayList<>();
+			for (IntrospectedColumn column : columns) {
+				String value = compiled.column(column).getItemParameter();
+				values.add(column == identityColumn ? postgreSqlIdentityValue(value, tableName, column) : value);
+			}
+			parent.addElement(SqlMapElements.valuesRows(values));
+			return;
+		}
+		List<String> selectList = new ArrayList<>();
+		List<String> parameters = new ArrayList<>();
+		for (int i = 0; i < columns.size(); i++) {
+			IntrospectedColumn column = columns.get(i);
+			String arrayName = column.getJavaProperty() + "Array";
+			XmlElement bind = new XmlElement("bind");
+			bind.addAttribute(new Attribute("name", arrayName));
+			bind.addAttribute(new Attribute("value", arrays.get(i)));
+			parent.getElements().add(i, bind);
+			String value = "u." + compiled.column(column).getName();
+			selectList.add(column == identityColumn ? postgreSqlIdentityValue(value, tableName, column) : value);
+			parameters.add("#{" + arrayName + ",typeHandler=org.apache.ibatis.type.ArrayTypeHandler}");
+		}
+		parent.addElement(new TextElement("select"));
+		addPairedLines(parent, selectList);
+		parent.addElement(new TextElement("from unnest("));
+		addPairedLines(parent, parameters);
+		parent.addElement(new TextElement(") as u ("));
+		addPairedLines(parent, columns.stream().map(e -> compiled.column(e).getName()).collect(Collectors.toList()));
+		parent.addElement(new TextElement(")"));
+	}
+	
+	/**
+	 * PostgreSQL自增主键为空时取序列的下一个值, 列名按未加引号的标识符转小写
+	 */
+	private static String postgreSqlIdentityValue(String value, String tableName, IntrospectedColumn column) {
+		return "coalesce(" + value + ", nextval(pg_get_serial_sequence('" + tableName + "', '"
+				+ column.getActualColumnName().toLowerCase() + "')))";
+	}
+	
+	/**
+	 * PostgreSQL按主键冲突时更新assignments, 为空时不更新
+	 */
+	private static void addPostgreSqlConflict(XmlElement parent, String conflictColumns, List<String> assignments) {
+		if (assignments.isEmpty()) {
+			parent.addElement(new TextElement("on conflict (" + conflictColumns + ") do nothing"));
+			return;
+		}
+		parent.addElement(new TextElement("on conflict (" + conflictColumns + ") do update set"));
+		addPairedLines(parent, assignments);
+	}
+	
+	/**
+	 * H2的merge: 源为values的行, 按主键匹配, 匹配时更新assignments(为空时不更新), 否则插入;
+	 * 自增主键为空的行插入时不带主键列
+	 */
+	private static void addH2Merge(XmlElement merge, CompiledTable compiled, List<IntrospectedColumn> columns,
+			List<IntrospectedColumn> primaryKeyColumns, IntrospectedColumn identityColumn, List<String> assignments) {
+		final List<String> columnNames = columns.stream().map(e -> compiled.column(e).getName()).collect(Collectors.toList());
+		merge.addElement(new TextElement(") s ("));
+		addPairedLines(merge, columnNames);
+		List<String> conditions = new ArrayList<>();
+		for (IntrospectedColumn column : primaryKeyColumns) {
+			conditions.add("t." + compiled.column(column).getName() + " = s." + compiled.column(column).getName());
+		}
+		merge.addElement(new TextElement(") on " + String.join(" and ", conditions)));
+		if (!assignments.isEmpty()) {
+			merge.addElement(new TextElement("when matched then update set"));
+			addPairedLines(merge, assignments);
+		}
+		for (boolean withIdentity : identityColumn == null ? new boolean[] { true } : new boolean[] { true, false }) {
+			List<String> insertColumns = new ArrayList<>();
+			for (String columnName : columnNames) {
+				if (withIdentity || !columnName.equals(compiled.column(identityColumn).getName())) {
+					insertColumns.add(columnName);
+				}
+			}
+			String condition = identityColumn == null || !withIdentity ? ""
+					: " and s." + compiled.column(identityColumn).getName() + " is not null";
+			merge.addElement(new TextElement("when not matched" + condition + " then insert ("));
+			addPairedLines(merge, insertColumns);
+			merge.addElement(new TextElement(") values ("));
+			addPairedLines(merge, insertColumns.stream().map(e -> "s." + e).collect(Collectors.toList()));
+			merge.addElement(new TextElement(")"));
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package io.github.litlak.plugin.generator;
+
+import java.util.List;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.Field;
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.api.dom.java.Interface;
+import org.mybatis.generator.api.dom.java.JavaVisibility;
+import org.mybatis.generator.api.dom.java.Method;
+import org.mybatis.generator.api.dom.java.Parameter;
+import org.mybatis.generator.api.dom.java.TopLevelClass;
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.Document;
+import org.mybatis.generator.api.dom.xml.TextElement;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+
+/**
+ * 脏字段跟踪插件: <br>
+ * model的setter按列序号在位图中标记修改过的字段, 不超过64列时用一个long, 否则用long[] <br>
+ * 新增updateDirtyByPrimaryKey, 只更新标记过的列, 没有标记的列保持数据库中的值 <br>
+ * 配置了本插件时CustomMethodGenerator生成的Service.updateXXX默认使用updateDirtyByPrimaryKey <br>
+ * 查询结果由MyBatis调用setter赋值, 所有列都是脏的; Service的查询方法返回前会调用clearDirty(), 直接使用Mapper时需要自己清除 <br>
+ * cleanCopy()返回没有脏标记的浅拷贝, Service从缓存和batchLoader返回共享的对象时每个调用方各得一份 <br>
+ *
+ * @author Scomy
+ */
+public class DirtyTrackingGenerator extends PluginAdapter {
+
+	/**
+	 * IntrospectedTable上的标记, 供其他插件判断是否生成了updateDirtyByPrimaryKey
+	 */
+	public static final String ATTR_DIRTY_TRACKING = DirtyTrackingGenerator.class.getName() + ".enabled";
+
+	@Override
+	public boolean validate(List<String> warnings) {
+		return true;
+	}
+
+	@Override
+	public void initialized(IntrospectedTable introspectedTable) {
+		if (isDirtyUpdateSupported(introspectedTable)) {
+			introspectedTable.setAttribute(ATTR_DIRTY_TRACKING, Boolean.TRUE);
+		}
+		IncrementalGenerator.addFingerprintSource(introspectedTable, getClass(), properties);
+		super.initialized(introspectedTable);
+	}
+
+	@Override
+	public boolean modelPrimaryKeyClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+		addDirtySupport(topLevelClass, introspectedTable);
+		return super.modelPrimaryKeyClassGenerated(topLevelClass, introspectedTable);
+	}
+
+	@Override
+	public boolean modelBaseRecordClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+		if (!introspectedTable.getRules().generatePrimaryKeyClass()) {
+			addDirtySupport(topLevelClass, introspectedTable);
+		}
+		return super.modelBaseRecordClassGenerated(topLevelClass, introspectedTable);
+	}
+
+	@Override
+	public boolean modelRecordWithBLOBsClassGenerated(TopLevelClass topLevelClass,
+			IntrospectedTable introspectedTable) {
+		if (!introspectedTable.getRules().generatePrimaryKeyClass()
+				&& !introspectedTable.getRules().generateBaseRecordClass()) {
+			addDirtySupport(topLevelClass, introspectedTable);
+		}
+		return super.modelRecordWithBLOBsClassGenerated(topLevelClass, introspectedTable);
+	}
+
+	@Override
+	public boolean modelSetterMethodGenerated(Method method, TopLevelClass topLevelClass,
+			IntrospectedColumn introspectedColumn, IntrospectedTable introspectedTable,
+			ModelClassType modelClassType) {
+		CompiledTable.CompiledColumn compiledColumn = CompiledTable.of(introspectedTable).column(introspectedColumn);
+		if (compiledColumn != null) {
+			method.addBodyLine("markDirty(" + compiledColumn.getIndex() + ");");
+		}
+		return super.modelSetterMethodGenerated(method, topLevelClass, introspectedColumn, introspectedTable,
+				modelClassType);
+	}
+
+	@Override
+	public boolean clientGenerated(Interface interfaze, TopLevelClass topLevelClass,
+			IntrospectedTable introspectedTable) {
+		if (isDirtyUpdateSupported(introspectedTable)) {
+			Method method = new Method();
+			method.setName("updateDirtyByPrimaryKey");
+			method.setReturnType(new FullyQualifiedJavaType("int"));
+			method.addParameter(new Parameter(new FullyQualifiedJavaType(introspectedTable.getBaseRecordType()), "record"));
+			interfaze.addMethod(method);
+		}
+		return super.clientGenerated(interfaze, topLevelClass, introspectedTable);
+	}
+
+	@Override
+	public boolean sqlMapDocumentGenerated(Document document, IntrospectedTable introspectedTable) {
+		if (isDirtyUpdateSupported(introspectedTable)) {
+			CompiledTable compiled = CompiledTable.of(introspectedTable);
+			XmlElement update = new XmlElement("update");
+			update.addAttribute(new Attribute("id", "updateDirtyByPrimaryKey"));
+			update.addAttribute(new Attribute("parameterType", introspectedTable.getBaseRecordType()));
+			update.addElement(new TextElement(
+					"update " + introspectedTable.getFullyQualifiedTableNameAtRuntime()));
+			XmlElement set = new XmlElement("set");
+			for (IntrospectedColumn column : compiled.getNonPrimaryKeyColumns()) {
+				CompiledTable.CompiledColumn compiledColumn = compiled.column(column);
+				XmlElement ifElement = new XmlElement("if");
+				ifElement.addAttribute(new Attribute("test", "_parameter.isDirty(" + compiledColumn.getIndex() + ")"));
+				ifElement.addElement(new TextElement(compiledColumn.getAssignment() + ","));
+				set.addElement(ifElement);
+			}
+			update.addElement(set);
+			List<IntrospectedColumn> primaryKeyColumns = compiled.getPrimaryKeyColumns();
+			for (int i = 0; i < primaryKeyColumns.size(); i++) {
+				update.addElement(new TextElement((i == 0 ? "where " : "  and ")
+						+ compiled.column(primaryKeyColumns.get(i)).getAssignment()));
+			}
+			document.getRootElement().addElement(update);
+		}
+		return super.sqlMapDocumentGenerated(document, introspectedTable);
+	}
+
+	private boolean isDirtyUpdateSupported(IntrospectedTable introspectedTable) {
+		return introspectedTable.hasPrimaryKeyColumns() && !introspectedTable.getNonPrimaryKeyColumns().isEmpty();
+	}
+
+	/**
+	 * 在最顶层的model类上添加位图和markDirty/isDirty/hasDirtyFields/clearDirty/cleanCopy, 子类的setter直接调用
+	 */
+	private void addDirtySupport(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+		int columnCount = introspectedTable.getAllColumns().size();
+		boolean singleWord = columnCount <= 64;
+
+		Field field = new Field("dirtyFields", new FullyQualifiedJavaType(singleWord ? "long" : "long[]"));
+		field.setVisibility(JavaVisibility.PRIVATE);
+		field.setTransient(true);
+		if (!singleWord) {
+			field.setInitializationString("new long[" + ((columnCount + 63) >>> 6) + "]");
+		}
+		topLevelClass.addField(field);
+
+		Method markDirty = new Method("markDirty");
+		markDirty.setVisibility(JavaVisibility.PROTECTED);
+		markDirty.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "index"));
+		markDirty.addBodyLine(singleWord ? "dirtyFields |= 1L << index;" : "dirtyFields[index >>> 6] |= 1L << index;");
+		topLevelClass.addMethod(markDirty);
+
+		Method isDirty = new Method("isDirty");
+		isDirty.setVisibility(JavaVisibility.PUBLIC);
+		isDirty.setReturnType(FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+		isDirty.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "index"));
+		isDirty.addBodyLine(singleWord ? "return (dirtyFields & (1L << index)) != 0;"
+				: "return (dirtyFields[index >>> 6] & (1L << index)) != 0;");
+		topLevelClass.addMethod(isDirty);
+
+		Method hasDirtyFields = new Method("hasDirtyFields");
+		hasDirtyFields.setVisibility(JavaVisibility.PUBLIC);
+		hasDirtyFields.setReturnType(FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+		if (singleWord) {
+			hasDirtyFields.addBodyLine("return dirtyFields != 0;");
+		} else {
+			hasDirtyFields.addBodyLine("for (long word : dirtyFields) {");
+			hasDirtyFields.addBodyLine("if (word != 0) {");
+			hasDirtyFields.addBodyLine("return true;");
+			hasDirtyFields.addBodyLine("}");
+			hasDirtyFields.addBodyLine("}");
+			hasDirtyFields.addBodyLine("return false;");
+		}
+		topLevelClass.addMethod(hasDirtyFields);
+
+		Method clearDirty = new Method("clearDirty");
+		clearDirty.setVisibility(JavaVisibility.PUBLIC);
+		clearDirty.addBodyLine(singleWord ? "dirtyFields = 0;" : "java.util.Arrays.fill(dirtyFields, 0L);");
+		topLevelClass.addMethod(clearDirty);
+
+		// clone复制子类的全部字段, 位图换成新的, 不与原对象共用
+		topLevelClass.addSuperInterface(new FullyQualifiedJavaType("java.lang.Cloneable"));
+		Method cleanCopy = new Method("cleanCopy");
+		cleanCopy.setVisibility(JavaVisibility.PUBLIC);
+		cleanCopy.setReturnType(topLevelClass.getType());
+		cleanCopy.addBodyLine("try {");
+		cleanCopy.addBodyLine(topLevelClass.getType().getShortName() + " copy = (" + topLevelClass.getType().getShortName()
+				+ ") super.clone();");
+		cleanCopy.addBodyLine(singleWord ? "copy.dirtyFields = 0;"
+				: "copy.dirtyFields = new long[" + ((columnCount + 63) >>> 6) + "];");
+		cleanCopy.addBodyLine("return copy;");
+		cleanCopy.addBodyLine("} catch (CloneNotSupportedException e) {");
+		cleanCopy.addBodyLine("throw new IllegalStateException(e);");
+		cleanCopy.addBodyLine("}");
+		topLevelClass.addMethod(cleanCopy);
+	}
+}
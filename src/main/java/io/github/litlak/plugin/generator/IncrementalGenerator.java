@@ -0,0 +1,444 @@
+package io.github.litlak.plugin.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.mybatis.generator.api.GeneratedFile;
+import org.mybatis.generator.api.GeneratedJavaFile;
+import org.mybatis.generator.api.GeneratedXmlFile;
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.PluginAdapter;
+import org.mybatis.generator.api.dom.java.CompilationUnit;
+import org.mybatis.generator.api.dom.java.Interface;
+import org.mybatis.generator.api.dom.java.TopLevelClass;
+import org.mybatis.generator.config.PropertyRegistry;
+import org.mybatis.generator.exception.ShellException;
+import org.mybatis.generator.internal.XmlFileMergerJaxp;
+import org.mybatis.generator.internal.rules.Rules;
+
+/**
+ * 增量生成插件: <br>
+ * 按表计算指纹(列, 主键, 注释, 生成的类型名, table property, 本项目插件的配置和版本), 保存在本地缓存文件 <br>
+ * 指纹没有变化且上次生成的文件内容没有被改动的表跳过生成(model, client, xml, Service, Controller) <br>
+ * 运行结束时在warnings中输出重新生成和跳过的表数量, 与MyBatisGenerator的其他提示一起显示 <br>
+ * 需要和CustomMethodGenerator等插件配置在同一个context, 其他第三方插件的配置不计入指纹, 修改后需要force=true全量生成一次 <br>
+ * 可用于ParallelGenerator: 表的状态只在该表的hook中修改, 共用的表列表和缓存在并发访问时加锁 <br>
+ * <br>
+ * 可选配置: <br>
+ * cacheFile 缓存文件路径, 默认.mbg-incremental.properties <br>
+ * force 是否忽略缓存全部重新生成(仍会更新缓存), 默认false <br>
+ *
+ * @author Scomy
+ */
+public class IncrementalGenerator extends PluginAdapter {
+
+	private static final String ATTR_STATE = IncrementalGenerator.class.getName() + ".state";
+
+	private static final String ATTR_SOURCES = IncrementalGenerator.class.getName() + ".sources";
+
+	private static final String FINGERPRINT_VERSION = "1";
+
+	/**
+	 * 插件代码的摘要, 按代码位置(jar包或classes目录)缓存, 插件或其中任何一个生成器类升级后全部表重新生成
+	 */
+	private static final Map<String, String> CODE_DIGESTS = new ConcurrentHashMap<>();
+
+	private List<String> warnings;
+
+	private final List<TableState> tables = Collections.synchronizedList(new ArrayList<>());
+
+	private Properties cache;
+
+	@Override
+	public boolean validate(List<String> warnings) {
+		// 与MyBatisGenerator共用同一个列表, 生成结束时的统计随生成结果一起输出
+		this.warnings = warnings;
+		return true;
+	}
+
+	@Override
+	public void initialized(IntrospectedTable introspectedTable) {
+		TableState state = new TableState(introspectedTable);
+		introspectedTable.setAttribute(ATTR_STATE, state);
+		tables.add(state);
+		addFingerprintSource(introspectedTable, getClass(), properties);
+		super.initialized(introspectedTable);
+	}
+
+	/**
+	 * 插件把影响生成结果的配置计入表的指纹, 在initialized中调用, 与插件的配置顺序无关
+	 */
+	static void addFingerprintSource(IntrospectedTable introspectedTable, Class<?> plugin, Properties properties) {
+		addFingerprintSource(introspectedTable, plugin.getName(), codeDigest(plugin) + new TreeMap<>(properties));
+	}
+
+	@SuppressWarnings("unchecked")
+	static void addFingerprintSource(IntrospectedTable introspectedTable, String name, Object value) {
+		Map<String, String> sources = (Map<String, String>) introspectedTable.getAttribute(ATTR_SOURCES);
+		if (sources == null) {
+			sources = new TreeMap<>();
+			introspectedTable.setAttribute(ATTR_SOURCES, sources);
+		}
+		sources.put(name, String.valueOf(value));
+	}
+
+	/**
+	 * 其他插件生成的文件, 记录内容摘要, 下次运行时用来判断文件是否被改动
+	 */
+	static void addGeneratedFile(IntrospectedTable introspectedTable, GeneratedFile generatedFile) {
+		TableState state = (TableState) introspectedTable.getAttribute(ATTR_STATE);
+		if (state != null) {
+			state.files.add(generatedFile);
+		}
+	}
+
+	/**
+	 * 表是否跳过生成, 没有配置IncrementalGenerator时总是false
+	 */
+	static boolean isSkipped(IntrospectedTable introspectedTable) {
+		TableState state = (TableState) introspectedTable.getAttribute(ATTR_STATE);
+		return state != null && state.isSkipped();
+	}
+
+	@Override
+	public boolean modelExampleClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+		return addModelFile(topLevelClass, introspectedTable);
+	}
+
+	@Override
+	public boolean modelPrimaryKeyClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+		return addModelFile(topLevelClass, introspectedTable);
+	}
+
+	@Override
+	public boolean modelBaseRecordClassGenerated(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+		return addModelFile(topLevelClass, introspectedTable);
+	}
+
+	@Override
+	public boolean modelRecordWithBLOBsClassGenerated(TopLevelClass topLevelClass,
+			IntrospectedTable introspectedTable) {
+		return addModelFile(topLevelClass, introspectedTable);
+	}
+
+	@Override
+	public boolean clientGenerated(Interface interfaze, TopLevelClass topLevelClass,
+			IntrospectedTable introspectedTable) {
+		if (isSkipped(introspectedTable)) {
+			return false;
+		}
+		String targetProject = context.getJavaClientGeneratorConfiguration().getTargetProject();
+		addGeneratedFile(introspectedTable, javaFile(interfaze, targetProject));
+		if (topLevelClass != null) {
+			addGeneratedFile(introspectedTable, javaFile(topLevelClass, targetProject));
+		}
+		return true;
+	}
+
+	@Override
+	public boolean sqlMapGenerated(GeneratedXmlFile sqlMap, IntrospectedTable introspectedTable) {
+		if (isSkipped(introspectedTable)) {
+			return false;
+		}
+		addGeneratedFile(introspectedTable, sqlMap);
+		return true;
+	}
+
+	private boolean addModelFile(TopLevelClass topLevelClass, IntrospectedTable introspectedTable) {
+		if (isSkipped(introspectedTable)) {
+			return false;
+		}
+		addGeneratedFile(introspectedTable,
+				javaFile(topLevelClass, context.getJavaModelGeneratorConfiguration().getTargetProject()));
+		return true;
+	}
+
+	private GeneratedJavaFile javaFile(CompilationUnit compilationUnit, String targetProject) {
+		return new GeneratedJavaFile(compilationUnit, targetProject,
+				context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING), context.getJavaFormatter());
+	}
+
+	/**
+	 * 所有表生成完后调用, 更新缓存文件并输出统计
+	 */
+	@Override
+	public List<GeneratedJavaFile> contextGenerateAdditionalJavaFiles() {
+		File cacheFile = getCacheFile();
+		// 重新读取, 同一个缓存文件可能被多个context共用
+		Properties merged = loadCache(cacheFile);
+		String contextPrefix = context.getId() + "/";
+		merged.keySet().removeIf(key -> key.toString().startsWith(contextPrefix));
+		int regenerated = 0;
+		List<TableState> sortedTables = new ArrayList<>(tables);
+		// 并行生成时initialized的顺序不固定, 按表排序使缓存文件的写入顺序不变
+		sortedTables.sort(Comparator.comparing(state -> state.cacheKey));
+		for (TableState state : sortedTables) {
+			if (state.isSkipped()) {
+				for (String key : getCache().stringPropertyNames()) {
+					if (key.startsWith(state.cacheKey + "/")) {
+						merged.setProperty(key, getCache().getProperty(key));
+					}
+				}
+				continue;
+			}
+			regenerated++;
+			merged.setProperty(state.cacheKey + "/fingerprint", state.getFingerprint());
+			for (GeneratedFile file : state.files) {
+				File outputFile = outputFile(file);
+				merged.setProperty(state.cacheKey + "/file/" + outputFile.getPath(), digest(writtenContent(file, outputFile)));
+			}
+		}
+		try {
+			File parent = cacheFile.getAbsoluteFile().getParentFile();
+			if (parent != null) {
+				parent.mkdirs();
+			}
+			try (OutputStream out = Files.newOutputStream(cacheFile.toPath())) {
+				merged.store(out, "mybatis generator incremental cache");
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("写入增量生成缓存失败: " + cacheFile, e);
+		}
+		warnings.add("Incremental generation [" + context.getId() + "]: " + regenerated + " tables regenerated, "
+				+ (tables.size() - regenerated) + " skipped");
+		return super.contextGenerateAdditionalJavaFiles();
+	}
+
+	private File getCacheFile() {
+		return new File(properties.getProperty("cacheFile", ".mbg-incremental.properties"));
+	}
+
+	private synchronized Properties getCache() {
+		if (cache == null) {
+			cache = Boolean.parseBoolean(properties.getProperty("force")) ? new Properties() : loadCache(getCacheFile());
+		}
+		return cache;
+	}
+
+	private static Properties loadCache(File cacheFile) {
+		Properties cache = new Properties();
+		if (cacheFile.isFile()) {
+			try (Reader reader = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.ISO_8859_1)) {
+				cache.load(reader);
+			} catch (IOException e) {
+				// 缓存损坏时全部重新生成
+				cache.clear();
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * 写入磁盘的内容: 已存在的xml文件由MyBatisGenerator合并, 按相同方式计算合并后的内容, 其余为生成的内容
+	 */
+	private static String writtenContent(GeneratedFile file, File outputFile) {
+		if (file instanceof GeneratedXmlFile && file.isMergeable() && outputFile.isFile()) {
+			try {
+				return XmlFileMergerJaxp.getMergedSource((GeneratedXmlFile) file, outputFile);
+			} catch (ShellException e) {
+				// 合并失败时MyBatisGenerator直接写入生成的内容
+			}
+		}
+		return file.getFormattedContent();
+	}
+
+	/**
+	 * 与DefaultShellCallback.getDirectory相同的输出路径
+	 */
+	private static File outputFile(GeneratedFile file) {
+		File directory = new File(file.getTargetProject());
+		for (String folder : file.getTargetPackage().split("\\.")) {
+			if (!folder.isEmpty()) {
+				directory = new File(directory, folder);
+			}
+		}
+		return new File(directory, file.getFileName());
+	}
+
+	/**
+	 * 插件代码的摘要: 从jar包加载时为整个jar包, 从classes目录加载时为插件所在包及其子包下的全部class文件,
+	 * 取不到代码位置时只计插件自身的class文件
+	 */
+	private static String codeDigest(Class<?> plugin) {
+		CodeSource codeSource = plugin.getProtectionDomain().getCodeSource();
+		String location = codeSource == null || codeSource.getLocation() == null ? plugin.getName()
+				: codeSource.getLocation().toString();
+		return CODE_DIGESTS.computeIfAbsent(location, key -> {
+			try {
+				MessageDigest md = MessageDigest.getInstance("SHA-256");
+				Path root = codeSource == null || codeSource.getLocation() == null ? null
+						: Paths.get(codeSource.getLocation().toURI());
+				if (root != null && Files.isRegularFile(root)) {
+					md.update(Files.readAllBytes(root));
+				} else if (root != null && Files.isDirectory(root)) {
+					Path packageDirectory = root.resolve(plugin.getPackage().getName().replace('.', '/'));
+					List<Path> classFiles;
+					try (Stream<Path> paths = Files.walk(packageDirectory)) {
+						classFiles = paths.filter(path -> path.toString().endsWith(".class")).sorted()
+								.collect(Collectors.toList());
+					}
+					for (Path classFile : classFiles) {
+						md.update(packageDirectory.relativize(classFile).toString().getBytes(StandardCharsets.UTF_8));
+						md.update(Files.readAllBytes(classFile));
+					}
+				} else {
+					try (InputStream in = plugin.getResourceAsStream(plugin.getSimpleName() + ".class")) {
+						byte[] buffer = new byte[8192];
+						for (int n; in != null && (n = in.read(buffer)) > 0;) {
+							md.update(buffer, 0, n);
+						}
+					}
+				}
+				return hex(md.digest());
+			} catch (IOException | NoSuchAlgorithmException | URISyntaxException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	private static String digest(String content) {
+		try {
+			return hex(MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	private class TableState {
+
+		private final IntrospectedTable introspectedTable;
+
+		private final String cacheKey;
+
+		private final List<GeneratedFile> files = new ArrayList<>();
+
+		private String fingerprint;
+
+		private Boolean skipped;
+
+		TableState(IntrospectedTable introspectedTable) {
+			this.introspectedTable = introspectedTable;
+			this.cacheKey = context.getId() + "/" + introspectedTable.getFullyQualifiedTable();
+		}
+
+		/**
+		 * 第一次调用时判断, 此时所有插件的initialized都已执行
+		 */
+		boolean isSkipped() {
+			if (skipped == null) {
+				skipped = getFingerprint().equals(getCache().getProperty(cacheKey + "/fingerprint"))
+						&& outputFilesUnchanged();
+			}
+			return skipped;
+		}
+
+		private boolean outputFilesUnchanged() {
+			String filePrefix = cacheKey + "/file/";
+			boolean anyFile = false;
+			for (String key : getCache().stringPropertyNames()) {
+				if (!key.startsWith(filePrefix)) {
+					continue;
+				}
+				anyFile = true;
+				File file = new File(key.substring(filePrefix.length()));
+				String encoding = file.getName().endsWith(".java")
+						? context.getProperty(PropertyRegistry.CONTEXT_JAVA_FILE_ENCODING)
+						: "UTF-8";
+				try {
+					String content = new String(Files.readAllBytes(file.toPath()),
+							encoding == null ? Charset.defaultCharset() : Charset.forName(encoding));
+					if (!digest(content).equals(getCache().getProperty(key))) {
+						return false;
+					}
+				} catch (IOException e) {
+					return false;
+				}
+			}
+			return anyFile;
+		}
+
+		String getFingerprint() {
+			if (fingerprint == null) {
+				StringBuilder sb = new StringBuilder(FINGERPRINT_VERSION);
+				sb.append('\n').append(introspectedTable.getFullyQualifiedTable())
+						.append('|').append(introspectedTable.getFullyQualifiedTableNameAtRuntime())
+						.append('|').append(introspectedTable.getRemarks())
+						.append('|').append(introspectedTable.getTableType());
+				sb.append('\n').append(introspectedTable.getBaseRecordType())
+						.append('|').append(introspectedTable.getPrimaryKeyType())
+						.append('|').append(introspectedTable.getRecordWithBLOBsType())
+						.append('|').append(introspectedTable.getExampleType())
+						.append('|').append(introspectedTable.getMyBatis3JavaMapperType())
+						.append('|').append(introspectedTable.getMyBatis3XmlMapperPackage())
+						.append('|').append(introspectedTable.getMyBatis3XmlMapperFileName());
+				Rules rules = introspectedTable.getRules();
+				sb.append('\n').append(rules.generateInsert()).append(rules.generateInsertSelective())
+						.append(rules.generateUpdateByPrimaryKeyWithoutBLOBs())
+						.append(rules.generateUpdateByPrimaryKeyWithBLOBs())
+						.append(rules.generateUpdateByPrimaryKeySelective()).append(rules.generateDeleteByPrimaryKey())
+						.append(rules.generateDeleteByExample()).append(rules.generateSelectByPrimaryKey())
+						.append(rules.generateSelectByExampleWithoutBLOBs())
+						.append(rules.generateSelectByExampleWithBLOBs()).append(rules.generateCountByExample())
+						.append(rules.generateUpdateByExampleSelective())
+						.append(rules.generateUpdateByExampleWithoutBLOBs())
+						.append(rules.generateUpdateByExampleWithBLOBs()).append(rules.generateJavaClient());
+				for (IntrospectedColumn column : introspectedTable.getAllColumns()) {
+					sb.append('\n').append(column.getActualColumnName())
+							.append('|').append(column.getJdbcTypeName())
+							.append('|').append(column.getLength())
+							.append('|').append(column.getScale())
+							.append('|').append(column.isNullable())
+							.append('|').append(column.isIdentity())
+							.append('|').append(column.isAutoIncrement())
+							.append('|').append(column.isGeneratedColumn())
+							.append('|').append(column.isSequenceColumn())
+							.append('|').append(column.getDefaultValue())
+							.append('|').append(column.getRemarks())
+							.append('|').append(column.getFullyQualifiedJavaType())
+							.append('|').append(column.getJavaProperty())
+							.append('|').append(column.getTypeHandler())
+							.append('|').append(introspectedTable.getPrimaryKeyColumns().contains(column));
+				}
+				sb.append('\n').append(new TreeMap<>(introspectedTable.getTableConfiguration().getProperties()));
+				@SuppressWarnings("unchecked")
+				Map<String, String> sources = (Map<String, String>) introspectedTable.getAttribute(ATTR_SOURCES);
+				for (Map.Entry<String, String> source : sources.entrySet()) {
+					sb.append('\n').append(source.getKey()).append('=').append(source.getValue());
+				}
+				fingerprint = digest(sb.toString());
+			}
+			return fingerprint;
+		}
+	}
+}
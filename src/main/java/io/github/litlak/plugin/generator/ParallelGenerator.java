@@ -0,0 +1,536 @@
+package io.github.litlak.plugin.generator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.mybatis.generator.api.GeneratedFile;
+import org.mybatis.generator.api.GeneratedJavaFile;
+import org.mybatis.generator.api.GeneratedXmlFile;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.Plugin;
+import org.mybatis.generator.api.ProgressCallback;
+import org.mybatis.generator.api.ShellCallback;
+import org.mybatis.generator.api.VerboseProgressCallback;
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.api.dom.java.PrimitiveTypeWrapper;
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.Element;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+import org.mybatis.generator.codegen.RootClassInfo;
+import org.mybatis.generator.config.Configuration;
+import org.mybatis.generator.config.Context;
+import org.mybatis.generator.config.MergeConstants;
+import org.mybatis.generator.config.PluginConfiguration;
+import org.mybatis.generator.config.TableConfiguration;
+import org.mybatis.generator.config.xml.ConfigurationParser;
+import org.mybatis.generator.exception.InvalidConfigurationException;
+import org.mybatis.generator.exception.ShellException;
+import org.mybatis.generator.internal.DefaultShellCallback;
+import org.mybatis.generator.internal.NullProgressCallback;
+import org.mybatis.generator.internal.ObjectFactory;
+import org.mybatis.generator.internal.PluginAggregator;
+import org.mybatis.generator.internal.XmlFileMergerJaxp;
+import org.mybatis.generator.internal.db.DatabaseIntrospector;
+import org.mybatis.generator.internal.util.ClassloaderUtility;
+import org.mybatis.generator.internal.util.StringUtility;
+import org.mybatis.generator.internal.util.messages.Messages;
+
+/**
+ * 按表并行的生成入口, 替代MyBatisGenerator/ShellRunner, 生成和写入的文件与MyBatisGenerator相同: <br>
+ * 每张表的introspect(各自的数据库连接), initialized, 文件生成和插件的按表hook, 文件格式化在有界的ForkJoinPool中执行 <br>
+ * 每张表使用各自的Context副本(注释生成器, 格式化器不跨线程共享), 插件实例为同一个context的所有表共用 <br>
+ * 结果按配置中表的顺序汇总, context级别的hook(contextGenerateAdditionalJavaFiles()等)在所有表完成后执行, 文件按MyBatisGenerator的顺序串行写入 <br>
+ * 同一张表的hook都在同一个线程中执行, 不同表的hook并发执行, context中的插件都必须是线程安全的: <br>
+ * CustomMethodGenerator, Swagger2Generator, DirtyTrackingGenerator, IncrementalGenerator 可以使用, 其他插件需自行确认 <br>
+ * <br>
+ * 命令行: java io.github.litlak.plugin.generator.ParallelGenerator -configfile generatorConfig.xml [-overwrite]
+ * [-contextids a,b] [-tables t1,t2] [-parallelism 32] [-verbose] <br>
+ * parallelism 并行度, 同时也是introspect时的最大连接数, 默认为CPU核数, 1时与MyBatisGenerator相同地串行执行
+ *
+ * @author Scomy
+ */
+public class ParallelGenerator {
+
+	private final Configuration configuration;
+
+	private final ShellCallback shellCallback;
+
+	private final List<String> warnings;
+
+	private final int parallelism;
+
+	private final List<GeneratedJavaFile> generatedJavaFiles = new ArrayList<>();
+
+	private final List<GeneratedXmlFile> generatedXmlFiles = new ArrayList<>();
+
+	private final Set<String> projects = new HashSet<>();
+
+	public ParallelGenerator(Configuration configuration, ShellCallback shellCallback, List<String> warnings,
+			int parallelism) throws InvalidConfigurationException {
+		if (configuration == null) {
+			throw new IllegalArgumentException(Messages.getString("RuntimeError.2"));
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism必须大于0: " + parallelism);
+		}
+		this.configuration = configuration;
+		this.shellCallback = shellCallback == null ? new DefaultShellCallback(false) : shellCallback;
+		this.warnings = warnings == null ? new ArrayList<>() : warnings;
+		this.parallelism = parallelism;
+		configuration.validate();
+	}
+
+	public void generate(ProgressCallback callback) throws SQLException, IOException, InterruptedException {
+		generate(callback, null, null, true);
+	}
+
+	/**
+	 * 参数与MyBatisGenerator.generate相同
+	 */
+	public void generate(ProgressCallback callback, Set<String> contextIds, Set<String> fullyQualifiedTableNames,
+			boolean writeFiles) throws SQLException, IOException, InterruptedException {
+		if (callback == null) {
+			callback = new NullProgressCallback();
+		}
+		generatedJavaFiles.clear();
+		generatedXmlFiles.clear();
+		projects.clear();
+		ObjectFactory.reset();
+		RootClassInfo.reset();
+
+		List<Context> contextsToRun = new ArrayList<>();
+		for (Context context : configuration.getContexts()) {
+			if (contextIds == null || contextIds.isEmpty() || contextIds.contains(context.getId())) {
+				contextsToRun.add(context);
+			}
+		}
+		if (!configuration.getClassPathEntries().isEmpty()) {
+			ObjectFactory.addExternalClassLoader(
+					ClassloaderUtility.getCustomClassloader(configuration.getClassPathEntries()));
+		}
+		initializeSharedTypes();
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			int totalSteps = 0;
+			for (Context context : contextsToRun) {
+				totalSteps += context.getIntrospectionSteps();
+			}
+			callback.introspectionStarted(totalSteps);
+			List<PluginAggregator> plugins = new ArrayList<>();
+			List<List<IntrospectedTable>> introspectedTables = new ArrayList<>();
+			for (Context context : contextsToRun) {
+				plugins.add(createPlugins(context));
+				introspectedTables.add(introspectTables(pool, context, plugins.get(plugins.size() - 1),
+						fullyQualifiedTableNames, callback));
+			}
+
+			totalSteps = 0;
+			for (Context context : contextsToRun) {
+				totalSteps += context.getGenerationSteps();
+			}
+			callback.generationStarted(totalSteps);
+			for (int i = 0; i < contextsToRun.size(); i++) {
+				generateFiles(pool, contextsToRun.get(i), plugins.get(i), introspectedTables.get(i), callback);
+			}
+
+			if (writeFiles) {
+				List<GeneratedFile> files = new ArrayList<>(generatedXmlFiles);
+				files.addAll(generatedJavaFiles);
+				List<Callable<String>> tasks = new ArrayList<>(files.size());
+				for (GeneratedFile file : files) {
+					tasks.add(file::getFormattedContent);
+				}
+				List<String> contents = invokeAll(pool, tasks);
+
+				callback.saveStarted(files.size());
+				for (int i = 0; i < files.size(); i++) {
+					GeneratedFile file = files.get(i);
+					projects.add(file.getTargetProject());
+					if (file instanceof GeneratedXmlFile) {
+						writeGeneratedXmlFile((GeneratedXmlFile) file, contents.get(i), callback);
+					} else {
+						writeGeneratedJavaFile((GeneratedJavaFile) file, contents.get(i), callback);
+					}
+				}
+				for (String project : projects) {
+					shellCallback.refreshProject(project);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		callback.done();
+	}
+
+	public List<GeneratedJavaFile> getGeneratedJavaFiles() {
+		return generatedJavaFiles;
+	}
+
+	public List<GeneratedXmlFile> getGeneratedXmlFiles() {
+		return generatedXmlFiles;
+	}
+
+	/**
+	 * 与Context.introspectTables相同, 每个TableConfiguration一个任务, 使用各自的TableContext, 连接和JavaTypeResolver
+	 */
+	private List<IntrospectedTable> introspectTables(ForkJoinPool pool, Context context, PluginAggregator plugins,
+			Set<String> fullyQualifiedTableNames, ProgressCallback callback) throws SQLException, InterruptedException {
+		callback.startTask(Messages.getString("Progress.0"));
+		List<Callable<TableResult<List<IntrospectedTable>>>> tasks = new ArrayList<>();
+		for (TableConfiguration tableConfiguration : context.getTableConfigurations()) {
+			String tableName = StringUtility.composeFullyQualifiedTableName(tableConfiguration.getCatalog(),
+					tableConfiguration.getSchema(), tableConfiguration.getTableName(), '.');
+			if (fullyQualifiedTableNames != null && !fullyQualifiedTableNames.isEmpty()
+					&& !fullyQualifiedTableNames.contains(tableName)) {
+				continue;
+			}
+			if (!tableConfiguration.areAnyStatementsEnabled()) {
+				warnings.add(Messages.getString("Warning.0", tableName));
+				continue;
+			}
+			callback.startTask(Messages.getString("Progress.1", tableName));
+			Context tableContext = new TableContext(context, tableConfiguration, plugins);
+			tasks.add(() -> {
+				TableResult<List<IntrospectedTable>> result = new TableResult<>();
+				try (Connection connection = TableIndex.getConnection(tableContext)) {
+					DatabaseIntrospector introspector = new DatabaseIntrospector(tableContext, connection.getMetaData(),
+							ObjectFactory.createJavaTypeResolver(tableContext, result.warnings), result.warnings);
+					result.value = introspector.introspectTables(tableConfiguration);
+				}
+				return result;
+			});
+		}
+		List<IntrospectedTable> introspectedTables = new ArrayList<>();
+		for (TableResult<List<IntrospectedTable>> result : invokeAll(pool, tasks)) {
+			warnings.addAll(result.warnings);
+			if (result.value != null) {
+				introspectedTables.addAll(result.value);
+			}
+		}
+		callback.checkCancel();
+		return introspectedTables;
+	}
+
+	/**
+	 * 与Context.generateFiles相同, 每张表一个任务
+	 */
+	private void generateFiles(ForkJoinPool pool, Context context, PluginAggregator plugins,
+			List<IntrospectedTable> introspectedTables, ProgressCallback callback) throws SQLException, InterruptedException {
+		// 插件使用原Context, 延迟创建的对象在提交任务前创建
+		context.getCommentGenerator();
+		context.getJavaFormatter();
+		context.getXmlFormatter();
+
+		List<Callable<TableResult<TableFiles>>> tasks = new ArrayList<>(introspectedTables.size());
+		for (IntrospectedTable introspectedTable : introspectedTables) {
+			tasks.add(() -> {
+				TableResult<TableFiles> result = new TableResult<>();
+				TableFiles files = new TableFiles();
+				introspectedTable.initialize();
+				introspectedTable.calculateGenerators(result.warnings, new NullProgressCallback());
+				files.javaFiles.addAll(introspectedTable.getGeneratedJavaFiles());
+				files.xmlFiles.addAll(introspectedTable.getGeneratedXmlFiles());
+				files.javaFiles.addAll(plugins.contextGenerateAdditionalJavaFiles(introspectedTable));
+				files.xmlFiles.addAll(plugins.contextGenerateAdditionalXmlFiles(introspectedTable));
+				result.value = files;
+				return result;
+			});
+		}
+		for (TableResult<TableFiles> result : invokeAll(pool, tasks)) {
+			warnings.addAll(result.warnings);
+			generatedJavaFiles.addAll(result.value.javaFiles);
+			generatedXmlFiles.addAll(result.value.xmlFiles);
+		}
+		callback.checkCancel();
+		generatedJavaFiles.addAll(plugins.contextGenerateAdditionalJavaFiles());
+		generatedXmlFiles.addAll(plugins.contextGenerateAdditionalXmlFiles());
+	}
+
+	/**
+	 * 与Context.generateFiles相同地创建和校验插件, 插件的context为原Context
+	 */
+	private PluginAggregator createPlugins(Context context) {
+		PluginAggregator plugins = new PluginAggregator();
+		for (PluginConfiguration pluginConfiguration : pluginConfigurations(context)) {
+			Plugin plugin = ObjectFactory.createPlugin(context, pluginConfiguration);
+			if (plugin.validate(warnings)) {
+				plugins.addPlugin(plugin);
+			} else {
+				warnings.add(Messages.getString("Warning.24", pluginConfiguration.getConfigurationType(),
+						context.getId()));
+			}
+		}
+		return plugins;
+	}
+
+	/**
+	 * Context没有读取插件配置的方法, 从Context.toXmlElement()的plugin元素中还原, 顺序与配置相同
+	 */
+	private static List<PluginConfiguration> pluginConfigurations(Context context) {
+		List<PluginConfiguration> pluginConfigurations = new ArrayList<>();
+		for (Element element : context.toXmlElement().getElements()) {
+			if (!(element instanceof XmlElement) || !"plugin".equals(((XmlElement) element).getName())) {
+				continue;
+			}
+			XmlElement pluginElement = (XmlElement) element;
+			PluginConfiguration pluginConfiguration = new PluginConfiguration();
+			pluginConfiguration.setConfigurationType(attribute(pluginElement, "type"));
+			for (Element child : pluginElement.getElements()) {
+				if (child instanceof XmlElement && "property".equals(((XmlElement) child).getName())) {
+					pluginConfiguration.addProperty(attribute((XmlElement) child, "name"),
+							attribute((XmlElement) child, "value"));
+				}
+			}
+			pluginConfigurations.add(pluginConfiguration);
+		}
+		return pluginConfigurations;
+	}
+
+	private static String attribute(XmlElement element, String name) {
+		for (Attribute attribute : element.getAttributes()) {
+			if (name.equals(attribute.getName())) {
+				return attribute.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * FullyQualifiedJavaType, PrimitiveTypeWrapper的共享实例是延迟创建的, 在提交任务前创建
+	 */
+	private static void initializeSharedTypes() {
+		FullyQualifiedJavaType.getIntInstance();
+		FullyQualifiedJavaType.getStringInstance();
+		FullyQualifiedJavaType.getBooleanPrimitiveInstance();
+		FullyQualifiedJavaType.getObjectInstance();
+		FullyQualifiedJavaType.getDateInstance();
+		FullyQualifiedJavaType.getCriteriaInstance();
+		FullyQualifiedJavaType.getGeneratedCriteriaInstance();
+		PrimitiveTypeWrapper.getBooleanInstance();
+		PrimitiveTypeWrapper.getByteInstance();
+		PrimitiveTypeWrapper.getCharacterInstance();
+		PrimitiveTypeWrapper.getDoubleInstance();
+		PrimitiveTypeWrapper.getFloatInstance();
+		PrimitiveTypeWrapper.getIntegerInstance();
+		PrimitiveTypeWrapper.getLongInstance();
+		PrimitiveTypeWrapper.getShortInstance();
+	}
+
+	/**
+	 * 执行全部任务, 结果与任务的顺序相同, 任务的异常原样抛出
+	 */
+	private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks)
+			throws SQLException, InterruptedException {
+		List<T> results = new ArrayList<>(tasks.size());
+		for (Future<T> future : pool.invokeAll(tasks)) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof SQLException) {
+					throw (SQLException) cause;
+				} else if (cause instanceof InterruptedException) {
+					throw (InterruptedException) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * 与MyBatisGenerator.writeGeneratedJavaFile相同, 使用已格式化的内容
+	 */
+	private void writeGeneratedJavaFile(GeneratedJavaFile file, String content, ProgressCallback callback)
+			throws InterruptedException, IOException {
+		try {
+			File directory = shellCallback.getDirectory(file.getTargetProject(), file.getTargetPackage());
+			File targetFile = new File(directory, file.getFileName());
+			String source = content;
+			if (targetFile.exists()) {
+				if (shellCallback.isMergeSupported()) {
+					source = shellCallback.mergeJavaFile(content, targetFile, MergeConstants.OLD_ELEMENT_TAGS,
+							file.getFileEncoding());
+				} else if (shellCallback.isOverwriteEnabled()) {
+					warnings.add(Messages.getString("Warning.11", targetFile.getAbsolutePath()));
+				} else {
+					targetFile = getUniqueFileName(directory, file.getFileName());
+					warnings.add(Messages.getString("Warning.2", targetFile.getAbsolutePath()));
+				}
+			}
+			callback.checkCancel();
+			callback.startTask(Messages.getString("Progress.15", targetFile.getName()));
+			writeFile(targetFile, source, file.getFileEncoding());
+		} catch (ShellException e) {
+			warnings.add(e.getMessage());
+		}
+	}
+
+	/**
+	 * 与MyBatisGenerator.writeGeneratedXmlFile相同, 使用已格式化的内容
+	 */
+	private void writeGeneratedXmlFile(GeneratedXmlFile file, String content, ProgressCallback callback)
+			throws InterruptedException, IOException {
+		try {
+			File directory = shellCallback.getDirectory(file.getTargetProject(), file.getTargetPackage());
+			File targetFile = new File(directory, file.getFileName());
+			String source = content;
+			if (targetFile.exists()) {
+				if (file.isMergeable()) {
+					source = XmlFileMergerJaxp.getMergedSource(file, targetFile);
+				} else if (shellCallback.isOverwriteEnabled()) {
+					warnings.add(Messages.getString("Warning.11", targetFile.getAbsolutePath()));
+				} else {
+					targetFile = getUniqueFileName(directory, file.getFileName());
+					warnings.add(Messages.getString("Warning.2", targetFile.getAbsolutePath()));
+				}
+			}
+			callback.checkCancel();
+			callback.startTask(Messages.getString("Progress.15", targetFile.getName()));
+			writeFile(targetFile, source, "UTF-8");
+		} catch (ShellException e) {
+			warnings.add(e.getMessage());
+		}
+	}
+
+	private static void writeFile(File file, String content, String fileEncoding) throws IOException {
+		FileOutputStream fos = new FileOutputStream(file, false);
+		OutputStreamWriter osw = fileEncoding == null ? new OutputStreamWriter(fos)
+				: new OutputStreamWriter(fos, fileEncoding);
+		try (BufferedWriter bw = new BufferedWriter(osw)) {
+			bw.write(content);
+		}
+	}
+
+	private static File getUniqueFileName(File directory, String fileName) {
+		for (int i = 1; i < 1000; i++) {
+			File testFile = new File(directory, fileName + '.' + i);
+			if (!testFile.exists()) {
+				return testFile;
+			}
+		}
+		throw new RuntimeException(Messages.getString("RuntimeError.3", directory.getAbsolutePath()));
+	}
+
+	public static void main(String[] args) throws Exception {
+		String configFile = null;
+		boolean overwrite = false;
+		boolean verbose = false;
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		Set<String> contextIds = new HashSet<>();
+		Set<String> fullyQualifiedTableNames = new HashSet<>();
+		for (int i = 0; i < args.length; i++) {
+			if ("-configfile".equals(args[i]) && i + 1 < args.length) {
+				configFile = args[++i];
+			} else if ("-overwrite".equals(args[i])) {
+				overwrite = true;
+			} else if ("-verbose".equals(args[i])) {
+				verbose = true;
+			} else if ("-parallelism".equals(args[i]) && i + 1 < args.length) {
+				parallelism = Integer.parseInt(args[++i]);
+			} else if ("-contextids".equals(args[i]) && i + 1 < args.length) {
+				contextIds.addAll(splitList(args[++i]));
+			} else if ("-tables".equals(args[i]) && i + 1 < args.length) {
+				fullyQualifiedTableNames.addAll(splitList(args[++i]));
+			} else {
+				System.err.println("Usage: ParallelGenerator -configfile <file> [-overwrite] [-contextids a,b]"
+						+ " [-tables t1,t2] [-parallelism n] [-verbose]");
+				System.exit(1);
+			}
+		}
+		if (configFile == null) {
+			System.err.println(Messages.getString("RuntimeError.0"));
+			System.exit(1);
+		}
+
+		List<String> warnings = new ArrayList<>();
+		Configuration configuration = new ConfigurationParser(System.getProperties(), warnings)
+				.parseConfiguration(new File(configFile));
+		ParallelGenerator generator = new ParallelGenerator(configuration, new DefaultShellCallback(overwrite),
+				warnings, parallelism);
+		generator.generate(verbose ? new VerboseProgressCallback() : null, contextIds, fullyQualifiedTableNames, true);
+		for (String warning : warnings) {
+			System.out.println(warning);
+		}
+		System.out.println(Messages.getString(warnings.isEmpty() ? "Progress.4" : "Progress.5"));
+	}
+
+	private static Set<String> splitList(String value) {
+		Set<String> values = new LinkedHashSet<>();
+		for (String item : value.split(",")) {
+			if (!item.trim().isEmpty()) {
+				values.add(item.trim());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * 一张表的Context: 用原Context的公开配置复制, 只包含这一张表 <br>
+	 * IntrospectedTable.initialize等通过context.getPlugins()调用同一context的所有表共用的插件
+	 */
+	private static class TableContext extends Context {
+
+		private final Plugin plugins;
+
+		private TableContext(Context context, TableConfiguration tableConfiguration, Plugin plugins) {
+			super(context.getDefaultModelType());
+			this.plugins = plugins;
+			setId(context.getId());
+			setTargetRuntime(context.getTargetRuntime());
+			setIntrospectedColumnImpl(context.getIntrospectedColumnImpl());
+			for (String name : context.getProperties().stringPropertyNames()) {
+				addProperty(name, context.getProperty(name));
+			}
+			setJdbcConnectionConfiguration(context.getJdbcConnectionConfiguration());
+			setConnectionFactoryConfiguration(context.getConnectionFactoryConfiguration());
+			setJavaTypeResolverConfiguration(context.getJavaTypeResolverConfiguration());
+			setCommentGeneratorConfiguration(context.getCommentGeneratorConfiguration());
+			setJavaModelGeneratorConfiguration(context.getJavaModelGeneratorConfiguration());
+			setSqlMapGeneratorConfiguration(context.getSqlMapGeneratorConfiguration());
+			setJavaClientGeneratorConfiguration(context.getJavaClientGeneratorConfiguration());
+			addTableConfiguration(tableConfiguration);
+		}
+
+		@Override
+		public Plugin getPlugins() {
+			return plugins;
+		}
+	}
+
+	/**
+	 * 一个任务的结果和警告, 警告按任务顺序合并
+	 */
+	private static class TableResult<T> {
+
+		private final List<String> warnings = new ArrayList<>();
+
+		private T value;
+	}
+
+	private static class TableFiles {
+
+		private final List<GeneratedJavaFile> javaFiles = new ArrayList<>();
+
+		private final List<GeneratedXmlFile> xmlFiles = new ArrayList<>();
+	}
+}
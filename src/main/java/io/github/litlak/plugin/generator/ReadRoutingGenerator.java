@@ -0,0 +1,188 @@
+package io.github.litlak.plugin.generator;
+
+import java.util.List;
+
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.dom.java.Field;
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.api.dom.java.JavaVisibility;
+import org.mybatis.generator.api.dom.java.Method;
+import org.mybatis.generator.api.dom.java.Parameter;
+import org.mybatis.generator.api.dom.java.TopLevelClass;
+import org.mybatis.generator.api.dom.java.TypeParameter;
+
+/**
+ * CustomMethodGenerator的readWriteSplit: Service的读方法走从库, 写方法记录写入时间 <br>
+ * ReadRouting每个context生成一次 <br>
+ * 配置(plugin或table property, table优先): readWriteSplit, replicaSqlSessionFactory, readYourWritesMillis
+ *
+ * @author Scomy
+ */
+class ReadRoutingGenerator {
+
+	private static final int DEFAULT_READ_YOUR_WRITES_MILLIS = 1000;
+
+	private final CustomMethodGenerator plugin;
+
+	ReadRoutingGenerator(CustomMethodGenerator plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * 读写分离: 读方法通过readMapper()选择从库或主库, 方法体中的mapper换成局部变量, lambda中也使用调用线程选出的mapper;
+	 * 写方法先记录写入时间, 保证随后的读能读到自己的写
+	 */
+	void addReadRouting(TopLevelClass serviceClass, IntrospectedTable introspectedTable, String mapperTypeName,
+			String mapperFieldName, List<Method> readMethods, List<Method> writeMethods) {
+		serviceClass.addImportedType(new FullyQualifiedJavaType(plugin.getProperties().getProperty("servicePackage") + ".ReadRouting"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.session.SqlSessionFactory"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("org.mybatis.spring.SqlSessionTemplate"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.beans.factory.annotation.Qualifier"));
+		CustomMethodGenerator.addConstant(serviceClass, "READ_YOUR_WRITES_MILLIS",
+				plugin.getIntProperty(introspectedTable, "readYourWritesMillis", DEFAULT_READ_YOUR_WRITES_MILLIS));
+		Field factoryField = new Field("replicaSqlSessionFactory",
+				new FullyQualifiedJavaType("org.apache.ibatis.session.SqlSessionFactory"));
+		factoryField.addAnnotation("@Autowired");
+		factoryField.addAnnotation("@Qualifier(\"" + plugin.getProperty(introspectedTable, "replicaSqlSessionFactory",
+				"replicaSqlSessionFactory") + "\")");
+		factoryField.setVisibility(JavaVisibility.PRIVATE);
+		serviceClass.addField(factoryField);
+		Field replicaField = new Field("replicaMapper", new FullyQualifiedJavaType(mapperTypeName));
+		replicaField.setVisibility(JavaVisibility.PRIVATE);
+		replicaField.setVolatile(true);
+		serviceClass.addField(replicaField);
+		
+		// 从库mapper延迟创建, 并发时重复创建也没有副作用
+		Method readMapper = new Method("readMapper");
+		readMapper.setVisibility(JavaVisibility.PRIVATE);
+		readMapper.setReturnType(new FullyQualifiedJavaType(mapperTypeName));
+		readMapper.addBodyLine("if (!ReadRouting.useReplica(READ_YOUR_WRITES_MILLIS)) {");
+		readMapper.addBodyLine("return " + mapperFieldName + ";");
+		readMapper.addBodyLine("}");
+		readMapper.addBodyLine(mapperTypeName + " mapper = replicaMapper;");
+		readMapper.addBodyLine("if (mapper == null) {");
+		readMapper.addBodyLine("mapper = new SqlSessionTemplate(replicaSqlSessionFactory).getMapper(" + mapperTypeName + ".class);");
+		readMapper.addBodyLine("replicaMapper = mapper;");
+		readMapper.addBodyLine("}");
+		readMapper.addBodyLine("return mapper;");
+		serviceClass.addMethod(readMapper);
+		
+		for (Method method : readMethods) {
+			List<String> bodyLines = method.getBodyLines();
+			boolean usesMapper = false;
+			for (int i = 0; i < bodyLines.size(); i++) {
+				String line = bodyLines.get(i);
+				if (line.contains(mapperFieldName + ".")) {
+					bodyLines.set(i, line.replace(mapperFieldName + ".", "mapper."));
+					usesMapper = true;
+				}
+			}
+			if (usesMapper) {
+				bodyLines.add(0, mapperTypeName + " mapper = readMapper();");
+			}
+		}
+		for (Method method : writeMethods) {
+			method.getBodyLines().add(0, "ReadRouting.markWrite();");
+		}
+	}
+
+	/**
+	 * 读写分离的路由: 写操作记录时间, readYourWritesMillis内同一线程或同一请求的读走主库, 事务内的读也走主库
+	 */
+	TopLevelClass readRoutingClass() {
+		TopLevelClass routingClass = new TopLevelClass(plugin.getProperties().getProperty("servicePackage") + ".ReadRouting");
+		routingClass.setVisibility(JavaVisibility.PUBLIC);
+		routingClass.setFinal(true);
+		routingClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.TimeUnit"));
+		routingClass.addImportedType(new FullyQualifiedJavaType("java.util.function.Supplier"));
+		routingClass.addImportedType(new FullyQualifiedJavaType("org.springframework.transaction.support.TransactionSynchronizationManager"));
+		routingClass.addImportedType(new FullyQualifiedJavaType("org.springframework.web.context.request.RequestAttributes"));
+		routingClass.addImportedType(new FullyQualifiedJavaType("org.springframework.web.context.request.RequestContextHolder"));
+		routingClass.addJavaDocLine("/**");
+		routingClass.addJavaDocLine(" * 读写分离: 最近写过的线程/请求和事务内读主库, 其余读从库");
+		routingClass.addJavaDocLine(" */");
+		
+		Field attributeField = new Field("LAST_WRITE_ATTRIBUTE", FullyQualifiedJavaType.getStringInstance());
+		attributeField.setVisibility(JavaVisibility.PRIVATE);
+		attributeField.setStatic(true);
+		attributeField.setFinal(true);
+		attributeField.setInitializationString("ReadRouting.class.getName() + \".lastWrite\"");
+		routingClass.addField(attributeField);
+		Field lastWriteField = new Field("LAST_WRITE_NANOS", new FullyQualifiedJavaType("java.lang.ThreadLocal<Long>"));
+		lastWriteField.setVisibility(JavaVisibility.PRIVATE);
+		lastWriteField.setStatic(true);
+		lastWriteField.setFinal(true);
+		lastWriteField.setInitializationString("new ThreadLocal<>()");
+		routingClass.addField(lastWriteField);
+		
+		// 请求线程之外(如asyncController的线程池)只记录在线程上
+		Method markWrite = new Method("markWrite");
+		markWrite.setVisibility(JavaVisibility.PUBLIC);
+		markWrite.setStatic(true);
+		markWrite.addBodyLine("long now = System.nanoTime();");
+		markWrite.addBodyLine("LAST_WRITE_NANOS.set(now);");
+		markWrite.addBodyLine("RequestAttributes attributes = RequestContextHolder.getRequestAttributes();");
+		markWrite.addBodyLine("if (attributes != null) {");
+		markWrite.addBodyLine("attributes.setAttribute(LAST_WRITE_ATTRIBUTE, now, RequestAttributes.SCOPE_REQUEST);");
+		markWrite.addBodyLine("}");
+		routingClass.addMethod(markWrite);
+		
+		Method useReplica = new Method("useReplica");
+		useReplica.setVisibility(JavaVisibility.PUBLIC);
+		useReplica.setStatic(true);
+		useReplica.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "readYourWritesMillis"));
+		useReplica.setReturnType(FullyQualifiedJavaType.getBooleanPrimitiveInstance());
+		useReplica.addBodyLine("if (TransactionSynchronizationManager.isActualTransactionActive()) {");
+		useReplica.addBodyLine("return false;");
+		useReplica.addBodyLine("}");
+		useReplica.addBodyLine("Long lastWrite = lastWrite();");
+		useReplica.addBodyLine("return lastWrite == null || System.nanoTime() - lastWrite >= TimeUnit.MILLISECONDS.toNanos(readYourWritesMillis);");
+		routingClass.addMethod(useReplica);
+		
+		// 线程和请求上最近的一次写
+		Method lastWrite = new Method("lastWrite");
+		lastWrite.setVisibility(JavaVisibility.PRIVATE);
+		lastWrite.setStatic(true);
+		lastWrite.setReturnType(new FullyQualifiedJavaType("java.lang.Long"));
+		lastWrite.addBodyLine("Long lastWrite = LAST_WRITE_NANOS.get();");
+		lastWrite.addBodyLine("RequestAttributes attributes = RequestContextHolder.getRequestAttributes();");
+		lastWrite.addBodyLine("Object requestWrite = attributes == null ? null");
+		lastWrite.addBodyLine("        : attributes.getAttribute(LAST_WRITE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);");
+		lastWrite.addBodyLine("if (requestWrite instanceof Long && (lastWrite == null || (Long) requestWrite - lastWrite > 0)) {");
+		lastWrite.addBodyLine("return (Long) requestWrite;");
+		lastWrite.addBodyLine("}");
+		lastWrite.addBodyLine("return lastWrite;");
+		routingClass.addMethod(lastWrite);
+		
+		// 异步执行时在调用线程上取最近的写, 任务执行期间放到执行线程上, 结束后恢复, 不带入线程池的下一个任务
+		Method propagate = new Method("propagate");
+		propagate.setVisibility(JavaVisibility.PUBLIC);
+		propagate.setStatic(true);
+		propagate.addTypeParameter(new TypeParameter("T"));
+		propagate.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.function.Supplier<T>"), "task"));
+		propagate.setReturnType(new FullyQualifiedJavaType("java.util.function.Supplier<T>"));
+		propagate.addBodyLine("Long callerWrite = lastWrite();");
+		propagate.addBodyLine("return () -> {");
+		propagate.addBodyLine("Long previous = LAST_WRITE_NANOS.get();");
+		propagate.addBodyLine("setLastWrite(callerWrite);");
+		propagate.addBodyLine("try {");
+		propagate.addBodyLine("return task.get();");
+		propagate.addBodyLine("} finally {");
+		propagate.addBodyLine("setLastWrite(previous);");
+		propagate.addBodyLine("}");
+		propagate.addBodyLine("};");
+		routingClass.addMethod(propagate);
+		
+		Method setLastWrite = new Method("setLastWrite");
+		setLastWrite.setVisibility(JavaVisibility.PRIVATE);
+		setLastWrite.setStatic(true);
+		setLastWrite.addParameter(new Parameter(new FullyQualifiedJavaType("java.lang.Long"), "nanos"));
+		setLastWrite.addBodyLine("if (nanos == null) {");
+		setLastWrite.addBodyLine("LAST_WRITE_NANOS.remove();");
+		setLastWrite.addBodyLine("} else {");
+		setLastWrite.addBodyLine("LAST_WRITE_NANOS.set(nanos);");
+		setLastWrite.addBodyLine("}");
+		routingClass.addMethod(setLastWrite);
+		return routingClass;
+	}
+}
@@ -0,0 +1,135 @@
+package io.github.litlak.plugin.generator;
+
+import org.mybatis.generator.api.dom.java.Field;
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.api.dom.java.JavaVisibility;
+import org.mybatis.generator.api.dom.java.Method;
+import org.mybatis.generator.api.dom.java.Parameter;
+import org.mybatis.generator.api.dom.java.TopLevelClass;
+import org.mybatis.generator.api.dom.java.TypeParameter;
+
+/**
+ * CustomMethodGenerator中各Service共用的返回类型, 每个context生成一次: <br>
+ * CursorPage pageXXX的游标分页结果 <br>
+ * BulkResult bulkInsert的导入结果, 有表开启bulkAdd时生成
+ *
+ * @author Scomy
+ */
+class ResultTypesGenerator {
+
+	private final CustomMethodGenerator plugin;
+
+	ResultTypesGenerator(CustomMethodGenerator plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * pageXXX的返回类型: 当前页数据和下一页游标
+	 */
+	TopLevelClass cursorPageClass() {
+		TopLevelClass pageClass = new TopLevelClass(plugin.getProperties().getProperty("servicePackage") + ".CursorPage");
+		pageClass.setVisibility(JavaVisibility.PUBLIC);
+		pageClass.addTypeParameter(new TypeParameter("T"));
+		pageClass.addTypeParameter(new TypeParameter("K"));
+		pageClass.addImportedType(new FullyQualifiedJavaType("java.util.List"));
+		pageClass.addImportedType(new FullyQualifiedJavaType("io.swagger.annotations.ApiModel"));
+		pageClass.addImportedType(new FullyQualifiedJavaType("io.swagger.annotations.ApiModelProperty"));
+		pageClass.addAnnotation("@ApiModel(description = \"游标分页结果\")");
+		
+		Field rowsField = new Field("rows", new FullyQualifiedJavaType("java.util.List<T>"));
+		rowsField.setVisibility(JavaVisibility.PRIVATE);
+		rowsField.addAnnotation("@ApiModelProperty(value = \"当前页数据\")");
+		pageClass.addField(rowsField);
+		Field cursorField = new Field("nextCursor", new FullyQualifiedJavaType("K"));
+		cursorField.setVisibility(JavaVisibility.PRIVATE);
+		cursorField.addAnnotation("@ApiModelProperty(value = \"下一页游标, 为空表示没有下一页\")");
+		pageClass.addField(cursorField);
+		
+		Method constructor = new Method("CursorPage");
+		constructor.setConstructor(true);
+		constructor.setVisibility(JavaVisibility.PUBLIC);
+		constructor.addParameter(new Parameter(rowsField.getType(), "rows"));
+		constructor.addParameter(new Parameter(cursorField.getType(), "nextCursor"));
+		constructor.addBodyLine("this.rows = rows;");
+		constructor.addBodyLine("this.nextCursor = nextCursor;");
+		pageClass.addMethod(constructor);
+		
+		Method getRows = new Method("getRows");
+		getRows.setVisibility(JavaVisibility.PUBLIC);
+		getRows.setReturnType(rowsField.getType());
+		getRows.addBodyLine("return rows;");
+		pageClass.addMethod(getRows);
+		Method getNextCursor = new Method("getNextCursor");
+		getNextCursor.setVisibility(JavaVisibility.PUBLIC);
+		getNextCursor.setReturnType(cursorField.getType());
+		getNextCursor.addBodyLine("return nextCursor;");
+		pageClass.addMethod(getNextCursor);
+		
+		return pageClass;
+	}
+
+	/**
+	 * bulkInsert的结果, 各块可能在不同线程写完, 计数用AtomicLong, 只保留第一个错误
+	 */
+	TopLevelClass bulkResultClass() {
+		TopLevelClass resultClass = new TopLevelClass(plugin.getProperties().getProperty("servicePackage") + ".BulkResult");
+		resultClass.setVisibility(JavaVisibility.PUBLIC);
+		resultClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.atomic.AtomicLong"));
+		resultClass.addImportedType(new FullyQualifiedJavaType("io.swagger.annotations.ApiModel"));
+		resultClass.addImportedType(new FullyQualifiedJavaType("io.swagger.annotations.ApiModelProperty"));
+		resultClass.addAnnotation("@ApiModel(description = \"批量导入结果\")");
+
+		for (String counter : new String[] { "accepted", "failed" }) {
+			Field field = new Field(counter, new FullyQualifiedJavaType("java.util.concurrent.atomic.AtomicLong"));
+			field.setVisibility(JavaVisibility.PRIVATE);
+			field.setFinal(true);
+			field.setInitializationString("new AtomicLong()");
+			resultClass.addField(field);
+		}
+		Field errorField = new Field("error", FullyQualifiedJavaType.getStringInstance());
+		errorField.setVisibility(JavaVisibility.PRIVATE);
+		errorField.setVolatile(true);
+		resultClass.addField(errorField);
+
+		Method addAccepted = new Method("addAccepted");
+		addAccepted.setVisibility(JavaVisibility.PUBLIC);
+		addAccepted.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "rows"));
+		addAccepted.addBodyLine("accepted.addAndGet(rows);");
+		resultClass.addMethod(addAccepted);
+		Method addFailed = new Method("addFailed");
+		addFailed.setVisibility(JavaVisibility.PUBLIC);
+		addFailed.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "rows"));
+		addFailed.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "error"));
+		addFailed.addBodyLine("failed.addAndGet(rows);");
+		addFailed.addBodyLine("setError(error);");
+		resultClass.addMethod(addFailed);
+		Method setError = new Method("setError");
+		setError.setVisibility(JavaVisibility.PUBLIC);
+		setError.setSynchronized(true);
+		setError.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "error"));
+		setError.addBodyLine("if (this.error == null) {");
+		setError.addBodyLine("this.error = error;");
+		setError.addBodyLine("}");
+		resultClass.addMethod(setError);
+
+		Method getAccepted = new Method("getAccepted");
+		getAccepted.setVisibility(JavaVisibility.PUBLIC);
+		getAccepted.addAnnotation("@ApiModelProperty(value = \"写入成功的行数\")");
+		getAccepted.setReturnType(new FullyQualifiedJavaType("long"));
+		getAccepted.addBodyLine("return accepted.get();");
+		resultClass.addMethod(getAccepted);
+		Method getFailed = new Method("getFailed");
+		getFailed.setVisibility(JavaVisibility.PUBLIC);
+		getFailed.addAnnotation("@ApiModelProperty(value = \"写入失败的行数, 按块计\")");
+		getFailed.setReturnType(new FullyQualifiedJavaType("long"));
+		getFailed.addBodyLine("return failed.get();");
+		resultClass.addMethod(getFailed);
+		Method getError = new Method("getError");
+		getError.setVisibility(JavaVisibility.PUBLIC);
+		getError.addAnnotation("@ApiModelProperty(value = \"第一个解析或写入错误, 解析错误之后的内容未读取\")");
+		getError.setReturnType(FullyQualifiedJavaType.getStringInstance());
+		getError.addBodyLine("return error;");
+		resultClass.addMethod(getError);
+		return resultClass;
+	}
+}
@@ -0,0 +1,252 @@
+package io.github.litlak.plugin.generator;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.dom.java.Field;
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.api.dom.java.JavaVisibility;
+import org.mybatis.generator.api.dom.java.Method;
+import org.mybatis.generator.api.dom.java.Parameter;
+import org.mybatis.generator.api.dom.java.TopLevelClass;
+import org.mybatis.generator.api.dom.java.TypeParameter;
+
+/**
+ * CustomMethodGenerator的serviceCache: 单主键表Service按主键缓存get/listByIds的结果 <br>
+ * 写方法按主键失效, 批量写按list中各行失效; 缓存类ServiceCache每个context生成一次 <br>
+ * 配置(plugin或table property, table优先): serviceCache, cacheMaxSize, cacheTtlSeconds
+ *
+ * @author Scomy
+ */
+class ServiceCacheGenerator {
+
+	private static final int DEFAULT_CACHE_MAX_SIZE = 10000;
+
+	private static final int DEFAULT_CACHE_TTL_SECONDS = 60;
+
+	private final CustomMethodGenerator plugin;
+
+	ServiceCacheGenerator(CustomMethodGenerator plugin) {
+		this.plugin = plugin;
+	}
+
+	boolean isServiceCache(IntrospectedTable introspectedTable) {
+		return introspectedTable.getPrimaryKeyColumns().size() == 1
+				&& Boolean.parseBoolean(plugin.getProperty(introspectedTable, "serviceCache", "false"));
+	}
+
+	/**
+	 * Service的缓存字段和大小/有效期常量
+	 * 
+	 * @return 缓存字段的类型
+	 */
+	FullyQualifiedJavaType addCacheField(TopLevelClass serviceClass, IntrospectedTable introspectedTable,
+			FullyQualifiedJavaType primaryKeyType, String domainObjectName) {
+		FullyQualifiedJavaType cacheJavaType = new FullyQualifiedJavaType(plugin.getProperties().getProperty("servicePackage")
+				+ ".ServiceCache<" + primaryKeyType.getShortName() + ", " + domainObjectName + ">");
+		serviceClass.addImportedType(cacheJavaType);
+		CustomMethodGenerator.addConstant(serviceClass, "CACHE_MAX_SIZE",
+				plugin.getIntProperty(introspectedTable, "cacheMaxSize", DEFAULT_CACHE_MAX_SIZE));
+		CustomMethodGenerator.addConstant(serviceClass, "CACHE_TTL_SECONDS",
+				plugin.getIntProperty(introspectedTable, "cacheTtlSeconds", DEFAULT_CACHE_TTL_SECONDS));
+		Field cacheField = new Field("cache", cacheJavaType);
+		cacheField.setVisibility(JavaVisibility.PRIVATE);
+		cacheField.setFinal(true);
+		cacheField.setInitializationString("new ServiceCache<>(CACHE_MAX_SIZE, CACHE_TTL_SECONDS * 1000L)");
+		serviceClass.addField(cacheField);
+		return cacheJavaType;
+	}
+
+	/**
+	 * service.getCache, 用于查看命中/未命中/淘汰计数
+	 */
+	static void addGetCache(TopLevelClass serviceClass, FullyQualifiedJavaType cacheJavaType) {
+		Method getCache = new Method("getCache");
+		getCache.setVisibility(JavaVisibility.PUBLIC);
+		getCache.setReturnType(cacheJavaType);
+		getCache.addBodyLine("return cache;");
+		serviceClass.addMethod(getCache);
+	}
+
+	/**
+	 * get: 先查缓存, 未命中时执行selectOne, 读库前取version, 期间有失效则不写回; copy时返回缓存对象的副本
+	 */
+	static List<String> cachedGetLines(String domainObjectName, String selectOne, boolean copy) {
+		final String result = copy ? "copy(row)" : "row";
+		return Arrays.asList(domainObjectName + " row = cache.get(req);",
+				"if (row != null) {",
+				"return " + result + ";",
+				"}",
+				"long cacheVersion = cache.version();",
+				"row = " + selectOne + ";",
+				"if (row != null) {",
+				"cache.put(req, row, cacheVersion);",
+				"}",
+				"return " + result + ";");
+	}
+
+	/**
+	 * listByIds: 先查缓存, 命中的放入rowMap, 只批量查询未命中的missingIds
+	 */
+	static List<String> cacheLookupLines(String domainObjectName, String pkTypeName) {
+		return Arrays.asList("List<" + pkTypeName + "> missingIds = new ArrayList<>(distinctIds.size());",
+				"for (" + pkTypeName + " id : distinctIds) {",
+				domainObjectName + " cached = cache.get(id);",
+				"if (cached != null) {",
+				"rowMap.put(id, cached);",
+				"} else {",
+				"missingIds.add(id);",
+				"}",
+				"}",
+				"long cacheVersion = cache.version();");
+	}
+
+	/**
+	 * 批量写后失效list中各行的缓存, 一次invalidateAll在事务中只注册一个提交回调
+	 */
+	static List<String> invalidateRowsLines(String domainObjectName, FullyQualifiedJavaType primaryKeyType,
+			String pkGetter) {
+		return Arrays.asList("List<" + primaryKeyType.getShortName() + "> invalidIds = new ArrayList<>(list.size());",
+				"for (" + domainObjectName + " row : list) {",
+				"invalidIds.add(row." + pkGetter + "());",
+				"}",
+				"cache.invalidateAll(invalidIds);");
+	}
+
+	/**
+	 * 按主键缓存的LRU+TTL缓存, 失效时递增version, 防止并发读把失效前的旧值写回;
+	 * 事务提交前并发读仍可能读到旧值, 提交后再失效一次
+	 */
+	TopLevelClass serviceCacheClass() {
+		TopLevelClass cacheClass = new TopLevelClass(plugin.getProperties().getProperty("servicePackage") + ".ServiceCache");
+		cacheClass.setVisibility(JavaVisibility.PUBLIC);
+		cacheClass.addTypeParameter(new TypeParameter("K"));
+		cacheClass.addTypeParameter(new TypeParameter("V"));
+		cacheClass.addImportedType(new FullyQualifiedJavaType("java.util.AbstractMap.SimpleImmutableEntry"));
+		cacheClass.addImportedType(new FullyQualifiedJavaType("java.util.Collections"));
+		cacheClass.addImportedType(new FullyQualifiedJavaType("java.util.Iterator"));
+		cacheClass.addImportedType(new FullyQualifiedJavaType("java.util.LinkedHashMap"));
+		cacheClass.addImportedType(new FullyQualifiedJavaType("org.springframework.transaction.support.TransactionSynchronization"));
+		cacheClass.addImportedType(new FullyQualifiedJavaType(
+				"org.springframework.transaction.support.TransactionSynchronizationManager"));
+		cacheClass.addJavaDocLine("/**");
+		cacheClass.addJavaDocLine(" * 有界的LRU+TTL缓存, 缓存的对象由调用方共享, 请勿修改 <br>");
+		cacheClass.addJavaDocLine(" * 失效立即生效, 在Spring事务中时提交后再失效一次");
+		cacheClass.addJavaDocLine(" */");
+		
+		Field maxSizeField = new Field("maxSize", new FullyQualifiedJavaType("int"));
+		maxSizeField.setVisibility(JavaVisibility.PRIVATE);
+		maxSizeField.setFinal(true);
+		cacheClass.addField(maxSizeField);
+		Field ttlField = new Field("ttlMillis", new FullyQualifiedJavaType("long"));
+		ttlField.setVisibility(JavaVisibility.PRIVATE);
+		ttlField.setFinal(true);
+		cacheClass.addField(ttlField);
+		// access-order, 第一个元素即最久未访问
+		Field entriesField = new Field("entries",
+				new FullyQualifiedJavaType("java.util.LinkedHashMap<K, SimpleImmutableEntry<V, Long>>"));
+		entriesField.setVisibility(JavaVisibility.PRIVATE);
+		entriesField.setFinal(true);
+		entriesField.setInitializationString("new LinkedHashMap<>(16, 0.75f, true)");
+		cacheClass.addField(entriesField);
+		for (String counter : new String[] { "version", "hits", "misses", "evictions" }) {
+			Field counterField = new Field(counter, new FullyQualifiedJavaType("long"));
+			counterField.setVisibility(JavaVisibility.PRIVATE);
+			cacheClass.addField(counterField);
+		}
+		
+		Method constructor = new Method("ServiceCache");
+		constructor.setConstructor(true);
+		constructor.setVisibility(JavaVisibility.PUBLIC);
+		constructor.addParameter(new Parameter(new FullyQualifiedJavaType("int"), "maxSize"));
+		constructor.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "ttlMillis"));
+		constructor.addBodyLine("this.maxSize = maxSize;");
+		constructor.addBodyLine("this.ttlMillis = ttlMillis;");
+		cacheClass.addMethod(constructor);
+		
+		Method get = new Method("get");
+		get.setVisibility(JavaVisibility.PUBLIC);
+		get.setSynchronized(true);
+		get.addParameter(new Parameter(new FullyQualifiedJavaType("K"), "key"));
+		get.setReturnType(new FullyQualifiedJavaType("V"));
+		get.addBodyLine("SimpleImmutableEntry<V, Long> entry = entries.get(key);");
+		get.addBodyLine("if (entry == null || entry.getValue() < System.currentTimeMillis()) {");
+		get.addBodyLine("if (entry != null) {");
+		get.addBodyLine("entries.remove(key);");
+		get.addBodyLine("}");
+		get.addBodyLine("misses++;");
+		get.addBodyLine("return null;");
+		get.addBodyLine("}");
+		get.addBodyLine("hits++;");
+		get.addBodyLine("return entry.getKey();");
+		cacheClass.addMethod(get);
+		
+		Method version = new Method("version");
+		version.setVisibility(JavaVisibility.PUBLIC);
+		version.setSynchronized(true);
+		version.setReturnType(new FullyQualifiedJavaType("long"));
+		version.addBodyLine("return version;");
+		cacheClass.addMethod(version);
+		
+		// 读库前取version, 期间有失效则放弃写入
+		Method put = new Method("put");
+		put.setVisibility(JavaVisibility.PUBLIC);
+		put.setSynchronized(true);
+		put.addParameter(new Parameter(new FullyQualifiedJavaType("K"), "key"));
+		put.addParameter(new Parameter(new FullyQualifiedJavaType("V"), "value"));
+		put.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "readVersion"));
+		put.addBodyLine("if (readVersion != version) {");
+		put.addBodyLine("return;");
+		put.addBodyLine("}");
+		put.addBodyLine("entries.put(key, new SimpleImmutableEntry<>(value, System.currentTimeMillis() + ttlMillis));");
+		put.addBodyLine("if (entries.size() > maxSize) {");
+		put.addBodyLine("Iterator<K> eldest = entries.keySet().iterator();");
+		put.addBodyLine("eldest.next();");
+		put.addBodyLine("eldest.remove();");
+		put.addBodyLine("evictions++;");
+		put.addBodyLine("}");
+		cacheClass.addMethod(put);
+		
+		Method invalidate = new Method("invalidate");
+		invalidate.setVisibility(JavaVisibility.PUBLIC);
+		invalidate.addParameter(new Parameter(new FullyQualifiedJavaType("K"), "key"));
+		invalidate.addBodyLine("invalidateAll(Collections.singletonList(key));");
+		cacheClass.addMethod(invalidate);
+		
+		// 提交前其他线程可能读到旧值并写回缓存, 事务中写入时提交后再失效一次
+		Method invalidateAll = new Method("invalidateAll");
+		invalidateAll.setVisibility(JavaVisibility.PUBLIC);
+		invalidateAll.addParameter(new Parameter(new FullyQualifiedJavaType("java.lang.Iterable<K>"), "keys"));
+		invalidateAll.addBodyLine("remove(keys);");
+		invalidateAll.addBodyLine("if (TransactionSynchronizationManager.isSynchronizationActive()) {");
+		invalidateAll.addBodyLine("TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {");
+		invalidateAll.addBodyLine("@Override");
+		invalidateAll.addBodyLine("public void afterCommit() {");
+		invalidateAll.addBodyLine("remove(keys);");
+		invalidateAll.addBodyLine("}");
+		invalidateAll.addBodyLine("});");
+		invalidateAll.addBodyLine("}");
+		cacheClass.addMethod(invalidateAll);
+		
+		Method remove = new Method("remove");
+		remove.setVisibility(JavaVisibility.PRIVATE);
+		remove.setSynchronized(true);
+		remove.addParameter(new Parameter(new FullyQualifiedJavaType("java.lang.Iterable<K>"), "keys"));
+		remove.addBodyLine("version++;");
+		remove.addBodyLine("for (K key : keys) {");
+		remove.addBodyLine("entries.remove(key);");
+		remove.addBodyLine("}");
+		cacheClass.addMethod(remove);
+		
+		for (String stat : new String[] { "size", "hits", "misses", "evictions" }) {
+			Method getter = new Method("get" + Character.toUpperCase(stat.charAt(0)) + stat.substring(1));
+			getter.setVisibility(JavaVisibility.PUBLIC);
+			getter.setSynchronized(true);
+			getter.setReturnType(new FullyQualifiedJavaType("long"));
+			getter.addBodyLine("return " + ("size".equals(stat) ? "entries.size()" : stat) + ";");
+			cacheClass.addMethod(getter);
+		}
+		return cacheClass;
+	}
+}
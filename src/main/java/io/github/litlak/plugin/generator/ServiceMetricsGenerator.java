@@ -0,0 +1,327 @@
+package io.github.litlak.plugin.generator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.dom.java.Field;
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.api.dom.java.InnerClass;
+import org.mybatis.generator.api.dom.java.JavaVisibility;
+import org.mybatis.generator.api.dom.java.Method;
+import org.mybatis.generator.api.dom.java.Parameter;
+import org.mybatis.generator.api.dom.java.TopLevelClass;
+import org.mybatis.generator.api.dom.java.TypeParameter;
+
+/**
+ * CustomMethodGenerator的serviceMetrics: Service的public方法按表和方法名记录耗时分布, 读写行数, 参数个数 <br>
+ * 在Service的方法都生成之后包装方法体; 统计类ServiceMetrics每个context生成一次 <br>
+ * Controller的接口不计: 每个接口只调用一个Service方法, 耗时, 行数和批量大小已按同一表和方法名记录在Service上;
+ * 接口返回的是responseGenericityType包装的结果, 取不到其中的行数 <br>
+ * 配置(plugin或table property, table优先): serviceMetrics, slowCallMillis
+ *
+ * @author Scomy
+ */
+class ServiceMetricsGenerator {
+
+	private static final int DEFAULT_SLOW_CALL_MILLIS = 500;
+
+	private final CustomMethodGenerator plugin;
+
+	ServiceMetricsGenerator(CustomMethodGenerator plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Service的public方法加计时: 方法体整体作为lambda交给Operation.call/run执行, 不改写其中的语句.
+	 * 行数按返回值计(int为影响行数, List/CursorPage为行数, BulkResult为写入成功的行数, 其他非空为1行),
+	 * 没有返回值的按参数个数计. streamXXX的行数由consumer消费, 不计
+	 */
+	void addServiceMetrics(TopLevelClass serviceClass, IntrospectedTable introspectedTable, Method streamDomain) {
+		final String tableName = introspectedTable.getFullyQualifiedTable().getIntrospectedTableName();
+		final FullyQualifiedJavaType operationJavaType = new FullyQualifiedJavaType(
+				plugin.getProperties().getProperty("servicePackage") + ".ServiceMetrics.Operation");
+		serviceClass.addImportedType(operationJavaType);
+		CustomMethodGenerator.addConstant(serviceClass, "SLOW_CALL_MILLIS",
+				plugin.getIntProperty(introspectedTable, "slowCallMillis", DEFAULT_SLOW_CALL_MILLIS));
+		Set<String> operationNames = new HashSet<>();
+		for (Method method : serviceClass.getMethods()) {
+			if (method.getVisibility() != JavaVisibility.PUBLIC || method.isConstructor() || method == streamDomain
+					|| "getCache".equals(method.getName())) {
+				continue;
+			}
+			// 重载方法按最后一个参数区分, 如listByIds(ids, fields)记为listByIdsWithFields
+			String operationName = method.getName();
+			if (!operationNames.add(operationName)) {
+				String last = method.getParameters().get(method.getParameters().size() - 1).getName();
+				operationName += "With" + Character.toUpperCase(last.charAt(0)) + last.substring(1);
+				operationNames.add(operationName);
+			}
+			String operation = "METRICS_" + operationName.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase();
+			Field operationField = new Field(operation, operationJavaType);
+			operationField.setVisibility(JavaVisibility.PRIVATE);
+			operationField.setStatic(true);
+			operationField.setFinal(true);
+			operationField.setInitializationString("ServiceMetrics.operation(\"" + tableName + "\", \""
+					+ operationName + "\", SLOW_CALL_MILLIS)");
+			serviceClass.addField(operationField);
+
+			// 参数个数: List参数取size, 批量方法即批量大小
+			Parameter first = method.getParameters().isEmpty() ? null : method.getParameters().get(0);
+			String params = first != null && "java.util.List".equals(first.getType().getFullyQualifiedNameWithoutTypeParameters())
+					? "(" + first.getName() + " == null ? 0 : " + first.getName() + ".size())" : "1";
+			List<String> bodyLines = new ArrayList<>(method.getBodyLines());
+			method.getBodyLines().clear();
+			if (method.getReturnType() == null) {
+				method.addBodyLine(operation + ".run(" + params + ", () -> {");
+				method.addBodyLines(bodyLines);
+				method.addBodyLine("});");
+			} else {
+				method.addBodyLine("return " + operation + ".call(" + params + ", () -> {");
+				method.addBodyLines(bodyLines);
+				method.addBodyLine("}, " + rowCount(method.getReturnType()) + ");");
+			}
+		}
+	}
+
+	/**
+	 * Operation.call的行数函数, 参数不为null
+	 */
+	private static String rowCount(FullyQualifiedJavaType returnType) {
+		String typeName = returnType.getFullyQualifiedNameWithoutTypeParameters();
+		if ("int".equals(typeName)) {
+			return "rows -> rows";
+		} else if ("java.util.List".equals(typeName)) {
+			return "rows -> rows.size()";
+		} else if (typeName.endsWith(".CursorPage")) {
+			return "page -> page.getRows().size()";
+		} else if (typeName.endsWith(".BulkResult")) {
+			return "result -> result.getAccepted()";
+		}
+		return "row -> 1";
+	}
+
+	/**
+	 * 按表和方法名汇总的调用统计, 计数用LongAdder, 耗时和参数个数按2的幂次分桶, 不加锁
+	 */
+	TopLevelClass serviceMetricsClass() {
+		TopLevelClass metricsClass = new TopLevelClass(plugin.getProperties().getProperty("servicePackage") + ".ServiceMetrics");
+		metricsClass.setVisibility(JavaVisibility.PUBLIC);
+		metricsClass.addImportedType(new FullyQualifiedJavaType("java.util.Collection"));
+		metricsClass.addImportedType(new FullyQualifiedJavaType("java.util.Collections"));
+		metricsClass.addImportedType(new FullyQualifiedJavaType("java.util.List"));
+		metricsClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.ConcurrentHashMap"));
+		metricsClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.atomic.AtomicLongArray"));
+		metricsClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.atomic.LongAdder"));
+		metricsClass.addImportedType(new FullyQualifiedJavaType("java.util.function.Supplier"));
+		metricsClass.addImportedType(new FullyQualifiedJavaType("java.util.function.ToLongFunction"));
+		metricsClass.addImportedType(new FullyQualifiedJavaType("org.apache.commons.logging.Log"));
+		metricsClass.addImportedType(new FullyQualifiedJavaType("org.apache.commons.logging.LogFactory"));
+		metricsClass.addJavaDocLine("/**");
+		metricsClass.addJavaDocLine(" * Service调用统计: 耗时分布, 读写行数, 参数个数(批量大小), 慢调用日志");
+		metricsClass.addJavaDocLine(" */");
+
+		Field logField = new Field("log", new FullyQualifiedJavaType("org.apache.commons.logging.Log"));
+		logField.setVisibility(JavaVisibility.PRIVATE);
+		logField.setStatic(true);
+		logField.setFinal(true);
+		logField.setInitializationString("LogFactory.getLog(ServiceMetrics.class)");
+		metricsClass.addField(logField);
+		// 第i个桶: [2^(i-1), 2^i), 第0个桶为0
+		Field bucketsField = new Field("BUCKETS", new FullyQualifiedJavaType("int"));
+		bucketsField.setVisibility(JavaVisibility.PUBLIC);
+		bucketsField.setStatic(true);
+		bucketsField.setFinal(true);
+		bucketsField.setInitializationString("32");
+		metricsClass.addField(bucketsField);
+		Field operationsField = new Field("OPERATIONS",
+				new FullyQualifiedJavaType("java.util.concurrent.ConcurrentHashMap<String, Operation>"));
+		operationsField.setVisibility(JavaVisibility.PRIVATE);
+		operationsField.setStatic(true);
+		operationsField.setFinal(true);
+		operationsField.setInitializationString("new ConcurrentHashMap<>()");
+		metricsClass.addField(operationsField);
+
+		Method operation = new Method("operation");
+		operation.setVisibility(JavaVisibility.PUBLIC);
+		operation.setStatic(true);
+		operation.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "table"));
+		operation.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "name"));
+		operation.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "slowMillis"));
+		operation.setReturnType(new FullyQualifiedJavaType("Operation"));
+		operation.addBodyLine("return OPERATIONS.computeIfAbsent(table + \".\" + name, k -> new Operation(table, name, slowMillis));");
+		metricsClass.addMethod(operation);
+
+		Method getOperations = new Method("getOperations");
+		getOperations.setVisibility(JavaVisibility.PUBLIC);
+		getOperations.setStatic(true);
+		getOperations.setReturnType(new FullyQualifiedJavaType("java.util.Collection<Operation>"));
+		getOperations.addBodyLine("return Collections.unmodifiableCollection(OPERATIONS.values());");
+		metricsClass.addMethod(getOperations);
+
+		Method bucket = new Method("bucket");
+		bucket.setVisibility(JavaVisibility.PRIVATE);
+		bucket.setStatic(true);
+		bucket.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "value"));
+		bucket.setReturnType(FullyQualifiedJavaType.getIntInstance());
+		bucket.addBodyLine("return value <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));");
+		metricsClass.addMethod(bucket);
+
+		InnerClass operationClass = new InnerClass("Operation");
+		operationClass.setVisibility(JavaVisibility.PUBLIC);
+		operationClass.setStatic(true);
+		operationClass.addJavaDocLine("/**");
+		operationClass.addJavaDocLine(" * 一张表的一个操作");
+		operationClass.addJavaDocLine(" */");
+		for (String name : new String[] { "table", "name" }) {
+			Field field = new Field(name, FullyQualifiedJavaType.getStringInstance());
+			field.setVisibility(JavaVisibility.PRIVATE);
+			field.setFinal(true);
+			operationClass.addField(field);
+		}
+		Field slowNanosField = new Field("slowNanos", new FullyQualifiedJavaType("long"));
+		slowNanosField.setVisibility(JavaVisibility.PRIVATE);
+		slowNanosField.setFinal(true);
+		operationClass.addField(slowNanosField);
+		String[] counters = { "calls", "errors", "rows", "totalNanos" };
+		for (String counter : counters) {
+			Field field = new Field(counter, new FullyQualifiedJavaType("java.util.concurrent.atomic.LongAdder"));
+			field.setVisibility(JavaVisibility.PRIVATE);
+			field.setFinal(true);
+			field.setInitializationString("new LongAdder()");
+			operationClass.addField(field);
+		}
+		// 耗时按微秒分桶, 参数个数按个数分桶
+		String[] histograms = { "latencyMicros", "paramSizes" };
+		for (String histogram : histograms) {
+			Field field = new Field(histogram, new FullyQualifiedJavaType("java.util.concurrent.atomic.AtomicLongArray"));
+			field.setVisibility(JavaVisibility.PRIVATE);
+			field.setFinal(true);
+			field.setInitializationString("new AtomicLongArray(BUCKETS)");
+			operationClass.addField(field);
+		}
+
+		Method constructor = new Method("Operation");
+		constructor.setConstructor(true);
+		constructor.setVisibility(JavaVisibility.PRIVATE);
+		constructor.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "table"));
+		constructor.addParameter(new Parameter(FullyQualifiedJavaType.getStringInstance(), "name"));
+		constructor.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "slowMillis"));
+		constructor.addBodyLine("this.table = table;");
+		constructor.addBodyLine("this.name = name;");
+		constructor.addBodyLine("this.slowNanos = slowMillis * 1000000L;");
+		operationClass.addMethod(constructor);
+
+		// call: 执行方法体, 按返回值计行数并原样返回, 异常时记录error后原样抛出
+		Method call = new Method("call");
+		call.setVisibility(JavaVisibility.PUBLIC);
+		call.addTypeParameter(new TypeParameter("T"));
+		call.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "params"));
+		call.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.function.Supplier<T>"), "body"));
+		call.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.function.ToLongFunction<T>"), "rowCount"));
+		call.setReturnType(new FullyQualifiedJavaType("T"));
+		call.addBodyLine("long startNanos = System.nanoTime();");
+		call.addBodyLine("T result;");
+		call.addBodyLine("try {");
+		call.addBodyLine("result = body.get();");
+		call.addBodyLine("} catch (RuntimeException | Error e) {");
+		call.addBodyLine("error(startNanos, params);");
+		call.addBodyLine("throw e;");
+		call.addBodyLine("}");
+		call.addBodyLine("record(startNanos, params, result == null ? 0 : rowCount.applyAsLong(result), false);");
+		call.addBodyLine("return result;");
+		operationClass.addMethod(call);
+
+		// 没有返回值的操作按每个参数一行计
+		Method run = new Method("run");
+		run.setVisibility(JavaVisibility.PUBLIC);
+		run.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "params"));
+		run.addParameter(new Parameter(new FullyQualifiedJavaType("java.lang.Runnable"), "body"));
+		run.addBodyLine("long startNanos = System.nanoTime();");
+		run.addBodyLine("try {");
+		run.addBodyLine("body.run();");
+		run.addBodyLine("} catch (RuntimeException | Error e) {");
+		run.addBodyLine("error(startNanos, params);");
+		run.addBodyLine("throw e;");
+		run.addBodyLine("}");
+		run.addBodyLine("record(startNanos, params, params, false);");
+		operationClass.addMethod(run);
+
+		Method error = new Method("error");
+		error.setVisibility(JavaVisibility.PRIVATE);
+		error.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "startNanos"));
+		error.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "params"));
+		error.addBodyLine("errors.increment();");
+		error.addBodyLine("record(startNanos, params, 0, true);");
+		operationClass.addMethod(error);
+
+		Method record = new Method("record");
+		record.setVisibility(JavaVisibility.PRIVATE);
+		record.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "startNanos"));
+		record.addParameter(new Parameter(FullyQualifiedJavaType.getIntInstance(), "params"));
+		record.addParameter(new Parameter(new FullyQualifiedJavaType("long"), "rowCount"));
+		record.addParameter(new Parameter(FullyQualifiedJavaType.getBooleanPrimitiveInstance(), "failed"));
+		record.addBodyLine("long nanos = System.nanoTime() - startNanos;");
+		record.addBodyLine("calls.increment();");
+		record.addBodyLine("totalNanos.add(nanos);");
+		record.addBodyLine("rows.add(rowCount);");
+		record.addBodyLine("latencyMicros.incrementAndGet(bucket(nanos / 1000));");
+		record.addBodyLine("paramSizes.incrementAndGet(bucket(params));");
+		record.addBodyLine("if (nanos >= slowNanos && log.isWarnEnabled()) {");
+		record.addBodyLine("log.warn(\"slow call \" + table + \".\" + name + (failed ? \" failed: \" : \": \") + nanos / 1000000"
+				+ " + \" ms, params=\" + params + \", rows=\" + rowCount);");
+		record.addBodyLine("}");
+		operationClass.addMethod(record);
+
+		// 近似分位数: 返回所在桶的上界(微秒)
+		Method percentile = new Method("getLatencyPercentileMicros");
+		percentile.setVisibility(JavaVisibility.PUBLIC);
+		percentile.addParameter(new Parameter(new FullyQualifiedJavaType("double"), "percentile"));
+		percentile.setReturnType(new FullyQualifiedJavaType("long"));
+		percentile.addBodyLine("long[] counts = getLatencyMicrosHistogram();");
+		percentile.addBodyLine("long total = 0;");
+		percentile.addBodyLine("for (long count : counts) {");
+		percentile.addBodyLine("total += count;");
+		percentile.addBodyLine("}");
+		percentile.addBodyLine("long threshold = (long) Math.ceil(total * percentile);");
+		percentile.addBodyLine("long seen = 0;");
+		percentile.addBodyLine("for (int i = 0; i < counts.length; i++) {");
+		percentile.addBodyLine("seen += counts[i];");
+		percentile.addBodyLine("if (seen >= threshold && seen > 0) {");
+		percentile.addBodyLine("return i == 0 ? 0 : 1L << i;");
+		percentile.addBodyLine("}");
+		percentile.addBodyLine("}");
+		percentile.addBodyLine("return 0;");
+		operationClass.addMethod(percentile);
+
+		for (String name : new String[] { "table", "name" }) {
+			Method getter = new Method("get" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+			getter.setVisibility(JavaVisibility.PUBLIC);
+			getter.setReturnType(FullyQualifiedJavaType.getStringInstance());
+			getter.addBodyLine("return " + name + ";");
+			operationClass.addMethod(getter);
+		}
+		for (String counter : counters) {
+			Method getter = new Method("get" + Character.toUpperCase(counter.charAt(0)) + counter.substring(1));
+			getter.setVisibility(JavaVisibility.PUBLIC);
+			getter.setReturnType(new FullyQualifiedJavaType("long"));
+			getter.addBodyLine("return " + counter + ".sum();");
+			operationClass.addMethod(getter);
+		}
+		for (String histogram : histograms) {
+			Method getter = new Method("get" + Character.toUpperCase(histogram.charAt(0)) + histogram.substring(1) + "Histogram");
+			getter.setVisibility(JavaVisibility.PUBLIC);
+			getter.setReturnType(new FullyQualifiedJavaType("long[]"));
+			getter.addBodyLine("long[] counts = new long[BUCKETS];");
+			getter.addBodyLine("for (int i = 0; i < BUCKETS; i++) {");
+			getter.addBodyLine("counts[i] = " + histogram + ".get(i);");
+			getter.addBodyLine("}");
+			getter.addBodyLine("return counts;");
+			operationClass.addMethod(getter);
+		}
+		metricsClass.addInnerClass(operationClass);
+		return metricsClass;
+	}
+}
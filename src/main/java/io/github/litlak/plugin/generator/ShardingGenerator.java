@@ -0,0 +1,322 @@
+package io.github.litlak.plugin.generator;
+
+import static io.github.litlak.plugin.generator.SqlMapElements.addPairedLines;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.dom.java.Field;
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.api.dom.java.Interface;
+import org.mybatis.generator.api.dom.java.JavaVisibility;
+import org.mybatis.generator.api.dom.java.Method;
+import org.mybatis.generator.api.dom.java.Parameter;
+import org.mybatis.generator.api.dom.java.TopLevelClass;
+import org.mybatis.generator.api.dom.java.TypeParameter;
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.TextElement;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+import org.mybatis.generator.internal.util.JavaBeansUtil;
+
+/**
+ * CustomMethodGenerator的分表: mapper语句的表名由参数传入, Service按分片列取模路由到分表, 多张分表上的查询合并结果 <br>
+ * 配置(plugin或table property, table优先): shardKey, shardCount, shardTableFormat, shardExecutor
+ *
+ * @author Scomy
+ */
+class ShardingGenerator {
+
+	private final CustomMethodGenerator plugin;
+
+	ShardingGenerator(CustomMethodGenerator plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * 分表的分片列: 配置了shardKey且shardCount大于1, 表为单主键, 分片列存在且不是BLOB列, 否则为null(不分表)
+	 */
+	IntrospectedColumn shardKeyColumn(IntrospectedTable introspectedTable) {
+		String shardKey = plugin.getProperty(introspectedTable, "shardKey", null);
+		if (shardKey == null || plugin.getIntProperty(introspectedTable, "shardCount", 0) < 2
+				|| introspectedTable.getPrimaryKeyColumns().size() != 1) {
+			return null;
+		}
+		for (IntrospectedColumn column : CompiledTable.of(introspectedTable).getNonBLOBColumns()) {
+			if (column.getActualColumnName().equalsIgnoreCase(shardKey.trim())) {
+				return column;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 分表的mapper方法: 所有语句的第一个参数为分表名, MBG的单行语句(已去掉)换成带表名的版本 <br>
+	 * generatedMethodCount之后为CustomMethodGenerator新增的方法
+	 */
+	void addShardedMethods(Interface interfaze, IntrospectedTable introspectedTable, int generatedMethodCount) {
+		final FullyQualifiedJavaType domainJavaType = new FullyQualifiedJavaType(introspectedTable.getBaseRecordType());
+		for (Method method : interfaze.getMethods().subList(generatedMethodCount, interfaze.getMethods().size())) {
+			addTableParameter(method);
+		}
+		final FullyQualifiedJavaType primaryKeyType = introspectedTable.getPrimaryKeyColumns().get(0).getFullyQualifiedJavaType();
+		Method insertMethod = new Method("insert");
+		insertMethod.setReturnType(new FullyQualifiedJavaType("int"));
+		insertMethod.addParameter(new Parameter(domainJavaType, "record"));
+		Method selectMethod = new Method("selectByPrimaryKey");
+		selectMethod.setReturnType(domainJavaType);
+		selectMethod.addParameter(new Parameter(primaryKeyType, "id"));
+		Method updateMethod = new Method("updateByPrimaryKey");
+		updateMethod.setReturnType(new FullyQualifiedJavaType("int"));
+		updateMethod.addParameter(new Parameter(domainJavaType, "record"));
+		Method deleteMethod = new Method("deleteByPrimaryKey");
+		deleteMethod.setReturnType(new FullyQualifiedJavaType("int"));
+		deleteMethod.addParameter(new Parameter(primaryKeyType, "id"));
+		for (Method method : Arrays.asList(insertMethod, selectMethod, updateMethod, deleteMethod)) {
+			addTableParameter(method);
+			interfaze.addMethod(method);
+		}
+		interfaze.addImportedType(domainJavaType);
+		interfaze.addImportedType(primaryKeyType);
+		interfaze.addImportedType(new FullyQualifiedJavaType("org.apache.ibatis.annotations.Param"));
+	}
+
+	/**
+	 * 分表的单行语句, 代替MBG的insert/selectByPrimaryKey/updateByPrimaryKey/deleteByPrimaryKey, 表名为参数${table}
+	 */
+	void addShardedStatements(XmlElement root, IntrospectedTable introspectedTable, String projectionResultMap) {
+		final String tableName = "${table}";
+		final CompiledTable compiled = CompiledTable.of(introspectedTable);
+		final IntrospectedColumn primaryKeyColumn = introspectedTable.getPrimaryKeyColumns().get(0);
+		final String primaryKeyCondition = "where " + primaryKeyColumn.getActualColumnName() + " = ";
+		final List<IntrospectedColumn> rowColumns = CustomMethodGenerator.projectionColumns(introspectedTable);
+		final List<String> rowColumnNames = rowColumns.stream().map(e -> compiled.column(e).getName())
+				.collect(Collectors.toList());
+		
+		XmlElement insert = new XmlElement("insert");
+		insert.addAttribute(new Attribute("id", "insert"));
+		if (introspectedTable.getGeneratedKey() != null) {
+			IntrospectedColumn generatedColumn = introspectedTable.getColumn(introspectedTable.getGeneratedKey().getColumn());
+			if (generatedColumn != null) {
+				insert.addAttribute(new Attribute("useGeneratedKeys", "true"));
+				insert.addAttribute(new Attribute("keyProperty", "record." + generatedColumn.getJavaProperty()));
+			}
+		}
+		insert.addElement(new TextElement("insert into " + tableName + " ("));
+		addPairedLines(insert, rowColumnNames);
+		insert.addElement(new TextElement(") values ("));
+		addPairedLines(insert, rowColumns.stream().map(e -> compiled.column(e).getRecordParameter())
+				.collect(Collectors.toList()));
+		insert.addElement(new TextElement(")"));
+		root.addElement(insert);
+		
+		XmlElement selectByPrimaryKey = new XmlElement("select");
+		selectByPrimaryKey.addAttribute(new Attribute("id", "selectByPrimaryKey"));
+		selectByPrimaryKey.addAttribute(new Attribute("resultMap", projectionResultMap));
+		selectByPrimaryKey.addElement(new TextElement("select"));
+		addPairedLines(selectByPrimaryKey, rowColumnNames);
+		selectByPrimaryKey.addElement(new TextElement("from " + tableName));
+		selectByPrimaryKey.addElement(new TextElement(primaryKeyCondition + "#{id,jdbcType="
+				+ primaryKeyColumn.getJdbcTypeName() + "}"));
+		root.addElement(selectByPrimaryKey);
+		
+		// 同MBG的updateByPrimaryKey, 不更新BLOB列
+		List<String> assignments = new ArrayList<>();
+		for (IntrospectedColumn column : compiled.getBaseColumns()) {
+			assignments.add(compiled.column(column).getName() + " = " + compiled.column(column).getRecordParameter());
+		}
+		if (assignments.isEmpty()) {
+			assignments.add(primaryKeyColumn.getActualColumnName() + " = " + primaryKeyColumn.getActualColumnName());
+		}
+		XmlElement updateByPrimaryKey = new XmlElement("update");
+		updateByPrimaryKey.addAttribute(new Attribute("id", "updateByPrimaryKey"));
+		updateByPrimaryKey.addElement(new TextElement("update " + tableName + " set"));
+		addPairedLines(updateByPrimaryKey, assignments);
+		updateByPrimaryKey.addElement(new TextElement(primaryKeyCondition
+				+ compiled.column(primaryKeyColumn).getRecordParameter()));
+		root.addElement(updateByPrimaryKey);
+		
+		XmlElement deleteByPrimaryKey = new XmlElement("delete");
+		deleteByPrimaryKey.addAttribute(new Attribute("id", "deleteByPrimaryKey"));
+		deleteByPrimaryKey.addElement(new TextElement("delete from " + tableName));
+		deleteByPrimaryKey.addElement(new TextElement(primaryKeyCondition + "#{id,jdbcType="
+				+ primaryKeyColumn.getJdbcTypeName() + "}"));
+		root.addElement(deleteByPrimaryKey);
+	}
+
+	/**
+	 * 分表路由: 分表名列表, 按分片列取模选择分表, scatter在多张分表上执行并合并结果 <br>
+	 * 配置了shardExecutor时多张分表并行执行, 跨分表的写不在同一个事务中
+	 */
+	void addShardRouting(TopLevelClass serviceClass, IntrospectedTable introspectedTable,
+			IntrospectedColumn shardColumn, String domainObjectName) {
+		final FullyQualifiedJavaType shardKeyType = shardColumn.getFullyQualifiedJavaType();
+		final IntrospectedColumn primaryKeyColumn = introspectedTable.getPrimaryKeyColumns().get(0);
+		final String pkTypeName = primaryKeyColumn.getFullyQualifiedJavaType().getShortName();
+		final String shardGetter = JavaBeansUtil.getGetterMethodName(shardColumn.getJavaProperty(), shardKeyType);
+		final String shardExecutor = plugin.getProperty(introspectedTable, "shardExecutor", null);
+		// %s为逻辑表名, 生成时替换, 运行时只按分表序号格式化
+		final String shardTableFormat = plugin.getProperty(introspectedTable, "shardTableFormat", "%s_%02d")
+				.replace("%s", introspectedTable.getFullyQualifiedTable().getIntrospectedTableName());
+		serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.ArrayList"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.Collection"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.Collections"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.Map"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.TreeMap"));
+		serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.function.Function"));
+		serviceClass.addImportedType(shardKeyType);
+		CustomMethodGenerator.addConstant(serviceClass, "SHARD_COUNT", plugin.getIntProperty(introspectedTable, "shardCount", 0));
+		Field formatField = new Field("SHARD_TABLE_FORMAT", FullyQualifiedJavaType.getStringInstance());
+		formatField.setVisibility(JavaVisibility.PRIVATE);
+		formatField.setStatic(true);
+		formatField.setFinal(true);
+		formatField.setInitializationString("\"" + shardTableFormat + "\"");
+		serviceClass.addField(formatField);
+		Field tablesField = new Field("SHARD_TABLES", new FullyQualifiedJavaType("java.util.List<String>"));
+		tablesField.setVisibility(JavaVisibility.PRIVATE);
+		tablesField.setStatic(true);
+		tablesField.setFinal(true);
+		tablesField.setInitializationString("shardTables()");
+		serviceClass.addField(tablesField);
+		if (shardExecutor != null) {
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.CompletableFuture"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("java.util.concurrent.Executor"));
+			serviceClass.addImportedType(new FullyQualifiedJavaType("org.springframework.beans.factory.annotation.Qualifier"));
+			Field executorField = new Field("shardExecutor", new FullyQualifiedJavaType("java.util.concurrent.Executor"));
+			executorField.addAnnotation("@Autowired");
+			executorField.addAnnotation("@Qualifier(\"" + shardExecutor + "\")");
+			executorField.setVisibility(JavaVisibility.PRIVATE);
+			serviceClass.addField(executorField);
+		}
+		
+		Method tablesMethod = new Method("shardTables");
+		tablesMethod.setVisibility(JavaVisibility.PRIVATE);
+		tablesMethod.setStatic(true);
+		tablesMethod.setReturnType(new FullyQualifiedJavaType("java.util.List<String>"));
+		tablesMethod.addBodyLine("List<String> tables = new ArrayList<>(SHARD_COUNT);");
+		tablesMethod.addBodyLine("for (int i = 0; i < SHARD_COUNT; i++) {");
+		tablesMethod.addBodyLine("tables.add(String.format(SHARD_TABLE_FORMAT, i));");
+		tablesMethod.addBodyLine("}");
+		tablesMethod.addBodyLine("return Collections.unmodifiableList(tables);");
+		serviceClass.addMethod(tablesMethod);
+		
+		// 整数按值取模, 其他类型按hashCode取模(String.hashCode在各JVM上一致)
+		Method shardTableMethod = new Method("shardTable");
+		shardTableMethod.setVisibility(JavaVisibility.PRIVATE);
+		shardTableMethod.setStatic(true);
+		shardTableMethod.addParameter(new Parameter(shardKeyType, "key"));
+		shardTableMethod.setReturnType(FullyQualifiedJavaType.getStringInstance());
+		shardTableMethod.addBodyLine("if (key == null) {");
+		shardTableMethod.addBodyLine("throw new IllegalArgumentException(\"" + shardColumn.getJavaProperty() + " is required for sharding\");");
+		shardTableMethod.addBodyLine("}");
+		if (Arrays.asList("java.lang.Long", "java.lang.Integer", "java.lang.Short", "java.lang.Byte")
+				.contains(shardKeyType.getFullyQualifiedName())) {
+			shardTableMethod.addBodyLine("return SHARD_TABLES.get((int) Math.floorMod(key.longValue(), (long) SHARD_COUNT));");
+		} else {
+			shardTableMethod.addBodyLine("return SHARD_TABLES.get(Math.floorMod(key.hashCode(), SHARD_COUNT));");
+		}
+		serviceClass.addMethod(shardTableMethod);
+		
+		// 在tables上执行query, 结果按tables的顺序合并
+		Method scatterMethod = new Method("scatter");
+		scatterMethod.setVisibility(JavaVisibility.PRIVATE);
+		scatterMethod.addTypeParameter(new TypeParameter("R"));
+		scatterMethod.addParameter(new Parameter(new FullyQualifiedJavaType("java.util.Collection<String>"), "tables"));
+		scatterMethod.addParameter(new Parameter(
+				new FullyQualifiedJavaType("java.util.function.Function<String, java.util.List<R>>"), "query"));
+		scatterMethod.setReturnType(new FullyQualifiedJavaType("java.util.List<R>"));
+		scatterMethod.addBodyLine("List<R> rows = new ArrayList<>();");
+		if (shardExecutor != null) {
+			scatterMethod.addBodyLine("if (tables.size() > 1) {");
+			scatterMethod.addBodyLine("List<CompletableFuture<List<R>>> futures = new ArrayList<>(tables.size());");
+			scatterMethod.addBodyLine("for (String table : tables) {");
+			scatterMethod.addBodyLine("futures.add(CompletableFuture.supplyAsync(() -> query.apply(table), shardExecutor));");
+			scatterMethod.addBodyLine("}");
+			scatterMethod.addBodyLine("for (CompletableFuture<List<R>> future : futures) {");
+			scatterMethod.addBodyLine("rows.addAll(future.join());");
+			scatterMethod.addBodyLine("}");
+			scatterMethod.addBodyLine("return rows;");
+			scatterMethod.addBodyLine("}");
+		}
+		scatterMethod.addBodyLine("for (String table : tables) {");
+		scatterMethod.addBodyLine("rows.addAll(query.apply(table));");
+		scatterMethod.addBodyLine("}");
+		scatterMethod.addBodyLine("return rows;");
+		serviceClass.addMethod(scatterMethod);
+		
+		// 按分表分组, TreeMap使各分表按固定顺序写入
+		Method groupRowsMethod = new Method("groupRows");
+		groupRowsMethod.setVisibility(JavaVisibility.PRIVATE);
+		groupRowsMethod.setStatic(true);
+		groupRowsMethod.addParameter(new Parameter(
+				new FullyQualifiedJavaType("java.util.List<" + domainObjectName + ">"), "list"));
+		groupRowsMethod.setReturnType(new FullyQualifiedJavaType(
+				"java.util.Map<String, java.util.List<" + domainObjectName + ">>"));
+		groupRowsMethod.addBodyLine("Map<String, List<" + domainObjectName + ">> groups = new TreeMap<>();");
+		groupRowsMethod.addBodyLine("for (" + domainObjectName + " row : list) {");
+		groupRowsMethod.addBodyLine("groups.computeIfAbsent(shardTable(row." + shardGetter + "()), k -> new ArrayList<>()).add(row);");
+		groupRowsMethod.addBodyLine("}");
+		groupRowsMethod.addBodyLine("return groups;");
+		serviceClass.addMethod(groupRowsMethod);
+		
+		if (shardColumn == primaryKeyColumn) {
+			Method groupIdsMethod = new Method("groupIds");
+			groupIdsMethod.setVisibility(JavaVisibility.PRIVATE);
+			groupIdsMethod.setStatic(true);
+			groupIdsMethod.addParameter(new Parameter(
+					new FullyQualifiedJavaType("java.util.List<" + pkTypeName + ">"), "ids"));
+			groupIdsMethod.setReturnType(new FullyQualifiedJavaType(
+					"java.util.Map<String, java.util.List<" + pkTypeName + ">>"));
+			groupIdsMethod.addBodyLine("Map<String, List<" + pkTypeName + ">> groups = new TreeMap<>();");
+			groupIdsMethod.addBodyLine("for (" + pkTypeName + " id : ids) {");
+			groupIdsMethod.addBodyLine("groups.computeIfAbsent(shardTable(id), k -> new ArrayList<>()).add(id);");
+			groupIdsMethod.addBodyLine("}");
+			groupIdsMethod.addBodyLine("return groups;");
+			serviceClass.addMethod(groupIdsMethod);
+		}
+		
+		// listXXX的条件中有分片列时只查一张分表
+		if (plugin.filterColumns(introspectedTable).contains(shardColumn)) {
+			Method shardsOfMethod = new Method("shardsOf");
+			shardsOfMethod.setVisibility(JavaVisibility.PRIVATE);
+			shardsOfMethod.setStatic(true);
+			shardsOfMethod.addParameter(new Parameter(new FullyQualifiedJavaType(domainObjectName), "req"));
+			shardsOfMethod.setReturnType(new FullyQualifiedJavaType("java.util.List<String>"));
+			shardsOfMethod.addBodyLine("if (req == null || req." + shardGetter + "() == null) {");
+			shardsOfMethod.addBodyLine("return SHARD_TABLES;");
+			shardsOfMethod.addBodyLine("}");
+			shardsOfMethod.addBodyLine("return Collections.singletonList(shardTable(req." + shardGetter + "()));");
+			serviceClass.addMethod(shardsOfMethod);
+		}
+	}
+
+	/**
+	 * 分表按id查询: 分片列为主键时按分表分组ids, 否则每张分表都查询全部ids, 各分表调用query(table, ids, args)
+	 */
+	static List<String> scatterByIdsLines(String resultDeclaration, String idsName, String pkTypeName,
+			String query, String arguments, boolean routeById) {
+		if (!routeById) {
+			return Collections.singletonList(resultDeclaration + " = scatter(SHARD_TABLES, table -> " + query + "(table, "
+					+ idsName + arguments + "));");
+		}
+		return Arrays.asList("Map<String, List<" + pkTypeName + ">> groups = groupIds(" + idsName + ");",
+				resultDeclaration + " = scatter(groups.keySet(), table -> " + query + "(table, groups.get(table)" + arguments + "));");
+	}
+	
+	/**
+	 * 分表语句的表名参数, 其余参数按XML中使用的名称加@Param
+	 */
+	private static void addTableParameter(Method method) {
+		for (Parameter parameter : method.getParameters()) {
+			if (parameter.getAnnotations().isEmpty()) {
+				parameter.addAnnotation("@Param(\"" + parameter.getName() + "\")");
+			}
+		}
+		method.getParameters().add(0,
+				new Parameter(FullyQualifiedJavaType.getStringInstance(), "table", "@Param(\"table\")"));
+	}
+}
@@ -0,0 +1,70 @@
+package io.github.litlak.plugin.generator;
+
+import java.util.List;
+
+import org.mybatis.generator.api.dom.xml.Attribute;
+import org.mybatis.generator.api.dom.xml.TextElement;
+import org.mybatis.generator.api.dom.xml.XmlElement;
+
+/**
+ * mapper xml中各语句共用的元素 <br>
+ * 批量语句的参数为mapper方法的list参数, foreach的元素名为item
+ *
+ * @author Scomy
+ */
+class SqlMapElements {
+
+	private SqlMapElements() {
+	}
+
+	/**
+	 * 遍历list的foreach, separator为null时不加分隔符
+	 */
+	static XmlElement foreach(String separator, String... lines) {
+		XmlElement foreach = new XmlElement("foreach");
+		foreach.addAttribute(new Attribute("collection", "list"));
+		foreach.addAttribute(new Attribute("item", "item"));
+		if (separator != null) {
+			foreach.addAttribute(new Attribute("separator", separator));
+		}
+		for (String line : lines) {
+			foreach.addElement(new TextElement(line));
+		}
+		return foreach;
+	}
+
+	/**
+	 * where columnName in (...), item为list中每个元素的参数
+	 */
+	static void addInList(XmlElement parent, String columnName, String item) {
+		parent.addElement(new TextElement("where " + columnName + " in ("));
+		parent.addElement(foreach(",", item));
+		parent.addElement(new TextElement(")"));
+	}
+
+	/**
+	 * 多行values, list中每个元素一行, values为一行中各列的参数
+	 */
+	static XmlElement valuesRows(List<String> values) {
+		XmlElement foreach = foreach(",", "(");
+		addPairedLines(foreach, values);
+		foreach.addElement(new TextElement(")"));
+		return foreach;
+	}
+
+	/**
+	 * 每行两项, 逗号分隔
+	 */
+	static void addPairedLines(XmlElement parent, List<String> items) {
+		for (int i = 0; i < items.size(); i += 2) {
+			StringBuilder line = new StringBuilder("  ").append(items.get(i));
+			if (i + 1 < items.size()) {
+				line.append(',').append(items.get(i + 1));
+			}
+			if (i + 2 < items.size()) {
+				line.append(',');
+			}
+			parent.addElement(new TextElement(line.toString()));
+		}
+	}
+}
@@ -12,6 +12,10 @@ import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
 import org.mybatis.generator.api.dom.java.TopLevelClass;
 
 /**
+ * model字段的swagger注解 <br>
+ * <br>
+ * 可选配置: <br>
+ * timestampExample 时间列的example, 默认2019-03-28 00:00:00, 使用固定值使重复生成的内容不变 <br>
  * 
  * @author Scomy
  *
@@ -19,11 +23,19 @@ import org.mybatis.generator.api.dom.java.TopLevelClass;
  */
 public class Swagger2Generator extends PluginAdapter {
 
+	private static final String DEFAULT_TIMESTAMP_EXAMPLE = "2019-03-28 00:00:00";
+
 	@Override
 	public boolean validate(List<String> warnings) {
 		return true;
 	}
 
+	@Override
+	public void initialized(IntrospectedTable introspectedTable) {
+		IncrementalGenerator.addFingerprintSource(introspectedTable, getClass(), properties);
+		super.initialized(introspectedTable);
+	}
+
 	@Override
 	public boolean modelFieldGenerated(Field field, TopLevelClass topLevelClass, IntrospectedColumn introspectedColumn,
 			IntrospectedTable introspectedTable, ModelClassType modelClassType) {
@@ -49,19 +61,18 @@ public class Swagger2Generator extends PluginAdapter {
 
 		List<String> fieldAnnotations = field.getAnnotations();
 		if (!contains(fieldAnnotations, "@ApiModelProperty")) {
-			field.addAnnotation(generatorAnnotation(introspectedColumn));
+			field.addAnnotation(generatorAnnotation(introspectedColumn, CompiledTable.of(introspectedTable)));
 		}
 		return super.modelFieldGenerated(field, topLevelClass, introspectedColumn, introspectedTable, modelClassType);
 	}
 
-	private String generatorAnnotation(IntrospectedColumn introspectedColumn) {
+	private String generatorAnnotation(IntrospectedColumn introspectedColumn, CompiledTable compiled) {
 		StringBuilder sb = new StringBuilder("@ApiModelProperty(");
 
 		sb.append("value = \"" + introspectedColumn.getRemarks() + "\"");// 名字
-		if (introspectedColumn.getJdbcTypeName() == JDBCType.TIMESTAMP.getName()) {
+		if (compiled.column(introspectedColumn).isTimestamp()) {
 			sb.append(", ");
-			sb.append("example = \""
-					+ new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new java.util.Date()) + "\"");// 默认值
+			sb.append("example = \"" + properties.getProperty("timestampExample", DEFAULT_TIMESTAMP_EXAMPLE) + "\"");// 默认值
 		} else {
 			if (introspectedColumn.getDefaultValue() != null) {
 				sb.append(", ");
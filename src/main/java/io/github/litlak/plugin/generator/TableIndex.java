@@ -0,0 +1,131 @@
+package io.github.litlak.plugin.generator;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.mybatis.generator.api.ConnectionFactory;
+import org.mybatis.generator.api.FullyQualifiedTable;
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.config.Context;
+import org.mybatis.generator.internal.JDBCConnectionFactory;
+import org.mybatis.generator.internal.ObjectFactory;
+
+/**
+ * 表的索引信息, 通过DatabaseMetaData.getIndexInfo读取 <br>
+ * 不包括主键索引, 含有未生成的列(表达式索引, ignoreColumn)的索引忽略, 列相同的索引只保留一个
+ *
+ * @author Scomy
+ */
+class TableIndex {
+
+	private final String name;
+
+	private final boolean unique;
+
+	private final List<IntrospectedColumn> columns;
+
+	TableIndex(String name, boolean unique, List<IntrospectedColumn> columns) {
+		this.name = name;
+		this.unique = unique;
+		this.columns = columns;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isUnique() {
+		return unique;
+	}
+
+	public List<IntrospectedColumn> getColumns() {
+		return columns;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(name).append(unique ? "(unique:" : "(");
+		for (int i = 0; i < columns.size(); i++) {
+			sb.append(i == 0 ? "" : ",").append(columns.get(i).getActualColumnName());
+		}
+		return sb.append(')').toString();
+	}
+
+	/**
+	 * 在给定的连接上读取索引, 唯一索引在前, 不关闭连接
+	 */
+	static List<TableIndex> read(Connection connection, IntrospectedTable introspectedTable) throws SQLException {
+		FullyQualifiedTable table = introspectedTable.getFullyQualifiedTable();
+		// 索引名 -> (序号 -> 列名)
+		Map<String, TreeMap<Short, String>> indexColumns = new LinkedHashMap<>();
+		Map<String, Boolean> indexUnique = new LinkedHashMap<>();
+		DatabaseMetaData metaData = connection.getMetaData();
+		String catalog = table.getIntrospectedCatalog();
+		String schema = table.getIntrospectedSchema();
+		String tableName = table.getIntrospectedTableName();
+		if (metaData.storesLowerCaseIdentifiers()) {
+			catalog = catalog == null ? null : catalog.toLowerCase();
+			schema = schema == null ? null : schema.toLowerCase();
+			tableName = tableName.toLowerCase();
+		} else if (metaData.storesUpperCaseIdentifiers()) {
+			catalog = catalog == null ? null : catalog.toUpperCase();
+			schema = schema == null ? null : schema.toUpperCase();
+			tableName = tableName.toUpperCase();
+		}
+		try (ResultSet rs = metaData.getIndexInfo(catalog, schema, tableName, false, true)) {
+			while (rs.next()) {
+				String indexName = rs.getString("INDEX_NAME");
+				String columnName = rs.getString("COLUMN_NAME");
+				if (indexName == null || columnName == null
+						|| rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+					continue;
+				}
+				indexColumns.computeIfAbsent(indexName, k -> new TreeMap<>()).put(rs.getShort("ORDINAL_POSITION"),
+						columnName);
+				indexUnique.put(indexName, !rs.getBoolean("NON_UNIQUE"));
+			}
+		}
+
+		List<TableIndex> uniqueIndexes = new ArrayList<>();
+		List<TableIndex> indexes = new ArrayList<>();
+		List<List<IntrospectedColumn>> seen = new ArrayList<>();
+		seen.add(introspectedTable.getPrimaryKeyColumns());
+		for (Map.Entry<String, TreeMap<Short, String>> entry : indexColumns.entrySet()) {
+			List<IntrospectedColumn> columns = new ArrayList<>();
+			for (String columnName : entry.getValue().values()) {
+				IntrospectedColumn column = introspectedTable.getColumn(columnName);
+				if (column == null) {
+					columns = null;
+					break;
+				}
+				columns.add(column);
+			}
+			if (columns == null || seen.contains(columns)) {
+				continue;
+			}
+			seen.add(columns);
+			boolean unique = indexUnique.get(entry.getKey());
+			(unique ? uniqueIndexes : indexes).add(new TableIndex(entry.getKey(), unique, columns));
+		}
+		uniqueIndexes.addAll(indexes);
+		return uniqueIndexes;
+	}
+
+	/**
+	 * 与Context.getConnection相同: 优先jdbcConnection配置, 否则connectionFactory配置
+	 */
+	static Connection getConnection(Context context) throws SQLException {
+		ConnectionFactory connectionFactory = context.getJdbcConnectionConfiguration() != null
+				? new JDBCConnectionFactory(context.getJdbcConnectionConfiguration())
+				: ObjectFactory.createConnectionFactory(context);
+		return connectionFactory.getConnection();
+	}
+}
@@ -0,0 +1,94 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * asyncController: Controller在BoundedExecutor上调用Service, 执行器满时拒绝并返回503
+ *
+ * @author Scomy
+ */
+public class AsyncControllerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void controllerRunsOnBoundedExecutorAndRejectsWhenFull() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "asyncController", "true");
+		project.generate();
+		project.compile();
+		Class<?> controllerType = project.loadClass(GeneratedProject.CONTROLLER_PACKAGE + ".UserInfoController");
+		Object executor = project.loadClass(GeneratedProject.SERVICE_PACKAGE + ".BoundedExecutor")
+				.getConstructor(String.class, int.class, int.class, boolean.class).newInstance("jdbc", 1, 1, false);
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+			beans.registerBean("jdbcExecutor", Executor.class, () -> (Executor) executor);
+			beans.registerBean(controllerType);
+		})) {
+			ServiceReadTest.insertUsers(project, ServiceReadTest.userInfoService(project, context), 1);
+			Object controller = context.getBean(controllerType);
+
+			String[] thread = new String[1];
+			Object result = ((CompletableFuture<?>) GeneratedProject.invoke(controller, "getUserInfo", 1L))
+					.thenApply(value -> {
+						thread[0] = Thread.currentThread().getName();
+						return value;
+					}).get();
+			assertEquals("user-0", GeneratedProject.get(GeneratedProject.get(result, "data"), "name"));
+			assertTrue(thread[0], thread[0].startsWith("jdbc-"));
+
+			// 一个线程在执行, 一个任务在排队, 再提交时拒绝
+			CountDownLatch release = new CountDownLatch(1);
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch done = new CountDownLatch(2);
+			((Executor) executor).execute(() -> {
+				started.countDown();
+				awaitUninterruptibly(release);
+				done.countDown();
+			});
+			started.await();
+			((Executor) executor).execute(() -> {
+				awaitUninterruptibly(release);
+				done.countDown();
+			});
+			try {
+				GeneratedProject.invoke(controller, "getUserInfo", 1L);
+				fail();
+			} catch (RejectedExecutionException e) {
+				Object advice = project.loadClass(GeneratedProject.CONTROLLER_PACKAGE + ".ExecutorRejectedAdvice")
+						.getConstructor().newInstance();
+				ResponseEntity<?> response = (ResponseEntity<?>) GeneratedProject.invoke(advice, "rejected", e);
+				assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+				assertEquals("1", response.getHeaders().getFirst("Retry-After"));
+			} finally {
+				release.countDown();
+			}
+			done.await();
+			result = ((CompletableFuture<?>) GeneratedProject.invoke(controller, "getUserInfo", 1L)).get();
+			assertEquals("user-0", GeneratedProject.get(GeneratedProject.get(result, "data"), "name"));
+		} finally {
+			GeneratedProject.invoke(executor, "shutdown");
+		}
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
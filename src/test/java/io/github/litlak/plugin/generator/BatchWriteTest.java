@@ -0,0 +1,163 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Service的批量写: batchInsert分块, batchUpdateByPrimaryKey, batchDeleteByPrimaryKey
+ *
+ * @author Scomy
+ */
+public class BatchWriteTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void batchInsertChunkSizeHonorsParameterBudget() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "batchMaxParameters", "20");
+		project.generate();
+		// 自增主键不在batchInsert的列中, 7列 * 2行 <= 20个参数
+		assertTrue(project.source(GeneratedProject.SERVICE_PACKAGE + ".UserInfoService")
+				.contains("BATCH_INSERT_CHUNK_SIZE = 2;"));
+	}
+
+	@Test
+	public void batchInsertWritesAllChunks() throws Exception {
+		assertBatchInsert(new GeneratedProject(folder.getRoot()).table("user_info", "batchInsertChunkSize", "2"));
+	}
+
+	@Test
+	public void batchInsertWritesAllChunksWithBatchExecutor() throws Exception {
+		assertBatchInsert(new GeneratedProject(folder.getRoot()).table("user_info", "batchInsertChunkSize", "2",
+				"batchExecutorType", "BATCH", "batchFlushStatements", "2"));
+	}
+
+	@Test
+	public void batchInsertWithBatchExecutorIsAtomic() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "batchInsertChunkSize", "2",
+				"batchExecutorType", "BATCH", "batchFlushStatements", "1");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = ServiceReadTest.userInfoService(project, context);
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(project.dataSource());
+			// 外层事务回滚时已flush的块一起回滚
+			new TransactionTemplate(context.getBean(PlatformTransactionManager.class)).executeWithoutResult(status -> {
+				try {
+					assertEquals(5, GeneratedProject.invoke(service, "batchInsert", users(project, 5)));
+				} catch (ReflectiveOperationException e) {
+					throw new IllegalStateException(e);
+				}
+				status.setRollbackOnly();
+			});
+			assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("select count(*) from user_info", Integer.class));
+
+			// 没有事务时最后一块失败, 之前flush的块也不提交
+			List<Object> rows = users(project, 5);
+			rows.add(project.newModel("UserInfo", "name", "user-0", "status", 0));
+			try {
+				GeneratedProject.invoke(service, "batchInsert", rows);
+				fail();
+			} catch (RuntimeException e) {
+				// name唯一索引冲突
+			}
+			assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("select count(*) from user_info", Integer.class));
+		}
+	}
+
+	@Test
+	public void batchUpdateByJdbcBatch() throws Exception {
+		assertBatchUpdate(new GeneratedProject(folder.getRoot()).table("user_info", "batchUpdateMode", "JDBC_BATCH"));
+	}
+
+	@Test
+	public void batchUpdateByJdbcBatchJoinsOuterTransaction() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "batchUpdateMode", "JDBC_BATCH",
+				"batchInsertChunkSize", "2");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = ServiceReadTest.userInfoService(project, context);
+			ServiceReadTest.insertUsers(project, service, 5);
+			List<Object> rows = new ArrayList<>();
+			for (long id = 1; id <= 5; id++) {
+				rows.add(project.newModel("UserInfo", "id", id, "name", "renamed-" + id, "status", 9));
+			}
+			// 各块只flush不提交, 外层事务回滚时全部回滚
+			new TransactionTemplate(context.getBean(PlatformTransactionManager.class)).executeWithoutResult(status -> {
+				try {
+					assertEquals(5, GeneratedProject.invoke(service, "batchUpdateByPrimaryKey", rows));
+				} catch (ReflectiveOperationException e) {
+					throw new IllegalStateException(e);
+				}
+				status.setRollbackOnly();
+			});
+			assertEquals(Integer.valueOf(0), new JdbcTemplate(project.dataSource())
+					.queryForObject("select count(*) from user_info where status = 9", Integer.class));
+		}
+	}
+
+	@Test
+	public void batchUpdateByCaseWhen() throws Exception {
+		assertBatchUpdate(new GeneratedProject(folder.getRoot()).table("user_info", "batchUpdateMode", "CASE_WHEN",
+				"batchInsertChunkSize", "2"));
+	}
+
+	private static void assertBatchUpdate(GeneratedProject project) throws Exception {
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = ServiceReadTest.userInfoService(project, context);
+			ServiceReadTest.insertUsers(project, service, 5);
+			List<Object> rows = new ArrayList<>();
+			for (long id = 1; id <= 5; id++) {
+				rows.add(project.newModel("UserInfo", "id", id, "name", "renamed-" + id, "status", 9));
+			}
+			// 不存在的id不计入影响行数
+			rows.add(project.newModel("UserInfo", "id", 99L, "name", "missing", "status", 9));
+			assertEquals(5, GeneratedProject.invoke(service, "batchUpdateByPrimaryKey", rows));
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(project.dataSource());
+			assertEquals(Integer.valueOf(5),
+					jdbcTemplate.queryForObject("select count(*) from user_info where status = 9", Integer.class));
+			assertEquals("renamed-3", jdbcTemplate.queryForObject("select name from user_info where id = 3", String.class));
+			assertEquals(2, GeneratedProject.invoke(service, "batchDeleteByPrimaryKey", Arrays.asList(1L, 2L, 2L)));
+		}
+	}
+
+	private static List<Object> users(GeneratedProject project, int count) throws ReflectiveOperationException {
+		List<Object> rows = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			rows.add(project.newModel("UserInfo", "name", "user-" + i, "status", i));
+		}
+		return rows;
+	}
+
+	private static void assertBatchInsert(GeneratedProject project) throws Exception {
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = context.getBean(project.loadClass(GeneratedProject.SERVICE_PACKAGE + ".UserInfoService"));
+			assertEquals(5, GeneratedProject.invoke(service, "batchInsert", users(project, 5)));
+			assertEquals(Integer.valueOf(5), new JdbcTemplate(project.dataSource())
+					.queryForObject("select count(*) from user_info", Integer.class));
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * bulkAdd: Service.bulkInsert分块写入并按块统计失败, Controller流式读取JSON数组或NDJSON
+ *
+ * @author Scomy
+ */
+public class BulkAddTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void bulkInsertWritesChunksInParallelAndCountsFailedChunks() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "bulkAdd", "true",
+				"bulkAddChunkSize", "2", "bulkAddExecutor", "bulkExecutor");
+		project.generate();
+		project.compile();
+		ExecutorService bulkExecutor = Executors.newFixedThreadPool(2);
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+			beans.registerBean("bulkExecutor", Executor.class, () -> bulkExecutor);
+		})) {
+			Object service = ServiceReadTest.userInfoService(project, context);
+			List<Object> rows = new ArrayList<>();
+			for (String name : Arrays.asList("a", "b", "c", "c", "d")) {
+				rows.add(project.newModel("UserInfo", "name", name, "status", 0));
+			}
+			// 第二块中name重复, 整块失败, 与各块的写入顺序无关
+			Object result = GeneratedProject.invoke(service, "bulkInsert", rows.iterator());
+			assertEquals(3L, GeneratedProject.get(result, "accepted"));
+			assertEquals(2L, GeneratedProject.get(result, "failed"));
+			assertNotNull(GeneratedProject.get(result, "error"));
+			assertEquals(3, project.statementCounter().count("batchInsert"));
+			assertEquals(Arrays.asList("a", "b", "d"), new JdbcTemplate(project.dataSource())
+					.queryForList("select name from user_info order by name", String.class));
+		} finally {
+			bulkExecutor.shutdown();
+		}
+	}
+
+	@Test
+	public void bulkAddEndpointReadsJsonArrayAndNdjson() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "bulkAdd", "true",
+				"bulkAddChunkSize", "2");
+		project.generate();
+		project.compile();
+		Class<?> controllerType = project.loadClass(GeneratedProject.CONTROLLER_PACKAGE + ".UserInfoController");
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+			beans.registerBean(ObjectMapper.class);
+			beans.registerBean(controllerType);
+		})) {
+			Object controller = context.getBean(controllerType);
+			Object result = GeneratedProject.get(GeneratedProject.invoke(controller, "bulkAddUserInfo",
+					request("[{\"name\":\"a\"},{\"name\":\"b\"},{\"name\":\"c\"}]")), "data");
+			assertEquals(3L, GeneratedProject.get(result, "accepted"));
+			assertNull(GeneratedProject.get(result, "error"));
+
+			// 解析错误之前读到的行照常写入
+			result = GeneratedProject.get(GeneratedProject.invoke(controller, "bulkAddUserInfo",
+					request("{\"name\":\"d\"}\n{\"name\":\"e\"}\n{\"name\":\"f\"}\n{\"name\":")), "data");
+			assertEquals(3L, GeneratedProject.get(result, "accepted"));
+			assertNotNull(GeneratedProject.get(result, "error"));
+			assertEquals(Integer.valueOf(6), new JdbcTemplate(project.dataSource())
+					.queryForObject("select count(*) from user_info", Integer.class));
+		}
+	}
+
+	/**
+	 * 只实现getInputStream的HttpServletRequest
+	 */
+	private static HttpServletRequest request(String body) {
+		ByteArrayInputStream in = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+		ServletInputStream servletInputStream = new ServletInputStream() {
+
+			@Override
+			public int read() {
+				return in.read();
+			}
+
+			@Override
+			public boolean isFinished() {
+				return in.available() == 0;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setReadListener(ReadListener readListener) {
+				throw new UnsupportedOperationException();
+			}
+		};
+		return (HttpServletRequest) Proxy.newProxyInstance(BulkAddTest.class.getClassLoader(),
+				new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+					if ("getInputStream".equals(method.getName())) {
+						return servletInputStream;
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+	}
+}
@@ -0,0 +1,89 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Test;
+import org.mybatis.generator.api.FullyQualifiedTable;
+import org.mybatis.generator.api.IntrospectedColumn;
+import org.mybatis.generator.api.IntrospectedTable;
+import org.mybatis.generator.api.dom.java.FullyQualifiedJavaType;
+import org.mybatis.generator.codegen.mybatis3.IntrospectedTableMyBatis3Impl;
+import org.mybatis.generator.config.Context;
+import org.mybatis.generator.config.ModelType;
+import org.mybatis.generator.config.TableConfiguration;
+
+/**
+ * CompiledTable的列划分与IntrospectedTable相同(BLOB列在最后), SQL片段与MyBatis3FormattingUtilities相同, 每张表只编译一次
+ *
+ * @author Scomy
+ */
+public class CompiledTableTest {
+
+	@Test
+	public void compilesFragmentsOncePerTable() {
+		Context context = new Context(ModelType.FLAT);
+		IntrospectedTable introspectedTable = new IntrospectedTableMyBatis3Impl();
+		introspectedTable.setContext(context);
+		introspectedTable.setTableConfiguration(new TableConfiguration(context));
+		introspectedTable.setFullyQualifiedTable(new FullyQualifiedTable(null, null, "article", null, null, false, null,
+				null, null, false, null, context));
+		IntrospectedColumn id = column(introspectedTable, "ID", "id", Types.BIGINT, "BIGINT", Long.class);
+		IntrospectedColumn title = column(introspectedTable, "TITLE", "title", Types.VARCHAR, "VARCHAR", String.class);
+		title.setTypeHandler("fixture.TitleTypeHandler");
+		IntrospectedColumn content = column(introspectedTable, "CONTENT", "content", Types.LONGVARCHAR, "LONGVARCHAR",
+				String.class);
+		IntrospectedColumn published = column(introspectedTable, "PUBLISHED", "published", Types.TIMESTAMP, "TIMESTAMP",
+				Date.class);
+		introspectedTable.addPrimaryKeyColumn("ID");
+
+		CompiledTable compiled = CompiledTable.of(introspectedTable);
+		assertSame(compiled, CompiledTable.of(introspectedTable));
+
+		assertEquals(Collections.singletonList(id), compiled.getPrimaryKeyColumns());
+		assertEquals(Arrays.asList(title, published, content), compiled.getNonPrimaryKeyColumns());
+		assertEquals(Arrays.asList(title, published), compiled.getBaseColumns());
+		assertEquals(Arrays.asList(id, title, published), compiled.getNonBLOBColumns());
+		assertEquals(Arrays.asList("TITLE", "PUBLISHED"), compiled.getBaseColumnNames());
+		assertEquals(Arrays.asList("#{item.title,jdbcType=VARCHAR,typeHandler=fixture.TitleTypeHandler}",
+				"#{item.published,jdbcType=TIMESTAMP}"), compiled.getBaseItemParameters());
+		assertEquals(Arrays.asList("ID", "TITLE", "PUBLISHED"), compiled.getNonBLOBColumnNames());
+		assertEquals(Arrays.asList("#{id,jdbcType=BIGINT}",
+				"#{title,jdbcType=VARCHAR,typeHandler=fixture.TitleTypeHandler}", "#{published,jdbcType=TIMESTAMP}"),
+				compiled.getNonBLOBParameters());
+
+		CompiledTable.CompiledColumn compiledTitle = compiled.column(title);
+		assertEquals(1, compiledTitle.getIndex());
+		assertFalse(compiledTitle.isPrimaryKey());
+		assertFalse(compiledTitle.isTimestamp());
+		assertEquals("TITLE = #{title,jdbcType=VARCHAR,typeHandler=fixture.TitleTypeHandler}",
+				compiledTitle.getAssignment());
+		assertEquals("#{record.title,jdbcType=VARCHAR,typeHandler=fixture.TitleTypeHandler}",
+				compiledTitle.getRecordParameter());
+		assertTrue(compiled.column(id).isPrimaryKey());
+		assertTrue(compiled.column(published).isTimestamp());
+		assertEquals(2, compiled.column(published).getIndex());
+		assertEquals(3, compiled.column(content).getIndex());
+	}
+
+	private static IntrospectedColumn column(IntrospectedTable introspectedTable, String name, String property,
+			int jdbcType, String jdbcTypeName, Class<?> javaType) {
+		IntrospectedColumn column = new IntrospectedColumn();
+		column.setContext(introspectedTable.getContext());
+		column.setIntrospectedTable(introspectedTable);
+		column.setActualColumnName(name);
+		column.setJavaProperty(property);
+		column.setJdbcType(jdbcType);
+		column.setJdbcTypeName(jdbcTypeName);
+		column.setFullyQualifiedJavaType(new FullyQualifiedJavaType(javaType.getName()));
+		introspectedTable.addColumn(column);
+		return column;
+	}
+}
@@ -0,0 +1,99 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * dialect: H2的merge using在H2上执行, POSTGRESQL的unnest批量插入在H2上执行, on conflict只检查生成的语句
+ *
+ * @author Scomy
+ */
+public class DialectTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void h2DialectMergesRows() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot())
+				.table("user_info", "dialect", "H2", "batchUpdateMode", "CASE_WHEN", "upsertExcludeColumns", "gmt_create")
+				.table("tag", "dialect", "H2");
+		project.generate();
+		project.compile();
+		String xml = project.mapperXml("UserInfo");
+		assertTrue(xml.contains("merge into USER_INFO t using (values"));
+		assertFalse(xml.contains("on duplicate key update"));
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = ServiceReadTest.userInfoService(project, context);
+			Timestamp created = Timestamp.valueOf("2019-03-28 00:00:00");
+			ServiceReadTest.insertUsers(project, service, 2);
+			GeneratedProject.invoke(service, "insertOrUpdate",
+					project.newModel("UserInfo", "id", 1L, "name", "merged", "status", 5, "gmtCreate", created));
+			GeneratedProject.invoke(service, "batchInsertOrUpdate", Arrays.asList(
+					project.newModel("UserInfo", "id", 2L, "name", "batch", "status", 6, "gmtCreate", created),
+					project.newModel("UserInfo", "id", 3L, "name", "new", "status", 7, "gmtCreate", created)));
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(project.dataSource());
+			// 冲突时不更新gmt_create
+			assertEquals(Arrays.asList(3L), jdbcTemplate
+					.queryForList("select id from user_info where gmt_create is not null order by id", Long.class));
+			assertEquals(2, GeneratedProject.invoke(service, "batchUpdateByPrimaryKey",
+					Arrays.asList(project.newModel("UserInfo", "id", 2L, "name", "updated", "status", 8),
+							project.newModel("UserInfo", "id", 3L, "name", "new", "status", 9))));
+			assertEquals(Arrays.asList("merged", "updated", "new"),
+					jdbcTemplate.queryForList("select name from user_info order by id", String.class));
+			assertEquals(Arrays.asList(5, 8, 9),
+					jdbcTemplate.queryForList("select status from user_info order by id", Integer.class));
+
+			Object tagService = context.getBean(project.loadClass(GeneratedProject.SERVICE_PACKAGE + ".TagService"));
+			GeneratedProject.invoke(tagService, "batchInsertOrUpdate",
+					Arrays.asList(project.newModel("Tag", "tagId", 1L, "name", "a", "color", "red"),
+							project.newModel("Tag", "tagId", 1L, "name", "b", "color", "blue")));
+			GeneratedProject.invoke(tagService, "batchInsertOrUpdate",
+					Arrays.asList(project.newModel("Tag", "tagId", 1L, "name", "a", "color", "green")));
+			assertEquals(Arrays.asList("green", "blue"),
+					jdbcTemplate.queryForList("select color from tag order by name", String.class));
+		}
+	}
+
+	@Test
+	public void postgresqlDialectUsesUnnestAndOnConflict() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "dialect", "POSTGRESQL",
+				"streamExport", "true");
+		project.generate();
+		project.compile();
+		String xml = project.mapperXml("UserInfo");
+		assertTrue(xml.contains("from unnest("));
+		assertTrue(xml.contains("on conflict (ID) do update set"));
+		assertTrue(xml.contains("GMT_MODIFIED = now()"));
+		assertTrue(xml.contains("fetchSize=\"1000\""));
+		assertFalse(xml.contains("on duplicate key update"));
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			// H2也支持多数组unnest, 按列数组绑定的参数可以在H2上执行
+			Object service = ServiceReadTest.userInfoService(project, context);
+			assertEquals(2, GeneratedProject.invoke(service, "batchInsert", Arrays.asList(
+					project.newModel("UserInfo", "name", "a", "status", 1, "amount", new BigDecimal("1.50"),
+							"gmtCreate", Timestamp.valueOf("2019-03-28 00:00:00")),
+					project.newModel("UserInfo", "name", "b"))));
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(project.dataSource());
+			assertEquals(Arrays.asList("a", "b"),
+					jdbcTemplate.queryForList("select name from user_info order by id", String.class));
+			assertEquals(new BigDecimal("1.50"),
+					jdbcTemplate.queryForObject("select amount from user_info where name = 'a'", BigDecimal.class));
+			assertEquals(Integer.valueOf(1),
+					jdbcTemplate.queryForObject("select count(*) from user_info where status is null", Integer.class));
+		}
+	}
+}
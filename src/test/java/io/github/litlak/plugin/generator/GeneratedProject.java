@@ -0,0 +1,498 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.generator.api.MyBatisGenerator;
+import org.mybatis.generator.api.ShellCallback;
+import org.mybatis.generator.config.CommentGeneratorConfiguration;
+import org.mybatis.generator.config.Configuration;
+import org.mybatis.generator.config.Context;
+import org.mybatis.generator.config.JDBCConnectionConfiguration;
+import org.mybatis.generator.config.JavaClientGeneratorConfiguration;
+import org.mybatis.generator.config.JavaModelGeneratorConfiguration;
+import org.mybatis.generator.config.ModelType;
+import org.mybatis.generator.config.PluginConfiguration;
+import org.mybatis.generator.config.SqlMapGeneratorConfiguration;
+import org.mybatis.generator.config.TableConfiguration;
+import org.mybatis.generator.internal.DefaultShellCallback;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+/**
+ * 测试用的生成工程: <br>
+ * 在H2(MySQL模式)内存库中执行建表脚本, 按配置的插件和表生成代码到临时目录 <br>
+ * 用javac编译生成的Java文件, 在同一个库上执行生成的mapper xml, 或在Spring容器中调用生成的Service
+ *
+ * @author Scomy
+ */
+final class GeneratedProject {
+
+	static final String MODEL_PACKAGE = "fixture.model";
+
+	static final String MAPPER_PACKAGE = "fixture.mapper";
+
+	static final String SERVICE_PACKAGE = "fixture.service";
+
+	static final String CONTROLLER_PACKAGE = "fixture.controller";
+
+	private static final AtomicInteger DATABASES = new AtomicInteger();
+
+	private final File directory;
+
+	private final File sourceDirectory;
+
+	private final String schema;
+
+	private final String url;
+
+	private final UnpooledDataSource dataSource;
+
+	/**
+	 * 配置在CustomMethodGenerator之前的插件
+	 */
+	private final Map<String, Properties> plugins = new LinkedHashMap<>();
+
+	private final Properties pluginProperties = new Properties();
+
+	private final Map<String, Properties> tables = new LinkedHashMap<>();
+
+	private final List<String> warnings = new ArrayList<>();
+
+	private final StatementCounter statementCounter = new StatementCounter();
+
+	private ClassLoader classLoader;
+
+	GeneratedProject(File directory) throws SQLException {
+		this(directory, "fixture-schema.sql");
+	}
+
+	GeneratedProject(File directory, String schema) throws SQLException {
+		this.directory = directory;
+		this.sourceDirectory = new File(directory, "src");
+		sourceDirectory.mkdirs();
+		this.schema = schema;
+		url = "jdbc:h2:mem:fixture" + DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+		dataSource = newDatabase(url);
+	}
+
+	/**
+	 * @param properties plugin property, 依次为名称和值
+	 */
+	GeneratedProject plugin(Class<?> type, String... properties) {
+		plugins.put(type.getName(), properties(properties));
+		return this;
+	}
+
+	GeneratedProject property(String name, String value) {
+		pluginProperties.setProperty(name, value);
+		return this;
+	}
+
+	/**
+	 * @param properties table property, 依次为名称和值
+	 */
+	GeneratedProject table(String tableName, String... properties) {
+		tables.put(tableName, properties(properties));
+		return this;
+	}
+
+	private static Properties properties(String... properties) {
+		Properties result = new Properties();
+		for (int i = 0; i < properties.length; i += 2) {
+			result.setProperty(properties[i], properties[i + 1]);
+		}
+		return result;
+	}
+
+	String url() {
+		return url;
+	}
+
+	DataSource dataSource() {
+		return dataSource;
+	}
+
+	File sourceDirectory() {
+		return sourceDirectory;
+	}
+
+	List<String> warnings() {
+		return warnings;
+	}
+
+	/**
+	 * sqlSessionFactory()执行过的语句次数
+	 */
+	StatementCounter statementCounter() {
+		return statementCounter;
+	}
+
+	void execute(String sql) throws SQLException {
+		execute(dataSource, sql);
+	}
+
+	/**
+	 * 执行同一份建表脚本的另一个内存库, 如读写分离的从库
+	 */
+	DataSource newDatabase() throws SQLException {
+		return newDatabase("jdbc:h2:mem:fixture" + DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+	}
+
+	private UnpooledDataSource newDatabase(String databaseUrl) throws SQLException {
+		UnpooledDataSource database = new UnpooledDataSource("org.h2.Driver", databaseUrl, "sa", "");
+		execute(database, "RUNSCRIPT FROM 'classpath:" + schema + "' CHARSET 'UTF-8'");
+		return database;
+	}
+
+	private static void execute(DataSource database, String sql) throws SQLException {
+		try (Connection connection = database.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	Context newContext() {
+		String targetProject = sourceDirectory.getPath();
+		Context context = new Context(ModelType.CONDITIONAL);
+		context.setId("fixture");
+		context.setTargetRuntime("MyBatis3");
+
+		JDBCConnectionConfiguration jdbcConnection = new JDBCConnectionConfiguration();
+		jdbcConnection.setDriverClass("org.h2.Driver");
+		jdbcConnection.setConnectionURL(url);
+		jdbcConnection.setUserId("sa");
+		jdbcConnection.setPassword("");
+		context.setJdbcConnectionConfiguration(jdbcConnection);
+
+		CommentGeneratorConfiguration commentGenerator = new CommentGeneratorConfiguration();
+		commentGenerator.addProperty("suppressAllComments", "true");
+		context.setCommentGeneratorConfiguration(commentGenerator);
+
+		JavaModelGeneratorConfiguration model = new JavaModelGeneratorConfiguration();
+		model.setTargetPackage(MODEL_PACKAGE);
+		model.setTargetProject(targetProject);
+		context.setJavaModelGeneratorConfiguration(model);
+		SqlMapGeneratorConfiguration sqlMap = new SqlMapGeneratorConfiguration();
+		sqlMap.setTargetPackage(MAPPER_PACKAGE);
+		sqlMap.setTargetProject(targetProject);
+		context.setSqlMapGeneratorConfiguration(sqlMap);
+		JavaClientGeneratorConfiguration client = new JavaClientGeneratorConfiguration();
+		client.setConfigurationType("XMLMAPPER");
+		client.setTargetPackage(MAPPER_PACKAGE);
+		client.setTargetProject(targetProject);
+		context.setJavaClientGeneratorConfiguration(client);
+
+		for (Map.Entry<String, Properties> type : plugins.entrySet()) {
+			PluginConfiguration plugin = new PluginConfiguration();
+			plugin.setConfigurationType(type.getKey());
+			for (String name : type.getValue().stringPropertyNames()) {
+				plugin.addProperty(name, type.getValue().getProperty(name));
+			}
+			context.addPluginConfiguration(plugin);
+		}
+		PluginConfiguration swagger = new PluginConfiguration();
+		swagger.setConfigurationType(Swagger2Generator.class.getName());
+		context.addPluginConfiguration(swagger);
+		PluginConfiguration customMethod = new PluginConfiguration();
+		customMethod.setConfigurationType(CustomMethodGenerator.class.getName());
+		customMethod.addProperty("servicePackage", SERVICE_PACKAGE);
+		customMethod.addProperty("controllerPackage", CONTROLLER_PACKAGE);
+		customMethod.addProperty("javaTargetProject", targetProject);
+		customMethod.addProperty("responseGenericityType", Result.class.getName());
+		for (String name : pluginProperties.stringPropertyNames()) {
+			customMethod.addProperty(name, pluginProperties.getProperty(name));
+		}
+		context.addPluginConfiguration(customMethod);
+
+		for (Map.Entry<String, Properties> table : tables.entrySet()) {
+			TableConfiguration tableConfiguration = new TableConfiguration(context);
+			tableConfiguration.setTableName(table.getKey().toUpperCase(Locale.ROOT));
+			tableConfiguration.setCountByExampleStatementEnabled(false);
+			tableConfiguration.setSelectByExampleStatementEnabled(false);
+			tableConfiguration.setDeleteByExampleStatementEnabled(false);
+			tableConfiguration.setUpdateByExampleStatementEnabled(false);
+			for (String name : table.getValue().stringPropertyNames()) {
+				tableConfiguration.addProperty(name, table.getValue().getProperty(name));
+			}
+			context.addTableConfiguration(tableConfiguration);
+		}
+		return context;
+	}
+
+	Configuration configuration() {
+		Configuration configuration = new Configuration();
+		configuration.addContext(newContext());
+		return configuration;
+	}
+
+	ShellCallback shellCallback() {
+		return new DefaultShellCallback(true);
+	}
+
+	/**
+	 * 用MyBatisGenerator生成, 返回生成时的警告
+	 */
+	List<String> generate() throws Exception {
+		new MyBatisGenerator(configuration(), shellCallback(), warnings).generate(null);
+		return warnings;
+	}
+
+	/**
+	 * 用ParallelGenerator生成, 返回生成时的警告
+	 */
+	List<String> generate(int parallelism) throws Exception {
+		new ParallelGenerator(configuration(), shellCallback(), warnings, parallelism).generate(null);
+		return warnings;
+	}
+
+	/**
+	 * 生成的源文件内容
+	 *
+	 * @param type Java类型的全名, 或以.xml结尾的xml文件相对路径
+	 */
+	String source(String type) {
+		String path = type.endsWith(".xml") ? type : type.replace('.', '/') + ".java";
+		try {
+			return new String(Files.readAllBytes(new File(sourceDirectory, path).toPath()), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	String mapperXml(String domainObjectName) {
+		return source(MAPPER_PACKAGE.replace('.', '/') + "/" + domainObjectName + "Mapper.xml");
+	}
+
+	/**
+	 * 按当前classpath编译全部生成的Java文件, 编译失败时输出错误信息
+	 */
+	ClassLoader compile() throws IOException {
+		File classes = new File(directory, "classes");
+		classes.mkdirs();
+		List<File> sources = files(sourceDirectory, ".java");
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null,
+				StandardCharsets.UTF_8)) {
+			List<String> options = Arrays.asList("-encoding", "UTF-8", "-proc:none", "-nowarn", "-classpath",
+					System.getProperty("java.class.path"), "-d", classes.getPath());
+			boolean success = compiler
+					.getTask(null, fileManager, diagnostics, options, null, fileManager.getJavaFileObjectsFromFiles(sources))
+					.call();
+			if (!success) {
+				StringBuilder message = new StringBuilder("generated sources do not compile:");
+				for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+					if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+						message.append('\n').append(diagnostic.getSource() == null ? "" : diagnostic.getSource().getName())
+								.append(':').append(diagnostic.getLineNumber()).append(' ')
+								.append(diagnostic.getMessage(Locale.ROOT));
+					}
+				}
+				fail(message.toString());
+			}
+		}
+		classLoader = new URLClassLoader(new URL[] { classes.toURI().toURL() }, getClass().getClassLoader());
+		return classLoader;
+	}
+
+	Class<?> loadClass(String name) throws ClassNotFoundException {
+		return Class.forName(name, true, classLoader);
+	}
+
+	/**
+	 * @param properties model的属性, 依次为属性名和值
+	 */
+	Object newModel(String domainObjectName, Object... properties) throws ReflectiveOperationException {
+		Object model = loadClass(MODEL_PACKAGE + "." + domainObjectName).getConstructor().newInstance();
+		for (int i = 0; i < properties.length; i += 2) {
+			String property = (String) properties[i];
+			invoke(model, "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1), properties[i + 1]);
+		}
+		return model;
+	}
+
+	static Object get(Object model, String property) throws ReflectiveOperationException {
+		return invoke(model, "get" + Character.toUpperCase(property.charAt(0)) + property.substring(1));
+	}
+
+	/**
+	 * 按方法名和参数个数调用生成的类的public方法
+	 */
+	static Object invoke(Object target, String name, Object... args) throws ReflectiveOperationException {
+		for (Method method : target.getClass().getMethods()) {
+			if (method.getName().equals(name) && method.getParameterCount() == args.length) {
+				try {
+					return method.invoke(target, args);
+				} catch (InvocationTargetException e) {
+					if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) e.getCause();
+					}
+					throw e;
+				}
+			}
+		}
+		throw new NoSuchMethodException(target.getClass().getName() + "." + name + "/" + args.length);
+	}
+
+	/**
+	 * 加载生成的全部mapper xml, 使用Spring管理的事务
+	 */
+	SqlSessionFactory sqlSessionFactory() throws Exception {
+		return sqlSessionFactory(dataSource);
+	}
+
+	SqlSessionFactory sqlSessionFactory(DataSource dataSource) throws Exception {
+		ClassLoader original = Thread.currentThread().getContextClassLoader();
+		Thread.currentThread().setContextClassLoader(classLoader);
+		try {
+			SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+			factoryBean.setDataSource(dataSource);
+			factoryBean.setPlugins(statementCounter);
+			factoryBean.setMapperLocations(files(sourceDirectory, ".xml").stream().map(FileSystemResource::new)
+					.toArray(Resource[]::new));
+			return factoryBean.getObject();
+		} finally {
+			Thread.currentThread().setContextClassLoader(original);
+		}
+	}
+
+	/**
+	 * Spring容器: 数据源, 事务管理器, sqlSessionFactory, 全部生成的mapper和Service
+	 *
+	 * @param beans 在refresh之前注册其他的bean, 如Executor, replicaSqlSessionFactory
+	 */
+	AnnotationConfigApplicationContext applicationContext(Consumer<AnnotationConfigApplicationContext> beans)
+			throws Exception {
+		SqlSessionFactory sqlSessionFactory = sqlSessionFactory();
+		SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+		AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+		applicationContext.setClassLoader(classLoader);
+		applicationContext.register(TransactionConfiguration.class);
+		applicationContext.registerBean("dataSource", DataSource.class, () -> dataSource);
+		applicationContext.registerBean("transactionManager", DataSourceTransactionManager.class,
+				() -> new DataSourceTransactionManager(dataSource));
+		applicationContext.registerBean("sqlSessionFactory", SqlSessionFactory.class, () -> sqlSessionFactory,
+				definition -> definition.setPrimary(true));
+		for (Class<?> mapperType : generatedClasses(MAPPER_PACKAGE)) {
+			registerMapper(applicationContext, sqlSessionTemplate, mapperType);
+		}
+		for (Class<?> serviceType : generatedClasses(SERVICE_PACKAGE)) {
+			if (serviceType.isAnnotationPresent(Service.class)) {
+				applicationContext.registerBean(serviceType);
+			}
+		}
+		beans.accept(applicationContext);
+		applicationContext.refresh();
+		return applicationContext;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> void registerMapper(AnnotationConfigApplicationContext applicationContext,
+			SqlSessionTemplate sqlSessionTemplate, Class<T> mapperType) {
+		applicationContext.registerBean(mapperType, () -> sqlSessionTemplate.getMapper(mapperType));
+	}
+
+	List<Class<?>> generatedClasses(String packageName) throws IOException, ClassNotFoundException {
+		List<Class<?>> types = new ArrayList<>();
+		File packageDirectory = new File(sourceDirectory, packageName.replace('.', '/'));
+		for (File file : files(packageDirectory, ".java")) {
+			if (file.getParentFile().equals(packageDirectory)) {
+				types.add(loadClass(packageName + "." + file.getName().replace(".java", "")));
+			}
+		}
+		return types;
+	}
+
+	private static List<File> files(File directory, String suffix) throws IOException {
+		if (!directory.exists()) {
+			return new ArrayList<>();
+		}
+		try (Stream<Path> paths = Files.walk(directory.toPath())) {
+			return paths.filter(path -> path.toString().endsWith(suffix)).map(Path::toFile).sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	@EnableTransactionManagement
+	static class TransactionConfiguration {
+	}
+
+	/**
+	 * 按mapper方法名统计执行次数
+	 */
+	@Intercepts({
+			@Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class,
+					RowBounds.class, ResultHandler.class }),
+			@Signature(type = Executor.class, method = "queryCursor", args = { MappedStatement.class, Object.class,
+					RowBounds.class }),
+			@Signature(type = Executor.class, method = "update", args = { MappedStatement.class, Object.class }) })
+	static class StatementCounter implements Interceptor {
+
+		private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+		@Override
+		public Object intercept(Invocation invocation) throws Throwable {
+			String id = ((MappedStatement) invocation.getArgs()[0]).getId();
+			counts.computeIfAbsent(id.substring(id.lastIndexOf('.') + 1), key -> new AtomicInteger()).incrementAndGet();
+			return invocation.proceed();
+		}
+
+		int count(String statement) {
+			AtomicInteger count = counts.get(statement);
+			return count == null ? 0 : count.get();
+		}
+
+		void reset() {
+			counts.clear();
+		}
+	}
+}
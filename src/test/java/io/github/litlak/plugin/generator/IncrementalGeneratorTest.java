@@ -0,0 +1,141 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * IncrementalGenerator: 指纹和生成的文件都没有变化的表不重新写入
+ *
+ * @author Scomy
+ */
+public class IncrementalGeneratorTest {
+
+	private static final Set<String> USER_INFO_FILES = new TreeSet<>(Arrays.asList("controller/UserInfoController.java",
+			"mapper/UserInfoMapper.java", "mapper/UserInfoMapper.xml", "model/UserInfo.java",
+			"service/UserInfoService.java"));
+
+	private static final Set<String> TAG_FILES = new TreeSet<>(Arrays.asList("controller/TagController.java",
+			"mapper/TagMapper.java", "mapper/TagMapper.xml", "model/Tag.java", "model/TagKey.java",
+			"service/TagService.java"));
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void unchangedTablesAreSkipped() throws Exception {
+		File cacheFile = new File(folder.getRoot(), "incremental.properties");
+		GeneratedProject project = new GeneratedProject(folder.newFolder("project"))
+				.plugin(IncrementalGenerator.class, "cacheFile", cacheFile.getPath()).table("user_info").table("tag");
+		project.generate();
+		assertTrue(cacheFile.isFile());
+		Set<String> all = new TreeSet<>(USER_INFO_FILES);
+		all.addAll(TAG_FILES);
+		assertTrue(tableFiles(project).containsAll(all));
+
+		// 没有变化
+		assertEquals(new TreeSet<>(), regenerated(project));
+
+		// table property变化只重新生成该表
+		project.table("user_info", "batchInsertChunkSize", "10");
+		assertEquals(USER_INFO_FILES, regenerated(project));
+		assertEquals(new TreeSet<>(), regenerated(project));
+
+		// 生成的文件被改动
+		File service = new File(project.sourceDirectory(), "fixture/service/TagService.java");
+		Files.write(service.toPath(), "// edited".getBytes(StandardCharsets.UTF_8));
+		assertEquals(TAG_FILES, regenerated(project));
+		assertFalse(project.source(GeneratedProject.SERVICE_PACKAGE + ".TagService").contains("// edited"));
+
+		// 表结构变化
+		project.execute("alter table tag add column weight int");
+		assertEquals(TAG_FILES, regenerated(project));
+		assertTrue(project.source(GeneratedProject.MODEL_PACKAGE + ".Tag").contains("weight"));
+		project.compile();
+	}
+
+	@Test
+	public void forceRegeneratesEveryTable() throws Exception {
+		File cacheFile = new File(folder.getRoot(), "incremental.properties");
+		GeneratedProject project = new GeneratedProject(folder.newFolder("project"))
+				.plugin(IncrementalGenerator.class, "cacheFile", cacheFile.getPath()).table("user_info");
+		project.generate();
+		project.plugin(IncrementalGenerator.class, "cacheFile", cacheFile.getPath(), "force", "true");
+		assertEquals(USER_INFO_FILES, regenerated(project));
+	}
+
+	@Test
+	public void summaryIsReportedInWarnings() throws Exception {
+		File cacheFile = new File(folder.getRoot(), "incremental.properties");
+		GeneratedProject project = new GeneratedProject(folder.newFolder("project"))
+				.plugin(IncrementalGenerator.class, "cacheFile", cacheFile.getPath()).table("user_info").table("tag");
+		assertEquals("2 tables regenerated, 0 skipped", summary(project.generate()).replaceAll(".*: ", ""));
+		project.table("user_info", "batchInsertChunkSize", "10");
+		assertEquals("1 tables regenerated, 1 skipped", summary(project.generate()).replaceAll(".*: ", ""));
+	}
+
+	/**
+	 * 最近一次生成输出的统计, GeneratedProject的warnings在多次生成之间累积
+	 */
+	private static String summary(List<String> warnings) {
+		for (int i = warnings.size() - 1; i >= 0; i--) {
+			if (warnings.get(i).startsWith("Incremental generation")) {
+				return warnings.get(i);
+			}
+		}
+		throw new AssertionError("no summary in " + warnings);
+	}
+
+	/**
+	 * 把生成的文件的修改时间置为0, 再次生成后返回修改时间变化的表文件
+	 */
+	private static Set<String> regenerated(GeneratedProject project) throws Exception {
+		Path root = new File(project.sourceDirectory(), "fixture").toPath();
+		for (Path path : files(root)) {
+			path.toFile().setLastModified(0);
+		}
+		project.generate();
+		Set<String> regenerated = new TreeSet<>();
+		for (Path path : files(root)) {
+			if (path.toFile().lastModified() != 0) {
+				regenerated.add(root.relativize(path).toString().replace(File.separatorChar, '/'));
+			}
+		}
+		regenerated.retainAll(tableFiles(project));
+		return regenerated;
+	}
+
+	private static Set<String> tableFiles(GeneratedProject project) throws IOException {
+		Path root = new File(project.sourceDirectory(), "fixture").toPath();
+		Set<String> tableFiles = new TreeSet<>();
+		for (Path path : files(root)) {
+			String name = root.relativize(path).toString().replace(File.separatorChar, '/');
+			if (USER_INFO_FILES.contains(name) || TAG_FILES.contains(name)) {
+				tableFiles.add(name);
+			}
+		}
+		return tableFiles;
+	}
+
+	private static Set<Path> files(Path root) throws IOException {
+		try (Stream<Path> paths = Files.walk(root)) {
+			return paths.filter(Files::isRegularFile).collect(Collectors.toSet());
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * 复合主键, 没有主键, 只有主键列的表生成的Service和Controller
+ *
+ * @author Scomy
+ */
+public class KeyShapeTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void compositeKeyUsesPrimaryKeyClass() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("tag");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = context.getBean(project.loadClass(GeneratedProject.SERVICE_PACKAGE + ".TagService"));
+			GeneratedProject.invoke(service, "addTag", project.newModel("Tag", "tagId", 1L, "name", "a", "color", "red"));
+			// 不是自增主键, batchInsert写入主键列
+			GeneratedProject.invoke(service, "batchInsert", Arrays.asList(
+					project.newModel("Tag", "tagId", 1L, "name", "b", "color", "blue"),
+					project.newModel("Tag", "tagId", 2L, "name", "b", "color", "black")));
+
+			Object key = project.newModel("TagKey", "tagId", 1L, "name", "b");
+			assertEquals("blue", GeneratedProject.get(GeneratedProject.invoke(service, "getTag", key), "color"));
+			GeneratedProject.invoke(service, "updateTag", project.newModel("Tag", "tagId", 1L, "name", "b", "color", "green"));
+			assertEquals("green", GeneratedProject.get(GeneratedProject.invoke(service, "getTag", key), "color"));
+			GeneratedProject.invoke(service, "deleteTag", key);
+			assertNull(GeneratedProject.invoke(service, "getTag", key));
+			assertEquals(2, ((List<?>) GeneratedProject.invoke(service, "listTag", project.newModel("Tag"))).size());
+		}
+		// 复合主键按属性名绑定请求参数, 不能用@RequestParam("id")
+		String controller = project.source(GeneratedProject.CONTROLLER_PACKAGE + ".TagController");
+		assertTrue(controller.contains("getTag(TagKey id)"));
+		assertTrue(controller.contains("deleteTag(TagKey id)"));
+	}
+
+	@Test
+	public void tableWithoutKeyHasNoPrimaryKeyMethods() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("log_entry", "allowUnindexedFilters", "true");
+		project.generate();
+		project.compile();
+		Class<?> serviceType = project.loadClass(GeneratedProject.SERVICE_PACKAGE + ".LogEntryService");
+		assertEquals(Collections.emptySet(), methodNames(serviceType, "getLogEntry", "updateLogEntry", "deleteLogEntry",
+				"insertOrUpdate", "listByIds"));
+		assertEquals(Collections.emptySet(),
+				methodNames(project.loadClass(GeneratedProject.CONTROLLER_PACKAGE + ".LogEntryController"), "getLogEntry",
+						"updateLogEntry", "deleteLogEntry"));
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = context.getBean(serviceType);
+			GeneratedProject.invoke(service, "addLogEntry", project.newModel("LogEntry", "message", "started", "level", 1));
+			GeneratedProject.invoke(service, "batchInsert", Arrays.asList(
+					project.newModel("LogEntry", "message", "running", "level", 1),
+					project.newModel("LogEntry", "message", "failed", "level", 3)));
+			List<?> rows = (List<?>) GeneratedProject.invoke(service, "listLogEntry", project.newModel("LogEntry", "level", 1));
+			assertEquals(2, rows.size());
+		}
+	}
+
+	@Test
+	public void keyOnlyTableHasNoUpdates() throws Exception {
+		assertKeyOnlyTable(new GeneratedProject(folder.getRoot()).table("only_key"));
+	}
+
+	@Test
+	public void keyOnlyTableHasNoCaseWhenUpdates() throws Exception {
+		assertKeyOnlyTable(new GeneratedProject(folder.getRoot()).table("only_key", "batchUpdateMode", "CASE_WHEN"));
+	}
+
+	private static void assertKeyOnlyTable(GeneratedProject project) throws Exception {
+		project.generate();
+		project.compile();
+		Class<?> serviceType = project.loadClass(GeneratedProject.SERVICE_PACKAGE + ".OnlyKeyService");
+		assertEquals(Collections.emptySet(),
+				methodNames(serviceType, "getOnlyKey", "updateOnlyKey", "batchUpdateByPrimaryKey"));
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = context.getBean(serviceType);
+			GeneratedProject.invoke(service, "batchInsert", Arrays.asList(project.newModel("OnlyKey", "id", 1L),
+					project.newModel("OnlyKey", "id", 2L), project.newModel("OnlyKey", "id", 3L)));
+			GeneratedProject.invoke(service, "deleteOnlyKey", 1L);
+			assertEquals(1, GeneratedProject.invoke(service, "batchDeleteByPrimaryKey", Arrays.asList(2L)));
+			List<?> rows = (List<?>) GeneratedProject.invoke(service, "listByIds", Arrays.asList(1L, 2L, 3L));
+			assertEquals(1, rows.size());
+			assertEquals(3L, GeneratedProject.get(rows.get(0), "id"));
+		}
+	}
+
+	@Test
+	public void allKeyShapesCompileTogether() throws Exception {
+		// 计时和读写分离改写后的方法体也要能编译
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).property("serviceMetrics", "true")
+				.property("readWriteSplit", "true").property("asyncController", "true").table("user_info").table("tag")
+				.table("log_entry").table("only_key");
+		project.generate();
+		project.compile();
+		assertFalse(project.source(GeneratedProject.SERVICE_PACKAGE + ".UserInfoService").contains("UserInfoKey"));
+	}
+
+	private static Set<String> methodNames(Class<?> type, String... names) {
+		Set<String> found = new HashSet<>();
+		for (Method method : type.getDeclaredMethods()) {
+			found.add(method.getName());
+		}
+		found.retainAll(Arrays.asList(names));
+		return found;
+	}
+}
@@ -0,0 +1,81 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * listXXX按非空字段过滤, pageXXX按主键游标分页
+ *
+ * @author Scomy
+ */
+public class PaginationTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void listFiltersByNonNullFields() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = ServiceReadTest.userInfoService(project, context);
+			ServiceReadTest.insertUsers(project, service, 5);
+			assertEquals(Arrays.asList("user-1", "user-3"),
+					names(GeneratedProject.invoke(service, "listUserInfo", project.newModel("UserInfo", "status", 1))));
+			assertEquals(Arrays.asList("user-2"), names(GeneratedProject.invoke(service, "listUserInfo",
+					project.newModel("UserInfo", "tenantId", 1L, "status", 0, "name", "user-2"))));
+			assertEquals(5, names(GeneratedProject.invoke(service, "listUserInfo", project.newModel("UserInfo"))).size());
+		}
+	}
+
+	@Test
+	public void pageWalksAllRowsByCursor() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "maxPageSize", "3");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = ServiceReadTest.userInfoService(project, context);
+			ServiceReadTest.insertUsers(project, service, 7);
+			Object req = project.newModel("UserInfo", "tenantId", 1L);
+
+			List<String> names = new ArrayList<>();
+			List<Integer> sizes = new ArrayList<>();
+			Object cursor = null;
+			do {
+				// size超过maxPageSize时按maxPageSize分页
+				Object page = GeneratedProject.invoke(service, "pageUserInfo", req, cursor, 10);
+				List<String> rows = names(GeneratedProject.invoke(page, "getRows"));
+				names.addAll(rows);
+				sizes.add(rows.size());
+				cursor = GeneratedProject.invoke(page, "getNextCursor");
+			} while (cursor != null);
+			assertEquals(Arrays.asList(3, 3, 1), sizes);
+			assertEquals(Arrays.asList("user-0", "user-1", "user-2", "user-3", "user-4", "user-5", "user-6"), names);
+
+			// 刚好取完时没有下一页
+			Object last = GeneratedProject.invoke(service, "pageUserInfo", project.newModel("UserInfo", "status", 1), 2L, 3);
+			assertEquals(Arrays.asList("user-3", "user-5"), names(GeneratedProject.invoke(last, "getRows")));
+			assertNull(GeneratedProject.invoke(last, "getNextCursor"));
+		}
+	}
+
+	static List<String> names(Object rows) throws ReflectiveOperationException {
+		List<String> names = new ArrayList<>();
+		for (Object row : (List<?>) rows) {
+			names.add((String) GeneratedProject.get(row, "name"));
+		}
+		return names;
+	}
+}
@@ -0,0 +1,63 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ParallelGenerator与MyBatisGenerator生成的文件完全相同
+ *
+ * @author Scomy
+ */
+public class ParallelGeneratorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void parallelOutputMatchesSerial() throws Exception {
+		GeneratedProject serial = fixture(folder.newFolder("serial"));
+		serial.generate();
+		GeneratedProject parallel = fixture(folder.newFolder("parallel"));
+		parallel.generate(4);
+
+		Map<String, String> expected = sources(serial.sourceDirectory());
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, sources(parallel.sourceDirectory()));
+		assertEquals(serial.warnings(), parallel.warnings());
+		parallel.compile();
+	}
+
+	private static GeneratedProject fixture(File directory) throws Exception {
+		return new GeneratedProject(directory).plugin(DirtyTrackingGenerator.class).property("serviceMetrics", "true")
+				.property("asyncController", "true").table("user_info", "serviceCache", "true", "streamExport", "true")
+				.table("tag").table("log_entry", "allowUnindexedFilters", "true").table("only_key");
+	}
+
+	/**
+	 * 相对路径到文件内容
+	 */
+	private static Map<String, String> sources(File directory) throws IOException {
+		Map<String, String> sources = new TreeMap<>();
+		Path root = directory.toPath();
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+				sources.put(root.relativize(path).toString(),
+						new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+			}
+		}
+		return sources;
+	}
+}
@@ -0,0 +1,75 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * columnProjection和listExcludeColumns: 只查询指定的列, 列表默认不查询BLOB列和宽列
+ *
+ * @author Scomy
+ */
+public class ProjectionTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void fieldsLimitSelectedColumns() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "listExcludeColumns",
+				"remark");
+		project.execute("alter table user_info add column content clob");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = ServiceReadTest.userInfoService(project, context);
+			GeneratedProject.invoke(service, "addUserInfo",
+					project.newModel("UserInfo", "name", "a", "status", 1, "tenantId", 1L, "remark", "wide", "content", "blob"));
+			GeneratedProject.invoke(service, "addUserInfo",
+					project.newModel("UserInfo", "name", "b", "status", 2, "tenantId", 1L, "remark", "wide"));
+			Object req = project.newModel("UserInfo", "tenantId", 1L);
+
+			// BLOB列和listExcludeColumns的列默认不查询, get和fields中指定时查询
+			Object listed = ((List<?>) GeneratedProject.invoke(service, "listUserInfo", req)).get(0);
+			assertEquals("a", GeneratedProject.get(listed, "name"));
+			assertNull(GeneratedProject.get(listed, "remark"));
+			assertNull(GeneratedProject.get(listed, "content"));
+			Object loaded = GeneratedProject.invoke(service, "getUserInfo", 1L);
+			assertEquals("wide", GeneratedProject.get(loaded, "remark"));
+			assertEquals("blob", GeneratedProject.get(loaded, "content"));
+			assertEquals("blob", GeneratedProject.get(((List<?>) GeneratedProject.invoke(service, "listUserInfo", req,
+					Collections.singletonList("content"))).get(0), "content"));
+
+			List<?> rows = (List<?>) GeneratedProject.invoke(service, "listUserInfo", req, Arrays.asList("name", "remark"));
+			assertEquals(2, rows.size());
+			assertEquals("wide", GeneratedProject.get(rows.get(0), "remark"));
+			assertNull(GeneratedProject.get(rows.get(0), "id"));
+			assertNull(GeneratedProject.get(rows.get(0), "status"));
+
+			// listByIds的投影总是带主键, 按ids的顺序返回
+			rows = (List<?>) GeneratedProject.invoke(service, "listByIds", Arrays.asList(2L, 1L),
+					Collections.singletonList("status"));
+			assertEquals(2, GeneratedProject.get(rows.get(0), "status"));
+			assertEquals(1L, GeneratedProject.get(rows.get(1), "id"));
+			assertNull(GeneratedProject.get(rows.get(1), "name"));
+
+			try {
+				GeneratedProject.invoke(service, "listUserInfo", req, Arrays.asList("name", "password"));
+				fail();
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().contains("password"));
+			}
+		}
+	}
+}
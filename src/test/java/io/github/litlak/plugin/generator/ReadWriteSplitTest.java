@@ -0,0 +1,72 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * readWriteSplit: 主从两个内存库, 按读到的name区分走了哪个库
+ *
+ * @author Scomy
+ */
+public class ReadWriteSplitTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsFollowOwnWritesAcrossAsyncController() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "readWriteSplit", "true",
+				"readYourWritesMillis", "60000", "asyncController", "true");
+		project.generate();
+		project.compile();
+		DataSource replica = project.newDatabase();
+		SqlSessionFactory replicaSqlSessionFactory = project.sqlSessionFactory(replica);
+		Class<?> controllerType = project.loadClass(GeneratedProject.CONTROLLER_PACKAGE + ".UserInfoController");
+		ExecutorService asyncExecutor = Executors.newSingleThreadExecutor();
+		ExecutorService caller = Executors.newSingleThreadExecutor();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+			beans.registerBean("replicaSqlSessionFactory", SqlSessionFactory.class, () -> replicaSqlSessionFactory);
+			beans.registerBean("jdbcExecutor", Executor.class, () -> asyncExecutor);
+			beans.registerBean(controllerType);
+		})) {
+			String insert = "insert into user_info (id, name, status) values (1, ?, 0)";
+			new JdbcTemplate(project.dataSource()).update(insert, "primary");
+			new JdbcTemplate(replica).update(insert, "replica");
+			Object service = ServiceReadTest.userInfoService(project, context);
+			Object controller = context.getBean(controllerType);
+
+			assertEquals("replica", GeneratedProject.get(GeneratedProject.invoke(service, "getUserInfo", 1L), "name"));
+			assertEquals("replica", asyncGet(controller));
+
+			// 写过之后本线程的读, 以及本线程发起的异步任务中的读走主库
+			GeneratedProject.invoke(service, "updateUserInfo", project.newModel("UserInfo", "id", 1L, "name", "written",
+					"status", 0));
+			assertEquals("written", GeneratedProject.get(GeneratedProject.invoke(service, "getUserInfo", 1L), "name"));
+			assertEquals("written", asyncGet(controller));
+
+			// 异步线程上不残留上一个任务带入的写入时间
+			assertEquals("replica", caller.submit(() -> asyncGet(controller)).get());
+		} finally {
+			asyncExecutor.shutdown();
+			caller.shutdown();
+		}
+	}
+
+	private static Object asyncGet(Object controller) throws Exception {
+		Object result = ((CompletableFuture<?>) GeneratedProject.invoke(controller, "getUserInfo", 1L)).get();
+		return GeneratedProject.get(GeneratedProject.get(result, "data"), "name");
+	}
+}
@@ -0,0 +1,23 @@
+package io.github.litlak.plugin.generator;
+
+/**
+ * 生成的Controller使用的响应类型(responseGenericityType)
+ *
+ * @author Scomy
+ */
+public class Result<T> {
+
+	private final T data;
+
+	public Result() {
+		this(null);
+	}
+
+	public Result(T data) {
+		this.data = data;
+	}
+
+	public T getData() {
+		return data;
+	}
+}
@@ -0,0 +1,69 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * serviceMetrics: 方法体包在Operation.call/run中, 按返回值计行数
+ *
+ * @author Scomy
+ */
+public class ServiceMetricsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void rowsAreCountedByReturnValue() throws Exception {
+		// 其他选项生成的方法体中有lambda, 多行return, 提前return
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).plugin(DirtyTrackingGenerator.class)
+				.table("user_info", "serviceMetrics", "true", "bulkAdd", "true", "serviceCache", "true", "batchLoader",
+						"true", "streamExport", "true", "listByIdsExecutor", "jdbcExecutor");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(
+				beans -> beans.registerBean("jdbcExecutor", Executor.class, () -> Runnable::run))) {
+			Object service = ServiceReadTest.userInfoService(project, context);
+			ServiceReadTest.insertUsers(project, service, 3);
+			Class<?> metricsType = project.loadClass(GeneratedProject.SERVICE_PACKAGE + ".ServiceMetrics");
+			assertEquals(3L, operation(metricsType, "batchInsert", "rows"));
+			List<Object> rows = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				rows.add(project.newModel("UserInfo", "name", "bulk-" + i, "status", 1));
+			}
+			Object bulkResult = GeneratedProject.invoke(service, "bulkInsert", rows.iterator());
+			assertEquals(5L, GeneratedProject.get(bulkResult, "accepted"));
+			assertEquals(2, ((List<?>) GeneratedProject.invoke(service, "listByIds", Arrays.asList(1L, 2L, 99L))).size());
+			GeneratedProject.invoke(service, "getUserInfo", 99L);
+			// 没有修改的update提前返回
+			GeneratedProject.invoke(service, "updateUserInfo", GeneratedProject.invoke(service, "getUserInfo", 1L));
+
+			assertEquals(5L, operation(metricsType, "bulkInsert", "rows"));
+			assertEquals(2L, operation(metricsType, "listByIds", "rows"));
+			assertEquals(2L, operation(metricsType, "getUserInfo", "calls"));
+			assertEquals(1L, operation(metricsType, "getUserInfo", "rows"));
+			assertEquals(1L, operation(metricsType, "updateUserInfo", "calls"));
+			assertEquals(0L, operation(metricsType, "updateUserInfo", "errors"));
+		}
+	}
+
+	private static Object operation(Class<?> metricsType, String name, String property) throws Exception {
+		for (Object operation : (Collection<?>) metricsType.getMethod("getOperations").invoke(null)) {
+			if ("user_info".equalsIgnoreCase((String) GeneratedProject.get(operation, "table"))
+					&& name.equals(GeneratedProject.get(operation, "name"))) {
+				return GeneratedProject.get(operation, property);
+			}
+		}
+		throw new AssertionError("no operation " + name);
+	}
+}
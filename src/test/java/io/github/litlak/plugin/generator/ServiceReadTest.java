@@ -0,0 +1,319 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Service的读: listByIds分桶, batchLoader合并get, serviceCache, 查出的对象清除脏标记, 过滤条件检查, 索引查询
+ *
+ * @author Scomy
+ */
+public class ServiceReadTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void batchLoaderCoalescesConcurrentGets() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "batchLoader", "true",
+				"batchLoaderWindowMillis", "10000");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = userInfoService(project, context);
+			insertUsers(project, service, 4);
+			project.statementCounter().reset();
+			// 没有并发时不等待窗口期
+			long start = System.nanoTime();
+			assertEquals("user-0", GeneratedProject.get(GeneratedProject.invoke(service, "getUserInfo", 1L), "name"));
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+			assertEquals(1, project.statementCounter().count("listByPrimaryKey"));
+			assertEquals(0, project.statementCounter().count("selectByPrimaryKey"));
+		}
+
+		// 第一个查询进行中时到达的key合并为一批, 凑满maxBatchSize后立即查询
+		Class<?> loaderType = project.loadClass(GeneratedProject.SERVICE_PACKAGE + ".BatchLoader");
+		List<List<Long>> batches = new CopyOnWriteArrayList<>();
+		CountDownLatch firstStarted = new CountDownLatch(1);
+		CountDownLatch releaseFirst = new CountDownLatch(1);
+		Function<List<Long>, List<Long>> loader = keys -> {
+			batches.add(keys);
+			if (batches.size() == 1) {
+				firstStarted.countDown();
+				try {
+					releaseFirst.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return keys;
+		};
+		Object batchLoader = loaderType.getConstructor(Function.class, Function.class, int.class, long.class)
+				.newInstance(loader, Function.identity(), 3, 10000L);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Object>> rows = new ArrayList<>();
+			rows.add(executor.submit(() -> GeneratedProject.invoke(batchLoader, "load", 1L)));
+			firstStarted.await();
+			for (long id = 2; id <= 4; id++) {
+				Long key = id;
+				rows.add(executor.submit(() -> GeneratedProject.invoke(batchLoader, "load", key)));
+			}
+			for (int i = 1; i < rows.size(); i++) {
+				assertEquals((long) i + 1, rows.get(i).get());
+			}
+			releaseFirst.countDown();
+			assertEquals(1L, rows.get(0).get());
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(2, batches.size());
+		assertEquals(Arrays.asList(1L), batches.get(0));
+		assertEquals(new HashSet<>(Arrays.asList(2L, 3L, 4L)), new HashSet<>(batches.get(1)));
+	}
+
+	@Test
+	public void listByIdsSplitsBucketsAndKeepsIdOrder() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "listByIdsBucketSize", "2",
+				"listByIdsExecutor", "listExecutor");
+		project.generate();
+		project.compile();
+		ExecutorService listExecutor = Executors.newFixedThreadPool(2);
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+			beans.registerBean("listExecutor", Executor.class, () -> listExecutor);
+		})) {
+			Object service = userInfoService(project, context);
+			insertUsers(project, service, 5);
+			project.statementCounter().reset();
+			// 去重, 去掉null和不存在的id, 按ids的顺序返回
+			List<?> rows = (List<?>) GeneratedProject.invoke(service, "listByIds",
+					Arrays.asList(5L, 2L, null, 5L, 99L, 1L, 4L));
+			assertEquals(Arrays.asList("user-4", "user-1", "user-0", "user-3"), PaginationTest.names(rows));
+			// 5个不同的id按每桶2个分为3条in语句
+			assertEquals(3, project.statementCounter().count("listByPrimaryKey"));
+		} finally {
+			listExecutor.shutdown();
+		}
+	}
+
+	@Test
+	public void listByIdsInTransactionSeesUncommittedRows() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "listByIdsBucketSize", "2",
+				"listByIdsExecutor", "listExecutor");
+		project.generate();
+		project.compile();
+		ExecutorService listExecutor = Executors.newFixedThreadPool(2);
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+			beans.registerBean("listExecutor", Executor.class, () -> listExecutor);
+		})) {
+			Object service = userInfoService(project, context);
+			// 事务中分桶在当前线程查询, 读到本事务未提交的行
+			new TransactionTemplate(context.getBean(PlatformTransactionManager.class)).executeWithoutResult(status -> {
+				try {
+					insertUsers(project, service, 3);
+					List<?> rows = (List<?>) GeneratedProject.invoke(service, "listByIds", Arrays.asList(3L, 1L, 2L));
+					assertEquals(Arrays.asList("user-2", "user-0", "user-1"), PaginationTest.names(rows));
+				} catch (ReflectiveOperationException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+		} finally {
+			listExecutor.shutdown();
+		}
+	}
+
+	@Test
+	public void batchLoaderIsSkippedWithoutSelectByPrimaryKey() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("only_key", "batchLoader", "true",
+				"batchUpdateMode", "CASE_WHEN");
+		project.generate();
+		project.compile();
+		assertFalse(project.source(GeneratedProject.SERVICE_PACKAGE + ".OnlyKeyService").contains("BatchLoader"));
+	}
+
+	@Test
+	public void serviceCacheIsInvalidatedAfterCommit() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "serviceCache", "true");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = userInfoService(project, context);
+			insertUsers(project, service, 1);
+			project.statementCounter().reset();
+			assertEquals("user-0", GeneratedProject.get(GeneratedProject.invoke(service, "getUserInfo", 1L), "name"));
+			assertEquals("user-0", GeneratedProject.get(GeneratedProject.invoke(service, "getUserInfo", 1L), "name"));
+			assertEquals(1, project.statementCounter().count("selectByPrimaryKey"));
+
+			// 提交前另一个线程读到旧值并写回缓存, 提交后的失效要把它清掉
+			new TransactionTemplate(context.getBean(PlatformTransactionManager.class)).executeWithoutResult(status -> {
+				try {
+					GeneratedProject.invoke(service, "updateUserInfo", project.newModel("UserInfo", "id", 1L, "name", "renamed"));
+					ExecutorService executor = Executors.newSingleThreadExecutor();
+					try {
+						Object stale = executor.submit(() -> GeneratedProject.invoke(service, "getUserInfo", 1L)).get();
+						assertEquals("user-0", GeneratedProject.get(stale, "name"));
+					} finally {
+						executor.shutdown();
+					}
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			assertEquals("renamed", GeneratedProject.get(GeneratedProject.invoke(service, "getUserInfo", 1L), "name"));
+		}
+	}
+
+	@Test
+	public void loadedRowUpdatesOnlyModifiedColumns() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).plugin(DirtyTrackingGenerator.class)
+				.table("user_info", "serviceCache", "true");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = userInfoService(project, context);
+			insertUsers(project, service, 2);
+			Object row = GeneratedProject.invoke(service, "getUserInfo", 1L);
+			Object listed = ((List<?>) GeneratedProject.invoke(service, "listUserInfo", project.newModel("UserInfo", "id", 2L)))
+					.get(0);
+			// 查出之后别处修改了status, 只改name的更新不能把status写回旧值
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(project.dataSource());
+			jdbcTemplate.update("update user_info set status = 7");
+			GeneratedProject.invoke(row, "setName", "renamed-1");
+			GeneratedProject.invoke(service, "updateUserInfo", row);
+			GeneratedProject.invoke(listed, "setName", "renamed-2");
+			GeneratedProject.invoke(service, "updateUserInfo", listed);
+			assertEquals(Arrays.asList("renamed-1", "renamed-2"),
+					jdbcTemplate.queryForList("select name from user_info order by id", String.class));
+			assertEquals(Integer.valueOf(2),
+					jdbcTemplate.queryForObject("select count(*) from user_info where status = 7", Integer.class));
+		}
+	}
+
+	@Test
+	public void cachedRowIsCopiedForEachCaller() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).plugin(DirtyTrackingGenerator.class)
+				.table("user_info", "serviceCache", "true", "batchLoader", "true");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = userInfoService(project, context);
+			insertUsers(project, service, 1);
+			// 第一次经batchLoader查询并写入缓存, 之后两个调用方都命中缓存
+			Object first = GeneratedProject.invoke(service, "getUserInfo", 1L);
+			Object second = GeneratedProject.invoke(service, "getUserInfo", 1L);
+			Object listed = ((List<?>) GeneratedProject.invoke(service, "listByIds", Arrays.asList(1L))).get(0);
+			assertFalse(first == second || first == listed || second == listed);
+
+			// 一个调用方还没保存的修改不能被另一个调用方的更新带上
+			GeneratedProject.invoke(first, "setName", "draft");
+			GeneratedProject.invoke(second, "setStatus", 7);
+			GeneratedProject.invoke(service, "updateUserInfo", second);
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(project.dataSource());
+			assertEquals("user-0", jdbcTemplate.queryForObject("select name from user_info where id = 1", String.class));
+			assertEquals(Integer.valueOf(7),
+					jdbcTemplate.queryForObject("select status from user_info where id = 1", Integer.class));
+			assertFalse((Boolean) GeneratedProject.invoke(listed, "hasDirtyFields"));
+
+			// 另一个调用方随后保存自己的修改, 不把status写回旧值
+			GeneratedProject.invoke(service, "updateUserInfo", first);
+			assertEquals("draft", jdbcTemplate.queryForObject("select name from user_info where id = 1", String.class));
+			assertEquals(Integer.valueOf(7),
+					jdbcTemplate.queryForObject("select status from user_info where id = 1", Integer.class));
+		}
+	}
+
+	@Test
+	public void unindexedFilterIsRejected() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "streamExport", "true");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = userInfoService(project, context);
+			insertUsers(project, service, 3);
+			assertEquals(3, ((List<?>) GeneratedProject.invoke(service, "listUserInfo",
+					project.newModel("UserInfo", "tenantId", 1L))).size());
+			// remark没有索引, 忽略条件会返回全表
+			Object req = project.newModel("UserInfo", "tenantId", 1L, "remark", "vip");
+			try {
+				GeneratedProject.invoke(service, "listUserInfo", req);
+				fail();
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().contains("remark"));
+			}
+			try {
+				GeneratedProject.invoke(service, "pageUserInfo", req, null, 10);
+				fail();
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().contains("remark"));
+			}
+		}
+	}
+
+	@Test
+	public void indexFindersFollowIndexes() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = userInfoService(project, context);
+			insertUsers(project, service, 4);
+			// 唯一索引返回单行, 普通索引按全部列查询, 索引第一列生成in查询
+			assertEquals(3L, GeneratedProject.get(GeneratedProject.invoke(service, "getByName", "user-2"), "id"));
+			assertEquals(Arrays.asList("user-1", "user-3"),
+					PaginationTest.names(GeneratedProject.invoke(service, "listByTenantIdAndStatus", 1L, 1)));
+			assertEquals(Arrays.asList("user-0", "user-3"), PaginationTest
+					.names(GeneratedProject.invoke(service, "listByNameIn", Arrays.asList("user-3", "user-0", "missing"))));
+			assertEquals(4, ((List<?>) GeneratedProject.invoke(service, "listByTenantIdIn", Arrays.asList(1L, 2L))).size());
+		}
+
+		GeneratedProject disabled = new GeneratedProject(folder.newFolder()).table("user_info", "indexFinders", "false",
+				"allowUnindexedFilters", "true");
+		disabled.generate();
+		assertFalse(disabled.source(GeneratedProject.SERVICE_PACKAGE + ".UserInfoService").contains("getByName"));
+	}
+
+	static Object userInfoService(GeneratedProject project, AnnotationConfigApplicationContext context)
+			throws ClassNotFoundException {
+		return context.getBean(project.loadClass(GeneratedProject.SERVICE_PACKAGE + ".UserInfoService"));
+	}
+
+	/**
+	 * 插入id为1到count, name为user-0到user-(count-1)的行
+	 */
+	static void insertUsers(GeneratedProject project, Object service, int count) throws ReflectiveOperationException {
+		List<Object> rows = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			rows.add(project.newModel("UserInfo", "name", "user-" + i, "status", i % 2, "tenantId", 1L));
+		}
+		GeneratedProject.invoke(service, "batchInsert", rows);
+	}
+}
@@ -0,0 +1,102 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 分表: 按分片列取模路由到user_info_00/user_info_01, 没有分片列的查询并行查询全部分表
+ *
+ * @author Scomy
+ */
+public class ShardingTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void routesByShardKeyAndScattersOtherwise() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "shardKey", "tenant_id",
+				"shardCount", "2", "shardExecutor", "shardExecutor");
+		project.generate();
+		project.compile();
+		for (String shard : Arrays.asList("user_info_00", "user_info_01")) {
+			project.execute("create table " + shard + " (id bigint primary key, name varchar(64) not null,"
+					+ " status int, tenant_id bigint, amount decimal(12,2), remark varchar(255), gmt_create timestamp,"
+					+ " gmt_modified timestamp)");
+		}
+		Set<String> shardThreads = ConcurrentHashMap.newKeySet();
+		ExecutorService shardExecutor = Executors.newFixedThreadPool(2);
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+			beans.registerBean("shardExecutor", Executor.class, () -> task -> shardExecutor.execute(() -> {
+				shardThreads.add(Thread.currentThread().getName());
+				task.run();
+			}));
+		})) {
+			Object service = ServiceReadTest.userInfoService(project, context);
+			for (long id = 1; id <= 4; id++) {
+				GeneratedProject.invoke(service, "addUserInfo",
+						project.newModel("UserInfo", "id", id, "name", "user-" + id, "status", 0, "tenantId", id));
+			}
+			GeneratedProject.invoke(service, "batchInsert",
+					Arrays.asList(project.newModel("UserInfo", "id", 5L, "name", "user-5", "status", 1, "tenantId", 5L),
+							project.newModel("UserInfo", "id", 6L, "name", "user-6", "status", 1, "tenantId", 6L)));
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(project.dataSource());
+			assertEquals(Arrays.asList(2L, 4L, 6L),
+					jdbcTemplate.queryForList("select id from user_info_00 order by id", Long.class));
+			assertEquals(Arrays.asList(1L, 3L, 5L),
+					jdbcTemplate.queryForList("select id from user_info_01 order by id", Long.class));
+			assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("select count(*) from user_info", Integer.class));
+
+			// 带分片列只查一张分表
+			project.statementCounter().reset();
+			assertEquals(Arrays.asList("user-3"), PaginationTest.names(
+					GeneratedProject.invoke(service, "listUserInfo", project.newModel("UserInfo", "tenantId", 3L))));
+			assertEquals(1, project.statementCounter().count("listUserInfo"));
+			assertFalse(shardThreads.contains(Thread.currentThread().getName()));
+
+			// 不带分片列时并行查询全部分表
+			project.statementCounter().reset();
+			List<?> rows = (List<?>) GeneratedProject.invoke(service, "listUserInfo", project.newModel("UserInfo", "status", 1));
+			assertEquals(2, rows.size());
+			assertEquals(2, project.statementCounter().count("listUserInfo"));
+			assertFalse(shardThreads.isEmpty());
+
+			assertEquals(Arrays.asList("user-4", "user-1", "user-3"), PaginationTest
+					.names(GeneratedProject.invoke(service, "listByIds", Arrays.asList(4L, 1L, 3L, 99L))));
+			assertEquals("user-5", GeneratedProject.get(GeneratedProject.invoke(service, "getUserInfo", 5L), "name"));
+			assertEquals(4L, GeneratedProject.get(GeneratedProject.invoke(service, "getByName", "user-4"), "id"));
+
+			GeneratedProject.invoke(service, "updateUserInfo",
+					project.newModel("UserInfo", "id", 2L, "name", "renamed", "status", 0, "tenantId", 2L));
+			assertEquals("renamed", jdbcTemplate.queryForObject("select name from user_info_00 where id = 2", String.class));
+			GeneratedProject.invoke(service, "deleteUserInfo", 3L);
+			assertNull(GeneratedProject.invoke(service, "getUserInfo", 3L));
+			assertEquals(2, GeneratedProject.invoke(service, "batchDeleteByPrimaryKey", Arrays.asList(1L, 2L)));
+
+			try {
+				GeneratedProject.invoke(service, "addUserInfo", project.newModel("UserInfo", "id", 7L, "name", "user-7"));
+				fail();
+			} catch (IllegalArgumentException e) {
+				assertEquals("tenantId is required for sharding", e.getMessage());
+			}
+		} finally {
+			shardExecutor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * streamExport: Service按Cursor逐行回调, Controller输出NDJSON
+ *
+ * @author Scomy
+ */
+public class StreamExportTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void streamVisitsFilteredRowsThroughCursor() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "streamExport", "true",
+				"streamFetchSize", "2");
+		project.generate();
+		project.compile();
+		assertTrue(project.mapperXml("UserInfo").contains("fetchSize=\"2\""));
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = ServiceReadTest.userInfoService(project, context);
+			ServiceReadTest.insertUsers(project, service, 5);
+			project.statementCounter().reset();
+			List<Object> rows = new ArrayList<>();
+			GeneratedProject.invoke(service, "streamUserInfo", project.newModel("UserInfo", "status", 1),
+					(Consumer<Object>) rows::add);
+			assertEquals(Arrays.asList("user-1", "user-3"), PaginationTest.names(rows));
+			assertEquals(1, project.statementCounter().count("streamUserInfo"));
+		}
+	}
+
+	@Test
+	public void exportWritesOneJsonObjectPerLine() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "streamExport", "true",
+				"streamFetchSize", "2");
+		project.generate();
+		project.compile();
+		Class<?> controllerType = project.loadClass(GeneratedProject.CONTROLLER_PACKAGE + ".UserInfoController");
+		ObjectMapper objectMapper = new ObjectMapper();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+			beans.registerBean(ObjectMapper.class, () -> objectMapper);
+			beans.registerBean(controllerType);
+		})) {
+			ServiceReadTest.insertUsers(project, ServiceReadTest.userInfoService(project, context), 3);
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			List<String> contentTypes = new ArrayList<>();
+			GeneratedProject.invoke(context.getBean(controllerType), "exportUserInfo", project.newModel("UserInfo"),
+					response(body, contentTypes));
+
+			assertEquals(Arrays.asList("application/x-ndjson;charset=UTF-8"), contentTypes);
+			String[] lines = new String(body.toByteArray(), StandardCharsets.UTF_8).split("\n");
+			assertEquals(3, lines.length);
+			for (int i = 0; i < lines.length; i++) {
+				JsonNode row = objectMapper.readTree(lines[i]);
+				assertEquals(i + 1, row.get("id").asLong());
+				assertEquals("user-" + i, row.get("name").asText());
+			}
+		}
+	}
+
+	/**
+	 * 只实现getOutputStream和setContentType的HttpServletResponse
+	 */
+	static HttpServletResponse response(ByteArrayOutputStream body, List<String> contentTypes) {
+		ServletOutputStream out = new ServletOutputStream() {
+
+			@Override
+			public void write(int b) {
+				body.write(b);
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener writeListener) {
+				throw new UnsupportedOperationException();
+			}
+		};
+		return (HttpServletResponse) Proxy.newProxyInstance(StreamExportTest.class.getClassLoader(),
+				new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getOutputStream":
+						return out;
+					case "setContentType":
+						contentTypes.add((String) args[0]);
+						return null;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+}
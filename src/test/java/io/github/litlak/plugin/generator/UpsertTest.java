@@ -0,0 +1,62 @@
+package io.github.litlak.plugin.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * insertOrUpdate, batchInsertOrUpdate: 冲突时更新, upsertExcludeColumns不更新, upsertTimestampColumns更新为now()
+ *
+ * @author Scomy
+ */
+public class UpsertTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void upsertUpdatesConflictingRowsAndKeepsExcludedColumns() throws Exception {
+		GeneratedProject project = new GeneratedProject(folder.getRoot()).table("user_info", "upsertExcludeColumns",
+				"gmt_create", "batchInsertChunkSize", "2");
+		project.generate();
+		project.compile();
+		try (AnnotationConfigApplicationContext context = project.applicationContext(beans -> {
+		})) {
+			Object service = ServiceReadTest.userInfoService(project, context);
+			Date created = Timestamp.valueOf("2019-03-28 00:00:00");
+			Date later = Timestamp.valueOf("2020-01-01 00:00:00");
+			GeneratedProject.invoke(service, "batchInsert", Arrays.asList(
+					project.newModel("UserInfo", "name", "user-0", "status", 0, "gmtCreate", created),
+					project.newModel("UserInfo", "name", "user-1", "status", 0, "gmtCreate", created)));
+
+			GeneratedProject.invoke(service, "insertOrUpdate",
+					project.newModel("UserInfo", "id", 1L, "name", "single", "status", 1, "gmtCreate", later));
+			GeneratedProject.invoke(service, "batchInsertOrUpdate", Arrays.asList(
+					project.newModel("UserInfo", "id", 2L, "name", "batch", "status", 2, "gmtCreate", later),
+					project.newModel("UserInfo", "id", 3L, "name", "new-1", "status", 3, "gmtCreate", later),
+					project.newModel("UserInfo", "id", 4L, "name", "new-2", "status", 4, "gmtCreate", later)));
+
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(project.dataSource());
+			assertEquals(Arrays.asList("single", "batch", "new-1", "new-2"),
+					jdbcTemplate.queryForList("select name from user_info order by id", String.class));
+			assertEquals(Arrays.asList(1, 2, 3, 4),
+					jdbcTemplate.queryForList("select status from user_info order by id", Integer.class));
+			assertEquals(Arrays.asList(created, created, later, later),
+					jdbcTemplate.queryForList("select gmt_create from user_info order by id", Timestamp.class));
+			assertNotNull(jdbcTemplate.queryForObject("select gmt_modified from user_info where id = 1", Timestamp.class));
+			assertNotNull(jdbcTemplate.queryForObject("select gmt_modified from user_info where id = 2", Timestamp.class));
+			// 新插入的行按传入的值写入
+			assertNull(jdbcTemplate.queryForObject("select gmt_modified from user_info where id = 3", Timestamp.class));
+		}
+	}
+}